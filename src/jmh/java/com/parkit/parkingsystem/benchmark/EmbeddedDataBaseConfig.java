@@ -0,0 +1,14 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+
+/**
+ * configuration of an in memory H2 database, in the MySQL mode, for the benchmarks.
+ */
+public class EmbeddedDataBaseConfig extends DataBaseConfig {
+
+    @Override
+    protected String getUrl() {
+        return "jdbc:h2:mem:benchmark;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    }
+}
@@ -0,0 +1,93 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the calculation of the fares, for each type of vehicle and each path of
+ * {@link FareCalculatorService#calculateFare(Ticket)}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FareCalculatorBenchmark {
+
+    private static final long IN_TIME = 1_600_000_000_000L;
+
+    @Param({"CAR", "BIKE"})
+    public ParkingType parkingType;
+
+    private final FareCalculatorService fareCalculatorService = new FareCalculatorService();
+    private Ticket freeTicket;
+    private Ticket paidTicket;
+    private Ticket recurringTicket;
+    private double price = 1.4249;
+
+    @Setup
+    public void setUp() {
+        freeTicket = newTicket(TimeUnit.MINUTES.toMillis(20), false);
+        paidTicket = newTicket(TimeUnit.MINUTES.toMillis(135), false);
+        recurringTicket = newTicket(TimeUnit.MINUTES.toMillis(135), true);
+    }
+
+    private Ticket newTicket(long durationMillis, boolean recurring) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, parkingType, false));
+        ticket.setInTime(new Date(IN_TIME));
+        ticket.setOutTime(new Date(IN_TIME + durationMillis));
+        ticket.setIsRecurringUser(recurring);
+        return ticket;
+    }
+
+    /**
+     * stay of less than 30 minutes: free.
+     */
+    @Benchmark
+    public double calculateFreeFare() {
+        fareCalculatorService.calculateFare(freeTicket);
+        return freeTicket.getPrice();
+    }
+
+    @Benchmark
+    public double calculateFare() {
+        fareCalculatorService.calculateFare(paidTicket);
+        return paidTicket.getPrice();
+    }
+
+    /**
+     * stay of a recurring user: fare with the 5% discount, rounded.
+     */
+    @Benchmark
+    public double calculateRecurringFare() {
+        fareCalculatorService.calculateFare(recurringTicket);
+        return recurringTicket.getPrice();
+    }
+
+    /**
+     * the fixed point engine alone, as used to price tickets in bulk.
+     */
+    @Benchmark
+    public long calculateFareCents() {
+        return fareCalculatorService.calculateFareCents(parkingType, IN_TIME, IN_TIME + TimeUnit.MINUTES.toMillis(135),
+                true);
+    }
+
+    @Benchmark
+    public double roundedFare() {
+        return Fare.roundedFare(price);
+    }
+}
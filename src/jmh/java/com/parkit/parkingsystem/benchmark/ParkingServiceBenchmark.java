@@ -0,0 +1,81 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.config.SchemaMigrator;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end benchmark of an entry followed by an exit through {@link ParkingService}, on an
+ * embedded database with the schema of the migrations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParkingServiceBenchmark {
+
+    private static final int SPOTS = 1000;
+
+    /** true to measure with the in memory index of the free spots, false to ask the database. */
+    @Param({"true", "false"})
+    public boolean freeSpotIndex;
+
+    private final EmbeddedDataBaseConfig dataBaseConfig = new EmbeddedDataBaseConfig();
+    private ParkingService parkingService;
+    private long plateNumber;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        new SchemaMigrator(dataBaseConfig).migrate();
+        try (Connection con = dataBaseConfig.getConnection()) {
+            try (Statement statement = con.createStatement()) {
+                statement.execute("delete from ticket");
+                statement.execute("delete from recurring_user");
+                statement.execute("delete from parking");
+            }
+            try (PreparedStatement ps = con.prepareStatement(
+                    "insert into parking(PARKING_NUMBER, AVAILABLE, TYPE) values(?, true, 'CAR')")) {
+                for (int number = 1; number <= SPOTS; number++) {
+                    ps.setInt(1, number);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        if (freeSpotIndex) {
+            parkingSpotDAO.loadFreeSpotIndex();
+        }
+        TicketDAO ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        ticketDAO.loadRecurringUserCache();
+        parkingService = new ParkingService(parkingSpotDAO, ticketDAO);
+    }
+
+    /**
+     * a car enters and leaves the park one hour later, as a new visitor.
+     */
+    @Benchmark
+    public void entryAndExit() throws Exception {
+        String vehicleRegNumber = "B" + (plateNumber++);
+        parkingService.enter(ParkingType.CAR, vehicleRegNumber);
+        parkingService.exit(vehicleRegNumber, new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)));
+    }
+}
@@ -0,0 +1,394 @@
+package com.parkit.parkingsystem.loadtest;
+
+import com.parkit.parkingsystem.benchmark.EmbeddedDataBaseConfig;
+import com.parkit.parkingsystem.config.ConnectionPool;
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.SchemaMigrator;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.metrics.LatencyHistogram;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.service.ParkingService;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rush hour simulator: gates letting vehicles in and out of the park through {@link ParkingService}
+ * and the real DAOs, on an embedded database.
+ * <p>
+ * The vehicles arrive in an open loop, at random times following a Poisson process, and each stays
+ * a random time before leaving. Every event is handled by the first free gate. The latencies are
+ * measured twice: the service time of the call, and the response time from the time the vehicle
+ * was due at the gate, which also counts the wait for a free gate when the gates fall behind.
+ * </p>
+ * <p>
+ * Run it with {@code mvn -Pbenchmark test-compile exec:exec@loadtest -Dloadtest.args="..."} and
+ * settings given as {@code key=value}:
+ * </p>
+ * <pre>
+ * loadtest.gates=16                 number of gates working at the same time
+ * loadtest.carSpots=500             spots of the park, loadtest.bikeSpots=100
+ * loadtest.arrivalsPerSecond=200    mean rate of the arrivals
+ * loadtest.bikeRatio=0.2            share of the bikes in the arrivals
+ * loadtest.recurringRatio=0.3       share of the arrivals coming back after a first visit
+ * loadtest.stay=exponential         distribution of the stays: exponential, uniform or fixed
+ * loadtest.meanStayMillis=2000      mean real time of a stay
+ * loadtest.hoursPerSecond=1         simulated hours of parking per real second, for the fares
+ * loadtest.durationSeconds=60       duration of the arrivals, a soak runs for hours
+ * loadtest.reportIntervalSeconds=10 delay between two reports
+ * loadtest.freeSpotIndex=true       false to look for the free spots in the database
+ * pool.maxSize=10                   and the other settings of database.properties
+ * </pre>
+ * @author tlili
+ */
+public class GateLoadTest {
+
+    private final int gates = DataBaseConfig.getIntProperty("loadtest.gates", 16);
+    private final int carSpots = DataBaseConfig.getIntProperty("loadtest.carSpots", 500);
+    private final int bikeSpots = DataBaseConfig.getIntProperty("loadtest.bikeSpots", 100);
+    private final double arrivalsPerSecond = Double.parseDouble(DataBaseConfig.getProperty("loadtest.arrivalsPerSecond", "200"));
+    private final double bikeRatio = Double.parseDouble(DataBaseConfig.getProperty("loadtest.bikeRatio", "0.2"));
+    private final double recurringRatio = Double.parseDouble(DataBaseConfig.getProperty("loadtest.recurringRatio", "0.3"));
+    private final String stay = DataBaseConfig.getProperty("loadtest.stay", "exponential");
+    private final long meanStayMillis = DataBaseConfig.getLongProperty("loadtest.meanStayMillis", 2000L);
+    private final long hoursPerSecond = DataBaseConfig.getLongProperty("loadtest.hoursPerSecond", 1L);
+    private final long durationSeconds = DataBaseConfig.getLongProperty("loadtest.durationSeconds", 60L);
+    private final long reportIntervalSeconds = DataBaseConfig.getLongProperty("loadtest.reportIntervalSeconds", 10L);
+    private final boolean useFreeSpotIndex = DataBaseConfig.getBooleanProperty("loadtest.freeSpotIndex", true);
+
+    private final EmbeddedDataBaseConfig dataBaseConfig = new EmbeddedDataBaseConfig();
+    private final DelayQueue<Event> events = new DelayQueue<>();
+    /** plates of the vehicles gone, that may come back as recurring users. */
+    private final Queue<String> departedPlates = new ConcurrentLinkedQueue<>();
+    private final AtomicLong plateNumber = new AtomicLong();
+    private volatile boolean arrivalsOpen = true;
+
+    private ParkingSpotDAO parkingSpotDAO;
+    private ParkingService parkingService;
+    private ConnectionPool connectionPool;
+
+    private final Stats total = new Stats();
+    private volatile Stats interval = new Stats();
+    private final AtomicInteger peakActiveConnections = new AtomicInteger();
+
+    public static void main(String[] args) throws Exception {
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals > 0) {
+                System.setProperty(arg.substring(0, equals).trim(), arg.substring(equals + 1).trim());
+            }
+        }
+        int problems = new GateLoadTest().run();
+        System.exit(problems == 0 ? 0 : 1);
+    }
+
+    /**
+     * run the simulation and print the reports.
+     *
+     * @return the number of integrity problems found in the database at the end
+     * @throws Exception if the database can't be prepared
+     */
+    public int run() throws Exception {
+        prepareDataBase();
+        System.out.printf("Load test: %d gates, %d car and %d bike spots, %.0f arrivals/s, %s stays of %d ms, %d s%n",
+                gates, carSpots, bikeSpots, arrivalsPerSecond, stay, meanStayMillis, durationSeconds);
+
+        List<Thread> gateThreads = new ArrayList<>();
+        for (int gate = 1; gate <= gates; gate++) {
+            Thread thread = new Thread(this::runGate, "gate-" + gate);
+            thread.start();
+            gateThreads.add(thread);
+        }
+        long start = System.nanoTime();
+        Thread reporter = new Thread(() -> report(start), "load-report");
+        reporter.setDaemon(true);
+        reporter.start();
+
+        generateArrivals(start);
+        // closing time: the vehicles still in the park all leave now
+        arrivalsOpen = false;
+        for (Thread thread : gateThreads) {
+            thread.join();
+        }
+        reporter.interrupt();
+        long elapsedNanos = System.nanoTime() - start;
+
+        printSummary(elapsedNanos);
+        return checkIntegrity();
+    }
+
+    private void prepareDataBase() throws Exception {
+        new SchemaMigrator(dataBaseConfig).migrate();
+        try (Connection con = dataBaseConfig.getConnection()) {
+            try (Statement statement = con.createStatement()) {
+                statement.execute("delete from ticket");
+                statement.execute("delete from ticket_archive");
+                statement.execute("delete from recurring_user");
+                statement.execute("delete from parking");
+            }
+            try (PreparedStatement ps = con.prepareStatement(
+                    "insert into parking(PARKING_NUMBER, AVAILABLE, TYPE) values(?, true, ?)")) {
+                for (int number = 1; number <= carSpots + bikeSpots; number++) {
+                    ps.setInt(1, number);
+                    ps.setString(2, number <= carSpots ? ParkingType.CAR.name() : ParkingType.BIKE.name());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+        parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        if (useFreeSpotIndex) {
+            parkingSpotDAO.loadFreeSpotIndex();
+        }
+        TicketDAO ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        ticketDAO.loadRecurringUserCache();
+        parkingService = new ParkingService(parkingSpotDAO, ticketDAO);
+        connectionPool = dataBaseConfig.getConnectionPool();
+    }
+
+    /**
+     * schedule the arrivals of the vehicles until the end of the test, at the times of a Poisson
+     * process, a little ahead of time so that the gates never wait for the generator.
+     */
+    private void generateArrivals(long startNanos) throws InterruptedException {
+        Random random = new Random();
+        long endNanos = startNanos + TimeUnit.SECONDS.toNanos(durationSeconds);
+        long dueNanos = startNanos;
+        while (true) {
+            dueNanos += (long) (-Math.log(1 - random.nextDouble()) / arrivalsPerSecond * 1e9);
+            if (dueNanos >= endNanos) {
+                return;
+            }
+            long aheadNanos = dueNanos - System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(100);
+            if (aheadNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(aheadNanos);
+            }
+            ParkingType parkingType = random.nextDouble() < bikeRatio ? ParkingType.BIKE : ParkingType.CAR;
+            String vehicleRegNumber = random.nextDouble() < recurringRatio ? departedPlates.poll() : null;
+            if (vehicleRegNumber == null) {
+                vehicleRegNumber = "LT" + plateNumber.incrementAndGet();
+            }
+            events.put(new Event(dueNanos, true, parkingType, vehicleRegNumber, null));
+        }
+    }
+
+    private void runGate() {
+        while (true) {
+            Event event;
+            try {
+                event = arrivalsOpen ? events.poll(100, TimeUnit.MILLISECONDS) : pollClosing();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (event == null) {
+                if (!arrivalsOpen && events.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+            if (event.arrival) {
+                handleArrival(event);
+            } else {
+                handleDeparture(event);
+            }
+        }
+    }
+
+    /**
+     * take the next event without waiting for its time, once the arrivals are closed.
+     */
+    private Event pollClosing() {
+        Event event = events.poll();
+        if (event == null && !events.isEmpty()) {
+            // a departure not yet due: take it now
+            for (Event pending : events) {
+                if (events.remove(pending)) {
+                    return pending;
+                }
+            }
+        }
+        return event;
+    }
+
+    private void handleArrival(Event event) {
+        long start = System.nanoTime();
+        try {
+            EntryResult result = parkingService.enter(event.parkingType, event.vehicleRegNumber);
+            long end = System.nanoTime();
+            record(true, start, end, event.dueNanos);
+            if (!result.isEntered()) {
+                total.refused.increment();
+                interval.refused.increment();
+                departedPlates.offer(event.vehicleRegNumber);
+                return;
+            }
+            long stayMillis = stayMillis();
+            Date outTime = new Date(result.getInTime().getTime() + stayMillis * hoursPerSecond * 3600);
+            events.put(new Event(end + TimeUnit.MILLISECONDS.toNanos(stayMillis), false, event.parkingType,
+                    event.vehicleRegNumber, outTime));
+        } catch (Exception e) {
+            total.errors.increment();
+            interval.errors.increment();
+        }
+    }
+
+    private void handleDeparture(Event event) {
+        long start = System.nanoTime();
+        try {
+            parkingService.exit(event.vehicleRegNumber, event.outTime);
+            record(false, start, System.nanoTime(), event.dueNanos);
+            departedPlates.offer(event.vehicleRegNumber);
+        } catch (Exception e) {
+            total.errors.increment();
+            interval.errors.increment();
+        }
+    }
+
+    private long stayMillis() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (stay) {
+            case "fixed":
+                return meanStayMillis;
+            case "uniform":
+                return (long) (random.nextDouble() * 2 * meanStayMillis);
+            default:
+                return (long) (-Math.log(1 - random.nextDouble()) * meanStayMillis);
+        }
+    }
+
+    private void record(boolean entry, long startNanos, long endNanos, long dueNanos) {
+        Stats current = interval;
+        for (Stats stats : new Stats[] {total, current}) {
+            (entry ? stats.entries : stats.exits).recordNanos(endNanos - startNanos);
+            stats.response.recordNanos(endNanos - Math.min(dueNanos, startNanos));
+        }
+        peakActiveConnections.accumulateAndGet(connectionPool.getActiveConnections(), Math::max);
+    }
+
+    private void report(long startNanos) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                TimeUnit.SECONDS.sleep(reportIntervalSeconds);
+                Stats current = interval;
+                interval = new Stats();
+                long elapsedSeconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos);
+                System.out.printf("[%5ds] %s | free car=%d bike=%d | %s%n", elapsedSeconds,
+                        current.describe(TimeUnit.SECONDS.toNanos(reportIntervalSeconds)),
+                        parkingService.countAvailableSpots(ParkingType.CAR),
+                        parkingService.countAvailableSpots(ParkingType.BIKE), connectionPool);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void printSummary(long elapsedNanos) {
+        System.out.println("---- summary ----");
+        System.out.println(total.describe(elapsedNanos));
+        System.out.println("entries  " + total.entries);
+        System.out.println("exits    " + total.exits);
+        System.out.println("response " + total.response + " (from the time the vehicle was due)");
+        System.out.printf("spot claim conflicts=%d, refused (park full)=%d, errors=%d%n",
+                parkingSpotDAO.getClaimConflictCount(), total.refused.sum(), total.errors.sum());
+        System.out.printf("DB connections: peak active=%d of max %d, created=%d, timeouts=%d, avg wait=%.3f ms, "
+                        + "max wait=%.3f ms%n", peakActiveConnections.get(), connectionPool.getMaxSize(),
+                connectionPool.getCreatedCount(), connectionPool.getTimeoutCount(),
+                connectionPool.getAverageWaitMillis(), connectionPool.getMaxWaitMillis());
+    }
+
+    /**
+     * check that no spot was given twice and that the park is empty again after closing time.
+     */
+    private int checkIntegrity() throws Exception {
+        int problems = 0;
+        try (Connection con = dataBaseConfig.getConnection(); Statement statement = con.createStatement()) {
+            problems += count(statement, "select count(*) from (select PARKING_NUMBER from ticket"
+                    + " where OUT_TIME is null group by PARKING_NUMBER having count(*) > 1) t",
+                    "spot(s) given to two vehicles");
+            problems += count(statement, "select count(*) from ticket where OUT_TIME is null",
+                    "ticket(s) still open after closing time");
+            problems += count(statement, "select count(*) from parking where AVAILABLE = false",
+                    "spot(s) still taken after closing time");
+        }
+        System.out.println(problems == 0 ? "integrity: OK" : "integrity: " + problems + " problem(s)");
+        return problems;
+    }
+
+    private static int count(Statement statement, String sql, String description) throws Exception {
+        try (ResultSet rs = statement.executeQuery(sql)) {
+            rs.next();
+            int count = rs.getInt(1);
+            if (count > 0) {
+                System.out.println("integrity: " + count + " " + description);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * an arrival or a departure due at a time.
+     */
+    private static final class Event implements Delayed {
+        private final long dueNanos;
+        private final boolean arrival;
+        private final ParkingType parkingType;
+        private final String vehicleRegNumber;
+        private final Date outTime;
+
+        private Event(long dueNanos, boolean arrival, ParkingType parkingType, String vehicleRegNumber, Date outTime) {
+            this.dueNanos = dueNanos;
+            this.arrival = arrival;
+            this.parkingType = parkingType;
+            this.vehicleRegNumber = vehicleRegNumber;
+            this.outTime = outTime;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(dueNanos, ((Event) other).dueNanos);
+        }
+    }
+
+    /**
+     * latencies and counters of the test or of one report interval.
+     */
+    private static final class Stats {
+        private final LatencyHistogram entries = new LatencyHistogram();
+        private final LatencyHistogram exits = new LatencyHistogram();
+        private final LatencyHistogram response = new LatencyHistogram();
+        private final LongAdder refused = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        private String describe(long elapsedNanos) {
+            long operations = entries.getCount() + exits.getCount();
+            double perSecond = elapsedNanos == 0 ? 0 : operations * 1e9 / elapsedNanos;
+            return String.format("%.0f ops/s (in=%d out=%d full=%d err=%d) p50=%dus p99=%dus p999=%dus",
+                    perSecond, entries.getCount(), exits.getCount(), refused.sum(), errors.sum(),
+                    response.getPercentile(50), response.getPercentile(99), response.getPercentile(99.9));
+        }
+    }
+}
@@ -1,13 +1,21 @@
 package com.parkit.parkingsystem;
 
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.http.GateServer;
 import com.parkit.parkingsystem.service.InteractiveShell;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+
 public class App {
     private static final Logger logger = LogManager.getLogger("App");
-    public static void main(String args[]){
+    public static void main(String args[]) throws IOException {
         logger.info("Initializing Parking System");
-        InteractiveShell.loadInterface();
+        if ((args.length > 0 && "--http".equals(args[0])) || DataBaseConfig.getBooleanProperty("http.enabled", false)) {
+            GateServer.serve();
+        } else {
+            InteractiveShell.loadInterface();
+        }
     }
 }
@@ -0,0 +1,228 @@
+package com.parkit.parkingsystem.cache;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Occupancy;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In memory index of the free parking spots, one bitset per {@link ParkingType}.
+ * <p>
+ * Bit n of the bitset of a type is set when the spot number n of this type is available, so the
+ * lowest free spot is found by scanning a few 64 bits words instead of querying the table parking.
+ * The table stays the reference: the index is loaded from it at startup and updated after each
+ * successful write.
+ * </p>
+ * <p>
+ * Each change of a bit also updates the {@link OccupancyCounters} of the index, so the number of
+ * free spots is read without scanning the bitsets. The bitsets and their counters are replaced
+ * together when the index is loaded again.
+ * </p>
+ * @author tlili
+ */
+public class FreeSpotIndex {
+
+    private volatile Layout layout;
+
+    /**
+     * method to know if the index has been loaded from the database.
+     *
+     * @return true if the index can answer the requests
+     */
+    public boolean isLoaded() {
+        return layout != null;
+    }
+
+    /**
+     * (re)load the index with the state of all the parking spots.
+     *
+     * @param parkingSpots every spot of the table parking
+     * @return the number of spots whose availability differed from the previous index
+     */
+    public int load(Collection<ParkingSpot> parkingSpots) {
+        int maxNumber = 0;
+        for (ParkingSpot parkingSpot : parkingSpots) {
+            maxNumber = Math.max(maxNumber, parkingSpot.getId());
+        }
+        Map<ParkingType, Integer> totals = new EnumMap<>(ParkingType.class);
+        Map<ParkingType, Integer> available = new EnumMap<>(ParkingType.class);
+        for (ParkingSpot parkingSpot : parkingSpots) {
+            if (parkingSpot.getId() > 0 && parkingSpot.getParkingType() != null) {
+                totals.merge(parkingSpot.getParkingType(), 1, Integer::sum);
+                if (parkingSpot.isAvailable()) {
+                    available.merge(parkingSpot.getParkingType(), 1, Integer::sum);
+                }
+            }
+        }
+        Layout newLayout = new Layout(maxNumber, new OccupancyCounters(totals, available));
+        for (ParkingSpot parkingSpot : parkingSpots) {
+            if (parkingSpot.getId() > 0 && parkingSpot.getParkingType() != null) {
+                newLayout.typeByNumber[parkingSpot.getId()] = parkingSpot.getParkingType();
+                if (parkingSpot.isAvailable()) {
+                    newLayout.setBit(parkingSpot.getParkingType(), parkingSpot.getId(), true);
+                }
+            }
+        }
+        Layout previous = layout;
+        layout = newLayout;
+        return previous == null ? 0 : previous.countDifferences(newLayout);
+    }
+
+    /**
+     * return the lowest available spot for a type of vehicle.
+     *
+     * @param parkingType the type of a vehicle {@link ParkingType}
+     * @return the number of the spot, or -1 if every spot of this type is taken
+     */
+    public int getLowestAvailable(ParkingType parkingType) {
+        AtomicLongArray bits = requireLayout().freeByType.get(parkingType);
+        for (int word = 0; word < bits.length(); word++) {
+            long value = bits.get(word);
+            if (value != 0) {
+                return word * Long.SIZE + Long.numberOfTrailingZeros(value);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * take the lowest available spot for a type of vehicle, so that no other caller gets it.
+     * <p>
+     * The bit of the spot is cleared with a compare and set: two gates claiming at the same time
+     * always get two different spots, without lock.
+     * </p>
+     *
+     * @param parkingType the type of a vehicle {@link ParkingType}
+     * @return the number of the claimed spot, or -1 if every spot of this type is taken
+     */
+    public int claimLowestAvailable(ParkingType parkingType) {
+        Layout current = requireLayout();
+        AtomicLongArray bits = current.freeByType.get(parkingType);
+        for (int word = 0; word < bits.length(); word++) {
+            long value = bits.get(word);
+            while (value != 0) {
+                long lowestBit = Long.lowestOneBit(value);
+                if (bits.compareAndSet(word, value, value & ~lowestBit)) {
+                    current.occupancy.spotTaken(parkingType);
+                    return word * Long.SIZE + Long.numberOfTrailingZeros(lowestBit);
+                }
+                value = bits.get(word);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * update the availability of a spot after it has been written in the database.
+     *
+     * @param number the number of the spot
+     * @param available the new availability of the spot
+     */
+    public void setAvailable(int number, boolean available) {
+        Layout current = requireLayout();
+        ParkingType parkingType = current.typeOf(number);
+        if (parkingType != null) {
+            current.set(parkingType, number, available);
+        }
+    }
+
+    /**
+     * count the available spots of a type, from the counters.
+     *
+     * @param parkingType the type of a vehicle {@link ParkingType}
+     * @return the number of free spots
+     */
+    public int countAvailable(ParkingType parkingType) {
+        return requireLayout().occupancy.getAvailable(parkingType);
+    }
+
+    /**
+     * return the occupancy of the spots of a type, from the counters.
+     *
+     * @param parkingType the type of a vehicle {@link ParkingType}
+     * @return the number of spots and of free spots of the type
+     */
+    public Occupancy getOccupancy(ParkingType parkingType) {
+        return requireLayout().occupancy.getOccupancy(parkingType);
+    }
+
+    private Layout requireLayout() {
+        Layout current = layout;
+        if (current == null) {
+            throw new IllegalStateException("Free spot index is not loaded");
+        }
+        return current;
+    }
+
+    /**
+     * bitsets of one loading of the index.
+     */
+    private static final class Layout {
+        private final ParkingType[] typeByNumber;
+        private final Map<ParkingType, AtomicLongArray> freeByType = new EnumMap<>(ParkingType.class);
+        private final OccupancyCounters occupancy;
+
+        private Layout(int maxNumber, OccupancyCounters occupancy) {
+            this.occupancy = occupancy;
+            typeByNumber = new ParkingType[maxNumber + 1];
+            int words = maxNumber / Long.SIZE + 1;
+            for (ParkingType parkingType : ParkingType.values()) {
+                freeByType.put(parkingType, new AtomicLongArray(words));
+            }
+        }
+
+        private ParkingType typeOf(int number) {
+            return number > 0 && number < typeByNumber.length ? typeByNumber[number] : null;
+        }
+
+        private void set(ParkingType parkingType, int number, boolean available) {
+            if (setBit(parkingType, number, available)) {
+                if (available) {
+                    occupancy.spotFreed(parkingType);
+                } else {
+                    occupancy.spotTaken(parkingType);
+                }
+            }
+        }
+
+        /**
+         * @return true if the bit changed, false if it already had this value
+         */
+        private boolean setBit(ParkingType parkingType, int number, boolean available) {
+            AtomicLongArray bits = freeByType.get(parkingType);
+            int word = number / Long.SIZE;
+            long mask = 1L << (number % Long.SIZE);
+            long value;
+            long newValue;
+            do {
+                value = bits.get(word);
+                newValue = available ? value | mask : value & ~mask;
+                if (value == newValue) {
+                    return false;
+                }
+            } while (!bits.compareAndSet(word, value, newValue));
+            return true;
+        }
+
+        private boolean isAvailable(int number) {
+            ParkingType parkingType = typeOf(number);
+            return parkingType != null
+                    && (freeByType.get(parkingType).get(number / Long.SIZE) & (1L << (number % Long.SIZE))) != 0;
+        }
+
+        private int countDifferences(Layout other) {
+            int differences = 0;
+            int maxNumber = Math.max(typeByNumber.length, other.typeByNumber.length);
+            for (int number = 1; number < maxNumber; number++) {
+                if (isAvailable(number) != other.isAvailable(number)) {
+                    differences++;
+                }
+            }
+            return differences;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.parkit.parkingsystem.cache;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Occupancy;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the free spots of each {@link ParkingType}, changed at each spot taken or freed.
+ * <p>
+ * The counters are striped {@link LongAdder}: the gates update them without contention and the
+ * displays read them as often as they want without lock and without scanning the spots. A reading
+ * done while spots change may be one transition behind, never more.
+ * </p>
+ * @author tlili
+ */
+public class OccupancyCounters {
+
+    private final Map<ParkingType, Integer> totals = new EnumMap<>(ParkingType.class);
+    private final Map<ParkingType, LongAdder> available = new EnumMap<>(ParkingType.class);
+
+    /**
+     * create the counters of a park.
+     *
+     * @param totals the number of spots of each type
+     * @param initiallyAvailable the number of free spots of each type
+     */
+    public OccupancyCounters(Map<ParkingType, Integer> totals, Map<ParkingType, Integer> initiallyAvailable) {
+        for (ParkingType parkingType : ParkingType.values()) {
+            this.totals.put(parkingType, totals.getOrDefault(parkingType, 0));
+            LongAdder counter = new LongAdder();
+            counter.add(initiallyAvailable.getOrDefault(parkingType, 0));
+            available.put(parkingType, counter);
+        }
+    }
+
+    /**
+     * count a spot of a type that was free and is now taken.
+     *
+     * @param parkingType the type of the spot
+     */
+    public void spotTaken(ParkingType parkingType) {
+        available.get(parkingType).decrement();
+    }
+
+    /**
+     * count a spot of a type that was taken and is now free.
+     *
+     * @param parkingType the type of the spot
+     */
+    public void spotFreed(ParkingType parkingType) {
+        available.get(parkingType).increment();
+    }
+
+    /**
+     * @param parkingType the type of vehicle
+     * @return the number of free spots of the type
+     */
+    public int getAvailable(ParkingType parkingType) {
+        return (int) Math.max(0, available.get(parkingType).sum());
+    }
+
+    /**
+     * @param parkingType the type of vehicle
+     * @return the occupancy of the spots of the type
+     */
+    public Occupancy getOccupancy(ParkingType parkingType) {
+        int total = totals.get(parkingType);
+        return new Occupancy(parkingType, total, Math.min(total, getAvailable(parkingType)));
+    }
+}
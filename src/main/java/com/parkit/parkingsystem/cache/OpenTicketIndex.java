@@ -0,0 +1,140 @@
+package com.parkit.parkingsystem.cache;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In memory map of the tickets still open, keyed by number plate, in front of the table ticket
+ * for the exits. The plates are matched as the database matches them, they are normalised once by
+ * {@link com.parkit.parkingsystem.service.ParkingService} before they reach the DAO.
+ * <p>
+ * The vehicles in the park are few and all entered through this process: the map is written
+ * through by the DAO when a ticket is saved and when it is closed, and rebuilt at startup from the
+ * tickets without exit time. An entry only keeps the ticket id, the spot and the time of entry as
+ * primitives; the {@link Ticket} is built for the caller on each lookup.
+ * </p>
+ * <p>
+ * A plate missing from the map is not a proof that the vehicle has no open ticket (a ticket queued
+ * by the write-behind has no id yet): the caller asks the database on a miss.
+ * </p>
+ * @author tlili
+ */
+public class OpenTicketIndex {
+
+    private final Map<String, Entry> openTickets = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * replace the content of the map with the open tickets of the database.
+     *
+     * @param tickets the tickets without exit time
+     */
+    public void load(Collection<Ticket> tickets) {
+        openTickets.clear();
+        for (Ticket ticket : tickets) {
+            put(ticket);
+        }
+        loaded = true;
+    }
+
+    /**
+     * method to know if the map was filled from the database.
+     *
+     * @return true once {@link #load(Collection)} has been called
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * add a ticket just saved, ignored when it has no id yet or is already closed.
+     *
+     * @param ticket the ticket of the vehicle entering
+     */
+    public void put(Ticket ticket) {
+        if (ticket.getId() <= 0 || ticket.getOutTime() != null || ticket.getVehicleRegNumber() == null) {
+            return;
+        }
+        openTickets.put(ticket.getVehicleRegNumber(), new Entry(ticket.getId(),
+                ticket.getParkingSpot().getId(), ticket.getParkingSpot().getParkingType(),
+                ticket.getInTime().getTime()));
+    }
+
+    /**
+     * remove a ticket just closed, unless the plate already has a newer ticket.
+     *
+     * @param ticket the ticket of the vehicle leaving
+     */
+    public void remove(Ticket ticket) {
+        if (ticket.getVehicleRegNumber() == null) {
+            return;
+        }
+        openTickets.computeIfPresent(ticket.getVehicleRegNumber(),
+                (key, entry) -> entry.ticketId == ticket.getId() ? null : entry);
+    }
+
+    /**
+     * return the open ticket of a plate from memory.
+     *
+     * @param vehicleRegNumber the number plate of the vehicle
+     * @return a new ticket owned by the caller, or null when the database must be asked
+     */
+    public Ticket get(String vehicleRegNumber) {
+        Entry entry = openTickets.get(vehicleRegNumber);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        Ticket ticket = new Ticket();
+        ticket.setId(entry.ticketId);
+        ticket.setParkingSpot(new ParkingSpot(entry.parkingNumber, entry.parkingType, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(entry.inTimeMillis));
+        return ticket;
+    }
+
+    public int size() {
+        return openTickets.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "OpenTicketIndex[size=" + size() + ", hits=" + getHits() + ", misses=" + getMisses() + "]";
+    }
+
+    /**
+     * open ticket of one plate.
+     */
+    private static final class Entry {
+        private final int ticketId;
+        private final int parkingNumber;
+        private final ParkingType parkingType;
+        private final long inTimeMillis;
+
+        private Entry(int ticketId, int parkingNumber, ParkingType parkingType, long inTimeMillis) {
+            this.ticketId = ticketId;
+            this.parkingNumber = parkingNumber;
+            this.parkingType = parkingType;
+            this.inTimeMillis = inTimeMillis;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.parkit.parkingsystem.cache;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * In memory answer to "did this plate already leave the park", in front of the table recurring_user.
+ * <p>
+ * A bloom filter holding every recurring plate answers no for most first time visitors without
+ * request, since a bloom filter never forgets a plate it was given. The plates known recurring are
+ * kept in a bounded LRU with a time to live. Any other plate is unknown: the caller asks the
+ * database and records the answer.
+ * </p>
+ * <p>
+ * The negative answers are only given once {@link #load(Collection)} has filled the filter with
+ * the whole table, and hold as long as every exit of the park goes through this process.
+ * </p>
+ * @author tlili
+ */
+public class RecurringUserCache {
+
+    private final int expectedPlates;
+    private final double falsePositiveRate;
+    private final int maxPositives;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+
+    private volatile BloomFilter bloomFilter;
+    private final Map<String, Long> positives;
+
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong positiveHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * create an empty cache, answering nothing until it is loaded or told about plates.
+     *
+     * @param expectedPlates the number of recurring plates the filter is sized for
+     * @param falsePositiveRate the rate of first time visitors the filter lets through to the database
+     * @param maxPositives the maximum number of recurring plates kept in the LRU
+     * @param ttlMillis the time a recurring plate stays in the LRU
+     */
+    public RecurringUserCache(int expectedPlates, double falsePositiveRate, int maxPositives, long ttlMillis) {
+        this(expectedPlates, falsePositiveRate, maxPositives, ttlMillis, System::currentTimeMillis);
+    }
+
+    public RecurringUserCache(int expectedPlates, double falsePositiveRate, int maxPositives, long ttlMillis,
+                              LongSupplier clock) {
+        this.expectedPlates = expectedPlates;
+        this.falsePositiveRate = falsePositiveRate;
+        this.maxPositives = maxPositives;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        this.positives = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > RecurringUserCache.this.maxPositives;
+            }
+        };
+    }
+
+    /**
+     * (re)fill the filter with every recurring plate of the database.
+     *
+     * @param recurringPlates the plates of the table recurring_user
+     */
+    public void load(Collection<String> recurringPlates) {
+        BloomFilter newFilter = new BloomFilter(Math.max(expectedPlates, recurringPlates.size() * 2), falsePositiveRate);
+        for (String plate : recurringPlates) {
+            newFilter.put(plate);
+        }
+        bloomFilter = newFilter;
+    }
+
+    /**
+     * method to know if the cache can give negative answers.
+     *
+     * @return true once the filter holds the whole table
+     */
+    public boolean isLoaded() {
+        return bloomFilter != null;
+    }
+
+    /**
+     * answer from memory if a plate is recurring.
+     *
+     * @param vehicleRegNumber the number plate of the vehicle
+     * @return TRUE or FALSE when known, null when the database must be asked
+     */
+    public Boolean lookup(String vehicleRegNumber) {
+        BloomFilter filter = bloomFilter;
+        if (filter != null && !filter.mightContain(vehicleRegNumber)) {
+            negativeHits.incrementAndGet();
+            return Boolean.FALSE;
+        }
+        synchronized (positives) {
+            Long expiry = positives.get(vehicleRegNumber);
+            if (expiry != null) {
+                if (expiry > clock.getAsLong()) {
+                    positiveHits.incrementAndGet();
+                    return Boolean.TRUE;
+                }
+                positives.remove(vehicleRegNumber);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * record the answer of the database for a plate.
+     *
+     * @param vehicleRegNumber the number plate of the vehicle
+     * @param recurring true if the plate is recurring
+     */
+    public void record(String vehicleRegNumber, boolean recurring) {
+        if (recurring) {
+            addRecurringUser(vehicleRegNumber);
+        }
+    }
+
+    /**
+     * add a plate whose ticket has just been closed.
+     *
+     * @param vehicleRegNumber the number plate of the vehicle
+     */
+    public void addRecurringUser(String vehicleRegNumber) {
+        BloomFilter filter = bloomFilter;
+        if (filter != null) {
+            filter.put(vehicleRegNumber);
+        }
+        synchronized (positives) {
+            positives.put(vehicleRegNumber, clock.getAsLong() + ttlMillis);
+        }
+    }
+
+    public long getNegativeHits() {
+        return negativeHits.get();
+    }
+
+    public long getPositiveHits() {
+        return positiveHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "RecurringUserCache[negativeHits=" + getNegativeHits() + ", positiveHits=" + getPositiveHits()
+                + ", misses=" + getMisses() + "]";
+    }
+
+    /**
+     * bloom filter of plates, thread safe for concurrent put and mightContain.
+     */
+    private static final class BloomFilter {
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        private final int hashCount;
+
+        private BloomFilter(int expectedInsertions, double falsePositiveRate) {
+            long m = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            int words = (int) Math.max(1, (m + Long.SIZE - 1) / Long.SIZE);
+            bits = new AtomicLongArray(words);
+            bitCount = (long) words * Long.SIZE;
+            hashCount = Math.max(1, (int) Math.round((double) m / expectedInsertions * Math.log(2)));
+        }
+
+        private void put(String plate) {
+            long hash = hash64(plate);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashCount; i++) {
+                long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bitCount;
+                int word = (int) (bit / Long.SIZE);
+                long mask = 1L << (bit % Long.SIZE);
+                long value;
+                do {
+                    value = bits.get(word);
+                } while ((value & mask) == 0 && !bits.compareAndSet(word, value, value | mask));
+            }
+        }
+
+        private boolean mightContain(String plate) {
+            long hash = hash64(plate);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashCount; i++) {
+                long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bitCount;
+                if ((bits.get((int) (bit / Long.SIZE)) & (1L << (bit % Long.SIZE))) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 64 bits FNV-1a of the plate, finished by the mixer of MurmurHash3.
+         */
+        private static long hash64(String plate) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < plate.length(); i++) {
+                hash ^= plate.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            hash *= 0xc4ceb9fe1a85ec53L;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+}
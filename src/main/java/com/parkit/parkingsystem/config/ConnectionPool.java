@@ -0,0 +1,687 @@
+package com.parkit.parkingsystem.config;
+
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.metrics.OperationMetrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of JDBC connections shared by the DAOs.
+ * <p>
+ * The connections handed out are proxies: calling {@link Connection#close()} gives the
+ * physical connection back to the pool instead of closing the session with the database.
+ * </p>
+ * <p>
+ * The prepared statements follow the same idea: each physical connection keeps a
+ * {@link StatementCache} of its statements, closing a statement gives it back to the cache so that
+ * the next lease preparing the same SQL reuses it. The statements and result sets still open when
+ * the connection is given back are reported as leaks, and closed.
+ * </p>
+ * <p>
+ * The executions of the statements, the commits and the rollbacks are timed in the default
+ * {@link MetricsRegistry}, each SQL under the name of its constant. A connection that ran an update
+ * calls the write listener when it is given back, after its commit, see {@link ReplicaSet}.
+ * </p>
+ * @author tlili
+ */
+public class ConnectionPool {
+
+    private static final Logger logger = LogManager.getLogger("ConnectionPool");
+
+    /**
+     * Factory opening a new physical connection to the database.
+     */
+    public interface ConnectionFactory {
+        Connection createConnection() throws SQLException;
+    }
+
+    private final ConnectionFactory connectionFactory;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final int validationTimeoutSeconds;
+    private final int statementCacheSize;
+
+    private final LinkedBlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final ScheduledExecutorService evictor;
+
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder createdCount = new LongAdder();
+    private final LongAdder evictedCount = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+    private final LongAdder leakedStatements = new LongAdder();
+    private final LongAdder leakedResultSets = new LongAdder();
+    private final MetricsRegistry metricsRegistry = MetricsRegistry.getDefault();
+    private final OperationMetrics commitMetrics = metricsRegistry.operation("db.commit", OperationMetrics.Phase.DB);
+    private final OperationMetrics rollbackMetrics =
+            metricsRegistry.operation("db.rollback", OperationMetrics.Phase.DB);
+    private volatile Runnable writeListener;
+
+    /**
+     * create a pool of connection without cache of prepared statements.
+     *
+     * @param connectionFactory the factory opening the physical connections
+     * @param minSize number of connections kept open even when they are idle
+     * @param maxSize maximum number of connections open at the same time
+     * @param acquireTimeoutMillis maximum time to wait for a free connection
+     * @param idleTimeoutMillis time after which an idle connection above minSize is closed
+     * @param validationTimeoutSeconds timeout of the validation done when a connection is borrowed
+     * @param evictionIntervalMillis period of the idle eviction task, 0 to disable it
+     */
+    public ConnectionPool(ConnectionFactory connectionFactory, int minSize, int maxSize,
+                          long acquireTimeoutMillis, long idleTimeoutMillis,
+                          int validationTimeoutSeconds, long evictionIntervalMillis) {
+        this(connectionFactory, minSize, maxSize, acquireTimeoutMillis, idleTimeoutMillis,
+                validationTimeoutSeconds, evictionIntervalMillis, 0);
+    }
+
+    /**
+     * create a pool of connection.
+     *
+     * @param connectionFactory the factory opening the physical connections
+     * @param minSize number of connections kept open even when they are idle
+     * @param maxSize maximum number of connections open at the same time
+     * @param acquireTimeoutMillis maximum time to wait for a free connection
+     * @param idleTimeoutMillis time after which an idle connection above minSize is closed
+     * @param validationTimeoutSeconds timeout of the validation done when a connection is borrowed
+     * @param evictionIntervalMillis period of the idle eviction task, 0 to disable it
+     * @param statementCacheSize number of prepared statements kept open by each connection, 0 to disable the cache
+     */
+    public ConnectionPool(ConnectionFactory connectionFactory, int minSize, int maxSize,
+                          long acquireTimeoutMillis, long idleTimeoutMillis,
+                          int validationTimeoutSeconds, long evictionIntervalMillis, int statementCacheSize) {
+        if (minSize < 0 || maxSize <= 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size min=" + minSize + " max=" + maxSize);
+        }
+        this.connectionFactory = connectionFactory;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+        if (evictionIntervalMillis > 0) {
+            evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "connection-pool-evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            evictor.scheduleWithFixedDelay(this::evictIdleConnections,
+                    evictionIntervalMillis, evictionIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            evictor = null;
+        }
+    }
+
+    /**
+     * borrow a connection from the pool, waiting at most the acquire timeout.
+     *
+     * @return a connection to give back with {@link Connection#close()}
+     * @throws SQLException if no connection is available in time or the database can't be reached
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed.get()) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeoutCount.increment();
+                throw new SQLException("Timed out after " + acquireTimeoutMillis
+                        + "ms waiting for a DB connection (active=" + activeConnections.get() + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a DB connection", e);
+        }
+        try {
+            PooledConnection pooled = takeValidConnection();
+            activeConnections.incrementAndGet();
+            recordWait(System.nanoTime() - start);
+            return pooled.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * set the action run by the thread giving back a connection that executed an update, once the
+     * connection is back in the pool.
+     *
+     * @param writeListener the action, null for none
+     */
+    public void setWriteListener(Runnable writeListener) {
+        this.writeListener = writeListener;
+    }
+
+    private PooledConnection takeValidConnection() throws SQLException {
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            if (isValid(pooled.physical)) {
+                return pooled;
+            }
+            logger.warn("Discarding broken DB connection");
+            closePhysical(pooled);
+        }
+        Connection physical = connectionFactory.createConnection();
+        createdCount.increment();
+        return new PooledConnection(physical);
+    }
+
+    private boolean isValid(Connection connection) {
+        try {
+            return !connection.isClosed() && connection.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void recordWait(long waitNanos) {
+        borrowCount.increment();
+        totalWaitNanos.add(waitNanos);
+        long max = maxWaitNanos.get();
+        while (waitNanos > max && !maxWaitNanos.compareAndSet(max, waitNanos)) {
+            max = maxWaitNanos.get();
+        }
+    }
+
+    private void release(PooledConnection pooled) {
+        activeConnections.decrementAndGet();
+        try {
+            if (closed.get() || pooled.physical.isClosed()) {
+                closePhysical(pooled);
+                return;
+            }
+            if (!pooled.physical.getAutoCommit()) {
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+            pooled.lastUsedMillis = System.currentTimeMillis();
+            idleConnections.offerFirst(pooled);
+        } catch (SQLException e) {
+            logger.error("Error while giving back DB connection to the pool", e);
+            closePhysical(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * close the connections idle for longer than the idle timeout, keeping at least minSize
+     * connections, then open new ones until minSize is reached again.
+     */
+    public void evictIdleConnections() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> oldestFirst = idleConnections.descendingIterator();
+        while (oldestFirst.hasNext() && getTotalConnections() > minSize) {
+            PooledConnection pooled = oldestFirst.next();
+            if (now - pooled.lastUsedMillis >= idleTimeoutMillis && idleConnections.remove(pooled)) {
+                evictedCount.increment();
+                closePhysical(pooled);
+            }
+        }
+        while (!closed.get() && getTotalConnections() < minSize) {
+            try {
+                PooledConnection pooled = new PooledConnection(connectionFactory.createConnection());
+                createdCount.increment();
+                idleConnections.offerLast(pooled);
+            } catch (SQLException e) {
+                logger.error("Error while warming up DB connection pool", e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * close every idle connection and stop the pool; borrowed connections are closed on release.
+     */
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            if (evictor != null) {
+                evictor.shutdownNow();
+            }
+            PooledConnection pooled;
+            while ((pooled = idleConnections.pollFirst()) != null) {
+                closePhysical(pooled);
+            }
+        }
+    }
+
+    private void closePhysical(PooledConnection pooled) {
+        try {
+            pooled.statementCache.clear();
+            pooled.physical.close();
+        } catch (SQLException e) {
+            logger.error("Error while closing connection", e);
+        }
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    public int getIdleConnections() {
+        return idleConnections.size();
+    }
+
+    public int getTotalConnections() {
+        return activeConnections.get() + idleConnections.size();
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    public long getCreatedCount() {
+        return createdCount.sum();
+    }
+
+    public long getEvictedCount() {
+        return evictedCount.sum();
+    }
+
+    /**
+     * @return the mean time spent by a caller waiting for a connection, in milliseconds
+     */
+    public double getAverageWaitMillis() {
+        long borrows = borrowCount.sum();
+        return borrows == 0 ? 0 : totalWaitNanos.sum() / (double) borrows / 1_000_000;
+    }
+
+    /**
+     * @return the longest time spent by a caller waiting for a connection, in milliseconds
+     */
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits.sum();
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.sum();
+    }
+
+    /**
+     * @return the number of statements still open when their connection was given back
+     */
+    public long getLeakedStatements() {
+        return leakedStatements.sum();
+    }
+
+    /**
+     * @return the number of result sets still open when their connection was given back
+     */
+    public long getLeakedResultSets() {
+        return leakedResultSets.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool[active=" + getActiveConnections() + ", idle=" + getIdleConnections()
+                + ", max=" + maxSize + ", borrows=" + getBorrowCount() + ", timeouts=" + getTimeoutCount()
+                + ", avgWaitMs=" + String.format("%.3f", getAverageWaitMillis())
+                + ", statementCacheHits=" + getStatementCacheHits() + ", statementCacheMisses=" + getStatementCacheMisses()
+                + ", leakedStatements=" + getLeakedStatements() + ", leakedResultSets=" + getLeakedResultSets() + "]";
+    }
+
+    /**
+     * physical connection owned by the pool.
+     */
+    private final class PooledConnection {
+        private final Connection physical;
+        private final StatementCache statementCache = new StatementCache(statementCacheSize);
+        private volatile long lastUsedMillis = System.currentTimeMillis();
+
+        private PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        private Connection lease() {
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new LeaseHandler(this));
+        }
+    }
+
+    /**
+     * routes the calls of a borrowed connection to the physical one, until it is closed.
+     */
+    private final class LeaseHandler implements InvocationHandler {
+        private final PooledConnection pooled;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private final List<StatementHandler> openStatements = new ArrayList<>();
+        // an update was executed on the lease, only read and written by the thread holding it
+        private boolean written;
+
+        private LeaseHandler(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (released.compareAndSet(false, true)) {
+                        closeLeakedStatements();
+                        release(pooled);
+                        Runnable listener = writeListener;
+                        if (written && listener != null) {
+                            listener.run();
+                        }
+                    }
+                    return null;
+                case "prepareStatement":
+                    if (!released.get() && (args.length == 1 || (args.length == 2 && args[1] instanceof Integer))) {
+                        return prepare((Connection) proxy, (String) args[0],
+                                args.length == 1 ? Statement.NO_GENERATED_KEYS : (Integer) args[1]);
+                    }
+                    return invokePhysical(method, args);
+                case "commit":
+                    return timed(commitMetrics, method, args);
+                case "rollback":
+                    return args == null ? timed(rollbackMetrics, method, args) : invokePhysical(method, args);
+                case "isClosed":
+                    return released.get() || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + pooled.physical;
+                default:
+                    return invokePhysical(method, args);
+            }
+        }
+
+        private Object invokePhysical(Method method, Object[] args) throws Throwable {
+            if (released.get()) {
+                throw new SQLException("Connection already returned to the pool");
+            }
+            try {
+                return method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private Object timed(OperationMetrics metrics, Method method, Object[] args) throws Throwable {
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = invokePhysical(method, args);
+                failed = false;
+                return result;
+            } finally {
+                metrics.record(System.nanoTime() - start, failed);
+            }
+        }
+
+        private PreparedStatement prepare(Connection proxy, String sql, int autoGeneratedKeys) throws SQLException {
+            String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "keys:" + sql : sql;
+            PreparedStatement physical = pooled.statementCache.take(key);
+            if (physical != null) {
+                statementCacheHits.increment();
+            } else {
+                statementCacheMisses.increment();
+                physical = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS
+                        ? pooled.physical.prepareStatement(sql, autoGeneratedKeys)
+                        : pooled.physical.prepareStatement(sql);
+            }
+            StatementHandler handler = new StatementHandler(this, proxy, key, physical,
+                    metricsRegistry.query(sql));
+            synchronized (openStatements) {
+                openStatements.add(handler);
+            }
+            return (PreparedStatement) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, handler);
+        }
+
+        private void statementClosed(StatementHandler handler) {
+            synchronized (openStatements) {
+                openStatements.remove(handler);
+            }
+        }
+
+        private void closeLeakedStatements() {
+            List<StatementHandler> leaked;
+            synchronized (openStatements) {
+                if (openStatements.isEmpty()) {
+                    return;
+                }
+                leaked = new ArrayList<>(openStatements);
+            }
+            int resultSets = 0;
+            List<String> sqls = new ArrayList<>();
+            for (StatementHandler handler : leaked) {
+                resultSets += handler.openResultSets.size();
+                sqls.add(handler.key);
+                handler.close();
+            }
+            leakedStatements.add(leaked.size());
+            leakedResultSets.add(resultSets);
+            logger.warn(leaked.size() + " statement(s) and " + resultSets
+                    + " result set(s) not closed before the connection was given back: " + sqls);
+        }
+    }
+
+    /**
+     * routes the calls of a prepared statement to the physical one, until it is closed and given
+     * back to the cache of its connection.
+     */
+    private final class StatementHandler implements InvocationHandler {
+        private final LeaseHandler lease;
+        private final Connection connection;
+        private final String key;
+        private final PreparedStatement physical;
+        private final OperationMetrics queryMetrics;
+        private final List<ResultSet> openResultSets = new ArrayList<>(1);
+        private boolean closed;
+        // a statement whose options were changed is closed instead of being reused
+        private boolean reusable = true;
+
+        private StatementHandler(LeaseHandler lease, Connection connection, String key, PreparedStatement physical,
+                                 OperationMetrics queryMetrics) {
+            this.lease = lease;
+            this.connection = connection;
+            this.key = key;
+            this.physical = physical;
+            this.queryMetrics = queryMetrics;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    close();
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "getConnection":
+                    return connection;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached" + physical;
+                case "setFetchSize":
+                case "setFetchDirection":
+                case "setMaxRows":
+                case "setLargeMaxRows":
+                case "setMaxFieldSize":
+                case "setQueryTimeout":
+                case "setEscapeProcessing":
+                case "setCursorName":
+                case "setPoolable":
+                case "closeOnCompletion":
+                    reusable = false;
+                    return invokePhysical(method, args);
+                case "executeQuery":
+                    return track(proxy, (ResultSet) execute(method, args));
+                case "execute":
+                case "executeUpdate":
+                case "executeLargeUpdate":
+                case "executeBatch":
+                case "executeLargeBatch":
+                    lease.written = true;
+                    return execute(method, args);
+                case "getResultSet":
+                case "getGeneratedKeys":
+                    return track(proxy, (ResultSet) invokePhysical(method, args));
+                default:
+                    return invokePhysical(method, args);
+            }
+        }
+
+        private Object invokePhysical(Method method, Object[] args) throws Throwable {
+            if (closed) {
+                throw new SQLException("Statement already closed");
+            }
+            try {
+                return method.invoke(physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = invokePhysical(method, args);
+                failed = false;
+                return result;
+            } finally {
+                queryMetrics.record(System.nanoTime() - start, failed);
+            }
+        }
+
+        private ResultSet track(Object statement, ResultSet resultSet) {
+            if (resultSet == null) {
+                return null;
+            }
+            openResultSets.add(resultSet);
+            return (ResultSet) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{ResultSet.class}, new ResultSetHandler(this, (Statement) statement, resultSet));
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (ResultSet resultSet : openResultSets) {
+                try {
+                    resultSet.close();
+                } catch (SQLException e) {
+                    logger.error("Error while closing result set", e);
+                }
+            }
+            openResultSets.clear();
+            lease.statementClosed(this);
+            if (reusable && pooled().statementCache.isEnabled() && !isPhysicalClosed()) {
+                pooled().statementCache.giveBack(key, physical);
+                return;
+            }
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                logger.error("Error while closing prepared statement", e);
+            }
+        }
+
+        private PooledConnection pooled() {
+            return lease.pooled;
+        }
+
+        private boolean isPhysicalClosed() {
+            try {
+                return ConnectionPool.this.closed.get() || pooled().physical.isClosed();
+            } catch (SQLException e) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * routes the calls of a result set to the physical one, forgetting it once closed.
+     */
+    private static final class ResultSetHandler implements InvocationHandler {
+        private final StatementHandler statementHandler;
+        private final Statement statement;
+        private final ResultSet physical;
+
+        private ResultSetHandler(StatementHandler statementHandler, Statement statement, ResultSet physical) {
+            this.statementHandler = statementHandler;
+            this.statement = statement;
+            this.physical = physical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    statementHandler.openResultSets.remove(physical);
+                    physical.close();
+                    return null;
+                case "getStatement":
+                    return statement;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    try {
+                        return method.invoke(physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
@@ -3,43 +3,255 @@ package com.parkit.parkingsystem.config;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 
 /**
- * Class of configuration for the database MySql.
+ * Class of configuration for the database, MySql or an embedded H2 chosen with {@code db.engine}.
+ * <p>
+ * Each lot of the {@link ShardRouter} has its own database, its shard. The first lot of the setting
+ * {@code lots} uses the settings {@code db.*}; another lot uses the settings
+ * {@code lot.<id>.db.url}, {@code lot.<id>.db.engine}, {@code lot.<id>.db.name}, {@code lot.<id>.db.user}
+ * and {@code lot.<id>.db.password}, its database being named {@code <db.name>_<id>} by default.
+ * </p>
+ * <p>
+ * The read-only requests borrow their connection with {@link #getReadConnection()}: with replicas
+ * listed in {@code db.replica.urls} (or {@code lot.<id>.db.replica.urls}) they are answered by a
+ * replica lagging at most {@code db.replica.maxLagMillis}, see {@link ReplicaSet}.
+ * </p>
  *  @author Mohamed Aymen TLILI
  */
  public class DataBaseConfig {
 
     private static final Logger logger = LogManager.getLogger("DataBaseConfig");
 
+    private static final String PROPERTIES_FILE = "database.properties";
+
+    private static final Properties properties = loadProperties();
+    private static final Map<String, ConnectionPool> connectionPools = new ConcurrentHashMap<>();
+    private static final Map<String, Optional<ReplicaSet>> replicaSets = new ConcurrentHashMap<>();
+
+    // counted instead of logged: an exit borrows a connection and closes several statements
+    private static final LongAdder connectionsReleased = new LongAdder();
+    private static final LongAdder statementsClosed = new LongAdder();
+    private static final LongAdder resultSetsClosed = new LongAdder();
+
+    private final String lotId;
+    private final boolean defaultLot;
+
+    /**
+     * create the configuration of the database of the first lot of the setting {@code lots}.
+     */
+    public DataBaseConfig() {
+        this(ShardRouter.getConfiguredLotIds().get(0));
+    }
+
+    /**
+     * create the configuration of the database of a lot.
+     *
+     * @param lotId the identifier of the lot
+     * @throws IllegalArgumentException if the identifier is not valid
+     */
+    public DataBaseConfig(String lotId) {
+        this.lotId = ShardRouter.requireLotId(lotId);
+        this.defaultLot = lotId.equals(ShardRouter.getConfiguredLotIds().get(0));
+    }
+
+    /**
+     * @return the identifier of the lot whose data this database holds
+     */
+    public String getLotId() {
+        return lotId;
+    }
+
+    /**
+     * @return true for the first lot of the setting {@code lots}, using the settings {@code db.*}
+     */
+    public boolean isDefaultLot() {
+        return defaultLot;
+    }
+
+    /**
+     * check that an entity can be written in the database of this lot.
+     *
+     * @param entityLotId the lot of the entity, null for an entity not yet given to a lot
+     * @throws IllegalArgumentException if the entity belongs to another lot
+     */
+    public void checkLot(String entityLotId) {
+        if (entityLotId != null && !entityLotId.equals(lotId)) {
+            throw new IllegalArgumentException("Entity of lot " + entityLotId + " can't be written in the database of lot "
+                    + lotId);
+        }
+    }
 
     /**
      * method to connect to the database.
      *
-     * @return a connection with the database
+     * @return a pooled connection with the database, given back to the pool by {@link #closeConnection(Connection)}
      * @throws ClassNotFoundException if the Database is not found
      * @throws SQLException if there is problem of connection with the database
      */
 
     public Connection getConnection() throws ClassNotFoundException, SQLException {
-        logger.info("Create DB connection");
-        Class.forName("com.mysql.cj.jdbc.Driver");
-        return DriverManager.getConnection(
-                "jdbc:mysql://localhost:3306/prod","root","rootroot");
+        logger.trace("Borrow DB connection");
+        return getConnectionPool().getConnection();
+    }
+
+    /**
+     * method to connect to the database for read-only requests, which may see the data of a
+     * moment ago but always the writes of the current thread.
+     *
+     * @return a pooled connection with a replica, or with the database when no replica is fresh
+     * enough, given back by {@link #closeConnection(Connection)}
+     * @throws ClassNotFoundException if the Database is not found
+     * @throws SQLException if there is problem of connection with the database
+     */
+    public Connection getReadConnection() throws ClassNotFoundException, SQLException {
+        ReplicaSet replicaSet = getReplicaSet();
+        if (replicaSet == null) {
+            return getConnection();
+        }
+        logger.trace("Borrow DB read connection");
+        return replicaSet.getReadConnection();
+    }
+
+    /**
+     * return the replicas of this configuration, created with their heartbeat at the first call
+     * and then shared by every DAO using the same database.
+     *
+     * @return the replicas, null if none is configured
+     * @throws ClassNotFoundException if the driver of the Database is not found
+     */
+    public ReplicaSet getReplicaSet() throws ClassNotFoundException {
+        String key = getUser() + "@" + getUrl();
+        Optional<ReplicaSet> replicaSet = replicaSets.get(key);
+        if (replicaSet == null) {
+            ConnectionPool primary = getConnectionPool();
+            replicaSet = replicaSets.computeIfAbsent(key, k -> createReplicaSet(primary));
+        }
+        return replicaSet.orElse(null);
+    }
+
+    private Optional<ReplicaSet> createReplicaSet(ConnectionPool primary) {
+        List<String> replicaUrls = getReplicaUrls();
+        if (replicaUrls.isEmpty()) {
+            return Optional.empty();
+        }
+        logger.info("Read " + getUrl() + " from the replicas " + replicaUrls);
+        List<ConnectionPool> replicaPools = new ArrayList<>();
+        for (String replicaUrl : replicaUrls) {
+            replicaPools.add(createConnectionPool(replicaUrl));
+        }
+        return Optional.of(new ReplicaSet(primary, replicaPools,
+                getLongProperty("db.replica.maxLagMillis", 1000L),
+                getLongProperty("db.replica.heartbeatIntervalMillis", 200L)));
+    }
+
+    /**
+     * return the pool of connection for this configuration, created at the first call and then
+     * shared by every DAO using the same database.
+     *
+     * @return the connection pool
+     * @throws ClassNotFoundException if the driver of the Database is not found
+     */
+    public ConnectionPool getConnectionPool() throws ClassNotFoundException {
+        String key = getUser() + "@" + getUrl();
+        ConnectionPool pool = connectionPools.get(key);
+        if (pool == null) {
+            Class.forName(getStorageEngine().getDriver());
+            pool = connectionPools.computeIfAbsent(key, k -> createConnectionPool(getUrl()));
+        }
+        return pool;
+    }
+
+    private ConnectionPool createConnectionPool(String url) {
+        logger.info("Create DB connection pool for " + url);
+        final Properties connectionProperties = StorageEngine.fromUrl(url).getConnectionProperties(getUser(), getPassword());
+        return new ConnectionPool(() -> DriverManager.getConnection(url, connectionProperties),
+                getIntProperty("pool.minSize", 2),
+                getIntProperty("pool.maxSize", 10),
+                getLongProperty("pool.acquireTimeoutMillis", 5000L),
+                getLongProperty("pool.idleTimeoutMillis", 600000L),
+                getIntProperty("pool.validationTimeoutSeconds", 2),
+                getLongProperty("pool.evictionIntervalMillis", 30000L),
+                getIntProperty("pool.statementCacheSize", 64));
+    }
+
+    /**
+     * return the engine of the database, deduced from its url.
+     *
+     * @return the engine of {@link #getUrl()}
+     */
+    public StorageEngine getStorageEngine() {
+        return StorageEngine.fromUrl(getUrl());
+    }
+
+    protected String getUrl() {
+        String databaseName = getProperty("db.name", "prod");
+        StorageEngine engine = StorageEngine.fromName(getLotSetting("db.engine", getProperty("db.engine", "mysql")));
+        if (defaultLot) {
+            return getSetting("db.url", engine.getDefaultUrl(databaseName));
+        }
+        return getLotSetting("db.url", engine.getDefaultUrl(getLotSetting("db.name", databaseName + "_" + lotId)));
+    }
+
+    protected String getUser() {
+        return getLotSetting("db.user", getSetting("db.user", getStorageEngine().getDefaultUser()));
+    }
+
+    /**
+     * @return the urls of the replicas of the database, in the setting {@code db.replica.urls}
+     * separated by commas, empty if there is none
+     */
+    protected List<String> getReplicaUrls() {
+        List<String> replicaUrls = new ArrayList<>();
+        for (String replicaUrl : getLotSetting("db.replica.urls", "").split(",")) {
+            if (!replicaUrl.trim().isEmpty()) {
+                replicaUrls.add(replicaUrl.trim());
+            }
+        }
+        return replicaUrls;
+    }
+
+    protected String getPassword() {
+        return getLotSetting("db.password", getSetting("db.password", getStorageEngine().getDefaultPassword()));
+    }
+
+    /**
+     * read a setting of the lot, {@code lot.<id>.<key>}, the default lot reading {@code <key>}.
+     */
+    private String getLotSetting(String key, String defaultValue) {
+        return getSetting(defaultLot ? key : "lot." + lotId + "." + key, defaultValue);
+    }
+
+    /**
+     * read a setting, an empty value meaning the default one.
+     */
+    protected static String getSetting(String key, String defaultValue) {
+        String value = getProperty(key, "").trim();
+        return value.isEmpty() ? defaultValue : value;
     }
 
 
     /**
-     * method to close the connection with the database.
+     * method to give back the connection with the database to the pool.
      * @param con A connection to the database
      */
     public void closeConnection(Connection con){
         if(con!=null){
             try {
                 con.close();
-                logger.info("Closing DB connection");
+                connectionsReleased.increment();
+                logger.trace("Releasing DB connection");
             } catch (SQLException e) {
                 logger.error("Error while closing connection",e);
             }
@@ -55,7 +267,8 @@ import java.sql.*;
         if(ps!=null){
             try {
                 ps.close();
-                logger.info("Closing Prepared Statement");
+                statementsClosed.increment();
+                logger.trace("Closing Prepared Statement");
             } catch (SQLException e) {
                 logger.error("Error while closing prepared statement",e);
             }
@@ -70,10 +283,71 @@ import java.sql.*;
         if(rs!=null){
             try {
                 rs.close();
-                logger.info("Closing Result Set");
+                resultSetsClosed.increment();
+                logger.trace("Closing Result Set");
             } catch (SQLException e) {
                 logger.error("Error while closing result set",e);
             }
         }
     }
+
+    public static long getConnectionsReleased() {
+        return connectionsReleased.sum();
+    }
+
+    public static long getStatementsClosed() {
+        return statementsClosed.sum();
+    }
+
+    public static long getResultSetsClosed() {
+        return resultSetsClosed.sum();
+    }
+
+    /**
+     * summary of the use of the database since the start, logged at intervals instead of each call.
+     *
+     * @return the state of the connection pools and the number of connections, statements and result sets closed
+     */
+    public static String getStatistics() {
+        List<ReplicaSet> replicas = new ArrayList<>();
+        replicaSets.values().forEach(replicaSet -> replicaSet.ifPresent(replicas::add));
+        return "DataBase[pools=" + connectionPools.values() + (replicas.isEmpty() ? "" : ", replicas=" + replicas)
+                + ", connectionsReleased=" + getConnectionsReleased()
+                + ", statementsClosed=" + getStatementsClosed() + ", resultSetsClosed=" + getResultSetsClosed() + "]";
+    }
+
+    /**
+     * method to read a setting of the database, a system property overriding the properties file.
+     *
+     * @param key the name of the setting
+     * @param defaultValue the value used when the setting is not defined
+     * @return the value of the setting
+     */
+    public static String getProperty(String key, String defaultValue) {
+        return System.getProperty(key, properties.getProperty(key, defaultValue));
+    }
+
+    public static int getIntProperty(String key, int defaultValue) {
+        return Integer.parseInt(getProperty(key, String.valueOf(defaultValue)).trim());
+    }
+
+    public static long getLongProperty(String key, long defaultValue) {
+        return Long.parseLong(getProperty(key, String.valueOf(defaultValue)).trim());
+    }
+
+    public static boolean getBooleanProperty(String key, boolean defaultValue) {
+        return Boolean.parseBoolean(getProperty(key, String.valueOf(defaultValue)).trim());
+    }
+
+    private static Properties loadProperties() {
+        Properties props = new Properties();
+        try (InputStream in = DataBaseConfig.class.getClassLoader().getResourceAsStream(PROPERTIES_FILE)) {
+            if (in != null) {
+                props.load(in);
+            }
+        } catch (IOException e) {
+            logger.error("Error while reading " + PROPERTIES_FILE, e);
+        }
+        return props;
+    }
 }
@@ -0,0 +1,203 @@
+package com.parkit.parkingsystem.config;
+
+import com.parkit.parkingsystem.constants.DBConstants;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read endpoints of a database: replicas of the primary answering the read-only requests of the
+ * DAOs, like the availability or the history of a plate, so that they don't compete with the
+ * entries and exits written on the primary.
+ * <p>
+ * The lag of each replica is measured with a heartbeat: the time of the primary is written every
+ * {@code heartbeatIntervalMillis} in the table {@code replica_heartbeat}, and read back on each
+ * replica. A read goes to a replica holding a heartbeat less than {@code maxLagMillis} old, and
+ * not older than the last write of the current thread, so a gate always reads its own writes; it
+ * goes to the primary when no replica qualifies. The pool of the primary records the time of each
+ * write once committed, see {@link ConnectionPool#setWriteListener(Runnable)}.
+ * </p>
+ * @author tlili
+ */
+public class ReplicaSet implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("ReplicaSet");
+
+    // time of the last write committed by the thread, 0 if none
+    private static final ThreadLocal<long[]> lastWriteMillis = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final ConnectionPool primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long maxLagMillis;
+    private final ScheduledExecutorService heartbeat;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder primaryReads = new LongAdder();
+
+    /**
+     * create the set and start the heartbeat.
+     *
+     * @param primary the pool of the primary, receiving the writes
+     * @param replicaPools the pools of the replicas
+     * @param maxLagMillis the highest lag of a replica still answering the reads
+     * @param heartbeatIntervalMillis the period of the heartbeat, 0 to only beat on {@link #beat()}
+     */
+    public ReplicaSet(ConnectionPool primary, List<ConnectionPool> replicaPools, long maxLagMillis,
+                      long heartbeatIntervalMillis) {
+        this.primary = primary;
+        for (ConnectionPool replicaPool : replicaPools) {
+            replicas.add(new Replica(replicaPool));
+        }
+        this.maxLagMillis = maxLagMillis;
+        primary.setWriteListener(ReplicaSet::recordWrite);
+        if (heartbeatIntervalMillis > 0) {
+            heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "replica-heartbeat");
+                thread.setDaemon(true);
+                return thread;
+            });
+            heartbeat.scheduleWithFixedDelay(this::beat, 0, heartbeatIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            heartbeat = null;
+        }
+    }
+
+    /**
+     * record that the current thread just committed a write on a primary.
+     */
+    public static void recordWrite() {
+        lastWriteMillis.get()[0] = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the time of the last write committed by the current thread, 0 if none
+     */
+    public static long getLastWriteMillis() {
+        return lastWriteMillis.get()[0];
+    }
+
+    /**
+     * set the time of the last write of the client served by the current thread, like a gate
+     * whose previous request was served by another thread.
+     *
+     * @param writeMillis the time of the last write of the client, 0 if none
+     */
+    public static void setLastWriteMillis(long writeMillis) {
+        lastWriteMillis.get()[0] = writeMillis;
+    }
+
+    /**
+     * borrow a connection for read-only requests.
+     *
+     * @return a connection to a replica fresh enough for the current thread, else to the primary
+     * @throws SQLException if no connection is available
+     */
+    public Connection getReadConnection() throws SQLException {
+        long required = Math.max(getLastWriteMillis(), System.currentTimeMillis() - maxLagMillis);
+        int start = Math.floorMod(nextReplica.getAndIncrement(), Math.max(replicas.size(), 1));
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (replica.appliedMillis >= required) {
+                try {
+                    Connection con = replica.pool.getConnection();
+                    replicaReads.increment();
+                    return con;
+                } catch (SQLException e) {
+                    logger.warn("Replica unavailable, reading from another endpoint", e);
+                    replica.appliedMillis = -1;
+                }
+            }
+        }
+        primaryReads.increment();
+        return primary.getConnection();
+    }
+
+    /**
+     * write the heartbeat on the primary, then read the one of each replica.
+     */
+    public void beat() {
+        long now = System.currentTimeMillis();
+        try (Connection con = primary.getConnection();
+             PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_REPLICA_HEARTBEAT)) {
+            ps.setLong(1, now);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            logger.error("Unable to write the heartbeat of the replicas", e);
+        }
+        for (Replica replica : replicas) {
+            try (Connection con = replica.pool.getConnection();
+                 PreparedStatement ps = con.prepareStatement(DBConstants.GET_REPLICA_HEARTBEAT);
+                 ResultSet rs = ps.executeQuery()) {
+                replica.appliedMillis = rs.next() ? rs.getLong(1) : -1;
+            } catch (SQLException e) {
+                logger.warn("Unable to read the heartbeat of a replica", e);
+                replica.appliedMillis = -1;
+            }
+        }
+    }
+
+    /**
+     * @return the lag of the freshest replica in milliseconds at the last heartbeat, -1 if none answers
+     */
+    public long getLagMillis() {
+        long applied = -1;
+        for (Replica replica : replicas) {
+            applied = Math.max(applied, replica.appliedMillis);
+        }
+        return applied < 0 ? -1 : Math.max(0, System.currentTimeMillis() - applied);
+    }
+
+    public long getReplicaReads() {
+        return replicaReads.sum();
+    }
+
+    /**
+     * @return the reads sent to the primary for want of a fresh enough replica
+     */
+    public long getPrimaryReads() {
+        return primaryReads.sum();
+    }
+
+    /**
+     * stop the heartbeat and close the pools of the replicas.
+     */
+    @Override
+    public void close() {
+        if (heartbeat != null) {
+            heartbeat.shutdownNow();
+        }
+        primary.setWriteListener(null);
+        for (Replica replica : replicas) {
+            replica.pool.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ReplicaSet[replicas=" + replicas.size() + ", lagMs=" + getLagMillis()
+                + ", replicaReads=" + getReplicaReads() + ", primaryReads=" + getPrimaryReads() + "]";
+    }
+
+    /**
+     * read endpoint with the heartbeat of the primary it had applied at the last check.
+     */
+    private static final class Replica {
+        private final ConnectionPool pool;
+        private volatile long appliedMillis = -1;
+
+        private Replica(ConnectionPool pool) {
+            this.pool = pool;
+        }
+    }
+}
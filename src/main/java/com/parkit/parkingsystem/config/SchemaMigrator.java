@@ -0,0 +1,145 @@
+package com.parkit.parkingsystem.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Versioned migrations of the schema of the database.
+ * <p>
+ * The scripts {@code V<version>__<description>.sql} of {@code db/migration} are listed in order in
+ * {@code db/migration/migrations.list}. Each script with a version higher than the last one
+ * recorded in the table {@code schema_version} is run, then recorded, so that every database
+ * reaches the same schema whatever the version it started from.
+ * </p>
+ * @author tlili
+ */
+public class SchemaMigrator {
+
+    private static final Logger logger = LogManager.getLogger("SchemaMigrator");
+
+    private static final String LOCATION = "db/migration/";
+    private static final String INDEX = LOCATION + "migrations.list";
+
+    private static final String CREATE_SCHEMA_VERSION = "create table if not exists schema_version("
+            + "VERSION int PRIMARY KEY, DESCRIPTION varchar(100) NOT NULL, INSTALLED_ON DATETIME NOT NULL)";
+    private static final String GET_SCHEMA_VERSION = "select max(VERSION) from schema_version";
+    private static final String SAVE_SCHEMA_VERSION =
+            "insert into schema_version(VERSION, DESCRIPTION, INSTALLED_ON) values(?,?,?)";
+
+    private final DataBaseConfig dataBaseConfig;
+
+    public SchemaMigrator(DataBaseConfig dataBaseConfig) {
+        this.dataBaseConfig = dataBaseConfig;
+    }
+
+    /**
+     * run the migrations not yet applied to the database.
+     *
+     * @return the number of migrations applied
+     * @throws ClassNotFoundException if the Database is not found
+     * @throws SQLException if a migration fails, the following ones are not run
+     * @throws IOException if a script can't be read
+     */
+    public int migrate() throws ClassNotFoundException, SQLException, IOException {
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            int currentVersion = getCurrentVersion(con);
+            int applied = 0;
+            for (String script : readLines(INDEX)) {
+                int version = versionOf(script);
+                if (version > currentVersion) {
+                    logger.info("Migrating schema to version " + version + " with " + script);
+                    apply(con, script, version);
+                    applied++;
+                }
+            }
+            return applied;
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private int getCurrentVersion(Connection con) throws SQLException {
+        try (Statement statement = con.createStatement()) {
+            statement.execute(CREATE_SCHEMA_VERSION);
+            try (ResultSet rs = statement.executeQuery(GET_SCHEMA_VERSION)) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    private void apply(Connection con, String script, int version) throws SQLException, IOException {
+        try (Statement statement = con.createStatement()) {
+            for (String sql : splitStatements(String.join("\n", readLines(LOCATION + script)))) {
+                statement.execute(sql);
+            }
+        }
+        PreparedStatement ps = con.prepareStatement(SAVE_SCHEMA_VERSION);
+        try {
+            ps.setInt(1, version);
+            ps.setString(2, descriptionOf(script));
+            ps.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+            ps.execute();
+        } finally {
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+    }
+
+    private static int versionOf(String script) {
+        int separator = script.indexOf("__");
+        if (!script.startsWith("V") || separator < 2) {
+            throw new IllegalArgumentException("Invalid migration name " + script);
+        }
+        return Integer.parseInt(script.substring(1, separator));
+    }
+
+    private static String descriptionOf(String script) {
+        return script.substring(script.indexOf("__") + 2).replace(".sql", "").replace('_', ' ');
+    }
+
+    /**
+     * split a script in statements on the {@code ;} ending a line, the comments being removed.
+     */
+    private static List<String> splitStatements(String script) {
+        List<String> statements = new ArrayList<>();
+        String withoutComments = script.replaceAll("(?s)/\\*.*?\\*/", "").replaceAll("(?m)^\\s*--.*$", "");
+        for (String statement : withoutComments.split(";\\s*(\\n|$)")) {
+            if (!statement.trim().isEmpty()) {
+                statements.add(statement.trim());
+            }
+        }
+        return statements;
+    }
+
+    private static List<String> readLines(String resource) throws IOException {
+        InputStream in = SchemaMigrator.class.getClassLoader().getResourceAsStream(resource);
+        if (in == null) {
+            throw new IOException("Migration resource not found: " + resource);
+        }
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    lines.add(line.trim());
+                }
+            }
+        }
+        return lines;
+    }
+}
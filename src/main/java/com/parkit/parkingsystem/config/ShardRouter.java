@@ -0,0 +1,134 @@
+package com.parkit.parkingsystem.config;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Route each lot to its shard: the database, the caches and the services holding the data of this
+ * lot only.
+ * <p>
+ * The lots are listed in the setting {@code lots}, the first one being the lot of the requests
+ * that give none. A busy lot only loads and locks its own database, and capacity is added by
+ * adding lots with their databases, see {@link DataBaseConfig}.
+ * </p>
+ *
+ * @param <S> the type of the shard of a lot
+ * @author tlili
+ */
+public class ShardRouter<S> {
+
+    /**
+     * the lot of a park whose setting {@code lots} is not given.
+     */
+    public static final String DEFAULT_LOT_ID = "main";
+
+    // the identifier is used in the names of the databases and of the files of the lot
+    private static final Pattern LOT_ID = Pattern.compile("[A-Za-z0-9_]{1,32}");
+
+    private final Map<String, S> shards;
+    private final String defaultLotId;
+
+    /**
+     * @param shards the shard of each lot, the first one being the default lot
+     * @throws IllegalArgumentException if there is no lot
+     */
+    public ShardRouter(Map<String, S> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one lot is required");
+        }
+        this.shards = Collections.unmodifiableMap(new LinkedHashMap<>(shards));
+        this.defaultLotId = shards.keySet().iterator().next();
+    }
+
+    /**
+     * @param lotId the identifier of the only lot
+     * @param shard the shard of the lot
+     * @param <S> the type of the shard
+     * @return a router sending every request to the shard
+     */
+    public static <S> ShardRouter<S> single(String lotId, S shard) {
+        return new ShardRouter<>(Collections.singletonMap(requireLotId(lotId), shard));
+    }
+
+    /**
+     * @return the lots of the setting {@code lots}, {@value #DEFAULT_LOT_ID} if none
+     * @throws IllegalArgumentException if an identifier is not valid
+     */
+    public static List<String> getConfiguredLotIds() {
+        List<String> lotIds = new ArrayList<>();
+        for (String lotId : DataBaseConfig.getProperty("lots", DEFAULT_LOT_ID).split(",")) {
+            if (!lotId.trim().isEmpty() && !lotIds.contains(lotId.trim())) {
+                lotIds.add(requireLotId(lotId.trim()));
+            }
+        }
+        if (lotIds.isEmpty()) {
+            lotIds.add(DEFAULT_LOT_ID);
+        }
+        return lotIds;
+    }
+
+    /**
+     * @param lotId the identifier of a lot
+     * @return the identifier, made of letters, digits and underscores
+     * @throws IllegalArgumentException if the identifier is not valid
+     */
+    public static String requireLotId(String lotId) {
+        if (lotId == null || !LOT_ID.matcher(lotId).matches()) {
+            throw new IllegalArgumentException("Invalid lot " + lotId + ", expected letters, digits or _");
+        }
+        return lotId;
+    }
+
+    /**
+     * return the shard of a lot.
+     *
+     * @param lotId the identifier of the lot, null or empty for the default lot
+     * @return the shard of the lot
+     * @throws IllegalArgumentException if the lot is unknown
+     */
+    public S route(String lotId) {
+        if (lotId == null || lotId.isEmpty()) {
+            return shards.get(defaultLotId);
+        }
+        S shard = shards.get(lotId);
+        if (shard == null) {
+            throw new IllegalArgumentException("Unknown lot " + lotId);
+        }
+        return shard;
+    }
+
+    /**
+     * @param mapper the function giving the new shard of each lot
+     * @param <T> the type of the new shards
+     * @return a router of the same lots to another view of their shards
+     */
+    public <T> ShardRouter<T> map(Function<S, T> mapper) {
+        Map<String, T> mapped = new LinkedHashMap<>();
+        for (Map.Entry<String, S> shard : shards.entrySet()) {
+            mapped.put(shard.getKey(), mapper.apply(shard.getValue()));
+        }
+        return new ShardRouter<>(mapped);
+    }
+
+    public String getDefaultLotId() {
+        return defaultLotId;
+    }
+
+    /**
+     * @return the lots in the order of the setting
+     */
+    public Set<String> getLotIds() {
+        return shards.keySet();
+    }
+
+    public Collection<S> getShards() {
+        return shards.values();
+    }
+}
@@ -0,0 +1,96 @@
+package com.parkit.parkingsystem.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Prepared statements of one physical connection kept open between its leases, keyed by their SQL.
+ * <p>
+ * A statement is taken out of the cache while a DAO uses it and given back when the DAO closes
+ * it, so a statement is never shared. The least recently used statements are closed beyond
+ * {@code maxSize}. Only the thread holding the connection uses its cache.
+ * </p>
+ * @author tlili
+ */
+final class StatementCache {
+
+    private static final Logger logger = LogManager.getLogger("StatementCache");
+
+    private final int maxSize;
+    private final LinkedHashMap<String, PreparedStatement> idleStatements;
+
+    StatementCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.idleStatements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > StatementCache.this.maxSize) {
+                    close(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * @param key the SQL of the statement, prefixed when it returns the generated keys
+     * @return the idle statement of this SQL, removed from the cache, or null to prepare a new one
+     */
+    PreparedStatement take(String key) {
+        return idleStatements.remove(key);
+    }
+
+    /**
+     * give back a statement closed by a DAO, its parameters and batch cleared for the next one.
+     *
+     * @param key the SQL of the statement, prefixed when it returns the generated keys
+     * @param statement the physical statement
+     */
+    void giveBack(String key, PreparedStatement statement) {
+        try {
+            statement.clearParameters();
+            statement.clearBatch();
+            statement.clearWarnings();
+        } catch (SQLException e) {
+            close(statement);
+            return;
+        }
+        // the same SQL prepared twice on the connection: only the last one given back is kept
+        PreparedStatement previous = idleStatements.put(key, statement);
+        if (previous != null) {
+            close(previous);
+        }
+    }
+
+    int size() {
+        return idleStatements.size();
+    }
+
+    /**
+     * close every idle statement, before the physical connection is closed.
+     */
+    void clear() {
+        for (PreparedStatement statement : idleStatements.values()) {
+            close(statement);
+        }
+        idleStatements.clear();
+    }
+
+    private static void close(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            logger.error("Error while closing cached prepared statement", e);
+        }
+    }
+}
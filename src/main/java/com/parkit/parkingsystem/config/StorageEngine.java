@@ -0,0 +1,105 @@
+package com.parkit.parkingsystem.config;
+
+import java.util.Properties;
+
+/**
+ * The database engines the DAOs can work on, chosen with the setting {@code db.engine}.
+ * <p>
+ * MySQL is the server of the production parks. H2 runs inside the JVM in the MySQL mode, from a
+ * file for a small park without database server, or in memory for the tests: the DAO calls then
+ * cost no network round trip.
+ * </p>
+ * @author tlili
+ */
+public enum StorageEngine {
+
+    MYSQL("com.mysql.cj.jdbc.Driver", "jdbc:mysql://localhost:3306/%s", "root", "rootroot"),
+    H2("org.h2.Driver", "jdbc:h2:file:./data/%s;MODE=MySQL;DATABASE_TO_LOWER=TRUE", "sa", "");
+
+    private final String driver;
+    private final String urlPattern;
+    private final String defaultUser;
+    private final String defaultPassword;
+
+    StorageEngine(String driver, String urlPattern, String defaultUser, String defaultPassword) {
+        this.driver = driver;
+        this.urlPattern = urlPattern;
+        this.defaultUser = defaultUser;
+        this.defaultPassword = defaultPassword;
+    }
+
+    /**
+     * return the engine of a JDBC url.
+     *
+     * @param url the url of the database
+     * @return H2 for a {@code jdbc:h2:} url, MYSQL otherwise
+     */
+    public static StorageEngine fromUrl(String url) {
+        return url != null && url.startsWith("jdbc:h2:") ? H2 : MYSQL;
+    }
+
+    /**
+     * return the engine of a setting.
+     *
+     * @param name the name of the engine, in any case
+     * @return the engine
+     * @throws IllegalArgumentException if the engine is unknown
+     */
+    public static StorageEngine fromName(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+
+    public String getDriver() {
+        return driver;
+    }
+
+    /**
+     * return the default url of a database of this engine.
+     *
+     * @param databaseName the name of the database, the name of the file for H2
+     * @return the JDBC url
+     */
+    public String getDefaultUrl(String databaseName) {
+        return String.format(urlPattern, databaseName);
+    }
+
+    public String getDefaultUser() {
+        return defaultUser;
+    }
+
+    public String getDefaultPassword() {
+        return defaultPassword;
+    }
+
+    /**
+     * return the properties of the driver for a new connection.
+     * <p>
+     * MySQL prepares the statements on the server, so that a statement kept in the
+     * {@link StatementCache} is parsed and planned once, and the driver caches the statements the
+     * pool closes. The same setting in the url of the database takes precedence.
+     * </p>
+     *
+     * @param user the user of the database
+     * @param password the password of the user
+     * @return the properties to open the connection with
+     */
+    public Properties getConnectionProperties(String user, String password) {
+        Properties properties = new Properties();
+        properties.setProperty("user", user);
+        properties.setProperty("password", password);
+        if (this == MYSQL) {
+            properties.setProperty("useServerPrepStmts", "true");
+            properties.setProperty("cachePrepStmts", "true");
+            properties.setProperty("prepStmtCacheSize", "250");
+            properties.setProperty("prepStmtCacheSqlLimit", "2048");
+        }
+        return properties;
+    }
+
+    /**
+     * @return true if the database runs inside the JVM
+     */
+    public boolean isEmbedded() {
+        return this == H2;
+    }
+}
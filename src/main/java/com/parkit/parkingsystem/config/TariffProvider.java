@@ -0,0 +1,131 @@
+package com.parkit.parkingsystem.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holder of the current {@link TariffTable}, reloaded when its file changes.
+ * <p>
+ * The tariffs are read from the file given by the setting {@code tariff.file}, or from
+ * {@code tariffs.properties} in the classpath. A new table is compiled aside then swapped in one
+ * step: a fare being calculated keeps the table it started with, and a file with an error is
+ * ignored while the previous table stays in use.
+ * </p>
+ * @author tlili
+ */
+public class TariffProvider implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("TariffProvider");
+
+    private static final String RESOURCE = "tariffs.properties";
+    private static final TariffProvider DEFAULT = new TariffProvider(tariffFile());
+
+    private final File file;
+    private final AtomicReference<TariffTable> table = new AtomicReference<>();
+    private long loadedModified;
+    private ScheduledExecutorService watcher;
+
+    /**
+     * create a provider of the tariffs of a file.
+     *
+     * @param file the file of the tariffs, null to read {@code tariffs.properties} in the classpath
+     */
+    public TariffProvider(File file) {
+        this.file = file;
+        TariffTable loaded = load();
+        table.set(loaded != null ? loaded : TariffTable.flatRates());
+    }
+
+    /**
+     * @return the provider of the tariffs of the application
+     */
+    public static TariffProvider getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return the tariffs in use
+     */
+    public TariffTable get() {
+        return table.get();
+    }
+
+    /**
+     * compile the file again if it changed since the last load.
+     *
+     * @return true if a new table is in use
+     */
+    public synchronized boolean reloadIfModified() {
+        if (file == null || file.lastModified() == loadedModified) {
+            return false;
+        }
+        TariffTable loaded = load();
+        if (loaded == null) {
+            return false;
+        }
+        table.set(loaded);
+        logger.info("Tariffs reloaded from " + file);
+        return true;
+    }
+
+    /**
+     * check the file for changes in a background thread.
+     *
+     * @param intervalSeconds the delay between two checks
+     */
+    public synchronized void startWatching(long intervalSeconds) {
+        if (file == null || watcher != null) {
+            return;
+        }
+        watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tariff-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watcher.scheduleWithFixedDelay(this::reloadIfModified, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * stop checking the file.
+     */
+    @Override
+    public synchronized void close() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+            watcher = null;
+        }
+    }
+
+    private TariffTable load() {
+        Properties properties = new Properties();
+        // a file with an error is not read again until it changes
+        loadedModified = file == null ? 0 : file.lastModified();
+        try (InputStream in = file == null
+                ? TariffProvider.class.getClassLoader().getResourceAsStream(RESOURCE)
+                : new FileInputStream(file)) {
+            if (in == null) {
+                return null;
+            }
+            properties.load(in);
+            return TariffTable.compile(properties);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Error loading tariffs from " + (file == null ? RESOURCE : file), e);
+            return null;
+        }
+    }
+
+    private static File tariffFile() {
+        String path = DataBaseConfig.getProperty("tariff.file", "").trim();
+        return path.isEmpty() ? null : new File(path);
+    }
+}
@@ -0,0 +1,275 @@
+package com.parkit.parkingsystem.config;
+
+import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tariffs of the park compiled in a flat table, one per {@link ParkingType}.
+ * <p>
+ * Each minute of the week, from Monday 00:00 in the local time of the park, has a rate in cents
+ * per hour. A prefix sum of the rates gives the cost of any stay with two lookups, plus at most a
+ * few per day boundary when a daily cap applies: a stay of several weeks costs the same as a stay
+ * of one hour to price.
+ * </p>
+ * <p>
+ * The local time follows the daylight saving time of the zone of the park: a stay is cut at each
+ * change of offset, each part being priced at its own local time. The hour skipped in spring is
+ * not charged, the hour repeated in autumn is charged twice, as the vehicle stayed that long.
+ * </p>
+ * <p>
+ * The tariffs are read from properties, rates in cents per hour:
+ * </p>
+ * <pre>
+ * zone=Europe/Paris                  zone of the local time, or a fixed offset like +01:00
+ * CAR.rate=150                      rate of the hours not covered by a band
+ * CAR.weekday.bands=07:00-10:00=200;16:00-19:00=200
+ * CAR.weekend.rate=100              rate of Saturday and Sunday, CAR.rate by default
+ * CAR.weekend.bands=...
+ * CAR.dailyCap=2000                 maximum charged for one calendar day, 0 for none
+ * </pre>
+ * @author tlili
+ */
+public class TariffTable {
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final int MINUTES_PER_WEEK = 7 * MINUTES_PER_DAY;
+    private static final long MINUTE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final long WEEK_MILLIS = TimeUnit.DAYS.toMillis(7);
+    /** 1970-01-01 was a Thursday: shift of the epoch to the start of the week, a Monday. */
+    private static final long EPOCH_TO_MONDAY_MILLIS = TimeUnit.DAYS.toMillis(3);
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final ZoneRules zoneRules;
+    private final Map<ParkingType, Tariff> tariffs = new EnumMap<>(ParkingType.class);
+
+    private TariffTable(ZoneId zone) {
+        this.zoneRules = zone.getRules();
+    }
+
+    /**
+     * return the table of the flat rates of {@link Fare}, without band nor cap.
+     *
+     * @return the default table
+     */
+    public static TariffTable flatRates() {
+        return compile(new Properties());
+    }
+
+    /**
+     * compile the tariffs read from properties.
+     *
+     * @param properties the tariffs
+     * @return the compiled table
+     * @throws IllegalArgumentException if a tariff is invalid
+     */
+    public static TariffTable compile(Properties properties) {
+        // zoneOffset is the fixed offset read by the previous versions
+        ZoneId zone = ZoneId.of(properties.getProperty("zone", properties.getProperty("zoneOffset", "Z")).trim());
+        TariffTable table = new TariffTable(zone);
+        for (ParkingType parkingType : ParkingType.values()) {
+            String prefix = parkingType.name() + ".";
+            long rate = Long.parseLong(properties.getProperty(prefix + "rate",
+                    String.valueOf(defaultRate(parkingType))).trim());
+            long weekendRate = Long.parseLong(properties.getProperty(prefix + "weekend.rate",
+                    String.valueOf(rate)).trim());
+            long dailyCap = Long.parseLong(properties.getProperty(prefix + "dailyCap", "0").trim());
+
+            long[] rates = new long[MINUTES_PER_WEEK];
+            for (int day = 0; day < 7; day++) {
+                boolean weekend = day >= 5;
+                fill(rates, day, 0, MINUTES_PER_DAY, weekend ? weekendRate : rate);
+                String bands = properties.getProperty(prefix + (weekend ? "weekend" : "weekday") + ".bands", "");
+                for (String band : bands.split(";")) {
+                    if (!band.trim().isEmpty()) {
+                        applyBand(rates, day, band.trim());
+                    }
+                }
+            }
+            table.tariffs.put(parkingType, new Tariff(rates, dailyCap * HOUR_MILLIS));
+        }
+        return table;
+    }
+
+    private static long defaultRate(ParkingType parkingType) {
+        switch (parkingType) {
+            case CAR:
+                return Fare.CAR_RATE_PER_HOUR_CENTS;
+            case BIKE:
+                return Fare.BIKE_RATE_PER_HOUR_CENTS;
+            default:
+                throw new IllegalArgumentException("Unkown Parking Type");
+        }
+    }
+
+    /**
+     * apply a band {@code HH:MM-HH:MM=rate} to a day of the week.
+     */
+    private static void applyBand(long[] rates, int day, String band) {
+        String[] rangeAndRate = band.split("=");
+        String[] range = rangeAndRate.length == 2 ? rangeAndRate[0].split("-") : new String[0];
+        if (range.length != 2) {
+            throw new IllegalArgumentException("Invalid tariff band " + band);
+        }
+        int from = minuteOfDay(range[0]);
+        int to = minuteOfDay(range[1]);
+        if (from >= to) {
+            throw new IllegalArgumentException("Invalid tariff band " + band);
+        }
+        fill(rates, day, from, to, Long.parseLong(rangeAndRate[1].trim()));
+    }
+
+    private static int minuteOfDay(String time) {
+        String[] hourAndMinute = time.trim().split(":");
+        int minute = Integer.parseInt(hourAndMinute[0]) * 60
+                + (hourAndMinute.length > 1 ? Integer.parseInt(hourAndMinute[1]) : 0);
+        if (minute < 0 || minute > MINUTES_PER_DAY) {
+            throw new IllegalArgumentException("Invalid time of tariff band " + time);
+        }
+        return minute;
+    }
+
+    private static void fill(long[] rates, int day, int fromMinute, int toMinute, long rate) {
+        for (int minute = fromMinute; minute < toMinute; minute++) {
+            rates[day * MINUTES_PER_DAY + minute] = rate;
+        }
+    }
+
+    /**
+     * return the cost of a stay, before rounding to the cent.
+     * <p>
+     * The cost is in cents times milliseconds per hour: divide by one hour in milliseconds to get
+     * cents, after any discount, so that the result is rounded only once.
+     * </p>
+     *
+     * @param parkingType the type of the vehicle
+     * @param inTimeMillis the time of entry, in milliseconds since the epoch
+     * @param outTimeMillis the time of exit, in milliseconds since the epoch
+     * @return the cost of the stay, daily caps applied
+     */
+    public long cost(ParkingType parkingType, long inTimeMillis, long outTimeMillis) {
+        Tariff tariff = tariffs.get(parkingType);
+        if (tariff == null) {
+            throw new IllegalArgumentException("Unkown Parking Type");
+        }
+        StayCost stayCost = new StayCost(tariff);
+        long from = inTimeMillis;
+        long offsetMillis;
+        if (zoneRules.isFixedOffset()) {
+            offsetMillis = offsetMillis(zoneRules.getOffset(Instant.EPOCH).getTotalSeconds());
+        } else {
+            Instant instant = Instant.ofEpochMilli(inTimeMillis);
+            offsetMillis = offsetMillis(zoneRules.getOffset(instant).getTotalSeconds());
+            ZoneOffsetTransition transition = zoneRules.nextTransition(instant);
+            while (transition != null && transition.toEpochSecond() * 1000 < outTimeMillis) {
+                long transitionMillis = transition.toEpochSecond() * 1000;
+                stayCost.add(from + offsetMillis + EPOCH_TO_MONDAY_MILLIS,
+                        transitionMillis + offsetMillis + EPOCH_TO_MONDAY_MILLIS);
+                from = transitionMillis;
+                offsetMillis = offsetMillis(transition.getOffsetAfter().getTotalSeconds());
+                transition = zoneRules.nextTransition(transition.getInstant());
+            }
+        }
+        stayCost.add(from + offsetMillis + EPOCH_TO_MONDAY_MILLIS, outTimeMillis + offsetMillis + EPOCH_TO_MONDAY_MILLIS);
+        return stayCost.total();
+    }
+
+    private static long offsetMillis(int offsetSeconds) {
+        return TimeUnit.SECONDS.toMillis(offsetSeconds);
+    }
+
+    /**
+     * cost of a stay added part by part, each part being a period of one offset of the zone in
+     * local time; the parts of a same calendar day share its daily cap.
+     */
+    private static final class StayCost {
+        private final Tariff tariff;
+        private long cost;
+        private long day = Long.MIN_VALUE;
+        private long dayCost;
+
+        private StayCost(Tariff tariff) {
+            this.tariff = tariff;
+        }
+
+        private void add(long from, long to) {
+            if (tariff.dailyCap <= 0) {
+                cost += tariff.cumulated(to) - tariff.cumulated(from);
+                return;
+            }
+            long firstDay = Math.floorDiv(from, DAY_MILLIS);
+            long lastDay = Math.floorDiv(to, DAY_MILLIS);
+            if (firstDay == lastDay) {
+                addToDay(firstDay, tariff.cumulated(to) - tariff.cumulated(from));
+                return;
+            }
+            addToDay(firstDay, tariff.cumulated((firstDay + 1) * DAY_MILLIS) - tariff.cumulated(from));
+            long fullDays = lastDay - firstDay - 1;
+            cost += fullDays / 7 * tariff.cappedWeekCost;
+            for (long fullDay = firstDay + 1 + fullDays / 7 * 7; fullDay < lastDay; fullDay++) {
+                cost += tariff.cappedDayCosts[(int) Math.floorMod(fullDay, 7L)];
+            }
+            addToDay(lastDay, tariff.cumulated(to) - tariff.cumulated(lastDay * DAY_MILLIS));
+        }
+
+        private void addToDay(long partDay, long partCost) {
+            if (partDay != day) {
+                cost += Math.min(tariff.dailyCap, dayCost);
+                day = partDay;
+                dayCost = 0;
+            }
+            dayCost += partCost;
+        }
+
+        private long total() {
+            return tariff.dailyCap <= 0 ? cost : cost + Math.min(tariff.dailyCap, dayCost);
+        }
+    }
+
+    /**
+     * compiled tariff of one type of vehicle.
+     */
+    private static final class Tariff {
+        private final long[] rates;
+        /** prefix[m] is the cost from the start of the week to the start of minute m. */
+        private final long[] prefix;
+        private final long dailyCap;
+        private final long[] cappedDayCosts = new long[7];
+        private final long cappedWeekCost;
+
+        private Tariff(long[] rates, long dailyCap) {
+            this.rates = rates;
+            this.dailyCap = dailyCap;
+            prefix = new long[MINUTES_PER_WEEK + 1];
+            for (int minute = 0; minute < MINUTES_PER_WEEK; minute++) {
+                prefix[minute + 1] = prefix[minute] + rates[minute] * MINUTE_MILLIS;
+            }
+            long weekCost = 0;
+            for (int day = 0; day < 7; day++) {
+                long dayCost = prefix[(day + 1) * MINUTES_PER_DAY] - prefix[day * MINUTES_PER_DAY];
+                cappedDayCosts[day] = dailyCap > 0 ? Math.min(dailyCap, dayCost) : dayCost;
+                weekCost += cappedDayCosts[day];
+            }
+            cappedWeekCost = weekCost;
+        }
+
+        /**
+         * cost from the start of the week of the epoch to a time, counted from a Monday 00:00 local.
+         */
+        private long cumulated(long millisFromMonday) {
+            long weeks = Math.floorDiv(millisFromMonday, WEEK_MILLIS);
+            long inWeek = Math.floorMod(millisFromMonday, WEEK_MILLIS);
+            int minute = (int) (inWeek / MINUTE_MILLIS);
+            return weeks * prefix[MINUTES_PER_WEEK] + prefix[minute] + (inWeek % MINUTE_MILLIS) * rates[minute];
+        }
+    }
+}
@@ -7,11 +7,57 @@ package com.parkit.parkingsystem.constants;
  public class DBConstants {
 
     public static final String GET_NEXT_PARKING_SPOT = "select min(PARKING_NUMBER) from parking where AVAILABLE = true and TYPE = ?";
+    public static final String LOCK_NEXT_PARKING_SPOT = "select PARKING_NUMBER from parking where AVAILABLE = true and TYPE = ? order by PARKING_NUMBER limit 1 for update";
+    // MySQL 8.0+: the rows locked by the other gates are skipped instead of waited for
+    public static final String LOCK_NEXT_PARKING_SPOT_SKIP_LOCKED = LOCK_NEXT_PARKING_SPOT + " skip locked";
     public static final String UPDATE_PARKING_SPOT = "update parking set available = ? where PARKING_NUMBER = ?";
+    public static final String CLAIM_PARKING_SPOT = "update parking set AVAILABLE = false where PARKING_NUMBER = ? and AVAILABLE = true";
+    public static final String GET_PARKING_SPOTS = "select PARKING_NUMBER, AVAILABLE, TYPE from parking";
+    public static final String COUNT_AVAILABLE_PARKING_SPOTS = "select count(*) from parking where AVAILABLE = true and TYPE = ?";
+    public static final String COUNT_PARKING_SPOTS_BY_TYPE = "select TYPE, count(*), sum(case when AVAILABLE then 1 else 0 end)"
+            + " from parking group by TYPE";
 
     public static final String SAVE_TICKET = "insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?)";
-    public static final String UPDATE_TICKET = "update ticket set PRICE=?, OUT_TIME=? where ID=?";
-    public static final String GET_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t,parking p where p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=? order by t.IN_TIME  limit 1";
+    public static final String UPDATE_TICKET = "update ticket set PRICE=?, OUT_TIME=? where ID=? and OUT_TIME is null";
+    public static final String GET_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t,parking p where p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=? order by t.IN_TIME desc limit 1";
 
-    public static final String RETURN_TICKET = "select 1 from ticket t where t.VEHICLE_REG_NUMBER=? and t.OUT_TIME IS NOT NULL limit 1";
+    public static final String GET_TICKET_FOR_EXIT = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE,"
+            + " exists(select 1 from recurring_user r where r.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER)"
+            + " from ticket t,parking p where p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=?"
+            + " and t.OUT_TIME IS NULL order by t.IN_TIME desc limit 1";
+
+    public static final String RETURN_TICKET = "select 1 from recurring_user r where r.VEHICLE_REG_NUMBER=?";
+    public static final String GET_RECURRING_USERS = "select VEHICLE_REG_NUMBER from recurring_user";
+    public static final String SAVE_RECURRING_USER = "insert into recurring_user(VEHICLE_REG_NUMBER, EXIT_COUNT, LAST_OUT_TIME)"
+            + " values(?,1,?) on duplicate key update EXIT_COUNT = EXIT_COUNT + 1, LAST_OUT_TIME = values(LAST_OUT_TIME)";
+
+    public static final String GET_CLOSED_TICKETS_TO_REPRICE = "select t.ID, p.TYPE, t.IN_TIME, t.OUT_TIME, t.PRICE,"
+            + " exists(select 1 from ticket r where r.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER and r.OUT_TIME <= t.IN_TIME)"
+            + " or exists(select 1 from ticket_archive a where a.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER and a.OUT_TIME <= t.IN_TIME),"
+            + " t.ARCHIVED"
+            + " from (select ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME, false as ARCHIVED from ticket"
+            + " where OUT_TIME >= ? and OUT_TIME < ?"
+            + " union all select ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME, true as ARCHIVED from ticket_archive"
+            + " where OUT_TIME >= ? and OUT_TIME < ?) t, parking p where p.parking_number = t.parking_number";
+    public static final String UPDATE_TICKET_PRICE = "update ticket set PRICE=? where ID=?";
+    public static final String UPDATE_ARCHIVED_TICKET_PRICE = "update ticket_archive set PRICE=? where ID=?";
+
+    public static final String GET_ARCHIVABLE_TICKETS = "select ID from ticket where OUT_TIME < ? order by ID limit ?";
+    public static final String ARCHIVE_TICKETS = "insert into ticket_archive(ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)"
+            + " select ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME from ticket where ID in (%s)";
+    public static final String SAVE_TICKET_WITH_ID = "insert into ticket(ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?,?)";
+    public static final String GET_OPEN_TICKETS = "select t.ID, t.PARKING_NUMBER, p.TYPE, t.VEHICLE_REG_NUMBER, t.IN_TIME from ticket t, parking p"
+            + " where p.parking_number = t.parking_number and t.OUT_TIME IS NULL order by t.IN_TIME";
+    public static final String GET_MAX_TICKET_ID = "select greatest(coalesce((select max(ID) from ticket), 0),"
+            + " coalesce((select max(ID) from ticket_archive), 0))";
+    // MySQL keeps the value when it is higher than the ids of the table, before 8.0 it is reset to max(ID)+1 on restart
+    public static final String SEED_TICKET_ID = "alter table ticket auto_increment = %d";
+    public static final String GET_PROJECTION_CHECKPOINT = "select LAST_SEQ from event_projection where NAME=?";
+    public static final String SAVE_PROJECTION_CHECKPOINT = "update event_projection set LAST_SEQ=? where NAME=?";
+    public static final String GET_LOT = "select ID from lot";
+    public static final String SAVE_LOT = "insert into lot(ID) values(?)";
+    public static final String SAVE_REPLICA_HEARTBEAT = "update replica_heartbeat set BEAT_MILLIS=? where ID=1";
+    public static final String GET_REPLICA_HEARTBEAT = "select BEAT_MILLIS from replica_heartbeat where ID=1";
+
+    public static final String DELETE_ARCHIVED_TICKETS = "delete from ticket where ID in (%s)";
 }
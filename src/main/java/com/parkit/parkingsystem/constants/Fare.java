@@ -9,6 +9,11 @@ public class Fare {
     public static final double CAR_RATE_PER_HOUR = 1.5;
     public static final double RECURRING_USER = 0.95;
 
+    public static final long BIKE_RATE_PER_HOUR_CENTS = 100;
+    public static final long CAR_RATE_PER_HOUR_CENTS = 150;
+    /** percentage of the fare paid by a recurring user. */
+    public static final long RECURRING_USER_PERCENT = 95;
+
     /**
      * method to round Fare with 2 numbers after comma.
      *
@@ -1,8 +1,11 @@
 package com.parkit.parkingsystem.dao;
 
+import com.parkit.parkingsystem.cache.FreeSpotIndex;
 import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.StorageEngine;
 import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Occupancy;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -10,6 +13,12 @@ import org.apache.logging.log4j.Logger;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Service to manage(CRUD) entity of a Parking place into the SGBD.
@@ -18,31 +27,152 @@ import java.sql.ResultSet;
 public class ParkingSpotDAO {
     private static final Logger logger = LogManager.getLogger("ParkingSpotDAO");
 
+    private static final int MAX_CLAIM_ATTEMPTS = 10;
+
     public DataBaseConfig dataBaseConfig = new DataBaseConfig();
 
+    public FreeSpotIndex freeSpotIndex = new FreeSpotIndex();
+
+    private final LongAdder claimConflicts = new LongAdder();
+
+    /**
+     * @return the lot whose spots this DAO reads and writes, the one of its database
+     */
+    public String getLotId() {
+        return dataBaseConfig.getLotId();
+    }
+
     /**
      * return the available slot in the park for a type of vehicle.
+     * <p>
+     * Once {@link #loadFreeSpotIndex()} has been called the slot is read from the in memory index,
+     * without request to the database, else from a replica of the database when there is one.
+     * </p>
      *
      * @param parkingType the type of a vehicle {@link ParkingType}
      * @return the number of the parking place available for this type of vehicle
      */
     public int getNextAvailableSlot(ParkingType parkingType){
+        if (freeSpotIndex.isLoaded()) {
+            return freeSpotIndex.getLowestAvailable(parkingType);
+        }
         Connection con = null;
         int result=-1;
+        try {
+            con = dataBaseConfig.getReadConnection();
+            result = selectNextAvailableSlot(con, parkingType);
+        }catch (Exception ex){
+            logger.error("Error fetching next available slot",ex);
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        return result;
+    }
+
+    /**
+     * claim the lowest available slot for a type of vehicle and mark it as taken, in one step.
+     * <p>
+     * The spot is taken with a conditional update that only succeeds if the spot is still
+     * available, so two gates claiming at the same time never get the same spot: the loser
+     * simply tries the next one. Without the index of free spots, the spot is read with a locking
+     * read, which sees the last committed state of the row even in a REPEATABLE READ transaction,
+     * where a plain read would give every retry the same snapshot.
+     * </p>
+     *
+     * @param parkingType the type of a vehicle {@link ParkingType}
+     * @return the claimed parking spot, not available anymore, or null if the park is full
+     */
+    public ParkingSpot claimNextAvailableSlot(ParkingType parkingType){
+        Connection con = null;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.GET_NEXT_PARKING_SPOT);
+            return claimNextAvailableSlot(con, parkingType, null);
+        }catch (Exception ex){
+            logger.error("Error claiming next available slot",ex);
+            return null;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * claim the lowest available slot for a type of vehicle within a transaction; the spot is
+     * given back if the transaction is rolled back.
+     *
+     * @param transaction the transaction of the entry
+     * @param parkingType the type of a vehicle {@link ParkingType}
+     * @return the claimed parking spot, not available anymore, or null if the park is full
+     * @throws SQLException if the spot can't be claimed
+     */
+    public ParkingSpot claimNextAvailableSlot(ParkingTransaction transaction, ParkingType parkingType) throws SQLException {
+        return claimNextAvailableSlot(transaction.getConnection(), parkingType, transaction);
+    }
+
+    private ParkingSpot claimNextAvailableSlot(Connection con, ParkingType parkingType,
+                                               ParkingTransaction transaction) throws SQLException {
+        for (int attempt = 0; attempt < MAX_CLAIM_ATTEMPTS; attempt++) {
+            boolean fromIndex = freeSpotIndex.isLoaded();
+            final int parkingNumber = fromIndex
+                    ? freeSpotIndex.claimLowestAvailable(parkingType)
+                    : lockNextAvailableSlot(con, parkingType);
+            if (parkingNumber <= 0) {
+                return null;
+            }
+            int updateRowCount;
+            PreparedStatement ps = con.prepareStatement(DBConstants.CLAIM_PARKING_SPOT);
+            try {
+                ps.setInt(1, parkingNumber);
+                updateRowCount = ps.executeUpdate();
+            } catch (SQLException e) {
+                if (fromIndex) {
+                    freeSpotIndex.setAvailable(parkingNumber, true);
+                }
+                throw e;
+            } finally {
+                dataBaseConfig.closePreparedStatement(ps);
+            }
+            if (updateRowCount == 1) {
+                if (fromIndex && transaction != null) {
+                    transaction.afterRollback(() -> freeSpotIndex.setAvailable(parkingNumber, true));
+                }
+                return new ParkingSpot(getLotId(), parkingNumber, parkingType, false);
+            }
+            claimConflicts.increment();
+            logger.warn("Parking spot " + parkingNumber + " was taken by another gate, trying next one");
+        }
+        logger.error("Unable to claim a parking spot after " + MAX_CLAIM_ATTEMPTS + " attempts");
+        return null;
+    }
+
+    private int selectNextAvailableSlot(Connection con, ParkingType parkingType) throws SQLException {
+        return selectSlot(con, DBConstants.GET_NEXT_PARKING_SPOT, parkingType);
+    }
+
+    /**
+     * read the lowest available slot and lock its row until the end of the transaction, so that
+     * the claim which follows only fails when the spot was taken by a commit. On MySQL the rows
+     * locked by the entries of the other gates are skipped, so that the gates don't queue behind
+     * the same spot; H2 has no SKIP LOCKED and waits for the lock.
+     */
+    private int lockNextAvailableSlot(Connection con, ParkingType parkingType) throws SQLException {
+        String query = dataBaseConfig.getStorageEngine() == StorageEngine.MYSQL
+                ? DBConstants.LOCK_NEXT_PARKING_SPOT_SKIP_LOCKED : DBConstants.LOCK_NEXT_PARKING_SPOT;
+        return selectSlot(con, query, parkingType);
+    }
+
+    private int selectSlot(Connection con, String query, ParkingType parkingType) throws SQLException {
+        int result = -1;
+        PreparedStatement ps = con.prepareStatement(query);
+        ResultSet rs = null;
+        try {
             ps.setString(1, parkingType.toString());
-            ResultSet rs = ps.executeQuery();
+            rs = ps.executeQuery();
             if(rs.next()){
-                result = rs.getInt(1);;
+                result = rs.getInt(1);
             }
+        } finally {
             dataBaseConfig.closeResultSet(rs);
             dataBaseConfig.closePreparedStatement(ps);
-        }catch (Exception ex){
-            logger.error("Error fetching next available slot",ex);
-        }finally {
-            dataBaseConfig.closeConnection(con);
         }
         return result;
     }
@@ -52,23 +182,203 @@ public class ParkingSpotDAO {
      *
      * @param parkingSpot the entity representing the parking place
      * @return boolean : true if it's available or false
+     * @throws IllegalArgumentException if the spot belongs to another lot
      */
 
     public boolean updateParking(ParkingSpot parkingSpot){
+        dataBaseConfig.checkLot(parkingSpot.getLotId());
         //update the availability fo that parking slot
         Connection con = null;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT);
+            int updateRowCount = updateParkingRow(con, parkingSpot);
+            if (updateRowCount == 1 && freeSpotIndex.isLoaded()) {
+                freeSpotIndex.setAvailable(parkingSpot.getId(), parkingSpot.isAvailable());
+            }
+            return (updateRowCount == 1);
+        }catch (Exception ex){
+            logger.error("Error updating parking info",ex);
+            return false;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * update the availability for a parking space within a transaction; the index of free spots
+     * sees the change once the transaction is committed.
+     *
+     * @param transaction the transaction of the entry or exit
+     * @param parkingSpot the entity representing the parking place
+     * @return boolean : true if the parking space was updated
+     * @throws SQLException if the parking space can't be updated
+     * @throws IllegalArgumentException if the spot belongs to another lot
+     */
+    public boolean updateParking(ParkingTransaction transaction, ParkingSpot parkingSpot) throws SQLException {
+        dataBaseConfig.checkLot(parkingSpot.getLotId());
+        int updateRowCount = updateParkingRow(transaction.getConnection(), parkingSpot);
+        if (updateRowCount == 1 && freeSpotIndex.isLoaded()) {
+            final int parkingNumber = parkingSpot.getId();
+            final boolean available = parkingSpot.isAvailable();
+            transaction.afterCommit(() -> freeSpotIndex.setAvailable(parkingNumber, available));
+        }
+        return (updateRowCount == 1);
+    }
+
+    private int updateParkingRow(Connection con, ParkingSpot parkingSpot) throws SQLException {
+        PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT);
+        try {
             ps.setBoolean(1, parkingSpot.isAvailable());
             ps.setInt(2, parkingSpot.getId());
-            int updateRowCount = ps.executeUpdate();
+            return ps.executeUpdate();
+        } finally {
             dataBaseConfig.closePreparedStatement(ps);
-            return (updateRowCount == 1);
+        }
+    }
+
+    /**
+     * @return the number of spots found taken by another gate while claiming, each followed by a retry
+     */
+    public long getClaimConflictCount() {
+        return claimConflicts.sum();
+    }
+
+    /**
+     * count the available slots for a type of vehicle, from the in memory index once loaded, else
+     * from a replica of the database when there is one.
+     *
+     * @param parkingType the type of a vehicle {@link ParkingType}
+     * @return the number of available slots, -1 in case of error
+     */
+    public int countAvailableSlots(ParkingType parkingType){
+        if (freeSpotIndex.isLoaded()) {
+            return freeSpotIndex.countAvailable(parkingType);
+        }
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        int result=-1;
+        try {
+            con = dataBaseConfig.getReadConnection();
+            ps = con.prepareStatement(DBConstants.COUNT_AVAILABLE_PARKING_SPOTS);
+            ps.setString(1, parkingType.toString());
+            rs = ps.executeQuery();
+            if(rs.next()){
+                result = rs.getInt(1);
+            }
         }catch (Exception ex){
-            logger.error("Error updating parking info",ex);
+            logger.error("Error counting available slots",ex);
+        }finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+        return result;
+    }
+
+    /**
+     * return the occupancy of each type of vehicle, from the counters of the in memory index once
+     * loaded, without request to the database, else from a replica of the database when there is one.
+     *
+     * @return the occupancy by type of vehicle, empty in case of error
+     */
+    public Map<ParkingType, Occupancy> getOccupancy(){
+        Map<ParkingType, Occupancy> occupancy = new EnumMap<>(ParkingType.class);
+        if (freeSpotIndex.isLoaded()) {
+            for (ParkingType parkingType : ParkingType.values()) {
+                occupancy.put(parkingType, freeSpotIndex.getOccupancy(parkingType));
+            }
+            return occupancy;
+        }
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getReadConnection();
+            for (ParkingType parkingType : ParkingType.values()) {
+                occupancy.put(parkingType, new Occupancy(parkingType, 0, 0));
+            }
+            ps = con.prepareStatement(DBConstants.COUNT_PARKING_SPOTS_BY_TYPE);
+            rs = ps.executeQuery();
+            while(rs.next()){
+                ParkingType parkingType = ParkingType.valueOf(rs.getString(1));
+                occupancy.put(parkingType, new Occupancy(parkingType, rs.getInt(2), rs.getInt(3)));
+            }
+        }catch (Exception ex){
+            logger.error("Error reading occupancy",ex);
+            occupancy.clear();
+        }finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+        return occupancy;
+    }
+
+    /**
+     * record the lot in its database at the first start, then check at each start that the database
+     * still holds this lot, so that a misrouted shard is never written.
+     *
+     * @throws IllegalStateException if the database holds another lot
+     * @throws Exception if the lot can't be read or recorded
+     */
+    public void claimLot() throws Exception {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.GET_LOT);
+            rs = ps.executeQuery();
+            if (rs.next()) {
+                if (!getLotId().equals(rs.getString(1))) {
+                    throw new IllegalStateException("Database of lot " + getLotId() + " holds the lot " + rs.getString(1));
+                }
+                return;
+            }
+            dataBaseConfig.closeResultSet(rs);
+            rs = null;
+            dataBaseConfig.closePreparedStatement(ps);
+            ps = con.prepareStatement(DBConstants.SAVE_LOT);
+            ps.setString(1, getLotId());
+            ps.executeUpdate();
+            logger.info("Database recorded as the one of lot " + getLotId());
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * load the index of free spots from the table parking, or reconcile it with the table if it
+     * was already loaded.
+     *
+     * @return boolean : true if the index was loaded
+     */
+    public boolean loadFreeSpotIndex(){
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.GET_PARKING_SPOTS);
+            rs = ps.executeQuery();
+            List<ParkingSpot> parkingSpots = new ArrayList<>();
+            while(rs.next()){
+                parkingSpots.add(new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(3)), rs.getBoolean(2)));
+            }
+            int differences = freeSpotIndex.load(parkingSpots);
+            if (differences > 0) {
+                logger.warn("Free spot index reconciled with DB, " + differences + " spot(s) were out of sync");
+            }
+            return true;
+        }catch (Exception ex){
+            logger.error("Error loading free spot index",ex);
             return false;
         }finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
             dataBaseConfig.closeConnection(con);
         }
     }
@@ -0,0 +1,108 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit of work running several DAO calls on one connection and in one transaction.
+ * <p>
+ * An entry or an exit of vehicle passes the same transaction to {@link TicketDAO} and
+ * {@link ParkingSpotDAO}, then calls {@link #commit()}: the ticket and the parking spot are
+ * written together or not at all. Closing a transaction that was not committed rolls it back.
+ * </p>
+ * @author tlili
+ */
+public class ParkingTransaction implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("ParkingTransaction");
+
+    private final DataBaseConfig dataBaseConfig;
+    private final Connection connection;
+    private final List<Runnable> afterCommitActions = new ArrayList<>();
+    private final List<Runnable> afterRollbackActions = new ArrayList<>();
+    private boolean completed;
+
+    ParkingTransaction(DataBaseConfig dataBaseConfig) throws ClassNotFoundException, SQLException {
+        this.dataBaseConfig = dataBaseConfig;
+        this.connection = dataBaseConfig.getConnection();
+        try {
+            connection.setAutoCommit(false);
+        } catch (SQLException e) {
+            dataBaseConfig.closeConnection(connection);
+            throw e;
+        }
+    }
+
+    Connection getConnection() {
+        if (completed) {
+            throw new IllegalStateException("Transaction already completed");
+        }
+        return connection;
+    }
+
+    /**
+     * register an action to run once the transaction is committed, like the update of an in
+     * memory index that must not see uncommitted data.
+     *
+     * @param action the action to run
+     */
+    void afterCommit(Runnable action) {
+        afterCommitActions.add(action);
+    }
+
+    /**
+     * register an action undoing an in memory change if the transaction is rolled back.
+     *
+     * @param action the action to run
+     */
+    void afterRollback(Runnable action) {
+        afterRollbackActions.add(action);
+    }
+
+    /**
+     * make the writes of the transaction permanent.
+     *
+     * @throws SQLException if the database refuses the commit, the transaction is then rolled back
+     */
+    public void commit() throws SQLException {
+        getConnection().commit();
+        completed = true;
+        afterCommitActions.forEach(Runnable::run);
+    }
+
+    /**
+     * cancel the writes of the transaction.
+     */
+    public void rollback() {
+        if (completed) {
+            return;
+        }
+        completed = true;
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            logger.error("Error while rolling back transaction", e);
+        }
+        afterRollbackActions.forEach(Runnable::run);
+    }
+
+    /**
+     * roll back the transaction if it was not committed and give back the connection.
+     */
+    @Override
+    public void close() {
+        rollback();
+        try {
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            logger.error("Error while restoring auto commit", e);
+        }
+        dataBaseConfig.closeConnection(connection);
+    }
+}
@@ -0,0 +1,117 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.StorageEngine;
+import com.parkit.parkingsystem.constants.DBConstants;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Service moving the closed tickets from the table ticket to the table ticket_archive.
+ * <p>
+ * The table ticket only keeps the open tickets and the recently closed ones, so the exits work on
+ * a small set of pages whatever the history of the park.
+ * </p>
+ * @author tlili
+ */
+public class TicketArchiveDAO {
+
+    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+
+    /**
+     * move one batch of tickets closed before a date to the archive, in one transaction.
+     *
+     * @param closedBefore the tickets whose out time is older are archived
+     * @param batchSize the maximum number of tickets moved
+     * @return the number of tickets archived, lower than batchSize when nothing is left to archive
+     * @throws ClassNotFoundException if the Database is not found
+     * @throws SQLException if the tickets can't be moved, the batch is then rolled back
+     */
+    public int archiveClosedTickets(Date closedBefore, int batchSize) throws ClassNotFoundException, SQLException {
+        try (ParkingTransaction transaction = new ParkingTransaction(dataBaseConfig)) {
+            Connection con = transaction.getConnection();
+            List<Integer> ids = selectArchivableIds(con, closedBefore, batchSize);
+            if (ids.isEmpty()) {
+                return 0;
+            }
+            String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
+            executeForIds(con, String.format(DBConstants.ARCHIVE_TICKETS, placeholders), ids);
+            executeForIds(con, String.format(DBConstants.DELETE_ARCHIVED_TICKETS, placeholders), ids);
+            transaction.commit();
+            return ids.size();
+        }
+    }
+
+    /**
+     * make the next ticket id higher than every id of the tables ticket and ticket_archive.
+     * <p>
+     * Before 8.0, MySQL resets the AUTO_INCREMENT of a table to max(ID)+1 when it restarts: once the
+     * last tickets are archived, their ids would be given again and the new tickets could not be
+     * archived with them. H2 never gives an id twice, nothing is done there.
+     * </p>
+     *
+     * @throws ClassNotFoundException if the Database is not found
+     * @throws SQLException if the ids can't be read or the table altered
+     */
+    public void seedTicketIds() throws ClassNotFoundException, SQLException {
+        if (dataBaseConfig.getStorageEngine() != StorageEngine.MYSQL) {
+            return;
+        }
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.GET_MAX_TICKET_ID);
+            rs = ps.executeQuery();
+            int maxTicketId = rs.next() ? rs.getInt(1) : 0;
+            dataBaseConfig.closeResultSet(rs);
+            rs = null;
+            dataBaseConfig.closePreparedStatement(ps);
+            ps = con.prepareStatement(String.format(DBConstants.SEED_TICKET_ID, maxTicketId + 1));
+            ps.executeUpdate();
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private List<Integer> selectArchivableIds(Connection con, Date closedBefore, int batchSize) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        PreparedStatement ps = con.prepareStatement(DBConstants.GET_ARCHIVABLE_TICKETS);
+        ResultSet rs = null;
+        try {
+            ps.setTimestamp(1, new Timestamp(closedBefore.getTime()));
+            ps.setInt(2, batchSize);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                ids.add(rs.getInt(1));
+            }
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+        return ids;
+    }
+
+    private void executeForIds(Connection con, String sql, List<Integer> ids) throws SQLException {
+        PreparedStatement ps = con.prepareStatement(sql);
+        try {
+            for (int i = 0; i < ids.size(); i++) {
+                ps.setInt(i + 1, ids.get(i));
+            }
+            ps.executeUpdate();
+        } finally {
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+    }
+}
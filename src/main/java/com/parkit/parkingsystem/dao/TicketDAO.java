@@ -1,5 +1,7 @@
 package com.parkit.parkingsystem.dao;
 
+import com.parkit.parkingsystem.cache.OpenTicketIndex;
+import com.parkit.parkingsystem.cache.RecurringUserCache;
 import com.parkit.parkingsystem.config.DataBaseConfig;
 import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
@@ -11,10 +13,18 @@ import org.apache.logging.log4j.Logger;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Service to manage(CRUD) entity of a ticket into the SGBD.
+ * <p>
+ * Each method exists in two versions: one using its own connection, and one taking a
+ * {@link ParkingTransaction} to run with the other writes of an entry or an exit.
+ * </p>
  * @author tlili
  */
 
@@ -24,84 +34,320 @@ public class TicketDAO {
 
     public DataBaseConfig dataBaseConfig = new DataBaseConfig();
 
+    /**
+     * pipeline writing the new tickets in batches, the tickets are inserted directly when null.
+     */
+    public TicketWriteBehind ticketWriteBehind;
+
+    /**
+     * recurring plates known in memory, asked before the table recurring_user.
+     */
+    public RecurringUserCache recurringUserCache = new RecurringUserCache(
+            DataBaseConfig.getIntProperty("recurringUser.cache.expectedPlates", 100000),
+            Double.parseDouble(DataBaseConfig.getProperty("recurringUser.cache.falsePositiveRate", "0.01")),
+            DataBaseConfig.getIntProperty("recurringUser.cache.maxPositives", 10000),
+            DataBaseConfig.getLongProperty("recurringUser.cache.ttlMillis", 3600000L));
+
+    /**
+     * open tickets known in memory, asked before the table ticket at the exits.
+     */
+    public OpenTicketIndex openTicketIndex = new OpenTicketIndex();
+
+    /**
+     * open a transaction on the database of the tickets.
+     *
+     * @return the transaction to pass to the DAO methods, to close after use
+     * @throws ClassNotFoundException if the Database is not found
+     * @throws SQLException if there is problem of connection with the database
+     */
+    public ParkingTransaction beginTransaction() throws ClassNotFoundException, SQLException {
+        return new ParkingTransaction(dataBaseConfig);
+    }
+
+    /**
+     * @return the lot whose tickets this DAO reads and writes, the one of its database
+     */
+    public String getLotId() {
+        return dataBaseConfig.getLotId();
+    }
+
     /**
      * save the ticket in the database ticket.
      *
      * @param ticket represent the ticket of a vehicle
      * @return boolean true or false if the ticket was saved or not
+     * @throws IllegalArgumentException if the ticket belongs to another lot
      */
 
     public boolean saveTicket(Ticket ticket){
+        dataBaseConfig.checkLot(ticket.getLotId());
+        if (ticketWriteBehind != null) {
+            return ticketWriteBehind.enqueue(ticket);
+        }
         Connection con = null;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET);
+            if (insertTicket(con, ticket) != 1) {
+                return false;
+            }
+            openTicketIndex.put(ticket);
+            return true;
+        }catch (Exception ex){
+            logger.error("Error saving ticket",ex);
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        return false;
+    }
+
+    /**
+     * save the ticket in the database ticket, within a transaction.
+     * <p>
+     * With a {@link TicketWriteBehind} the ticket is only queued: it is written later by the
+     * pipeline, which puts it in the {@link OpenTicketIndex} with its generated id, and cancelled if
+     * the transaction is rolled back before. The ticket given then keeps the id 0.
+     * </p>
+     *
+     * @param transaction the transaction of the entry
+     * @param ticket represent the ticket of a vehicle
+     * @return boolean true if the ticket was saved
+     * @throws SQLException if the ticket can't be saved
+     * @throws IllegalArgumentException if the ticket belongs to another lot
+     */
+    public boolean saveTicket(ParkingTransaction transaction, Ticket ticket) throws SQLException {
+        dataBaseConfig.checkLot(ticket.getLotId());
+        if (ticketWriteBehind != null) {
+            return ticketWriteBehind.enqueue(transaction, ticket);
+        }
+        if (insertTicket(transaction.getConnection(), ticket) != 1) {
+            return false;
+        }
+        transaction.afterCommit(() -> openTicketIndex.put(ticket));
+        return true;
+    }
+
+    /**
+     * insert the ticket and set its generated id, so that the exit can close it without reading it back.
+     */
+    private int insertTicket(Connection con, Ticket ticket) throws SQLException {
+        PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS);
+        ResultSet keys = null;
+        try {
             //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
-                //ps.setInt(1,ticket.getId());
             ps.setInt(1,ticket.getParkingSpot().getId());
             ps.setString(2, ticket.getVehicleRegNumber());
             ps.setDouble(3, ticket.getPrice());
             ps.setTimestamp(4, new Timestamp(ticket.getInTime().getTime()));
             ps.setTimestamp(5, (ticket.getOutTime() == null)?null: (new Timestamp(ticket.getOutTime().getTime())) );
-            return ps.execute();
+            int inserted = ps.executeUpdate();
+            keys = ps.getGeneratedKeys();
+            if (keys.next()) {
+                ticket.setId(keys.getInt(1));
+            }
+            return inserted;
+        } finally {
+            dataBaseConfig.closeResultSet(keys);
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+    }
+
+    /**
+     * return the last ticket for vehicle with the number plate given in parameter, read from a
+     * replica of the database when there is one.
+     *
+     * @param vehicleRegNumber the number plate of the vehicle
+     * @return the latest ticket associated with the vehicle
+     */
+    public Ticket getTicket(String vehicleRegNumber) {
+        Connection con = null;
+        Ticket ticket = getOpenTicket(vehicleRegNumber);
+        if (ticket != null) {
+            return ticket;
+        }
+        try {
+            awaitPendingTicket(vehicleRegNumber);
+            // the queued tickets are written by another thread, only the primary surely holds them
+            con = ticketWriteBehind == null ? dataBaseConfig.getReadConnection() : dataBaseConfig.getConnection();
+            ticket = selectTicket(con, vehicleRegNumber);
         }catch (Exception ex){
             logger.error("Error fetching next available slot",ex);
         }finally {
             dataBaseConfig.closeConnection(con);
-            return false;
         }
+        return ticket;
     }
 
     /**
-     * return the ticket for vehicle with the number plate given in parameter.
+     * return the ticket for vehicle with the number plate given in parameter, within a transaction.
      *
+     * @param transaction the transaction of the exit
      * @param vehicleRegNumber the number plate of the vehicle
-     * @return the ticket associated with the vehicle
+     * @return the ticket associated with the vehicle, or null if there is none
+     * @throws SQLException if the ticket can't be read
      */
-    public Ticket getTicket(String vehicleRegNumber) {
+    public Ticket getTicket(ParkingTransaction transaction, String vehicleRegNumber) throws SQLException {
+        Ticket ticket = getOpenTicket(vehicleRegNumber);
+        if (ticket != null) {
+            return ticket;
+        }
+        awaitPendingTicket(vehicleRegNumber);
+        return selectTicket(transaction.getConnection(), vehicleRegNumber);
+    }
+
+    /**
+     * return the open ticket of a vehicle leaving the park, with the recurring user flag set, in
+     * one query instead of {@link #getTicket(String)} and {@link #recurringUser(String)}.
+     * <p>
+     * A ticket found in the {@link OpenTicketIndex} is returned without reading the table ticket,
+     * the flag then comes from the {@link RecurringUserCache}, which only asks the database for
+     * the plates it doesn't know.
+     * </p>
+     *
+     * @param vehicleRegNumber the number plate of the vehicle
+     * @return the ticket of the vehicle, or null if the vehicle has no open ticket
+     */
+    public Ticket getTicketForExit(String vehicleRegNumber) {
         Connection con = null;
-        Ticket ticket = null;
+        Ticket ticket = getOpenTicket(vehicleRegNumber);
+        if (ticket != null) {
+            ticket.setIsRecurringUser(recurringUser(ticket.getVehicleRegNumber()));
+            return ticket;
+        }
         try {
+            awaitPendingTicket(vehicleRegNumber);
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.GET_TICKET);
+            ticket = selectTicketForExit(con, vehicleRegNumber);
+        } catch (Exception ex) {
+            logger.error("Error fetching ticket of exiting vehicle", ex);
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        return ticket;
+    }
+
+    /**
+     * return the open ticket of a vehicle leaving the park, with the recurring user flag set,
+     * within a transaction.
+     *
+     * @param transaction the transaction of the exit
+     * @param vehicleRegNumber the number plate of the vehicle
+     * @return the ticket of the vehicle, or null if the vehicle has no open ticket
+     * @throws SQLException if the ticket can't be read
+     */
+    public Ticket getTicketForExit(ParkingTransaction transaction, String vehicleRegNumber) throws SQLException {
+        Ticket ticket = getOpenTicket(vehicleRegNumber);
+        if (ticket != null) {
+            ticket.setIsRecurringUser(recurringUser(transaction, ticket.getVehicleRegNumber()));
+            return ticket;
+        }
+        awaitPendingTicket(vehicleRegNumber);
+        return selectTicketForExit(transaction.getConnection(), vehicleRegNumber);
+    }
+
+    private Ticket getOpenTicket(String vehicleRegNumber) {
+        Ticket ticket = openTicketIndex.get(vehicleRegNumber);
+        if (ticket != null) {
+            ticket.setLotId(getLotId());
+            ticket.getParkingSpot().setLotId(getLotId());
+        }
+        return ticket;
+    }
+
+    /**
+     * wait for the queued tickets to be written when one of them is of the plate, so that the
+     * vehicle exiting finds its ticket; the exits of the other plates don't wait for the queue.
+     */
+    private void awaitPendingTicket(String vehicleRegNumber) throws SQLException {
+        if (ticketWriteBehind != null && ticketWriteBehind.isPending(vehicleRegNumber)) {
+            awaitPendingTickets();
+        }
+    }
+
+    /**
+     * wait for the queued tickets to be written.
+     */
+    private void awaitPendingTickets() throws SQLException {
+        if (ticketWriteBehind == null) {
+            return;
+        }
+        try {
+            ticketWriteBehind.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the pending tickets", e);
+        }
+    }
+
+    private Ticket selectTicket(Connection con, String vehicleRegNumber) throws SQLException {
+        Ticket ticket = null;
+        PreparedStatement ps = con.prepareStatement(DBConstants.GET_TICKET);
+        ResultSet rs = null;
+        try {
             //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
             ps.setString(1,vehicleRegNumber);
-            ResultSet rs = ps.executeQuery();
+            rs = ps.executeQuery();
             if(rs.next()){
-                ticket = new Ticket();
-                ParkingSpot parkingSpot = new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(6)),false);
-                ticket.setParkingSpot(parkingSpot);
-                ticket.setId(rs.getInt(2));
-                ticket.setVehicleRegNumber(vehicleRegNumber);
-                ticket.setPrice(rs.getDouble(3));
-                ticket.setInTime(rs.getTimestamp(4));
-                ticket.setOutTime(rs.getTimestamp(5));
+                ticket = readTicket(rs, vehicleRegNumber);
             }
+        } finally {
             dataBaseConfig.closeResultSet(rs);
             dataBaseConfig.closePreparedStatement(ps);
-        }catch (Exception ex){
-            logger.error("Error fetching next available slot",ex);
-        }finally {
-            dataBaseConfig.closeConnection(con);
-            return ticket;
         }
+        return ticket;
+    }
+
+    private Ticket selectTicketForExit(Connection con, String vehicleRegNumber) throws SQLException {
+        Ticket ticket = null;
+        PreparedStatement ps = con.prepareStatement(DBConstants.GET_TICKET_FOR_EXIT);
+        ResultSet rs = null;
+        try {
+            ps.setString(1, vehicleRegNumber);
+            rs = ps.executeQuery();
+            if (rs.next()) {
+                ticket = readTicket(rs, vehicleRegNumber);
+                ticket.setIsRecurringUser(rs.getBoolean(7));
+                recurringUserCache.record(vehicleRegNumber, ticket.getIsRecurringUser());
+            }
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+        return ticket;
+    }
+
+    private Ticket readTicket(ResultSet rs, String vehicleRegNumber) throws SQLException {
+        Ticket ticket = new Ticket();
+        ParkingSpot parkingSpot = new ParkingSpot(getLotId(), rs.getInt(1), ParkingType.valueOf(rs.getString(6)),false);
+        ticket.setLotId(getLotId());
+        ticket.setParkingSpot(parkingSpot);
+        ticket.setId(rs.getInt(2));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setPrice(rs.getDouble(3));
+        ticket.setInTime(rs.getTimestamp(4));
+        ticket.setOutTime(rs.getTimestamp(5));
+        return ticket;
     }
 
     /**
      * update a ticket given in the parameter with the correct informations.
      *
      * @param ticket the ticket of vehicle
-     * @return boolean true or false if the ticket was correctly updated
+     * @return boolean true if the ticket was still open and is now closed
+     * @throws IllegalArgumentException if the ticket belongs to another lot
      */
     public boolean updateTicket(Ticket ticket) {
+        dataBaseConfig.checkLot(ticket.getLotId());
         Connection con = null;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_TICKET);
-            ps.setDouble(1, ticket.getPrice());
-            ps.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
-            ps.setInt(3,ticket.getId());
-            ps.execute();
+            if (updateTicketRow(con, ticket) != 1) {
+                logger.error("Ticket " + ticket.getId() + " not found or already closed");
+                return false;
+            }
+            if (ticket.getVehicleRegNumber() != null) {
+                recurringUserCache.addRecurringUser(ticket.getVehicleRegNumber());
+                openTicketIndex.remove(ticket);
+            }
             return true;
         }catch (Exception ex){
             logger.error("Error saving ticket info",ex);
@@ -112,28 +358,176 @@ public class TicketDAO {
     }
 
     /**
-     * method to verify in DB table ticket if the user is recurring or not.
+     * update a ticket given in the parameter with the correct informations, within a transaction.
+     *
+     * @param transaction the transaction of the exit
+     * @param ticket the ticket of vehicle
+     * @return boolean true if the ticket was still open and is now closed, false if another exit
+     * closed it first
+     * @throws SQLException if the ticket can't be updated
+     * @throws IllegalArgumentException if the ticket belongs to another lot
+     */
+    public boolean updateTicket(ParkingTransaction transaction, Ticket ticket) throws SQLException {
+        dataBaseConfig.checkLot(ticket.getLotId());
+        if (updateTicketRow(transaction.getConnection(), ticket) != 1) {
+            return false;
+        }
+        if (ticket.getVehicleRegNumber() != null) {
+            final String vehicleRegNumber = ticket.getVehicleRegNumber();
+            transaction.afterCommit(() -> {
+                recurringUserCache.addRecurringUser(vehicleRegNumber);
+                openTicketIndex.remove(ticket);
+            });
+        }
+        return true;
+    }
+
+    private int updateTicketRow(Connection con, Ticket ticket) throws SQLException {
+        int updated;
+        PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_TICKET);
+        try {
+            ps.setDouble(1, ticket.getPrice());
+            ps.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
+            ps.setInt(3,ticket.getId());
+            updated = ps.executeUpdate();
+        } finally {
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+        if (updated == 1 && ticket.getVehicleRegNumber() != null) {
+            saveRecurringUser(con, ticket);
+        }
+        return updated;
+    }
+
+    /**
+     * count the exit in the summary of the recurring users, which keeps answering the recurring
+     * user check once the closed tickets are archived.
+     */
+    private void saveRecurringUser(Connection con, Ticket ticket) throws SQLException {
+        PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_RECURRING_USER);
+        try {
+            ps.setString(1, ticket.getVehicleRegNumber());
+            ps.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
+            ps.executeUpdate();
+        } finally {
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+    }
+
+    /**
+     * method to verify in DB table recurring_user if the user is recurring or not.
      *
      * @param vehicleRegNumber the number plate of the vehicle
      * @return boolean true or false
      */
     public boolean recurringUser(String vehicleRegNumber) {
+        Boolean cached = recurringUserCache.lookup(vehicleRegNumber);
+        if (cached != null) {
+            return cached;
+        }
         Connection con = null;
         boolean res;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.RETURN_TICKET);
+            res = selectRecurringUser(con, vehicleRegNumber);
+        } catch (Exception ex) {
+            logger.error("Error checking recurring user", ex);
+            res = false;
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        return res;
+    }
+
+    /**
+     * method to verify in DB table recurring_user if the user is recurring or not, within a transaction.
+     *
+     * @param transaction the transaction of the exit
+     * @param vehicleRegNumber the number plate of the vehicle
+     * @return boolean true if the vehicle already left the park before
+     * @throws SQLException if the tickets can't be read
+     */
+    public boolean recurringUser(ParkingTransaction transaction, String vehicleRegNumber) throws SQLException {
+        Boolean cached = recurringUserCache.lookup(vehicleRegNumber);
+        if (cached != null) {
+            return cached;
+        }
+        return selectRecurringUser(transaction.getConnection(), vehicleRegNumber);
+    }
+
+    private boolean selectRecurringUser(Connection con, String vehicleRegNumber) throws SQLException {
+        PreparedStatement ps = con.prepareStatement(DBConstants.RETURN_TICKET);
+        ResultSet rs = null;
+        boolean res;
+        try {
             ps.setString(1, vehicleRegNumber);
-            ResultSet rs = ps.executeQuery();
+            rs = ps.executeQuery();
             res = rs.next();
+        } finally {
             dataBaseConfig.closeResultSet(rs);
             dataBaseConfig.closePreparedStatement(ps);
+        }
+        recurringUserCache.record(vehicleRegNumber, res);
+        return res;
+    }
+
+    /**
+     * fill the cache of the recurring users with the table recurring_user, so that it answers the
+     * first time visitors without request.
+     */
+    public void loadRecurringUserCache() {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.GET_RECURRING_USERS);
+            rs = ps.executeQuery();
+            List<String> recurringPlates = new ArrayList<>();
+            while (rs.next()) {
+                recurringPlates.add(rs.getString(1));
+            }
+            recurringUserCache.load(recurringPlates);
+            logger.info("Recurring user cache loaded with " + recurringPlates.size() + " plate(s)");
         } catch (Exception ex) {
-            logger.error("Error checking recurring user", ex);
-            res = false;
+            logger.error("Error loading recurring user cache", ex);
         } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * fill the index of the open tickets with the tickets without exit time, so that the exits of
+     * the vehicles already in the park don't read the table ticket.
+     */
+    public void loadOpenTicketIndex() {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            awaitPendingTickets();
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.GET_OPEN_TICKETS);
+            rs = ps.executeQuery();
+            List<Ticket> openTickets = new ArrayList<>();
+            while (rs.next()) {
+                Ticket ticket = new Ticket();
+                ticket.setId(rs.getInt(1));
+                ticket.setParkingSpot(new ParkingSpot(rs.getInt(2), ParkingType.valueOf(rs.getString(3)), false));
+                ticket.setVehicleRegNumber(rs.getString(4));
+                ticket.setInTime(rs.getTimestamp(5));
+                openTickets.add(ticket);
+            }
+            openTicketIndex.load(openTickets);
+            logger.info("Open ticket index loaded with " + openTickets.size() + " ticket(s)");
+        } catch (Exception ex) {
+            logger.error("Error loading open ticket index", ex);
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
             dataBaseConfig.closeConnection(con);
         }
-        return res;
     }
 }
@@ -0,0 +1,322 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.eventlog.ParkingState;
+import com.parkit.parkingsystem.eventlog.TicketEventLog;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.TicketEvent;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Projection of the {@link TicketEventLog} into the tables ticket, parking and recurring_user,
+ * maintained in the background.
+ * <p>
+ * A thread follows the log and applies the events in transactions of up to {@code batchSize}
+ * events, with JDBC batches. The seq of the last event applied is written in the table
+ * event_projection in the same transaction, so each event is applied exactly once, even when the
+ * process stops in the middle of a batch. The tables lag behind the log by the time of a batch;
+ * the gates never wait for them.
+ * </p>
+ * @author tlili
+ */
+public class TicketProjection implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("TicketProjection");
+
+    private static final String PROJECTION_NAME = "ticket";
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    private final DataBaseConfig dataBaseConfig;
+    private final int batchSize;
+    private final long pollIntervalMillis;
+
+    private TicketEventLog.Cursor cursor;
+    private Thread projector;
+    private volatile boolean running;
+    private volatile long projectedSeq;
+
+    /**
+     * create the projection, {@link #start(TicketEventLog)} starts following the log.
+     *
+     * @param dataBaseConfig the database of the tables
+     * @param batchSize the maximum number of events applied by one transaction
+     * @param pollIntervalMillis the pause when the whole log is applied
+     */
+    public TicketProjection(DataBaseConfig dataBaseConfig, int batchSize, long pollIntervalMillis) {
+        this.dataBaseConfig = dataBaseConfig;
+        this.batchSize = batchSize;
+        this.pollIntervalMillis = pollIntervalMillis;
+    }
+
+    /**
+     * read the state of the park from the tables, to start the event log of a park already in use.
+     *
+     * @return the state at the last event projected
+     * @throws ClassNotFoundException if the Database is not found
+     * @throws SQLException if the tables can't be read
+     */
+    public ParkingState loadState() throws ClassNotFoundException, SQLException {
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            List<ParkingSpot> parkingSpots = new ArrayList<>();
+            PreparedStatement ps = con.prepareStatement(DBConstants.GET_PARKING_SPOTS);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                parkingSpots.add(new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(3)), rs.getBoolean(2)));
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+
+            List<TicketEvent> openTickets = new ArrayList<>();
+            ps = con.prepareStatement(DBConstants.GET_OPEN_TICKETS);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                openTickets.add(TicketEvent.vehicleEntered(0, rs.getInt(1), rs.getInt(2),
+                        ParkingType.valueOf(rs.getString(3)), rs.getString(4), rs.getTimestamp(5).getTime()));
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+
+            List<String> recurringPlates = new ArrayList<>();
+            ps = con.prepareStatement(DBConstants.GET_RECURRING_USERS);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                recurringPlates.add(rs.getString(1));
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+
+            ps = con.prepareStatement(DBConstants.GET_MAX_TICKET_ID);
+            rs = ps.executeQuery();
+            int maxTicketId = rs.next() ? rs.getInt(1) : 0;
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+
+            long checkpoint = selectCheckpoint(con);
+            logger.info("Park state loaded from the tables at event " + checkpoint + ": " + openTickets.size()
+                    + " open ticket(s), " + recurringPlates.size() + " recurring plate(s)");
+            return new ParkingState(parkingSpots, openTickets, recurringPlates, maxTicketId + 1, checkpoint);
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * @return the seq of the last event applied to the tables
+     * @throws ClassNotFoundException if the Database is not found
+     * @throws SQLException if the table event_projection can't be read
+     */
+    public long readCheckpoint() throws ClassNotFoundException, SQLException {
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            return selectCheckpoint(con);
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private long selectCheckpoint(Connection con) throws SQLException {
+        PreparedStatement ps = con.prepareStatement(DBConstants.GET_PROJECTION_CHECKPOINT);
+        ps.setString(1, PROJECTION_NAME);
+        ResultSet rs = ps.executeQuery();
+        long checkpoint = rs.next() ? rs.getLong(1) : 0;
+        dataBaseConfig.closeResultSet(rs);
+        dataBaseConfig.closePreparedStatement(ps);
+        return checkpoint;
+    }
+
+    /**
+     * start applying the events of the log following the last one already in the tables.
+     *
+     * @param eventLog the log to follow
+     * @throws ClassNotFoundException if the Database is not found
+     * @throws SQLException if the checkpoint can't be read
+     */
+    public void start(TicketEventLog eventLog) throws ClassNotFoundException, SQLException {
+        projectedSeq = readCheckpoint();
+        cursor = eventLog.openCursor(projectedSeq);
+        running = true;
+        projector = new Thread(this::projectLoop, "ticket-projection");
+        projector.setDaemon(true);
+        projector.start();
+    }
+
+    /**
+     * @return the lot of the tables, the one of the database
+     */
+    public String getLotId() {
+        return dataBaseConfig.getLotId();
+    }
+
+    /**
+     * @return the seq of the last event applied to the tables
+     */
+    public long getProjectedSeq() {
+        return projectedSeq;
+    }
+
+    /**
+     * wait until the tables include an event.
+     *
+     * @param seq the seq of the event
+     * @param timeoutMillis the maximum time to wait
+     * @return true if the event is applied, false after the timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitProjected(long seq, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (projectedSeq < seq) {
+            if (System.currentTimeMillis() >= deadline || projector == null || !projector.isAlive()) {
+                return projectedSeq >= seq;
+            }
+            Thread.sleep(Math.min(pollIntervalMillis, 10));
+        }
+        return true;
+    }
+
+    /**
+     * stop following the log once the events already appended are applied.
+     */
+    @Override
+    public void close() {
+        running = false;
+        if (projector != null) {
+            try {
+                projector.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void projectLoop() {
+        List<TicketEvent> batch = new ArrayList<>(batchSize);
+        while (true) {
+            TicketEvent event;
+            while (batch.size() < batchSize && (event = cursor.next()) != null) {
+                batch.add(event);
+            }
+            try {
+                if (batch.isEmpty()) {
+                    if (!running) {
+                        return;
+                    }
+                    Thread.sleep(pollIntervalMillis);
+                    continue;
+                }
+                writeWithRetry(batch);
+                projectedSeq = batch.get(batch.size() - 1).getSeq();
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void writeWithRetry(List<TicketEvent> batch) throws InterruptedException {
+        while (true) {
+            try {
+                writeBatch(batch);
+                return;
+            } catch (Exception e) {
+                logger.error("Error applying " + batch.size() + " event(s) to the tables, retrying", e);
+                Thread.sleep(RETRY_DELAY_MILLIS);
+            }
+        }
+    }
+
+    private void writeBatch(List<TicketEvent> batch) throws ClassNotFoundException, SQLException {
+        Connection con = null;
+        PreparedStatement insertTicket = null;
+        PreparedStatement closeTicket = null;
+        PreparedStatement saveRecurringUser = null;
+        PreparedStatement updateParking = null;
+        PreparedStatement saveCheckpoint = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            con.setAutoCommit(false);
+            insertTicket = con.prepareStatement(DBConstants.SAVE_TICKET_WITH_ID);
+            closeTicket = con.prepareStatement(DBConstants.UPDATE_TICKET);
+            saveRecurringUser = con.prepareStatement(DBConstants.SAVE_RECURRING_USER);
+            // only the last availability of a spot in the batch is written
+            Map<Integer, Boolean> availability = new LinkedHashMap<>();
+            int inserts = 0;
+            int exits = 0;
+            for (TicketEvent event : batch) {
+                if (event.getType() == TicketEvent.Type.VEHICLE_ENTERED) {
+                    insertTicket.setInt(1, event.getTicketId());
+                    insertTicket.setInt(2, event.getParkingNumber());
+                    insertTicket.setString(3, event.getVehicleRegNumber());
+                    insertTicket.setDouble(4, 0);
+                    insertTicket.setTimestamp(5, new Timestamp(event.getInTimeMillis()));
+                    insertTicket.setTimestamp(6, null);
+                    insertTicket.addBatch();
+                    inserts++;
+                    availability.put(event.getParkingNumber(), false);
+                } else {
+                    Timestamp outTime = new Timestamp(event.getOutTimeMillis());
+                    closeTicket.setDouble(1, event.getPrice());
+                    closeTicket.setTimestamp(2, outTime);
+                    closeTicket.setInt(3, event.getTicketId());
+                    closeTicket.addBatch();
+                    saveRecurringUser.setString(1, event.getVehicleRegNumber());
+                    saveRecurringUser.setTimestamp(2, outTime);
+                    saveRecurringUser.addBatch();
+                    exits++;
+                    availability.put(event.getParkingNumber(), true);
+                }
+            }
+            // the tickets are inserted before the exits of the batch close them
+            if (inserts > 0) {
+                insertTicket.executeBatch();
+            }
+            if (exits > 0) {
+                closeTicket.executeBatch();
+                saveRecurringUser.executeBatch();
+            }
+            updateParking = con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT);
+            for (Map.Entry<Integer, Boolean> spot : availability.entrySet()) {
+                updateParking.setBoolean(1, spot.getValue());
+                updateParking.setInt(2, spot.getKey());
+                updateParking.addBatch();
+            }
+            updateParking.executeBatch();
+            saveCheckpoint = con.prepareStatement(DBConstants.SAVE_PROJECTION_CHECKPOINT);
+            saveCheckpoint.setLong(1, batch.get(batch.size() - 1).getSeq());
+            saveCheckpoint.setString(2, PROJECTION_NAME);
+            saveCheckpoint.executeUpdate();
+            con.commit();
+        } catch (SQLException e) {
+            if (con != null) {
+                con.rollback();
+            }
+            throw e;
+        } finally {
+            dataBaseConfig.closePreparedStatement(insertTicket);
+            dataBaseConfig.closePreparedStatement(closeTicket);
+            dataBaseConfig.closePreparedStatement(saveRecurringUser);
+            dataBaseConfig.closePreparedStatement(updateParking);
+            dataBaseConfig.closePreparedStatement(saveCheckpoint);
+            if (con != null) {
+                con.setAutoCommit(true);
+            }
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+}
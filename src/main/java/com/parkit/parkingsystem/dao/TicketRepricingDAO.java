@@ -0,0 +1,137 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.StorageEngine;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ClosedTicketChunk;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
+
+/**
+ * Service reading the closed tickets by chunks and writing their new prices, for the repricing.
+ * @author tlili
+ */
+public class TicketRepricingDAO {
+
+    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+
+    /**
+     * number of rows fetched by round trip on the databases able to use a cursor.
+     */
+    public int fetchSize = 10000;
+
+    /**
+     * handler of the chunks of closed tickets read from the database.
+     */
+    public interface ChunkHandler {
+        void handle(ClosedTicketChunk chunk) throws SQLException;
+    }
+
+    /**
+     * read the tickets closed in a period with a forward only cursor, passing them to the handler
+     * chunk after chunk.
+     * <p>
+     * On MySQL the rows are streamed one by one instead of being loaded all together in memory.
+     * The tickets already moved to the table ticket_archive are read too, flagged as archived.
+     * The recurring flag of a ticket tells if its plate had already left the park when it entered.
+     * </p>
+     *
+     * @param closedFrom the first out time of the period, included
+     * @param closedTo the last out time of the period, excluded
+     * @param chunk the chunk filled again for each call of the handler
+     * @param handler the handler of the chunks
+     * @return the number of tickets read
+     * @throws ClassNotFoundException if the Database is not found
+     * @throws SQLException if the tickets can't be read, or if the handler fails
+     */
+    public long forEachClosedTicketChunk(Date closedFrom, Date closedTo, ClosedTicketChunk chunk, ChunkHandler handler)
+            throws ClassNotFoundException, SQLException {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        long count = 0;
+        try {
+            con = dataBaseConfig.getConnection();
+            ps = con.prepareStatement(DBConstants.GET_CLOSED_TICKETS_TO_REPRICE, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY);
+            boolean mysql = dataBaseConfig.getStorageEngine() == StorageEngine.MYSQL;
+            ps.setFetchSize(mysql ? Integer.MIN_VALUE : fetchSize);
+            ps.setTimestamp(1, new Timestamp(closedFrom.getTime()));
+            ps.setTimestamp(2, new Timestamp(closedTo.getTime()));
+            ps.setTimestamp(3, new Timestamp(closedFrom.getTime()));
+            ps.setTimestamp(4, new Timestamp(closedTo.getTime()));
+            rs = ps.executeQuery();
+            chunk.clear();
+            while (rs.next()) {
+                chunk.add(rs.getInt(1), ParkingType.valueOf(rs.getString(2)), rs.getTimestamp(3).getTime(),
+                        rs.getTimestamp(4).getTime(), rs.getBoolean(6), Math.round(rs.getDouble(5) * 100),
+                        rs.getBoolean(7));
+                count++;
+                if (chunk.isFull()) {
+                    handler.handle(chunk);
+                    chunk.clear();
+                }
+            }
+            if (chunk.size() > 0) {
+                handler.handle(chunk);
+                chunk.clear();
+            }
+            return count;
+        } finally {
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * write new prices with one JDBC batch by table, in one transaction.
+     *
+     * @param ids the ids of the tickets
+     * @param archived for each ticket, true if it is in the table ticket_archive
+     * @param priceCents the new prices, in cents
+     * @param count the number of tickets to update, from the start of the arrays
+     * @throws ClassNotFoundException if the Database is not found
+     * @throws SQLException if the prices can't be written, nothing is then written
+     */
+    public void updatePrices(int[] ids, boolean[] archived, long[] priceCents, int count)
+            throws ClassNotFoundException, SQLException {
+        if (count == 0) {
+            return;
+        }
+        try (ParkingTransaction transaction = new ParkingTransaction(dataBaseConfig)) {
+            updatePrices(transaction.getConnection(), DBConstants.UPDATE_TICKET_PRICE, false, ids, archived,
+                    priceCents, count);
+            updatePrices(transaction.getConnection(), DBConstants.UPDATE_ARCHIVED_TICKET_PRICE, true, ids, archived,
+                    priceCents, count);
+            transaction.commit();
+        }
+    }
+
+    private void updatePrices(Connection con, String update, boolean inArchive, int[] ids, boolean[] archived,
+                              long[] priceCents, int count) throws SQLException {
+        PreparedStatement ps = con.prepareStatement(update);
+        try {
+            int batched = 0;
+            for (int i = 0; i < count; i++) {
+                if (archived[i] == inArchive) {
+                    ps.setDouble(1, priceCents[i] / 100.0);
+                    ps.setInt(2, ids[i]);
+                    ps.addBatch();
+                    batched++;
+                }
+            }
+            if (batched > 0) {
+                ps.executeBatch();
+            }
+        } finally {
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+    }
+}
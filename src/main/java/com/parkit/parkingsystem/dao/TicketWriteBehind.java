@@ -0,0 +1,537 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.cache.OpenTicketIndex;
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind pipeline saving the new tickets in batches, away from the gates.
+ * <p>
+ * {@link #enqueue(Ticket)} puts the ticket in a bounded queue and appends it to a local journal
+ * synced on disk, then returns: a background writer inserts the queued tickets with JDBC batches
+ * when {@code batchSize} tickets are waiting or {@code flushIntervalMillis} has passed. When the
+ * queue is full the gate waits up to {@code offerTimeoutMillis}, then the ticket is refused.
+ * </p>
+ * <p>
+ * Within a transaction, {@link #enqueue(ParkingTransaction, Ticket)} only reserves a place in the
+ * queue, so that a refused ticket can still roll the entry back: the ticket is journaled and queued
+ * once the transaction commits, and its place given back if it rolls back. A crash between the
+ * commit of the entry and the sync of the journal loses the ticket of a spot taken.
+ * </p>
+ * <p>
+ * Tickets accepted but not yet written when the process stops are read back from the journal by
+ * {@link #start()}. A crash between the commit of a batch and its journal checkpoint replays the
+ * batch: delivery is at least once.
+ * </p>
+ * <p>
+ * Once its batch is committed, a ticket gets the id generated by the database and is put in the
+ * {@link OpenTicketIndex}: {@link #isPending(String)} tells the exits whether the plate still has a
+ * ticket in the queue, the only case where they must wait for it. The tickets recovered from the
+ * journal don't keep the type of their spot and are not put in the index, the exits read them from
+ * the table ticket.
+ * </p>
+ * @author tlili
+ */
+public class TicketWriteBehind implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("TicketWriteBehind");
+
+    private static final byte RECORD_TICKET = 'T';
+    private static final byte RECORD_FLUSHED = 'F';
+    // only written by the previous versions, which journaled the tickets before their commit
+    private static final byte RECORD_CANCELLED = 'C';
+    private static final long POLL_SLICE_MILLIS = 10;
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    private final DataBaseConfig dataBaseConfig;
+    private final OpenTicketIndex openTicketIndex;
+    private final File journalFile;
+    private final BlockingQueue<PendingTicket> queue;
+    // places of the queue, taken before the ticket is queued and given back when the writer takes it
+    private final Semaphore places;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final long offerTimeoutMillis;
+    // number of tickets of each plate journaled and not yet written
+    private final Map<String, Integer> pendingPlates = new ConcurrentHashMap<>();
+
+    private final Object enqueueLock = new Object();
+    private final Object flushMonitor = new Object();
+    private FileOutputStream journalStream;
+    private DataOutputStream journal;
+    private Thread writer;
+    private volatile boolean running;
+    private volatile boolean flushRequested;
+    private long lastEnqueuedSeq;
+    private long flushedSeq;
+
+    /**
+     * create the pipeline, {@link #start()} must be called before use.
+     *
+     * @param dataBaseConfig the database where the tickets are written
+     * @param journalFile the local journal of the accepted tickets
+     * @param capacity the maximum number of tickets waiting to be written
+     * @param batchSize the number of tickets written by one JDBC batch
+     * @param flushIntervalMillis the maximum time a ticket waits for its batch to be full
+     * @param offerTimeoutMillis the maximum time a gate waits when the queue is full
+     */
+    public TicketWriteBehind(DataBaseConfig dataBaseConfig, File journalFile, int capacity, int batchSize,
+                             long flushIntervalMillis, long offerTimeoutMillis) {
+        this(dataBaseConfig, new OpenTicketIndex(), journalFile, capacity, batchSize, flushIntervalMillis,
+                offerTimeoutMillis);
+    }
+
+    /**
+     * create the pipeline putting the written tickets in the index of the open tickets of the DAO,
+     * {@link #start()} must be called before use.
+     *
+     * @param dataBaseConfig the database where the tickets are written
+     * @param openTicketIndex the index of the open tickets, filled as the tickets are written
+     * @param journalFile the local journal of the accepted tickets
+     * @param capacity the maximum number of tickets waiting to be written
+     * @param batchSize the number of tickets written by one JDBC batch
+     * @param flushIntervalMillis the maximum time a ticket waits for its batch to be full
+     * @param offerTimeoutMillis the maximum time a gate waits when the queue is full
+     */
+    public TicketWriteBehind(DataBaseConfig dataBaseConfig, OpenTicketIndex openTicketIndex, File journalFile,
+                             int capacity, int batchSize, long flushIntervalMillis, long offerTimeoutMillis) {
+        this.dataBaseConfig = dataBaseConfig;
+        this.openTicketIndex = openTicketIndex;
+        this.journalFile = journalFile;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.places = new Semaphore(capacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+    }
+
+    /**
+     * open the journal, start the background writer and queue again the tickets of the journal
+     * that were not written before the last stop.
+     *
+     * @throws IOException if the journal can't be read or opened
+     * @throws InterruptedException if interrupted while queuing the recovered tickets
+     */
+    public void start() throws IOException, InterruptedException {
+        List<PendingTicket> recovered = readJournal();
+        File parent = journalFile.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        journalStream = new FileOutputStream(journalFile, true);
+        journal = new DataOutputStream(new BufferedOutputStream(journalStream));
+        running = true;
+        writer = new Thread(this::writeLoop, "ticket-write-behind");
+        writer.setDaemon(true);
+        writer.start();
+        if (!recovered.isEmpty()) {
+            logger.warn("Recovering " + recovered.size() + " ticket(s) from journal " + journalFile);
+        }
+        for (PendingTicket pending : recovered) {
+            addPendingPlate(pending.vehicleRegNumber);
+            places.acquire();
+            queue.put(pending);
+        }
+    }
+
+    /**
+     * accept a new ticket to be written in the database.
+     *
+     * @param ticket the ticket of the vehicle entering the park
+     * @return true if the ticket is accepted, false if the queue stayed full or the pipeline is stopped
+     */
+    public boolean enqueue(Ticket ticket) {
+        if (!reservePlace(ticket)) {
+            return false;
+        }
+        publish(ticket);
+        return true;
+    }
+
+    /**
+     * accept a new ticket within a transaction: a place is reserved in the queue now, the ticket is
+     * journaled and queued once the transaction is committed, and never written if it is rolled
+     * back.
+     *
+     * @param transaction the transaction of the entry
+     * @param ticket the ticket of the vehicle entering the park
+     * @return true if the ticket is accepted, false if the queue stayed full or the pipeline is
+     * stopped, the entry must then be rolled back
+     */
+    public boolean enqueue(ParkingTransaction transaction, Ticket ticket) {
+        if (!reservePlace(ticket)) {
+            return false;
+        }
+        transaction.afterCommit(() -> publish(ticket));
+        transaction.afterRollback(places::release);
+        return true;
+    }
+
+    /**
+     * wait for a place in the queue, without holding the lock of the journal.
+     */
+    private boolean reservePlace(Ticket ticket) {
+        if (!running) {
+            return false;
+        }
+        try {
+            if (!places.tryAcquire(offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                logger.error("Ticket queue full, refusing ticket of " + ticket.getVehicleRegNumber());
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * journal and queue a ticket whose place is reserved; the journal is synced outside the lock, so
+     * that the gates share the wait for the disk.
+     */
+    private void publish(Ticket ticket) {
+        PendingTicket pending;
+        synchronized (enqueueLock) {
+            pending = PendingTicket.of(lastEnqueuedSeq + 1, ticket);
+            lastEnqueuedSeq = pending.seq;
+            addPendingPlate(pending.vehicleRegNumber);
+            appendTicket(pending);
+            // queued under the lock, so the order of the queue is the order of the journal
+            queue.add(pending);
+        }
+        try {
+            journalStream.getChannel().force(false);
+        } catch (IOException e) {
+            logger.error("Error syncing ticket journal, ticket of " + pending.vehicleRegNumber
+                    + " may be lost by a crash", e);
+        }
+    }
+
+    /**
+     * wait until every ticket accepted before this call is written in the database.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void flush() throws InterruptedException {
+        long target;
+        synchronized (enqueueLock) {
+            target = lastEnqueuedSeq;
+        }
+        synchronized (flushMonitor) {
+            flushRequested = true;
+            while (flushedSeq < target && writer != null && writer.isAlive()) {
+                flushMonitor.wait(POLL_SLICE_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * method to know if a plate has a ticket accepted but not yet written in the database.
+     *
+     * @param vehicleRegNumber the number plate of the vehicle
+     * @return true if the ticket of the plate must be waited for before reading the table ticket
+     */
+    public boolean isPending(String vehicleRegNumber) {
+        return vehicleRegNumber != null && pendingPlates.containsKey(vehicleRegNumber);
+    }
+
+    private void addPendingPlate(String vehicleRegNumber) {
+        pendingPlates.merge(vehicleRegNumber, 1, Integer::sum);
+    }
+
+    private void removePendingPlate(String vehicleRegNumber) {
+        pendingPlates.computeIfPresent(vehicleRegNumber, (plate, count) -> count == 1 ? null : count - 1);
+    }
+
+    /**
+     * @return the number of tickets waiting to be written
+     */
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    /**
+     * stop accepting tickets, write the queued ones and close the journal.
+     */
+    @Override
+    public void close() {
+        running = false;
+        if (writer != null) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                logger.error("Error while closing ticket journal", e);
+            }
+        }
+    }
+
+    private void writeLoop() {
+        List<PendingTicket> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingTicket first = queue.poll(POLL_SLICE_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                places.release();
+                long deadline = System.currentTimeMillis() + flushIntervalMillis;
+                while (batch.size() < batchSize && !flushRequested && running
+                        && System.currentTimeMillis() < deadline) {
+                    int drained = queue.drainTo(batch, batchSize - batch.size());
+                    places.release(drained);
+                    if (drained == 0) {
+                        PendingTicket next = queue.poll(POLL_SLICE_MILLIS, TimeUnit.MILLISECONDS);
+                        if (next != null) {
+                            batch.add(next);
+                            places.release();
+                        }
+                    }
+                }
+                places.release(queue.drainTo(batch, batchSize - batch.size()));
+                writeWithRetry(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void writeWithRetry(List<PendingTicket> batch) throws InterruptedException {
+        while (true) {
+            try {
+                writeBatch(batch);
+                break;
+            } catch (Exception e) {
+                logger.error("Error writing batch of " + batch.size() + " ticket(s), retrying", e);
+                Thread.sleep(RETRY_DELAY_MILLIS);
+            }
+        }
+        // indexed before the plate stops being pending, so that an exit always finds one of them
+        for (PendingTicket pending : batch) {
+            if (pending.ticket != null) {
+                openTicketIndex.put(pending.ticket);
+            }
+            removePendingPlate(pending.vehicleRegNumber);
+        }
+        long lastSeq = batch.get(batch.size() - 1).seq;
+        synchronized (enqueueLock) {
+            appendRecord(RECORD_FLUSHED, lastSeq);
+            if (queue.isEmpty() && lastSeq == lastEnqueuedSeq) {
+                truncateJournal();
+            }
+        }
+        synchronized (flushMonitor) {
+            flushedSeq = lastSeq;
+            if (queue.isEmpty()) {
+                flushRequested = false;
+            }
+            flushMonitor.notifyAll();
+        }
+    }
+
+    private void writeBatch(List<PendingTicket> batch) throws ClassNotFoundException, SQLException {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet keys = null;
+        int[] ids = new int[batch.size()];
+        try {
+            con = dataBaseConfig.getConnection();
+            con.setAutoCommit(false);
+            ps = con.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS);
+            for (PendingTicket pending : batch) {
+                ps.setInt(1, pending.parkingNumber);
+                ps.setString(2, pending.vehicleRegNumber);
+                ps.setDouble(3, pending.price);
+                ps.setTimestamp(4, new Timestamp(pending.inTime));
+                ps.setTimestamp(5, pending.outTime < 0 ? null : new Timestamp(pending.outTime));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            // the keys come in the order of the batch
+            keys = ps.getGeneratedKeys();
+            for (int i = 0; i < ids.length && keys != null && keys.next(); i++) {
+                ids[i] = keys.getInt(1);
+            }
+            con.commit();
+        } catch (SQLException e) {
+            if (con != null) {
+                con.rollback();
+            }
+            throw e;
+        } finally {
+            dataBaseConfig.closeResultSet(keys);
+            dataBaseConfig.closePreparedStatement(ps);
+            if (con != null) {
+                con.setAutoCommit(true);
+            }
+            dataBaseConfig.closeConnection(con);
+        }
+        for (int i = 0; i < ids.length; i++) {
+            if (batch.get(i).ticket != null) {
+                batch.get(i).ticket.setId(ids[i]);
+            }
+        }
+    }
+
+    private void appendTicket(PendingTicket pending) {
+        try {
+            journal.writeByte(RECORD_TICKET);
+            journal.writeLong(pending.seq);
+            journal.writeInt(pending.parkingNumber);
+            journal.writeUTF(pending.vehicleRegNumber);
+            journal.writeDouble(pending.price);
+            journal.writeLong(pending.inTime);
+            journal.writeLong(pending.outTime);
+            journal.flush();
+        } catch (IOException e) {
+            logger.error("Error writing ticket journal, ticket of " + pending.vehicleRegNumber
+                    + " is only kept in memory", e);
+        }
+    }
+
+    private void appendRecord(byte type, long seq) {
+        try {
+            journal.writeByte(type);
+            journal.writeLong(seq);
+            syncJournal();
+        } catch (IOException e) {
+            logger.error("Error writing ticket journal", e);
+        }
+    }
+
+    private void syncJournal() throws IOException {
+        journal.flush();
+        journalStream.getChannel().force(false);
+    }
+
+    private void truncateJournal() {
+        try {
+            journal.flush();
+            journalStream.getChannel().truncate(0);
+            journalStream.getChannel().position(0);
+        } catch (IOException e) {
+            logger.error("Error compacting ticket journal", e);
+        }
+    }
+
+    /**
+     * read the journal left by the previous run.
+     *
+     * @return the tickets accepted but neither written nor cancelled, in order of acceptance
+     * @throws IOException if the journal can't be read
+     */
+    private List<PendingTicket> readJournal() throws IOException {
+        Map<Long, PendingTicket> tickets = new LinkedHashMap<>();
+        Set<Long> cancelled = new HashSet<>();
+        long flushed = 0;
+        if (!journalFile.exists()) {
+            return new ArrayList<>();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+            while (true) {
+                byte type = in.readByte();
+                long seq = in.readLong();
+                lastEnqueuedSeq = Math.max(lastEnqueuedSeq, seq);
+                if (type == RECORD_TICKET) {
+                    tickets.put(seq, new PendingTicket(seq, in.readInt(), in.readUTF(), in.readDouble(),
+                            in.readLong(), in.readLong()));
+                } else if (type == RECORD_FLUSHED) {
+                    flushed = Math.max(flushed, seq);
+                } else if (type == RECORD_CANCELLED) {
+                    cancelled.add(seq);
+                } else {
+                    throw new IOException("Corrupted ticket journal " + journalFile);
+                }
+            }
+        } catch (EOFException endOfJournal) {
+            // end of the journal, possibly in the middle of a record not synced before a crash
+        }
+        flushedSeq = flushed;
+        List<PendingTicket> unwritten = new ArrayList<>();
+        for (PendingTicket pending : tickets.values()) {
+            if (pending.seq > flushed && !cancelled.contains(pending.seq)) {
+                unwritten.add(pending);
+            }
+        }
+        return unwritten;
+    }
+
+    /**
+     * copy of a ticket waiting to be written, independent of the {@link Ticket} of the caller; the
+     * copy given to the index once written is kept apart, null for a ticket read from the journal.
+     */
+    private static final class PendingTicket {
+        private final long seq;
+        private Ticket ticket;
+        private final int parkingNumber;
+        private final String vehicleRegNumber;
+        private final double price;
+        private final long inTime;
+        private final long outTime;
+
+        private PendingTicket(long seq, int parkingNumber, String vehicleRegNumber, double price,
+                              long inTime, long outTime) {
+            this.seq = seq;
+            this.parkingNumber = parkingNumber;
+            this.vehicleRegNumber = vehicleRegNumber;
+            this.price = price;
+            this.inTime = inTime;
+            this.outTime = outTime;
+        }
+
+        private static PendingTicket of(long seq, Ticket ticket) {
+            PendingTicket pending = new PendingTicket(seq, ticket.getParkingSpot().getId(),
+                    ticket.getVehicleRegNumber(), ticket.getPrice(), ticket.getInTime().getTime(),
+                    ticket.getOutTime() == null ? -1 : ticket.getOutTime().getTime());
+            pending.ticket = new Ticket();
+            pending.ticket.setParkingSpot(new ParkingSpot(pending.parkingNumber,
+                    ticket.getParkingSpot().getParkingType(), false));
+            pending.ticket.setVehicleRegNumber(pending.vehicleRegNumber);
+            pending.ticket.setInTime(new Date(pending.inTime));
+            pending.ticket.setOutTime(ticket.getOutTime());
+            return pending;
+        }
+    }
+}
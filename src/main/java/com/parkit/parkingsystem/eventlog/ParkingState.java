@@ -0,0 +1,277 @@
+package com.parkit.parkingsystem.eventlog;
+
+import com.parkit.parkingsystem.cache.FreeSpotIndex;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Occupancy;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.TicketEvent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.CRC32;
+
+/**
+ * State of the park rebuilt from the {@link TicketEvent}: the open tickets by number plate, the
+ * free spots and the plates that already left the park once.
+ * <p>
+ * A spot is taken exactly when an open ticket holds it, so the free spots are not stored: they are
+ * derived from the open tickets. The state is changed by one thread at a time through
+ * {@link #apply(TicketEvent)}, and read by any thread.
+ * </p>
+ * @author tlili
+ */
+public class ParkingState {
+
+    private static final int SNAPSHOT_MAGIC = 0x50534E31;
+
+    private final Map<Integer, ParkingType> spotTypes;
+    private final FreeSpotIndex freeSpots = new FreeSpotIndex();
+    private final Map<String, TicketEvent> openTickets = new ConcurrentHashMap<>();
+    private final Set<String> recurringPlates = ConcurrentHashMap.newKeySet();
+    private volatile int nextTicketId;
+    private volatile long lastSeq;
+
+    /**
+     * create the state of the park at a point of the log.
+     *
+     * @param parkingSpots every spot of the park, their availability is ignored
+     * @param openTickets the entries of the vehicles still in the park
+     * @param recurringPlates the plates that already left the park
+     * @param nextTicketId the id of the next ticket
+     * @param lastSeq the seq of the last event included in the state
+     */
+    public ParkingState(Collection<ParkingSpot> parkingSpots, Collection<TicketEvent> openTickets,
+                        Collection<String> recurringPlates, int nextTicketId, long lastSeq) {
+        this.spotTypes = new TreeMap<>();
+        for (ParkingSpot parkingSpot : parkingSpots) {
+            spotTypes.put(parkingSpot.getId(), parkingSpot.getParkingType());
+        }
+        for (TicketEvent entry : openTickets) {
+            this.openTickets.put(entry.getVehicleRegNumber(), entry);
+        }
+        this.recurringPlates.addAll(recurringPlates);
+        this.nextTicketId = nextTicketId;
+        this.lastSeq = lastSeq;
+        rebuildFreeSpots();
+    }
+
+    private void rebuildFreeSpots() {
+        Set<Integer> taken = new HashSet<>();
+        for (TicketEvent entry : openTickets.values()) {
+            taken.add(entry.getParkingNumber());
+        }
+        List<ParkingSpot> parkingSpots = new ArrayList<>(spotTypes.size());
+        for (Map.Entry<Integer, ParkingType> spot : spotTypes.entrySet()) {
+            parkingSpots.add(new ParkingSpot(spot.getKey(), spot.getValue(), !taken.contains(spot.getKey())));
+        }
+        freeSpots.load(parkingSpots);
+    }
+
+    /**
+     * change the state with an event following the last one applied; the events already included
+     * are ignored.
+     *
+     * @param event the event of the log
+     * @throws IllegalStateException if events are missing between the state and the event
+     */
+    public void apply(TicketEvent event) {
+        if (event.getSeq() <= lastSeq) {
+            return;
+        }
+        if (lastSeq > 0 && event.getSeq() != lastSeq + 1) {
+            throw new IllegalStateException("Event " + event.getSeq() + " doesn't follow " + lastSeq);
+        }
+        String vehicleRegNumber = event.getVehicleRegNumber();
+        if (event.getType() == TicketEvent.Type.VEHICLE_ENTERED) {
+            openTickets.put(vehicleRegNumber, event);
+            freeSpots.setAvailable(event.getParkingNumber(), false);
+            nextTicketId = Math.max(nextTicketId, event.getTicketId() + 1);
+        } else {
+            TicketEvent entry = openTickets.get(vehicleRegNumber);
+            if (entry != null && entry.getTicketId() == event.getTicketId()) {
+                openTickets.remove(vehicleRegNumber);
+            }
+            freeSpots.setAvailable(event.getParkingNumber(), true);
+            recurringPlates.add(vehicleRegNumber);
+        }
+        lastSeq = event.getSeq();
+    }
+
+    /**
+     * take the lowest free spot of a type before its entry event is appended.
+     *
+     * @param parkingType the type of the vehicle
+     * @return the number of the spot, or -1 if the park is full for this type
+     */
+    public int claimSpot(ParkingType parkingType) {
+        return freeSpots.claimLowestAvailable(parkingType);
+    }
+
+    /**
+     * give back a spot claimed whose entry event could not be appended.
+     *
+     * @param parkingNumber the number of the spot
+     */
+    public void releaseSpot(int parkingNumber) {
+        freeSpots.setAvailable(parkingNumber, true);
+    }
+
+    /**
+     * @param vehicleRegNumber the number plate of the vehicle
+     * @return the entry of the vehicle in the park, null if it is not in the park
+     */
+    public TicketEvent getOpenTicket(String vehicleRegNumber) {
+        return openTickets.get(vehicleRegNumber);
+    }
+
+    /**
+     * @param vehicleRegNumber the number plate of the vehicle
+     * @return true if the vehicle already left the park once
+     */
+    public boolean isRecurringUser(String vehicleRegNumber) {
+        return recurringPlates.contains(vehicleRegNumber);
+    }
+
+    /**
+     * @param parkingType the type of the vehicle
+     * @return the number of free spots of this type
+     */
+    public int countAvailable(ParkingType parkingType) {
+        return freeSpots.countAvailable(parkingType);
+    }
+
+    /**
+     * @param parkingType the type of the vehicle
+     * @return the number of spots and of free spots of this type
+     */
+    public Occupancy getOccupancy(ParkingType parkingType) {
+        return freeSpots.getOccupancy(parkingType);
+    }
+
+    public int getOpenTicketCount() {
+        return openTickets.size();
+    }
+
+    public int getNextTicketId() {
+        return nextTicketId;
+    }
+
+    public long getLastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * copy the state, to write it as snapshot while the original keeps changing.
+     *
+     * @return a copy independent of this state
+     */
+    public ParkingState copy() {
+        List<ParkingSpot> parkingSpots = new ArrayList<>(spotTypes.size());
+        for (Map.Entry<Integer, ParkingType> spot : spotTypes.entrySet()) {
+            parkingSpots.add(new ParkingSpot(spot.getKey(), spot.getValue(), true));
+        }
+        return new ParkingState(parkingSpots, openTickets.values(), recurringPlates, nextTicketId, lastSeq);
+    }
+
+    /**
+     * write the state in a snapshot file, replaced at once so that a crash keeps the previous one.
+     *
+     * @param file the snapshot file
+     * @throws IOException if the snapshot can't be written
+     */
+    public void writeSnapshot(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        File temporary = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fileStream = new FileOutputStream(temporary)) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(fileStream), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(lastSeq);
+            out.writeInt(nextTicketId);
+            out.writeInt(spotTypes.size());
+            for (Map.Entry<Integer, ParkingType> spot : spotTypes.entrySet()) {
+                out.writeInt(spot.getKey());
+                out.writeUTF(spot.getValue().name());
+            }
+            out.writeInt(openTickets.size());
+            for (TicketEvent entry : openTickets.values()) {
+                out.writeLong(entry.getSeq());
+                out.writeInt(entry.getTicketId());
+                out.writeInt(entry.getParkingNumber());
+                out.writeUTF(entry.getParkingType().name());
+                out.writeUTF(entry.getVehicleRegNumber());
+                out.writeLong(entry.getInTimeMillis());
+            }
+            out.writeInt(recurringPlates.size());
+            for (String plate : recurringPlates) {
+                out.writeUTF(plate);
+            }
+            out.flush();
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            fileStream.getFD().sync();
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * read a snapshot file written by {@link #writeSnapshot(File)}.
+     *
+     * @param file the snapshot file
+     * @return the state at the time of the snapshot
+     * @throws IOException if the file can't be read or is corrupted
+     */
+    public static ParkingState readSnapshot(File file) throws IOException {
+        try (CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(file)), new CRC32())) {
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a snapshot of the park: " + file);
+            }
+            long lastSeq = in.readLong();
+            int nextTicketId = in.readInt();
+            int spotCount = in.readInt();
+            List<ParkingSpot> parkingSpots = new ArrayList<>(spotCount);
+            for (int i = 0; i < spotCount; i++) {
+                parkingSpots.add(new ParkingSpot(in.readInt(), ParkingType.valueOf(in.readUTF()), true));
+            }
+            int openTicketCount = in.readInt();
+            List<TicketEvent> openTickets = new ArrayList<>(openTicketCount);
+            for (int i = 0; i < openTicketCount; i++) {
+                openTickets.add(TicketEvent.vehicleEntered(in.readLong(), in.readInt(), in.readInt(),
+                        ParkingType.valueOf(in.readUTF()), in.readUTF(), in.readLong()));
+            }
+            int recurringCount = in.readInt();
+            List<String> recurringPlates = new ArrayList<>(recurringCount);
+            for (int i = 0; i < recurringCount; i++) {
+                recurringPlates.add(in.readUTF());
+            }
+            long checksum = checked.getChecksum().getValue();
+            if (in.readLong() != checksum) {
+                throw new IOException("Corrupted snapshot of the park: " + file);
+            }
+            return new ParkingState(parkingSpots, openTickets, recurringPlates, nextTicketId, lastSeq);
+        }
+    }
+}
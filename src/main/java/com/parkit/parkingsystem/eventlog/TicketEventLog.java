@@ -0,0 +1,416 @@
+package com.parkit.parkingsystem.eventlog;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.TicketEvent;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the {@link TicketEvent}, written sequentially in memory-mapped segment files.
+ * <p>
+ * An append is a copy into the mapped page cache: it survives a crash of the process at once and a
+ * crash of the machine once {@link #force()} has returned. Each record holds its length and a
+ * CRC32 of its content, so a record half written when the machine stopped is found and cut off
+ * by {@link #open(File, int)}. A segment is named after the seq of its first event; a new one is
+ * started when the current one is full, and the old ones are removed by
+ * {@link #deleteSegmentsBefore(long)} once a snapshot and the projection no longer need them.
+ * </p>
+ * <p>
+ * One thread appends at a time, any number of {@link Cursor} read the log meanwhile.
+ * </p>
+ * @author tlili
+ */
+public class TicketEventLog implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("TicketEventLog");
+
+    private static final String SEGMENT_PREFIX = "events-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 1024;
+    private static final int MAX_STRING_BYTES = 255;
+
+    private final File directory;
+    private final int segmentBytes;
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final ByteBuffer encoder = ByteBuffer.allocate(MAX_RECORD_BYTES);
+    private long lastSeq;
+
+    private TicketEventLog(File directory, int segmentBytes) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * open the log of a directory, creating it if needed, and find the end of the events written.
+     *
+     * @param directory the directory of the segment files
+     * @param segmentBytes the size of a new segment file
+     * @return the log, ready to append after its last event
+     * @throws IOException if the segments can't be mapped, or one of them is corrupted before the last
+     */
+    public static TicketEventLog open(File directory, int segmentBytes) throws IOException {
+        if (segmentBytes < MAX_RECORD_BYTES + RECORD_HEADER_BYTES) {
+            throw new IllegalArgumentException("Segment size too small: " + segmentBytes);
+        }
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory " + directory);
+        }
+        TicketEventLog eventLog = new TicketEventLog(directory, segmentBytes);
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            Arrays.sort(files);
+            for (int i = 0; i < files.length; i++) {
+                eventLog.recoverSegment(files[i], i == files.length - 1);
+            }
+        }
+        return eventLog;
+    }
+
+    /**
+     * @return true if no event was ever appended to the log
+     */
+    public synchronized boolean isEmpty() {
+        return segments.isEmpty();
+    }
+
+    /**
+     * @return the seq of the last event appended, 0 if the log is empty
+     */
+    public synchronized long getLastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * @return the seq of the first event kept in the log, 0 if the log is empty
+     */
+    public synchronized long getFirstSeq() {
+        return segments.isEmpty() ? 0 : segments.get(0).firstSeq;
+    }
+
+    /**
+     * append an event at the end of the log.
+     *
+     * @param event the event, whose seq follows the last one of the log (any seq if the log is empty)
+     * @throws IOException if a new segment can't be created, the event is then not appended
+     * @throws IllegalArgumentException if the seq doesn't follow the last one
+     */
+    public synchronized void append(TicketEvent event) throws IOException {
+        if (!segments.isEmpty() && event.getSeq() != lastSeq + 1) {
+            throw new IllegalArgumentException("Event " + event.getSeq() + " doesn't follow " + lastSeq);
+        }
+        encoder.clear();
+        encode(event, encoder);
+        encoder.flip();
+        int length = encoder.remaining();
+        CRC32 crc = new CRC32();
+        crc.update(encoder.duplicate());
+
+        Segment active = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (active == null || active.end + RECORD_HEADER_BYTES + length > segmentBytes) {
+            if (active != null) {
+                active.buffer.force();
+            }
+            active = createSegment(event.getSeq());
+        }
+        int position = active.end;
+        ByteBuffer target = active.buffer.duplicate();
+        target.position(position + RECORD_HEADER_BYTES);
+        target.put(encoder);
+        target.putInt(position + 4, (int) crc.getValue());
+        // the length is written last: a reader never sees a record before its content
+        target.putInt(position, length);
+        active.end = position + RECORD_HEADER_BYTES + length;
+        lastSeq = event.getSeq();
+    }
+
+    /**
+     * write the appended events on disk, so that they survive a crash of the machine.
+     */
+    public void force() {
+        Segment active;
+        synchronized (this) {
+            active = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        }
+        if (active != null) {
+            active.buffer.force();
+        }
+    }
+
+    /**
+     * open a reader of the log.
+     *
+     * @param afterSeq the seq of the last event already known by the reader, 0 to read from the start
+     * @return the cursor giving the events following afterSeq, then the ones appended later
+     * @throws IllegalStateException if events after afterSeq were already removed from the log
+     */
+    public synchronized Cursor openCursor(long afterSeq) {
+        if (segments.isEmpty()) {
+            return new Cursor(afterSeq);
+        }
+        if (afterSeq + 1 < segments.get(0).firstSeq) {
+            throw new IllegalStateException("Events " + (afterSeq + 1) + " to " + (segments.get(0).firstSeq - 1)
+                    + " are no longer in the event log " + directory);
+        }
+        Cursor cursor = new Cursor(afterSeq);
+        cursor.skipTo(afterSeq);
+        return cursor;
+    }
+
+    /**
+     * remove the segments whose events are all older than a seq; the segment being written is kept.
+     *
+     * @param seq the seq of the last event no longer needed
+     * @return the number of segments removed
+     */
+    public synchronized int deleteSegmentsBefore(long seq) {
+        int deleted = 0;
+        while (segments.size() > 1 && segments.get(1).firstSeq <= seq + 1) {
+            Segment segment = segments.remove(0);
+            if (!segment.file.delete()) {
+                logger.warn("Unable to delete event log segment " + segment.file);
+            }
+            deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * write the events on disk; the mappings of the segments are released by the garbage collector.
+     */
+    @Override
+    public void close() {
+        force();
+    }
+
+    private Segment createSegment(long firstSeq) throws IOException {
+        File file = new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, firstSeq, SEGMENT_SUFFIX));
+        Segment segment = mapSegment(file, firstSeq);
+        segments.add(segment);
+        return segment;
+    }
+
+    private Segment mapSegment(File file, long firstSeq) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            if (randomAccessFile.length() < segmentBytes) {
+                randomAccessFile.setLength(segmentBytes);
+            }
+            FileChannel channel = randomAccessFile.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, randomAccessFile.length());
+            return new Segment(file, firstSeq, buffer);
+        }
+    }
+
+    private void recoverSegment(File file, boolean last) throws IOException {
+        long firstSeq = Long.parseLong(file.getName().substring(SEGMENT_PREFIX.length(),
+                file.getName().length() - SEGMENT_SUFFIX.length()));
+        Segment segment = mapSegment(file, firstSeq);
+        ByteBuffer view = segment.buffer.duplicate();
+        long expectedSeq = firstSeq;
+        int position = 0;
+        boolean torn = false;
+        while (position + RECORD_HEADER_BYTES <= view.capacity()) {
+            int length = view.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            if (length < 0 || position + RECORD_HEADER_BYTES + length > view.capacity()
+                    || !checksumMatches(view, position, length) || view.getLong(position + RECORD_HEADER_BYTES) != expectedSeq) {
+                torn = true;
+                break;
+            }
+            position += RECORD_HEADER_BYTES + length;
+            expectedSeq++;
+        }
+        if (torn && !last) {
+            throw new IOException("Corrupted event log segment " + file + " at " + position);
+        }
+        if (torn) {
+            logger.warn("Event log " + file + " ends with an incomplete record at " + position + ", cut off");
+            for (int i = position; i < view.capacity(); i++) {
+                view.put(i, (byte) 0);
+            }
+            segment.buffer.force();
+        }
+        if (!segments.isEmpty() && firstSeq != lastSeq + 1) {
+            throw new IOException("Event log segment " + file + " doesn't follow event " + lastSeq);
+        }
+        segment.end = position;
+        segments.add(segment);
+        lastSeq = expectedSeq - 1;
+    }
+
+    private static boolean checksumMatches(ByteBuffer view, int position, int length) {
+        ByteBuffer content = view.duplicate();
+        content.limit(position + RECORD_HEADER_BYTES + length);
+        content.position(position + RECORD_HEADER_BYTES);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return (int) crc.getValue() == view.getInt(position + 4);
+    }
+
+    private static void encode(TicketEvent event, ByteBuffer out) {
+        out.putLong(event.getSeq());
+        out.put(event.getType().getCode());
+        out.putInt(event.getTicketId());
+        out.putInt(event.getParkingNumber());
+        putString(out, event.getParkingType().name());
+        putString(out, event.getVehicleRegNumber());
+        out.putLong(event.getInTimeMillis());
+        if (event.getType() == TicketEvent.Type.VEHICLE_EXITED) {
+            out.putLong(event.getOutTimeMillis());
+            out.putDouble(event.getPrice());
+            out.put((byte) (event.isRecurringUser() ? 1 : 0));
+        }
+    }
+
+    private static TicketEvent decode(ByteBuffer in) {
+        long seq = in.getLong();
+        TicketEvent.Type type = TicketEvent.Type.fromCode(in.get());
+        int ticketId = in.getInt();
+        int parkingNumber = in.getInt();
+        ParkingType parkingType = ParkingType.valueOf(getString(in));
+        String vehicleRegNumber = getString(in);
+        long inTimeMillis = in.getLong();
+        if (type == TicketEvent.Type.VEHICLE_ENTERED) {
+            return TicketEvent.vehicleEntered(seq, ticketId, parkingNumber, parkingType, vehicleRegNumber, inTimeMillis);
+        }
+        return TicketEvent.vehicleExited(seq, ticketId, parkingNumber, parkingType, vehicleRegNumber, inTimeMillis,
+                in.getLong(), in.getDouble(), in.get() != 0);
+    }
+
+    private static void putString(ByteBuffer out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("Value too long for the event log: " + value);
+        }
+        out.putShort((short) bytes.length);
+        out.put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * reader of the log, following the appends; a cursor is used by one thread at a time.
+     */
+    public final class Cursor {
+        private Segment segment;
+        private ByteBuffer view;
+        private int position;
+        private long lastSeq;
+
+        private Cursor(long afterSeq) {
+            this.lastSeq = afterSeq;
+        }
+
+        /**
+         * @return the seq of the last event given by the cursor
+         */
+        public long getLastSeq() {
+            return lastSeq;
+        }
+
+        /**
+         * read the next event of the log.
+         *
+         * @return the event following the last one read, null if it is not appended yet
+         */
+        public TicketEvent next() {
+            while (true) {
+                if (segment == null) {
+                    if (segments.isEmpty()) {
+                        return null;
+                    }
+                    moveTo(segments.get(0));
+                }
+                if (position < segment.end) {
+                    int length = view.getInt(position);
+                    ByteBuffer content = view.duplicate();
+                    content.limit(position + RECORD_HEADER_BYTES + length);
+                    content.position(position + RECORD_HEADER_BYTES);
+                    TicketEvent event = decode(content);
+                    position += RECORD_HEADER_BYTES + length;
+                    lastSeq = event.getSeq();
+                    return event;
+                }
+                Segment following = segmentAfter(segment);
+                if (following == null) {
+                    return null;
+                }
+                // a segment is complete once the next one exists: read its end again before leaving it
+                if (position >= segment.end) {
+                    moveTo(following);
+                }
+            }
+        }
+
+        private void skipTo(long afterSeq) {
+            Segment start = segments.get(0);
+            for (Segment candidate : segments) {
+                if (candidate.firstSeq <= afterSeq + 1) {
+                    start = candidate;
+                }
+            }
+            moveTo(start);
+            long seq = start.firstSeq;
+            while (seq <= afterSeq && position < segment.end) {
+                position += RECORD_HEADER_BYTES + view.getInt(position);
+                seq++;
+            }
+            lastSeq = afterSeq;
+        }
+
+        private void moveTo(Segment next) {
+            segment = next;
+            view = next.buffer.duplicate();
+            position = 0;
+        }
+
+        private Segment segmentAfter(Segment current) {
+            List<Segment> snapshot = new ArrayList<>(segments);
+            for (int i = 0; i < snapshot.size() - 1; i++) {
+                if (snapshot.get(i) == current) {
+                    return snapshot.get(i + 1);
+                }
+            }
+            if (!snapshot.isEmpty() && !snapshot.contains(current) && snapshot.get(0).firstSeq > current.firstSeq) {
+                // the segment was removed under the cursor, continue with the oldest one kept
+                return snapshot.get(0);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * one file of the log, mapped in memory.
+     */
+    private static final class Segment {
+        private final File file;
+        private final long firstSeq;
+        private final MappedByteBuffer buffer;
+        private volatile int end;
+
+        private Segment(File file, long firstSeq, MappedByteBuffer buffer) {
+            this.file = file;
+            this.firstSeq = firstSeq;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.parkit.parkingsystem.eventlog;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketProjection;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.Occupancy;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.model.TicketEvent;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event sourced record of the entries and exits: the {@link TicketEventLog} is the system of
+ * record, the {@link ParkingState} in memory answers the gates and the tables are a projection.
+ * <p>
+ * An entry or an exit is decided on the state, appended to the log and applied to the state, one
+ * gate at a time: the critical path is a sequential write in memory-mapped pages, without request
+ * to the database. Every {@code snapshotEveryEvents} events the state is written in a snapshot
+ * file; at startup the state is read from the last snapshot, or from the tables the first time,
+ * then the events of the log following it are applied again.
+ * </p>
+ * <p>
+ * By default the log is written on disk before an entry or an exit is answered, so an answered
+ * event survives a crash of the machine. With a {@code forceIntervalMillis} above 0 the log is
+ * written on disk by a timer instead: the gates no longer wait for the disk, but a crash of the
+ * machine loses the events answered during the last interval, whose vehicles are then unknown.
+ * </p>
+ * @author tlili
+ */
+public class TicketEventStore implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("TicketEventStore");
+
+    private static final String SNAPSHOT_FILE = "parking-state.snapshot";
+    private static final String LOG_DIRECTORY = "log";
+
+    private final TicketEventLog eventLog;
+    private final ParkingState state;
+    private final TicketProjection projection;
+    private final String lotId;
+    private final File snapshotFile;
+    private final int snapshotEveryEvents;
+    private final FareCalculatorService fareCalculatorService;
+    private final ScheduledExecutorService background;
+    private final Object appendLock = new Object();
+    private final boolean forceEachEvent;
+    private int eventsSinceSnapshot;
+
+    private TicketEventStore(TicketEventLog eventLog, ParkingState state, TicketProjection projection,
+                             File snapshotFile, int snapshotEveryEvents, boolean forceEachEvent,
+                             FareCalculatorService fareCalculatorService) {
+        this.eventLog = eventLog;
+        this.forceEachEvent = forceEachEvent;
+        this.state = state;
+        this.projection = projection;
+        this.lotId = projection.getLotId();
+        this.snapshotFile = snapshotFile;
+        this.snapshotEveryEvents = snapshotEveryEvents;
+        this.fareCalculatorService = fareCalculatorService;
+        this.background = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ticket-event-store");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * rebuild the state of the park from the directory and start the projection to the tables.
+     *
+     * @param directory the directory of the snapshot and of the log
+     * @param projection the projection to the tables, also reading the state the first time
+     * @param segmentBytes the size of the segment files of the log
+     * @param snapshotEveryEvents the number of events between two snapshots
+     * @param forceIntervalMillis 0 to write each event on disk before answering it, else the time
+     * between two writes of the log on disk, the events answered meanwhile being lost by a crash of
+     * the machine
+     * @param fareCalculatorService the calculator of the price of the exits
+     * @return the store, ready for the gates
+     * @throws Exception if the state can't be rebuilt, the log and the snapshot are then left as they are
+     */
+    public static TicketEventStore open(File directory, TicketProjection projection, int segmentBytes,
+                                        int snapshotEveryEvents, long forceIntervalMillis,
+                                        FareCalculatorService fareCalculatorService) throws Exception {
+        TicketEventLog eventLog = TicketEventLog.open(new File(directory, LOG_DIRECTORY), segmentBytes);
+        File snapshotFile = new File(directory, SNAPSHOT_FILE);
+        ParkingState state;
+        if (snapshotFile.exists()) {
+            state = ParkingState.readSnapshot(snapshotFile);
+        } else {
+            state = projection.loadState();
+        }
+        if (!eventLog.isEmpty() && eventLog.getLastSeq() < state.getLastSeq()) {
+            throw new IllegalStateException("Event log " + directory + " ends at event " + eventLog.getLastSeq()
+                    + ", before the state at event " + state.getLastSeq());
+        }
+        long snapshotSeq = state.getLastSeq();
+        TicketEventLog.Cursor cursor = eventLog.openCursor(snapshotSeq);
+        TicketEvent event;
+        while ((event = cursor.next()) != null) {
+            state.apply(event);
+        }
+        logger.info("Park state rebuilt at event " + state.getLastSeq() + ", " + (state.getLastSeq() - snapshotSeq)
+                + " event(s) replayed after the snapshot, " + state.getOpenTicketCount() + " vehicle(s) in the park");
+
+        TicketEventStore store = new TicketEventStore(eventLog, state, projection, snapshotFile,
+                snapshotEveryEvents, forceIntervalMillis <= 0, fareCalculatorService);
+        projection.start(eventLog);
+        if (forceIntervalMillis > 0) {
+            store.background.scheduleWithFixedDelay(eventLog::force, forceIntervalMillis, forceIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+        return store;
+    }
+
+    /**
+     * register a vehicle entering the park.
+     *
+     * @param parkingType the type of the vehicle
+     * @param vehicleRegNumber the number plate of the vehicle
+     * @param inTime the time of entry of the vehicle
+     * @return the spot given to the vehicle, or a result not entered if the park is full
+     * @throws IllegalArgumentException if the vehicle is already in the park
+     * @throws IOException if the event can't be appended, nothing is then recorded
+     */
+    public EntryResult enter(ParkingType parkingType, String vehicleRegNumber, Date inTime) throws IOException {
+        synchronized (appendLock) {
+            if (state.getOpenTicket(vehicleRegNumber) != null) {
+                throw new IllegalArgumentException("Vehicle number:" + vehicleRegNumber + " is already in the park");
+            }
+            int parkingNumber = state.claimSpot(parkingType);
+            if (parkingNumber <= 0) {
+                logger.error("No free spot for " + parkingType + ". Parking slots might be full");
+                return EntryResult.parkFull(lotId, parkingType, vehicleRegNumber, inTime);
+            }
+            TicketEvent event = TicketEvent.vehicleEntered(state.getLastSeq() + 1, state.getNextTicketId(),
+                    parkingNumber, parkingType, vehicleRegNumber, inTime.getTime());
+            try {
+                record(event);
+            } catch (IOException | RuntimeException e) {
+                // an event applied to the state is recorded, only its write on disk failed
+                if (state.getLastSeq() < event.getSeq()) {
+                    state.releaseSpot(parkingNumber);
+                }
+                throw e;
+            }
+            return EntryResult.entered(inLot(event.toTicket()));
+        }
+    }
+
+    /**
+     * register a vehicle leaving the park.
+     *
+     * @param vehicleRegNumber the number plate of the vehicle
+     * @param outTime the time of exit of the vehicle
+     * @return the priced and closed ticket, owned by the caller
+     * @throws NoSuchElementException if the vehicle is not in the park
+     * @throws IOException if the event can't be appended, nothing is then recorded
+     */
+    public Ticket exit(String vehicleRegNumber, Date outTime) throws IOException {
+        synchronized (appendLock) {
+            TicketEvent entry = state.getOpenTicket(vehicleRegNumber);
+            if (entry == null) {
+                throw new NoSuchElementException("No open ticket for vehicle number:" + vehicleRegNumber);
+            }
+            Ticket ticket = inLot(entry.toTicket());
+            ticket.setOutTime(outTime);
+            ticket.setIsRecurringUser(state.isRecurringUser(vehicleRegNumber));
+            fareCalculatorService.calculateFare(ticket);
+            record(TicketEvent.vehicleExited(state.getLastSeq() + 1, ticket));
+            ticket.getParkingSpot().setAvailable(true);
+            return ticket;
+        }
+    }
+
+    private Ticket inLot(Ticket ticket) {
+        ticket.setLotId(lotId);
+        ticket.getParkingSpot().setLotId(lotId);
+        return ticket;
+    }
+
+    private void record(TicketEvent event) throws IOException {
+        eventLog.append(event);
+        state.apply(event);
+        if (++eventsSinceSnapshot >= snapshotEveryEvents) {
+            eventsSinceSnapshot = 0;
+            final ParkingState copy = state.copy();
+            background.execute(() -> writeSnapshot(copy));
+        }
+        if (forceEachEvent) {
+            eventLog.force();
+        }
+    }
+
+    /**
+     * @param parkingType the type of the vehicle
+     * @return the number of free spots of this type
+     */
+    public int countAvailableSpots(ParkingType parkingType) {
+        return state.countAvailable(parkingType);
+    }
+
+    /**
+     * @param parkingType the type of the vehicle
+     * @return the number of spots and of free spots of this type
+     */
+    public Occupancy getOccupancy(ParkingType parkingType) {
+        return state.getOccupancy(parkingType);
+    }
+
+    /**
+     * @return the seq of the last event recorded
+     */
+    public long getLastSeq() {
+        return state.getLastSeq();
+    }
+
+    public TicketProjection getProjection() {
+        return projection;
+    }
+
+    /**
+     * write a snapshot of the current state now.
+     */
+    public void snapshot() {
+        ParkingState copy;
+        synchronized (appendLock) {
+            eventsSinceSnapshot = 0;
+            copy = state.copy();
+        }
+        writeSnapshot(copy);
+    }
+
+    private void writeSnapshot(ParkingState copy) {
+        try {
+            // the log must hold every event of the snapshot before it can replace the previous one
+            eventLog.force();
+            copy.writeSnapshot(snapshotFile);
+            int deleted = eventLog.deleteSegmentsBefore(Math.min(copy.getLastSeq(), projection.getProjectedSeq()));
+            logger.info("Snapshot of the park written at event " + copy.getLastSeq()
+                    + (deleted > 0 ? ", " + deleted + " log segment(s) removed" : ""));
+        } catch (IOException e) {
+            logger.error("Unable to write snapshot of the park at event " + copy.getLastSeq(), e);
+        }
+    }
+
+    /**
+     * stop the projection once it has applied every event, write a snapshot and close the log.
+     */
+    @Override
+    public void close() {
+        background.shutdown();
+        try {
+            background.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        projection.close();
+        snapshot();
+        eventLog.close();
+    }
+}
@@ -0,0 +1,400 @@
+package com.parkit.parkingsystem.http;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.ReplicaSet;
+import com.parkit.parkingsystem.config.ShardRouter;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.metrics.LatencyHistogram;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.Occupancy;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.service.ParkingSystem;
+import com.parkit.parkingsystem.util.JsonUtil;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP interface of the gates, serving many gates at the same time over the {@link ParkingService}
+ * of each lot.
+ * <p>
+ * The requests are handled by a pool of threads. The bodies are flat JSON objects. Each request
+ * goes to the lot named by {@code "lotId"} in the body, or by the parameter {@code ?lotId=} of a
+ * {@code GET}, the default lot when it gives none; an unknown lot is answered 400.
+ * </p>
+ * <p>
+ * A gate sending its identifier in the header {@code X-Gate-Id} reads its own writes: after its
+ * entry, its next requests are not answered by a replica of the database that hasn't received it
+ * yet, see {@link ReplicaSet}.
+ * </p>
+ * <ul>
+ * <li>{@code POST /entries {"vehicleType":"CAR","vehicleRegNumber":"ABCDEF"}} registers an entry,
+ * 201 with the ticket, 503 when the park is full</li>
+ * <li>{@code POST /exits {"vehicleRegNumber":"ABCDEF"}} registers an exit, 200 with the priced
+ * ticket, 404 without open ticket</li>
+ * <li>{@code GET /availability} gives the free spots by type of vehicle</li>
+ * <li>{@code GET /occupancy} gives the total, free and occupied spots by type of vehicle, for the
+ * displays of the entrance</li>
+ * <li>{@code GET /metrics} gives the latencies of each endpoint in microseconds</li>
+ * <li>{@code GET /metrics/prometheus} gives the metrics of the {@link MetricsRegistry} and the
+ * latencies of each endpoint in the text format of Prometheus</li>
+ * </ul>
+ * @author tlili
+ */
+public class GateServer implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("GateServer");
+
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final String PROMETHEUS = "text/plain; version=0.0.4; charset=utf-8";
+    private static final String GATE_HEADER = "X-Gate-Id";
+    private static final int MAX_GATES = 1024;
+
+    private final ShardRouter<ParkingService> parkingServices;
+    private final MetricsRegistry metricsRegistry;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+    // time of the last write of each gate, forgotten once every replica read is newer
+    private final Map<String, Long> gateWrites = new ConcurrentHashMap<>();
+    private final long maxReplicaLagMillis = DataBaseConfig.getLongProperty("db.replica.maxLagMillis", 1000L);
+
+    /**
+     * create the server, {@link #start()} opens it.
+     *
+     * @param parkingService the service registering the entries and exits
+     * @param address the address to listen on, port 0 for any free port
+     * @param threads the number of requests handled at the same time
+     * @throws IOException if the address can't be bound
+     */
+    public GateServer(ParkingService parkingService, InetSocketAddress address, int threads) throws IOException {
+        this(parkingService, address, threads, MetricsRegistry.getDefault());
+    }
+
+    /**
+     * create the server, {@link #start()} opens it.
+     *
+     * @param parkingService the service registering the entries and exits
+     * @param address the address to listen on, port 0 for any free port
+     * @param threads the number of requests handled at the same time
+     * @param metricsRegistry the registry served to the scraper, the latencies of the endpoints are added to it
+     * @throws IOException if the address can't be bound
+     */
+    public GateServer(ParkingService parkingService, InetSocketAddress address, int threads,
+                      MetricsRegistry metricsRegistry) throws IOException {
+        this(ShardRouter.single(parkingService.getLotId() == null ? ShardRouter.DEFAULT_LOT_ID
+                : parkingService.getLotId(), parkingService), address, threads, metricsRegistry);
+    }
+
+    /**
+     * create the server of several lots, {@link #start()} opens it.
+     *
+     * @param parkingServices the service registering the entries and exits of each lot
+     * @param address the address to listen on, port 0 for any free port
+     * @param threads the number of requests handled at the same time
+     * @param metricsRegistry the registry served to the scraper, the latencies of the endpoints are added to it
+     * @throws IOException if the address can't be bound
+     */
+    public GateServer(ShardRouter<ParkingService> parkingServices, InetSocketAddress address, int threads,
+                      MetricsRegistry metricsRegistry) throws IOException {
+        this.parkingServices = parkingServices;
+        this.metricsRegistry = metricsRegistry;
+        this.server = HttpServer.create(address, 0);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "gate-http-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        route("/entries", "POST", this::handleEntry);
+        route("/exits", "POST", this::handleExit);
+        route("/availability", "GET", exchange -> send(exchange, 200, availabilityJson(routeQuery(exchange))));
+        route("/occupancy", "GET", exchange -> send(exchange, 200, occupancyJson(routeQuery(exchange))));
+        route("/metrics", "GET", exchange -> send(exchange, 200, metricsJson()));
+        route("/metrics/prometheus", "GET",
+                exchange -> send(exchange, 200, PROMETHEUS, metricsRegistry.toPrometheus()));
+        metricsRegistry.registerLatencies("http_request_seconds", "Latency of the requests of the gates.", "path",
+                latencies);
+    }
+
+    /**
+     * start the services of the park and serve the gates on the port of the setting
+     * {@code http.port}, until the JVM stops.
+     *
+     * @throws IOException if the port can't be bound
+     */
+    public static void serve() throws IOException {
+        ParkingSystem parkingSystem = ParkingSystem.start();
+        GateServer gateServer = new GateServer(parkingSystem.getParkingServices(),
+                new InetSocketAddress(DataBaseConfig.getIntProperty("http.port", 8080)),
+                DataBaseConfig.getIntProperty("http.threads", 32), MetricsRegistry.getDefault());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            gateServer.close();
+            parkingSystem.close();
+        }, "gate-http-shutdown"));
+        gateServer.start();
+    }
+
+    /**
+     * open the server to the gates.
+     */
+    public void start() {
+        server.start();
+        logger.info("Gate server listening on port " + getPort());
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * return the latencies of an endpoint.
+     *
+     * @param path the path of the endpoint, like {@code /entries}
+     * @return the histogram of the latencies, null for an unknown endpoint
+     */
+    public LatencyHistogram getLatencies(String path) {
+        return latencies.get(path);
+    }
+
+    /**
+     * stop the server, the requests in progress get one second to complete.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdownNow();
+    }
+
+    private void route(String path, String method, Handler handler) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        latencies.put(path, histogram);
+        server.createContext(path, exchange -> {
+            long start = System.nanoTime();
+            String gateId = exchange.getRequestHeaders().getFirst(GATE_HEADER);
+            ReplicaSet.setLastWriteMillis(gateId == null ? 0L : gateWrites.getOrDefault(gateId, 0L));
+            try {
+                if (!method.equals(exchange.getRequestMethod())) {
+                    exchange.getResponseHeaders().set("Allow", method);
+                    send(exchange, 405, error("Method not allowed"));
+                } else if (!path.equals(exchange.getRequestURI().getPath())) {
+                    send(exchange, 404, error("Not found"));
+                } else {
+                    handler.handle(exchange);
+                }
+            } catch (IllegalArgumentException e) {
+                send(exchange, 400, error(e.getMessage()));
+            } catch (Exception e) {
+                logger.error("Unable to process " + method + " " + path, e);
+                send(exchange, 500, error("Internal error"));
+            } finally {
+                exchange.close();
+                histogram.recordNanos(System.nanoTime() - start);
+            }
+        });
+    }
+
+    private void rememberWrite(String gateId) {
+        long writeMillis = ReplicaSet.getLastWriteMillis();
+        if (gateId == null || writeMillis == 0L) {
+            return;
+        }
+        gateWrites.put(gateId, writeMillis);
+        if (gateWrites.size() > MAX_GATES) {
+            long oldest = System.currentTimeMillis() - maxReplicaLagMillis;
+            gateWrites.values().removeIf(gateWriteMillis -> gateWriteMillis < oldest);
+        }
+    }
+
+    private void handleEntry(HttpExchange exchange) throws Exception {
+        Map<String, String> request = JsonUtil.parseObject(readBody(exchange));
+        ParkingType parkingType = parseVehicleType(request.get("vehicleType"));
+        String vehicleRegNumber = requireVehicleRegNumber(request);
+        EntryResult result = parkingServices.route(request.get("lotId")).enter(parkingType, vehicleRegNumber);
+        if (!result.isEntered()) {
+            send(exchange, 503, error("Parking slots might be full"));
+            return;
+        }
+        send(exchange, 201, entryJson(result));
+    }
+
+    private void handleExit(HttpExchange exchange) throws Exception {
+        Map<String, String> request = JsonUtil.parseObject(readBody(exchange));
+        String vehicleRegNumber = requireVehicleRegNumber(request);
+        ParkingService parkingService = parkingServices.route(request.get("lotId"));
+        Ticket ticket;
+        try {
+            ticket = parkingService.exit(vehicleRegNumber, new Date());
+        } catch (NoSuchElementException e) {
+            send(exchange, 404, error(e.getMessage()));
+            return;
+        } catch (IllegalStateException e) {
+            send(exchange, 500, error(e.getMessage()));
+            return;
+        }
+        send(exchange, 200, ticketJson(ticket));
+    }
+
+    private static ParkingType parseVehicleType(String vehicleType) {
+        if (vehicleType == null) {
+            throw new IllegalArgumentException("vehicleType is required");
+        }
+        try {
+            return ParkingType.valueOf(vehicleType.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown vehicleType " + vehicleType);
+        }
+    }
+
+    private ParkingService routeQuery(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith("lotId=")) {
+                    return parkingServices.route(URLDecoder.decode(parameter.substring("lotId=".length()), "UTF-8"));
+                }
+            }
+        }
+        return parkingServices.route(null);
+    }
+
+    private static String requireVehicleRegNumber(Map<String, String> request) {
+        String vehicleRegNumber = request.get("vehicleRegNumber");
+        if (vehicleRegNumber == null || vehicleRegNumber.trim().isEmpty()) {
+            throw new IllegalArgumentException("vehicleRegNumber is required");
+        }
+        return vehicleRegNumber.trim();
+    }
+
+    private static String entryJson(EntryResult result) {
+        // a ticket queued by the write-behind gets its id once written
+        return "{\"id\":" + (result.getTicketId() > 0 ? String.valueOf(result.getTicketId()) : "null")
+                + ",\"lotId\":" + JsonUtil.quote(result.getLotId())
+                + ",\"parkingNumber\":" + result.getParkingNumber()
+                + ",\"vehicleType\":" + JsonUtil.quote(result.getParkingType().name())
+                + ",\"vehicleRegNumber\":" + JsonUtil.quote(result.getVehicleRegNumber())
+                + ",\"inTime\":" + JsonUtil.quote(isoDate(result.getInTime())) + "}";
+    }
+
+    private static String ticketJson(Ticket ticket) {
+        return "{\"id\":" + ticket.getId()
+                + ",\"lotId\":" + JsonUtil.quote(ticket.getLotId())
+                + ",\"parkingNumber\":" + ticket.getParkingSpot().getId()
+                + ",\"vehicleType\":" + JsonUtil.quote(ticket.getParkingSpot().getParkingType().name())
+                + ",\"vehicleRegNumber\":" + JsonUtil.quote(ticket.getVehicleRegNumber())
+                + ",\"inTime\":" + JsonUtil.quote(isoDate(ticket.getInTime()))
+                + ",\"outTime\":" + JsonUtil.quote(isoDate(ticket.getOutTime()))
+                + ",\"price\":" + ticket.getPrice()
+                + ",\"recurringUser\":" + ticket.getIsRecurringUser() + "}";
+    }
+
+    private static String availabilityJson(ParkingService parkingService) {
+        StringBuilder sb = new StringBuilder("{");
+        for (ParkingType parkingType : ParkingType.values()) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append(JsonUtil.quote(parkingType.name())).append(':')
+                    .append(parkingService.countAvailableSpots(parkingType));
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String occupancyJson(ParkingService parkingService) {
+        StringBuilder sb = new StringBuilder("{");
+        for (Occupancy occupancy : parkingService.getOccupancy().values()) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append(JsonUtil.quote(occupancy.getParkingType().name()))
+                    .append(":{\"total\":").append(occupancy.getTotal())
+                    .append(",\"available\":").append(occupancy.getAvailable())
+                    .append(",\"occupied\":").append(occupancy.getOccupied()).append('}');
+        }
+        return sb.append('}').toString();
+    }
+
+    private String metricsJson() {
+        StringBuilder sb = new StringBuilder("{");
+        for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append(JsonUtil.quote(entry.getKey()))
+                    .append(":{\"count\":").append(histogram.getCount())
+                    .append(",\"meanMicros\":").append(Math.round(histogram.getMean()))
+                    .append(",\"p50Micros\":").append(histogram.getPercentile(50))
+                    .append(",\"p90Micros\":").append(histogram.getPercentile(90))
+                    .append(",\"p99Micros\":").append(histogram.getPercentile(99))
+                    .append(",\"p999Micros\":").append(histogram.getPercentile(99.9))
+                    .append(",\"maxMicros\":").append(histogram.getMax()).append('}');
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String isoDate(Date date) {
+        return date == null ? null : date.toInstant().toString();
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + JsonUtil.quote(message) + "}";
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        try (InputStream in = exchange.getRequestBody()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private void send(HttpExchange exchange, int status, String json) throws IOException {
+        send(exchange, status, JSON, json);
+    }
+
+    private void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        // before the response, so that the next request of the gate already sees the write
+        rememberWrite(exchange.getRequestHeaders().getFirst(GATE_HEADER));
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * handler of the requests of one endpoint.
+     */
+    private interface Handler {
+        void handle(HttpExchange exchange) throws Exception;
+    }
+}
@@ -0,0 +1,333 @@
+package com.parkit.parkingsystem.metrics;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of the {@link OperationMetrics} of the services and of the requests to the database,
+ * read through JMX and in the text format of Prometheus.
+ * <p>
+ * The requests to the database are named after their constant in {@link DBConstants}, like
+ * {@code db.GET_TICKET_FOR_EXIT}; a SQL without constant is counted as {@code db.other}. Gauges and
+ * histograms kept by other classes can be added to the text output.
+ * </p>
+ * @author tlili
+ */
+public class MetricsRegistry {
+
+    private static final Logger logger = LogManager.getLogger("MetricsRegistry");
+
+    private static final String JMX_DOMAIN = "com.parkit.parkingsystem";
+    private static final String PREFIX = "parkit_";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final double MICROS_PER_SECOND = 1e6;
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private static volatile MetricsRegistry defaultRegistry;
+
+    private final MBeanServer mBeanServer;
+    private final Map<String, OperationMetrics> operations = new ConcurrentSkipListMap<>();
+    private final Map<String, String> queryNames = new ConcurrentHashMap<>();
+    private final Map<String, GaugeFamily> gauges = new ConcurrentSkipListMap<>();
+    private final Map<String, LatencyFamily> latencyFamilies = new ConcurrentSkipListMap<>();
+
+    /**
+     * create a registry not registered in JMX.
+     */
+    public MetricsRegistry() {
+        this(null);
+    }
+
+    /**
+     * @param mBeanServer the server where each operation is registered, null to not use JMX
+     */
+    public MetricsRegistry(MBeanServer mBeanServer) {
+        this.mBeanServer = mBeanServer;
+        registerQueries(DBConstants.class);
+    }
+
+    /**
+     * @return the registry of the application, in the platform MBean server unless the setting
+     * {@code metrics.jmx.enabled} is false
+     */
+    public static MetricsRegistry getDefault() {
+        MetricsRegistry registry = defaultRegistry;
+        if (registry == null) {
+            synchronized (MetricsRegistry.class) {
+                registry = defaultRegistry;
+                if (registry == null) {
+                    registry = new MetricsRegistry(DataBaseConfig.getBooleanProperty("metrics.jmx.enabled", true)
+                            ? ManagementFactory.getPlatformMBeanServer() : null);
+                    defaultRegistry = registry;
+                }
+            }
+        }
+        return registry;
+    }
+
+    /**
+     * name the requests to the database after the public String constants of a class.
+     *
+     * @param constants the class holding the SQL
+     */
+    public void registerQueries(Class<?> constants) {
+        for (Field field : constants.getFields()) {
+            if (Modifier.isStatic(field.getModifiers()) && field.getType() == String.class) {
+                try {
+                    queryNames.put((String) field.get(null), field.getName());
+                } catch (IllegalAccessException e) {
+                    logger.error("Unable to read the SQL of " + field, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * return the metrics of an operation, created at the first call.
+     *
+     * @param name the name of the operation, like {@code ParkingService.exit}
+     * @return the metrics to record the calls of the operation in
+     */
+    public OperationMetrics operation(String name) {
+        return operation(name, null);
+    }
+
+    /**
+     * return the metrics of the requests to the database with a SQL.
+     *
+     * @param sql the SQL of the prepared statement
+     * @return the metrics of the constant of the SQL, or of {@code db.other}
+     */
+    public OperationMetrics query(String sql) {
+        String name = queryNames.get(sql);
+        return operation("db." + (name == null ? "other" : name), OperationMetrics.Phase.DB);
+    }
+
+    /**
+     * return the metrics of an operation, created at the first call.
+     *
+     * @param name the name of the operation
+     * @param phase the phase the time of the operation is counted in, null if none
+     * @return the metrics to record the calls of the operation in
+     */
+    public OperationMetrics operation(String name, OperationMetrics.Phase phase) {
+        OperationMetrics metrics = operations.get(name);
+        if (metrics == null) {
+            OperationMetrics created = new OperationMetrics(name, phase);
+            metrics = operations.putIfAbsent(name, created);
+            if (metrics == null) {
+                registerMBean(created);
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * @return the operations recorded so far, by name
+     */
+    public Map<String, OperationMetrics> getOperations() {
+        return operations;
+    }
+
+    /**
+     * add a value read at each scrape, replacing the gauge of the same name.
+     *
+     * @param name the name of the gauge, without prefix, like {@code pool_active_connections}
+     * @param help the description of the gauge
+     * @param value the function reading the value
+     */
+    public void registerGauge(String name, String help, LongSupplier value) {
+        registerGauge(name, help, null, "", value);
+    }
+
+    /**
+     * add a value read at each scrape, one series by value of a label, like the lot, replacing the
+     * series of the same name and label value.
+     *
+     * @param name the name of the gauge, without prefix, like {@code pool_active_connections}
+     * @param help the description of the gauge
+     * @param label the name of the label, null for a gauge without label
+     * @param labelValue the value of the label of this series
+     * @param value the function reading the value
+     */
+    public void registerGauge(String name, String help, String label, String labelValue, LongSupplier value) {
+        gauges.computeIfAbsent(name, key -> new GaugeFamily(help, label)).values.put(labelValue, value);
+    }
+
+    /**
+     * add histograms kept by another class, one series by key, replacing the family of the same name.
+     *
+     * @param name the name of the family, without prefix, like {@code http_request_seconds}
+     * @param help the description of the family
+     * @param label the name of the label holding the key
+     * @param histograms the histograms by value of the label
+     */
+    public void registerLatencies(String name, String help, String label, Map<String, LatencyHistogram> histograms) {
+        latencyFamilies.put(name, new LatencyFamily(help, label, histograms));
+    }
+
+    /**
+     * write every metric in the text format 0.0.4 of Prometheus, the latencies in seconds.
+     *
+     * @return the text to serve to the scraper
+     */
+    public String toPrometheus() {
+        StringBuilder sb = new StringBuilder(256 * (operations.size() + 1));
+        family(sb, "operation_calls_total", "counter", "Calls of the operation.");
+        for (OperationMetrics metrics : operations.values()) {
+            sample(sb, "operation_calls_total", "operation", metrics.getName(), metrics.getCalls());
+        }
+        family(sb, "operation_errors_total", "counter", "Calls of the operation ended by an exception.");
+        for (OperationMetrics metrics : operations.values()) {
+            sample(sb, "operation_errors_total", "operation", metrics.getName(), metrics.getErrors());
+        }
+        family(sb, "operation_db_seconds_total", "counter", "Time spent in the database by the operation.");
+        for (OperationMetrics metrics : operations.values()) {
+            sample(sb, "operation_db_seconds_total", "operation", metrics.getName(),
+                    metrics.getDbNanos() / NANOS_PER_SECOND);
+        }
+        family(sb, "operation_fare_seconds_total", "counter", "Time spent pricing the tickets by the operation.");
+        for (OperationMetrics metrics : operations.values()) {
+            sample(sb, "operation_fare_seconds_total", "operation", metrics.getName(),
+                    metrics.getFareNanos() / NANOS_PER_SECOND);
+        }
+        family(sb, "operation_latency_seconds", "summary", "Latency of the operation.");
+        for (OperationMetrics metrics : operations.values()) {
+            summary(sb, "operation_latency_seconds", "operation", metrics.getName(), metrics.getLatencies());
+        }
+        family(sb, "operation_latency_max_seconds", "gauge", "Highest latency of the operation.");
+        for (OperationMetrics metrics : operations.values()) {
+            sample(sb, "operation_latency_max_seconds", "operation", metrics.getName(),
+                    metrics.getMaxMicros() / MICROS_PER_SECOND);
+        }
+        for (Map.Entry<String, LatencyFamily> entry : latencyFamilies.entrySet()) {
+            LatencyFamily latencyFamily = entry.getValue();
+            family(sb, entry.getKey(), "summary", latencyFamily.help);
+            for (Map.Entry<String, LatencyHistogram> histogram : latencyFamily.histograms.entrySet()) {
+                summary(sb, entry.getKey(), latencyFamily.label, histogram.getKey(), histogram.getValue());
+            }
+        }
+        for (Map.Entry<String, GaugeFamily> entry : gauges.entrySet()) {
+            GaugeFamily gaugeFamily = entry.getValue();
+            family(sb, entry.getKey(), "gauge", gaugeFamily.help);
+            for (Map.Entry<String, LongSupplier> value : gaugeFamily.values.entrySet()) {
+                if (gaugeFamily.label == null) {
+                    sb.append(PREFIX).append(entry.getKey()).append(' ').append(value.getValue().getAsLong()).append('\n');
+                } else {
+                    sample(sb, entry.getKey(), gaugeFamily.label, value.getKey(), value.getValue().getAsLong());
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * remove the operations from JMX.
+     */
+    public void close() {
+        if (mBeanServer == null) {
+            return;
+        }
+        for (OperationMetrics metrics : operations.values()) {
+            try {
+                mBeanServer.unregisterMBean(objectName(metrics));
+            } catch (JMException e) {
+                logger.debug("Operation " + metrics.getName() + " was not registered", e);
+            }
+        }
+    }
+
+    private void registerMBean(OperationMetrics metrics) {
+        if (mBeanServer == null) {
+            return;
+        }
+        try {
+            ObjectName objectName = objectName(metrics);
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+            mBeanServer.registerMBean(metrics, objectName);
+        } catch (JMException e) {
+            logger.error("Unable to register operation " + metrics.getName() + " in JMX", e);
+        }
+    }
+
+    private static ObjectName objectName(OperationMetrics metrics) throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=Operation,name=" + ObjectName.quote(metrics.getName()));
+    }
+
+    private static void family(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void summary(StringBuilder sb, String name, String label, String value, LatencyHistogram histogram) {
+        for (double quantile : QUANTILES) {
+            sb.append(PREFIX).append(name).append('{').append(label).append("=\"").append(escape(value))
+                    .append("\",quantile=\"").append(quantile).append("\"} ")
+                    .append(histogram.getPercentile(quantile * 100) / MICROS_PER_SECOND).append('\n');
+        }
+        sample(sb, name + "_sum", label, value, histogram.getSum() / MICROS_PER_SECOND);
+        sample(sb, name + "_count", label, value, histogram.getCount());
+    }
+
+    private static void sample(StringBuilder sb, String name, String label, String value, long sample) {
+        labels(sb, name, label, value).append(sample).append('\n');
+    }
+
+    private static void sample(StringBuilder sb, String name, String label, String value, double sample) {
+        labels(sb, name, label, value).append(sample).append('\n');
+    }
+
+    private static StringBuilder labels(StringBuilder sb, String name, String label, String value) {
+        return sb.append(PREFIX).append(name).append('{').append(label).append("=\"").append(escape(value))
+                .append("\"} ");
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * values read at each scrape, by value of the label.
+     */
+    private static final class GaugeFamily {
+        private final String help;
+        private final String label;
+        private final Map<String, LongSupplier> values = new ConcurrentSkipListMap<>();
+
+        private GaugeFamily(String help, String label) {
+            this.help = help;
+            this.label = label;
+        }
+    }
+
+    /**
+     * histograms of the same family kept by another class.
+     */
+    private static final class LatencyFamily {
+        private final String help;
+        private final String label;
+        private final Map<String, LatencyHistogram> histograms;
+
+        private LatencyFamily(String help, String label, Map<String, LatencyHistogram> histograms) {
+            this.help = help;
+            this.label = label;
+            this.histograms = histograms;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.parkit.parkingsystem.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Calls, errors and latencies of one operation, with the time its calls spent in the database and
+ * pricing the tickets.
+ * <p>
+ * The recording takes no lock: the latencies go to a {@link LatencyHistogram}, the counters to
+ * {@link LongAdder}s. The operations of a {@link Phase} (the requests to the database, the pricing)
+ * also add their time to a counter of the thread, so an operation calling them, timed by a
+ * {@link Timer}, gets the part of its latency spent in each phase.
+ * </p>
+ * @author tlili
+ */
+public class OperationMetrics implements OperationMetricsMXBean {
+
+    /**
+     * part of the latency of an operation counted apart.
+     */
+    public enum Phase {
+        DB,
+        FARE
+    }
+
+    // time spent in each phase by the current thread, only ever written by that thread
+    private static final ThreadLocal<long[]> phaseNanos =
+            ThreadLocal.withInitial(() -> new long[Phase.values().length]);
+
+    private final String name;
+    private final Phase phase;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder dbNanos = new LongAdder();
+    private final LongAdder fareNanos = new LongAdder();
+
+    /**
+     * @param name the name of the operation, like {@code ParkingService.exit}
+     * @param phase the phase the time of the operation belongs to, null if none
+     */
+    public OperationMetrics(String name, Phase phase) {
+        this.name = name;
+        this.phase = phase;
+    }
+
+    /**
+     * start timing a call of the operation on the current thread.
+     *
+     * @return the timer to close at the end of the call
+     */
+    public Timer start() {
+        return new Timer();
+    }
+
+    /**
+     * record a call timed by the caller.
+     *
+     * @param nanos the latency of the call in nanoseconds
+     * @param failed true if the call ended with an exception
+     */
+    public void record(long nanos, boolean failed) {
+        record(nanos, failed, 0, 0);
+    }
+
+    private void record(long nanos, boolean failed, long dbDelta, long fareDelta) {
+        latencies.recordNanos(nanos);
+        if (failed) {
+            errors.increment();
+        }
+        if (phase == Phase.DB) {
+            dbDelta = nanos;
+        } else if (phase == Phase.FARE) {
+            fareDelta = nanos;
+        }
+        if (dbDelta > 0) {
+            dbNanos.add(dbDelta);
+        }
+        if (fareDelta > 0) {
+            fareNanos.add(fareDelta);
+        }
+        if (phase != null) {
+            phaseNanos.get()[phase.ordinal()] += nanos;
+        }
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCalls() {
+        return latencies.getCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return latencies.getMean();
+    }
+
+    @Override
+    public long getP50Micros() {
+        return latencies.getPercentile(50);
+    }
+
+    @Override
+    public long getP90Micros() {
+        return latencies.getPercentile(90);
+    }
+
+    @Override
+    public long getP99Micros() {
+        return latencies.getPercentile(99);
+    }
+
+    @Override
+    public long getP999Micros() {
+        return latencies.getPercentile(99.9);
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return latencies.getMax();
+    }
+
+    public long getDbNanos() {
+        return dbNanos.sum();
+    }
+
+    public long getFareNanos() {
+        return fareNanos.sum();
+    }
+
+    @Override
+    public double getDbMillis() {
+        return getDbNanos() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public double getFareMillis() {
+        return getFareNanos() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        return "OperationMetrics[" + name + ", calls=" + getCalls() + ", errors=" + getErrors()
+                + ", latencies=" + latencies + "]";
+    }
+
+    /**
+     * one call of the operation in progress on a thread, closed at its end:
+     * <pre>
+     * try (OperationMetrics.Timer timer = metrics.start()) {
+     *     return timer.succeeded(call());
+     * }
+     * </pre>
+     * A call closed without {@link #succeeded()} is counted as an error.
+     */
+    public final class Timer implements AutoCloseable {
+        private final long[] threadPhaseNanos = phaseNanos.get();
+        private final long dbStart = threadPhaseNanos[Phase.DB.ordinal()];
+        private final long fareStart = threadPhaseNanos[Phase.FARE.ordinal()];
+        private final long startNanos = System.nanoTime();
+        private boolean succeeded;
+
+        private Timer() {
+        }
+
+        /**
+         * mark the call as succeeded.
+         */
+        public void succeeded() {
+            succeeded = true;
+        }
+
+        /**
+         * mark the call as succeeded.
+         *
+         * @param result the result of the call
+         * @param <T> the type of the result
+         * @return the result, unchanged
+         */
+        public <T> T succeeded(T result) {
+            succeeded = true;
+            return result;
+        }
+
+        @Override
+        public void close() {
+            long nanos = System.nanoTime() - startNanos;
+            record(nanos, !succeeded, threadPhaseNanos[Phase.DB.ordinal()] - dbStart,
+                    threadPhaseNanos[Phase.FARE.ordinal()] - fareStart);
+        }
+    }
+}
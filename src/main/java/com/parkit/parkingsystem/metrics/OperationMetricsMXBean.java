@@ -0,0 +1,37 @@
+package com.parkit.parkingsystem.metrics;
+
+/**
+ * Counters and latencies of one operation, as seen from JMX under
+ * {@code com.parkit.parkingsystem:type=Operation,name=<operation>}.
+ * @author tlili
+ */
+public interface OperationMetricsMXBean {
+
+    String getName();
+
+    long getCalls();
+
+    long getErrors();
+
+    double getMeanMicros();
+
+    long getP50Micros();
+
+    long getP90Micros();
+
+    long getP99Micros();
+
+    long getP999Micros();
+
+    long getMaxMicros();
+
+    /**
+     * @return the time spent in the database during the calls, in milliseconds
+     */
+    double getDbMillis();
+
+    /**
+     * @return the time spent pricing the tickets during the calls, in milliseconds
+     */
+    double getFareMillis();
+}
@@ -0,0 +1,103 @@
+package com.parkit.parkingsystem.model;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+/**
+ * represent a chunk of closed tickets to price again, stored by columns.
+ * <p>
+ * The arrays are allocated once and filled again for each chunk read from the database, so pricing
+ * millions of tickets creates no object per ticket.
+ * </p>
+ */
+public class ClosedTicketChunk {
+    private final int[] ids;
+    private final ParkingType[] parkingTypes;
+    private final long[] inTimes;
+    private final long[] outTimes;
+    private final boolean[] recurringUsers;
+    private final long[] priceCents;
+    private final boolean[] archived;
+    private int size;
+
+    public ClosedTicketChunk(int capacity) {
+        ids = new int[capacity];
+        parkingTypes = new ParkingType[capacity];
+        inTimes = new long[capacity];
+        outTimes = new long[capacity];
+        recurringUsers = new boolean[capacity];
+        priceCents = new long[capacity];
+        archived = new boolean[capacity];
+    }
+
+    /**
+     * add a ticket of the table ticket at the end of the chunk.
+     *
+     * @return false if the chunk is full
+     */
+    public boolean add(int id, ParkingType parkingType, long inTime, long outTime, boolean recurringUser,
+                       long price) {
+        return add(id, parkingType, inTime, outTime, recurringUser, price, false);
+    }
+
+    /**
+     * add a ticket at the end of the chunk.
+     *
+     * @param archived true if the ticket was read from the table ticket_archive
+     * @return false if the chunk is full
+     */
+    public boolean add(int id, ParkingType parkingType, long inTime, long outTime, boolean recurringUser,
+                       long price, boolean archived) {
+        if (size == ids.length) {
+            return false;
+        }
+        ids[size] = id;
+        parkingTypes[size] = parkingType;
+        inTimes[size] = inTime;
+        outTimes[size] = outTime;
+        recurringUsers[size] = recurringUser;
+        priceCents[size] = price;
+        this.archived[size] = archived;
+        size++;
+        return true;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == ids.length;
+    }
+
+    public int getId(int index) {
+        return ids[index];
+    }
+
+    public ParkingType getParkingType(int index) {
+        return parkingTypes[index];
+    }
+
+    public long getInTime(int index) {
+        return inTimes[index];
+    }
+
+    public long getOutTime(int index) {
+        return outTimes[index];
+    }
+
+    public boolean isRecurringUser(int index) {
+        return recurringUsers[index];
+    }
+
+    public long getPriceCents(int index) {
+        return priceCents[index];
+    }
+
+    public boolean isArchived(int index) {
+        return archived[index];
+    }
+}
@@ -0,0 +1,116 @@
+package com.parkit.parkingsystem.model;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.Date;
+
+/**
+ * represent the answer of the park to a vehicle at the entry gate.
+ * <p>
+ * The result is immutable, so it can be handed to another thread of the gate as is.
+ * </p>
+ * @author tlili
+ */
+public final class EntryResult {
+
+    private final String lotId;
+    private final boolean entered;
+    private final int ticketId;
+    private final int parkingNumber;
+    private final ParkingType parkingType;
+    private final String vehicleRegNumber;
+    private final long inTimeMillis;
+
+    private EntryResult(String lotId, boolean entered, int ticketId, int parkingNumber, ParkingType parkingType,
+                        String vehicleRegNumber, long inTimeMillis) {
+        this.lotId = lotId;
+        this.entered = entered;
+        this.ticketId = ticketId;
+        this.parkingNumber = parkingNumber;
+        this.parkingType = parkingType;
+        this.vehicleRegNumber = vehicleRegNumber;
+        this.inTimeMillis = inTimeMillis;
+    }
+
+    /**
+     * return the result of a vehicle let in.
+     *
+     * @param ticket the saved ticket of the vehicle
+     * @return the result giving the spot of the vehicle
+     */
+    public static EntryResult entered(Ticket ticket) {
+        return new EntryResult(ticket.getLotId(), true, ticket.getId(), ticket.getParkingSpot().getId(),
+                ticket.getParkingSpot().getParkingType(), ticket.getVehicleRegNumber(), ticket.getInTime().getTime());
+    }
+
+    /**
+     * return the result of a vehicle refused because no spot of its type is free.
+     *
+     * @param parkingType the type of the vehicle
+     * @param vehicleRegNumber the number plate of the vehicle
+     * @param inTime the time the vehicle came
+     * @return the result without spot
+     */
+    public static EntryResult parkFull(ParkingType parkingType, String vehicleRegNumber, Date inTime) {
+        return parkFull(null, parkingType, vehicleRegNumber, inTime);
+    }
+
+    /**
+     * return the result of a vehicle refused because no spot of its type is free in a lot.
+     *
+     * @param lotId the lot the vehicle came to
+     * @param parkingType the type of the vehicle
+     * @param vehicleRegNumber the number plate of the vehicle
+     * @param inTime the time the vehicle came
+     * @return the result without spot
+     */
+    public static EntryResult parkFull(String lotId, ParkingType parkingType, String vehicleRegNumber, Date inTime) {
+        return new EntryResult(lotId, false, 0, -1, parkingType, vehicleRegNumber, inTime.getTime());
+    }
+
+    /**
+     * @return the lot the vehicle came to, null if not known
+     */
+    public String getLotId() {
+        return lotId;
+    }
+
+    /**
+     * @return true if the vehicle has a spot, false if the park is full
+     */
+    public boolean isEntered() {
+        return entered;
+    }
+
+    /**
+     * @return the id of the ticket, 0 if the park is full or the ticket is not written yet
+     */
+    public int getTicketId() {
+        return ticketId;
+    }
+
+    /**
+     * @return the number of the spot of the vehicle, -1 if the park is full
+     */
+    public int getParkingNumber() {
+        return parkingNumber;
+    }
+
+    public ParkingType getParkingType() {
+        return parkingType;
+    }
+
+    public String getVehicleRegNumber() {
+        return vehicleRegNumber;
+    }
+
+    public Date getInTime() {
+        return new Date(inTimeMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "EntryResult[lotId=" + lotId + ", entered=" + entered + ", parkingNumber=" + parkingNumber + ", parkingType=" + parkingType
+                + ", vehicleRegNumber=" + vehicleRegNumber + ", inTime=" + getInTime() + "]";
+    }
+}
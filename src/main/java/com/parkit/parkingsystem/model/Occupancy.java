@@ -0,0 +1,50 @@
+package com.parkit.parkingsystem.model;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+/**
+ * represent the occupancy of the spots of one type of vehicle at a point in time.
+ * @author tlili
+ */
+public final class Occupancy {
+
+    private final ParkingType parkingType;
+    private final int total;
+    private final int available;
+
+    public Occupancy(ParkingType parkingType, int total, int available) {
+        this.parkingType = parkingType;
+        this.total = total;
+        this.available = available;
+    }
+
+    public ParkingType getParkingType() {
+        return parkingType;
+    }
+
+    /**
+     * @return the number of spots of the type
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * @return the number of free spots of the type
+     */
+    public int getAvailable() {
+        return available;
+    }
+
+    /**
+     * @return the number of spots of the type taken by a vehicle
+     */
+    public int getOccupied() {
+        return total - available;
+    }
+
+    @Override
+    public String toString() {
+        return "Occupancy[" + parkingType + ", total=" + total + ", available=" + available + "]";
+    }
+}
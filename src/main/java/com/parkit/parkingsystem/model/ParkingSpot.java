@@ -2,20 +2,40 @@ package com.parkit.parkingsystem.model;
 
 import com.parkit.parkingsystem.constants.ParkingType;
 
+import java.util.Objects;
+
 /**
  * represent the parking space in the park.
+ * <p>
+ * The spots are numbered in each lot: the spot is identified by its lot and its number. A spot
+ * without lot is not yet given to a lot and is accepted by the database of any lot.
+ * </p>
  */
 public class ParkingSpot {
+    private String lotId;
     private int number;
     private ParkingType parkingType;
     private boolean isAvailable;
 
     public ParkingSpot(int number, ParkingType parkingType, boolean isAvailable) {
+        this(null, number, parkingType, isAvailable);
+    }
+
+    public ParkingSpot(String lotId, int number, ParkingType parkingType, boolean isAvailable) {
+        this.lotId = lotId;
         this.number = number;
         this.parkingType = parkingType;
         this.isAvailable = isAvailable;
     }
 
+    public String getLotId() {
+        return lotId;
+    }
+
+    public void setLotId(String lotId) {
+        this.lotId = lotId;
+    }
+
     public int getId() {
         return number;
     }
@@ -45,11 +65,11 @@ public class ParkingSpot {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ParkingSpot that = (ParkingSpot) o;
-        return number == that.number;
+        return number == that.number && Objects.equals(lotId, that.lotId);
     }
 
     @Override
     public int hashCode() {
-        return number;
+        return 31 * Objects.hashCode(lotId) + number;
     }
 }
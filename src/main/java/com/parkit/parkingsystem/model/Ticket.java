@@ -5,10 +5,11 @@ import java.util.Date;
 
 
 /**
- * represent the ticket of a parked vehicle.
+ * represent the ticket of a parked vehicle, in the lot of its parking spot.
  */
 
 public class Ticket {
+    private String lotId;
     private int id;
     private ParkingSpot parkingSpot;
     private String vehicleRegNumber;
@@ -17,6 +18,17 @@ public class Ticket {
     private Date outTime;
     private boolean isRecurringUser;
 
+    /**
+     * @return the lot of the ticket, null while it is not given to a lot
+     */
+    public String getLotId() {
+        return lotId;
+    }
+
+    public void setLotId(String lotId) {
+        this.lotId = lotId;
+    }
+
     public int getId() {
         return id;
     }
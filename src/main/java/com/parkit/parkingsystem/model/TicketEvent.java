@@ -0,0 +1,191 @@
+package com.parkit.parkingsystem.model;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.Date;
+
+/**
+ * represent a fact of the life of a ticket, as appended to the event log: a vehicle entered or
+ * a vehicle exited the park.
+ * <p>
+ * The events are immutable and carry everything needed to rebuild the state of the park and the
+ * rows of the tables without computing anything again: the price and the recurring user flag of
+ * an exit are the ones given to the driver.
+ * </p>
+ * @author tlili
+ */
+public final class TicketEvent {
+
+    /**
+     * the kinds of event, with the code written in the log.
+     */
+    public enum Type {
+        VEHICLE_ENTERED('E'),
+        VEHICLE_EXITED('X');
+
+        private final byte code;
+
+        Type(char code) {
+            this.code = (byte) code;
+        }
+
+        public byte getCode() {
+            return code;
+        }
+
+        /**
+         * @param code the code read from the log
+         * @return the type of this code
+         * @throws IllegalArgumentException if the code is unknown
+         */
+        public static Type fromCode(byte code) {
+            for (Type type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Unknown ticket event code " + code);
+        }
+    }
+
+    private final Type type;
+    private final long seq;
+    private final int ticketId;
+    private final int parkingNumber;
+    private final ParkingType parkingType;
+    private final String vehicleRegNumber;
+    private final long inTimeMillis;
+    private final long outTimeMillis;
+    private final double price;
+    private final boolean recurringUser;
+
+    private TicketEvent(Type type, long seq, int ticketId, int parkingNumber, ParkingType parkingType,
+                        String vehicleRegNumber, long inTimeMillis, long outTimeMillis, double price,
+                        boolean recurringUser) {
+        this.type = type;
+        this.seq = seq;
+        this.ticketId = ticketId;
+        this.parkingNumber = parkingNumber;
+        this.parkingType = parkingType;
+        this.vehicleRegNumber = vehicleRegNumber;
+        this.inTimeMillis = inTimeMillis;
+        this.outTimeMillis = outTimeMillis;
+        this.price = price;
+        this.recurringUser = recurringUser;
+    }
+
+    /**
+     * create the event of a vehicle given a spot at the entry gate.
+     *
+     * @param seq the position of the event in the log
+     * @param ticketId the id of the new ticket
+     * @param parkingNumber the number of the spot taken
+     * @param parkingType the type of the spot
+     * @param vehicleRegNumber the number plate of the vehicle
+     * @param inTimeMillis the time of entry
+     * @return the event
+     */
+    public static TicketEvent vehicleEntered(long seq, int ticketId, int parkingNumber, ParkingType parkingType,
+                                             String vehicleRegNumber, long inTimeMillis) {
+        return new TicketEvent(Type.VEHICLE_ENTERED, seq, ticketId, parkingNumber, parkingType, vehicleRegNumber,
+                inTimeMillis, -1, 0, false);
+    }
+
+    /**
+     * create the event of a vehicle leaving the park with its priced ticket.
+     *
+     * @param seq the position of the event in the log
+     * @param ticket the closed ticket, with its out time, price and recurring user flag
+     * @return the event
+     */
+    public static TicketEvent vehicleExited(long seq, Ticket ticket) {
+        return vehicleExited(seq, ticket.getId(), ticket.getParkingSpot().getId(),
+                ticket.getParkingSpot().getParkingType(), ticket.getVehicleRegNumber(), ticket.getInTime().getTime(),
+                ticket.getOutTime().getTime(), ticket.getPrice(), ticket.getIsRecurringUser());
+    }
+
+    /**
+     * create the event of a vehicle leaving the park.
+     *
+     * @param seq the position of the event in the log
+     * @param ticketId the id of the ticket closed
+     * @param parkingNumber the number of the spot freed
+     * @param parkingType the type of the spot
+     * @param vehicleRegNumber the number plate of the vehicle
+     * @param inTimeMillis the time of entry
+     * @param outTimeMillis the time of exit
+     * @param price the fare paid
+     * @param recurringUser true if the discount of the recurring users was given
+     * @return the event
+     */
+    public static TicketEvent vehicleExited(long seq, int ticketId, int parkingNumber, ParkingType parkingType,
+                                            String vehicleRegNumber, long inTimeMillis, long outTimeMillis,
+                                            double price, boolean recurringUser) {
+        return new TicketEvent(Type.VEHICLE_EXITED, seq, ticketId, parkingNumber, parkingType, vehicleRegNumber,
+                inTimeMillis, outTimeMillis, price, recurringUser);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public int getTicketId() {
+        return ticketId;
+    }
+
+    public int getParkingNumber() {
+        return parkingNumber;
+    }
+
+    public ParkingType getParkingType() {
+        return parkingType;
+    }
+
+    public String getVehicleRegNumber() {
+        return vehicleRegNumber;
+    }
+
+    public long getInTimeMillis() {
+        return inTimeMillis;
+    }
+
+    /**
+     * @return the time of exit, -1 for an entry
+     */
+    public long getOutTimeMillis() {
+        return outTimeMillis;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public boolean isRecurringUser() {
+        return recurringUser;
+    }
+
+    /**
+     * @return a new ticket with the values of the event, owned by the caller
+     */
+    public Ticket toTicket() {
+        Ticket ticket = new Ticket();
+        ticket.setId(ticketId);
+        ticket.setParkingSpot(new ParkingSpot(parkingNumber, parkingType, type == Type.VEHICLE_EXITED));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setPrice(price);
+        ticket.setInTime(new Date(inTimeMillis));
+        ticket.setOutTime(outTimeMillis < 0 ? null : new Date(outTimeMillis));
+        ticket.setIsRecurringUser(recurringUser);
+        return ticket;
+    }
+
+    @Override
+    public String toString() {
+        return "TicketEvent[" + type + ", seq=" + seq + ", ticketId=" + ticketId + ", parkingNumber=" + parkingNumber
+                + ", vehicleRegNumber=" + vehicleRegNumber + "]";
+    }
+}
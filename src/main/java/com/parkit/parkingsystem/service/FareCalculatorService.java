@@ -1,50 +1,84 @@
 package com.parkit.parkingsystem.service;
 
+import com.parkit.parkingsystem.config.TariffProvider;
+import com.parkit.parkingsystem.config.TariffTable;
 import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.metrics.OperationMetrics;
 import com.parkit.parkingsystem.model.Ticket;
 
 import java.util.concurrent.TimeUnit;
 
 /**
  * Service of calculation of fare for a use of park for any vehicule with it's ticket.
+ * <p>
+ * The fare is computed in integer cents with the {@link TariffTable} in use, with one rounding half
+ * up to the cent at the end: the same stay always gives the same amount, and pricing millions of
+ * tickets allocates nothing.
+ * </p>
  */
 
  public class FareCalculatorService {
 
-    private static final double ONE_HOUR_MILLIS = TimeUnit.HOURS.toMillis(1L);
-    private static final double HALF_HOUR_MILLIS = TimeUnit.MINUTES.toMillis(30L);
+    private static final long ONE_HOUR_MILLIS = TimeUnit.HOURS.toMillis(1L);
+    private static final long HALF_HOUR_MILLIS = TimeUnit.MINUTES.toMillis(30L);
+
+    private static final OperationMetrics fareMetrics = MetricsRegistry.getDefault()
+            .operation("FareCalculatorService.calculateFare", OperationMetrics.Phase.FARE);
+
+    private final TariffProvider tariffProvider;
+
+    public FareCalculatorService() {
+        this(TariffProvider.getDefault());
+    }
+
+    public FareCalculatorService(TariffProvider tariffProvider) {
+        this.tariffProvider = tariffProvider;
+    }
 
     public void calculateFare(Ticket ticket){
-        if( (ticket.getOutTime() == null) || (ticket.getOutTime().before(ticket.getInTime())) ){
-            throw new IllegalArgumentException("Out time provided is incorrect:"+ticket.getOutTime());
+        try (OperationMetrics.Timer timer = fareMetrics.start()) {
+            if( (ticket.getOutTime() == null) || (ticket.getOutTime().before(ticket.getInTime())) ){
+                throw new IllegalArgumentException("Out time provided is incorrect:"+ticket.getOutTime());
+            }
+            long cents = calculateFareCents(ticket.getParkingSpot().getParkingType(), ticket.getInTime().getTime(),
+                    ticket.getOutTime().getTime(), ticket.getIsRecurringUser());
+            ticket.setPrice(cents / 100.0);
+            timer.succeeded();
         }
+    }
 
-        long durationMillis = ticket.getOutTime().getTime() - ticket.getInTime().getTime();
+    /**
+     * calculate the fare of a stay in cents.
+     *
+     * @param parkingType the type of the vehicle
+     * @param inTimeMillis the time of entry, in milliseconds since the epoch
+     * @param outTimeMillis the time of exit, in milliseconds since the epoch
+     * @param recurringUser true to apply the discount of the recurring users
+     * @return the fare in cents, rounded half up
+     */
+    public long calculateFareCents(ParkingType parkingType, long inTimeMillis, long outTimeMillis,
+                                   boolean recurringUser) {
+        if (outTimeMillis < inTimeMillis) {
+            throw new IllegalArgumentException("Out time provided is incorrect:" + outTimeMillis);
+        }
+        long durationMillis = outTimeMillis - inTimeMillis;
 
         if (durationMillis <= HALF_HOUR_MILLIS) {
             // <=30min is free
-            ticket.setPrice(0);
-            return;
+            return 0;
         }
 
-        double rate;
-        switch (ticket.getParkingSpot().getParkingType()) {
-            case CAR: {
-                rate = Fare.CAR_RATE_PER_HOUR;
-                break;
-            }
-            case BIKE: {
-                rate = Fare.BIKE_RATE_PER_HOUR;
-                break;
-            }
-            default:
-                throw new IllegalArgumentException("Unkown Parking Type");
+        if (parkingType == null) {
+            throw new NullPointerException("Parking type of the ticket is missing");
         }
-
-        ticket.setPrice(durationMillis / ONE_HOUR_MILLIS * rate);
-
-        if (ticket.getIsRecurringUser()) {
-            ticket.setPrice(Fare.roundedFare(ticket.getPrice() * 0.95));
+        long numerator = tariffProvider.get().cost(parkingType, inTimeMillis, outTimeMillis);
+        long denominator = ONE_HOUR_MILLIS;
+        if (recurringUser) {
+            numerator *= Fare.RECURRING_USER_PERCENT;
+            denominator *= 100;
         }
+        return (numerator + denominator / 2) / denominator;
     }
 }
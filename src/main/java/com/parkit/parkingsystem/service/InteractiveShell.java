@@ -1,7 +1,5 @@
 package com.parkit.parkingsystem.service;
 
-import com.parkit.parkingsystem.dao.ParkingSpotDAO;
-import com.parkit.parkingsystem.dao.TicketDAO;
 import com.parkit.parkingsystem.util.InputReaderUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -21,9 +19,9 @@ import org.apache.logging.log4j.Logger;
 
         boolean continueApp = true;
         InputReaderUtil inputReaderUtil = new InputReaderUtil();
-        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
-        TicketDAO ticketDAO = new TicketDAO();
-        ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+        ParkingSystem parkingSystem = ParkingSystem.start();
+        ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSystem.getParkingSpotDAO(),
+                parkingSystem.getTicketDAO(), parkingSystem.getTicketEventStore());
 
         while(continueApp){
             loadMenu();
@@ -39,6 +37,7 @@ import org.apache.logging.log4j.Logger;
                 }
                 case 3: {
                     System.out.println("Exiting from the system!");
+                    parkingSystem.close();
                     continueApp = false;
                     break;
                 }
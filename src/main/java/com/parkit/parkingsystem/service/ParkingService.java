@@ -1,9 +1,14 @@
 package com.parkit.parkingsystem.service;
 
-import com.parkit.parkingsystem.constants.Fare;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ParkingTransaction;
 import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.eventlog.TicketEventStore;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.metrics.OperationMetrics;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.Occupancy;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
 import com.parkit.parkingsystem.util.InputReaderUtil;
@@ -11,71 +16,204 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
 
 /**
  * Services to control the access of vehicle in the park.
+ * <p>
+ * A service serves one lot, the lot of its DAOs: the tickets and spots it returns carry the lot, and
+ * the {@link com.parkit.parkingsystem.config.ShardRouter} of the {@link ParkingSystem} gives the
+ * service of each lot.
+ * </p>
+ * <p>
+ * {@link #enter(ParkingType, String, Date)} and {@link #exit(String, Date)} take their input as
+ * arguments and keep no state between calls: one service can serve many gates from many threads.
+ * The {@code process} methods are the adapter of the console, reading the input with
+ * {@link InputReaderUtil} and printing the answers.
+ * </p>
+ * <p>
+ * With a {@link TicketEventStore} the entries and exits are recorded in its event log and the
+ * DAOs are no longer asked; the tables are then updated in the background.
+ * </p>
+ * <p>
+ * The calls of the gates are timed in the default {@link MetricsRegistry}, with the part of their
+ * latency spent in the database and pricing the ticket.
+ * </p>
  */
 
  public class ParkingService {
 
     private static final Logger logger = LogManager.getLogger("ParkingService");
 
-    private static FareCalculatorService fareCalculatorService = new FareCalculatorService();
+    private static final FareCalculatorService fareCalculatorService = new FareCalculatorService();
 
-    private InputReaderUtil inputReaderUtil;
-    private ParkingSpotDAO parkingSpotDAO;
-    private  TicketDAO ticketDAO;
+    private static final OperationMetrics enterMetrics = MetricsRegistry.getDefault().operation("ParkingService.enter");
+    private static final OperationMetrics exitMetrics = MetricsRegistry.getDefault().operation("ParkingService.exit");
+    private static final OperationMetrics availabilityMetrics =
+            MetricsRegistry.getDefault().operation("ParkingService.countAvailableSpots");
+    private static final OperationMetrics occupancyMetrics =
+            MetricsRegistry.getDefault().operation("ParkingService.getOccupancy");
+
+    private final InputReaderUtil inputReaderUtil;
+    private final ParkingSpotDAO parkingSpotDAO;
+    private final TicketDAO ticketDAO;
+    private final TicketEventStore ticketEventStore;
 
     public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO){
+        this(inputReaderUtil, parkingSpotDAO, ticketDAO, null);
+    }
+
+    /**
+     * create a service recording the entries and exits in an event log.
+     *
+     * @param inputReaderUtil the reader of the console, null without console
+     * @param parkingSpotDAO the DAO of the spots
+     * @param ticketDAO the DAO of the tickets
+     * @param ticketEventStore the event log of the entries and exits, null to write the tables directly
+     */
+    public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO,
+                          TicketEventStore ticketEventStore){
         this.inputReaderUtil = inputReaderUtil;
         this.parkingSpotDAO = parkingSpotDAO;
         this.ticketDAO = ticketDAO;
+        this.ticketEventStore = ticketEventStore;
+    }
+
+    /**
+     * create a service without console, driven by {@link #enter(ParkingType, String, Date)} and
+     * {@link #exit(String, Date)} only.
+     *
+     * @param parkingSpotDAO the DAO of the spots
+     * @param ticketDAO the DAO of the tickets
+     */
+    public ParkingService(ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO){
+        this(null, parkingSpotDAO, ticketDAO);
+    }
+
+    /**
+     * @return the lot served, the one of the database of the tickets
+     */
+    public String getLotId() {
+        return ticketDAO.getLotId();
     }
 
+    /**
+     * register a vehicle entering the park.
+     * <p>
+     * The type and the registration number are read first, then the spot is claimed and the
+     * ticket saved in one transaction: both are written or none of them.
+     * </p>
+     */
     public void processIncomingVehicle() {
         try{
-            ParkingSpot parkingSpot = getNextParkingNumberIfAvailable();
-            if(parkingSpot !=null && parkingSpot.getId() > 0){
-                String vehicleRegNumber = getVehichleRegNumber();
-                parkingSpot.setAvailable(false);
-                parkingSpotDAO.updateParking(parkingSpot);//allot this parking space and mark it's availability as false
-
-                Date inTime = new Date();
-                Ticket ticket = new Ticket();
-                //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
-                //ticket.setId(ticketID);
-                ticket.setParkingSpot(parkingSpot);
-                ticket.setVehicleRegNumber(vehicleRegNumber);
-                ticket.setPrice(0);
-                ticket.setInTime(inTime);
-                ticket.setOutTime(null);
-                ticketDAO.saveTicket(ticket);
-                System.out.println("Generated Ticket and saved in DB");
-                System.out.println("Please park your vehicle in spot number:"+parkingSpot.getId());
-                System.out.println("Recorded in-time for vehicle number:"+vehicleRegNumber+" is:"+inTime);
+            ParkingType parkingType = getVehichleType();
+            String vehicleRegNumber = getVehichleRegNumber();
+            EntryResult result = enter(parkingType, vehicleRegNumber, new Date());
+            if (!result.isEntered()) {
+                return;
             }
+            System.out.println("Generated Ticket and saved in DB");
+            System.out.println("Please park your vehicle in spot number:"+result.getParkingNumber());
+            System.out.println("Recorded in-time for vehicle number:"+vehicleRegNumber+" is:"+result.getInTime());
         }catch(Exception e){
             logger.error("Unable to process incoming vehicle",e);
         }
     }
 
+    /**
+     * register a vehicle entering the park now, without reading the console.
+     *
+     * @param parkingType the type of the vehicle
+     * @param vehicleRegNumber the number plate of the vehicle
+     * @return the spot given to the vehicle, or a result not entered if the park is full
+     * @throws IllegalStateException if the ticket is refused, nothing is then written
+     * @throws Exception if the ticket can't be saved, nothing is then written
+     */
+    public EntryResult enter(ParkingType parkingType, String vehicleRegNumber) throws Exception {
+        return enter(parkingType, vehicleRegNumber, new Date());
+    }
+
+    /**
+     * register a vehicle entering the park, without reading the console.
+     * <p>
+     * The spot is claimed and the ticket saved in one transaction: both are written or none of
+     * them. Several gates can call it at the same time.
+     * </p>
+     *
+     * @param parkingType the type of the vehicle
+     * @param vehicleRegNumber the number plate of the vehicle
+     * @param inTime the time of entry of the vehicle
+     * @return the spot given to the vehicle, or a result not entered if the park is full
+     * @throws IllegalArgumentException if the type or the plate is missing, or with an event log if
+     * the vehicle is already in the park
+     * @throws IllegalStateException if the ticket is refused, nothing is then written
+     * @throws Exception if the ticket can't be saved, nothing is then written
+     */
+    public EntryResult enter(ParkingType parkingType, String vehicleRegNumber, Date inTime) throws Exception {
+        try (OperationMetrics.Timer timer = enterMetrics.start()) {
+            return timer.succeeded(recordEntry(parkingType, vehicleRegNumber, inTime));
+        }
+    }
+
+    private EntryResult recordEntry(ParkingType parkingType, String vehicleRegNumber, Date inTime) throws Exception {
+        if (parkingType == null) {
+            throw new IllegalArgumentException("Type of vehicle is required");
+        }
+        vehicleRegNumber = normalizeVehicleRegNumber(vehicleRegNumber);
+        if (ticketEventStore != null) {
+            return ticketEventStore.enter(parkingType, vehicleRegNumber, inTime);
+        }
+        try (ParkingTransaction transaction = ticketDAO.beginTransaction()) {
+            ParkingSpot parkingSpot = parkingSpotDAO.claimNextAvailableSlot(transaction, parkingType);
+            if(parkingSpot == null || parkingSpot.getId() <= 0){
+                logger.error("Error fetching parking number from DB. Parking slots might be full");
+                return EntryResult.parkFull(getLotId(), parkingType, vehicleRegNumber, inTime);
+            }
+            Ticket ticket = new Ticket();
+            ticket.setLotId(parkingSpot.getLotId());
+            //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
+            //ticket.setId(ticketID);
+            ticket.setParkingSpot(parkingSpot);
+            ticket.setVehicleRegNumber(vehicleRegNumber);
+            ticket.setPrice(0);
+            ticket.setInTime(inTime);
+            ticket.setOutTime(null);
+            if (!ticketDAO.saveTicket(transaction, ticket)) {
+                // the transaction is rolled back on close, the spot stays available
+                throw new IllegalStateException("Unable to save ticket of vehicle number:" + vehicleRegNumber);
+            }
+            transaction.commit();
+            return EntryResult.entered(ticket);
+        }
+    }
+
     private String getVehichleRegNumber() throws Exception {
         System.out.println("Please type the vehicle registration number and press enter key");
         return inputReaderUtil.readVehicleRegistrationNumber();
     }
 
+    /**
+     * read the next available parking spot for the type of vehicle typed by the user.
+     * <p>
+     * Nothing is written: the spot is only taken by an entry, see
+     * {@link #enter(ParkingType, String, Date)}, so another gate may give it first.
+     * </p>
+     *
+     * @return the available parking spot, or null if none is available
+     */
     public ParkingSpot getNextParkingNumberIfAvailable(){
-        int parkingNumber=0;
         ParkingSpot parkingSpot = null;
         try{
             ParkingType parkingType = getVehichleType();
-            parkingNumber = parkingSpotDAO.getNextAvailableSlot(parkingType);
-            if(parkingNumber > 0){
-                parkingSpot = new ParkingSpot(parkingNumber,parkingType, true);
-            }else{
+            int parkingNumber = parkingSpotDAO.getNextAvailableSlot(parkingType);
+            if(parkingNumber <= 0){
                 throw new Exception("Error fetching parking number from DB. Parking slots might be full");
             }
+            parkingSpot = new ParkingSpot(parkingNumber, parkingType, true);
         }catch(IllegalArgumentException ie){
             logger.error("Error parsing user input for type of vehicle", ie);
         }catch(Exception e){
@@ -107,28 +245,135 @@ import java.util.Date;
         processExitingVehicle(new Date());
     }
 
+    /**
+     * register a vehicle leaving the park at the given time.
+     * <p>
+     * The open ticket is read with the recurring user flag, priced and closed and the spot is
+     * freed in one transaction.
+     * </p>
+     *
+     * @param outTime the time of exit of the vehicle
+     */
     public void processExitingVehicle(Date outTime) {
         try {
             String vehicleRegNumber = getVehichleRegNumber();
-            Ticket ticket = ticketDAO.getTicket(vehicleRegNumber);
-            ticket.setOutTime(outTime);
-            fareCalculatorService.calculateFare(ticket);
-            if (ticketDAO.recurringUser(vehicleRegNumber)) {
-                // 5% discount for recurring users
-                ticket.setPrice(ticket.getPrice() * Fare.RECURRING_USER);
-            }
-            if (ticketDAO.updateTicket(ticket)) {
-                ParkingSpot parkingSpot = ticket.getParkingSpot();
-                parkingSpot.setAvailable(true);
-                parkingSpotDAO.updateParking(parkingSpot);
-                System.out.println("Please pay the parking fare:" + ticket.getPrice());
-                System.out.println(
-                        "Recorded out-time for vehicle number:" + ticket.getVehicleRegNumber() + " is:" + outTime);
-            } else {
+            Ticket ticket;
+            try {
+                ticket = exit(vehicleRegNumber, outTime);
+            } catch (IllegalStateException e) {
                 System.out.println("Unable to update ticket information. Error occurred");
+                return;
             }
+            System.out.println("Please pay the parking fare:" + ticket.getPrice());
+            System.out.println(
+                    "Recorded out-time for vehicle number:" + ticket.getVehicleRegNumber() + " is:" + outTime);
         } catch (Exception e) {
             logger.error("Unable to process exiting vehicle", e);
         }
     }
+
+    /**
+     * register a vehicle leaving the park, without reading the console.
+     * <p>
+     * The open ticket is read with the recurring user flag, priced and closed and the spot is
+     * freed in one transaction. Several gates can call it at the same time.
+     * </p>
+     *
+     * @param vehicleRegNumber the number plate of the vehicle
+     * @param outTime the time of exit of the vehicle
+     * @return the priced and closed ticket, owned by the caller
+     * @throws IllegalArgumentException if the plate is missing
+     * @throws NoSuchElementException if the vehicle has no open ticket, or if another exit closed it
+     * first, nothing is then written
+     * @throws IllegalStateException if the spot was not updated, nothing is then written
+     * @throws Exception if the ticket can't be read or written, nothing is then written
+     */
+    public Ticket exit(String vehicleRegNumber, Date outTime) throws Exception {
+        try (OperationMetrics.Timer timer = exitMetrics.start()) {
+            return timer.succeeded(recordExit(vehicleRegNumber, outTime));
+        }
+    }
+
+    private Ticket recordExit(String vehicleRegNumber, Date outTime) throws Exception {
+        vehicleRegNumber = normalizeVehicleRegNumber(vehicleRegNumber);
+        if (ticketEventStore != null) {
+            return ticketEventStore.exit(vehicleRegNumber, outTime);
+        }
+        try (ParkingTransaction transaction = ticketDAO.beginTransaction()) {
+            // open ticket and recurring user flag in one round trip, the discount is applied by the fare calculator
+            Ticket ticket = ticketDAO.getTicketForExit(transaction, vehicleRegNumber);
+            if (ticket == null) {
+                throw new NoSuchElementException("No open ticket for vehicle number:" + vehicleRegNumber);
+            }
+            ticket.setOutTime(outTime);
+            fareCalculatorService.calculateFare(ticket);
+            ParkingSpot parkingSpot = ticket.getParkingSpot();
+            parkingSpot.setAvailable(true);
+            if (!ticketDAO.updateTicket(transaction, ticket)) {
+                // closed by another gate since it was read, the transaction is rolled back on close
+                throw new NoSuchElementException("No open ticket for vehicle number:" + vehicleRegNumber);
+            }
+            if (!parkingSpotDAO.updateParking(transaction, parkingSpot)) {
+                throw new IllegalStateException("Unable to update ticket information of vehicle number:"
+                        + vehicleRegNumber);
+            }
+            transaction.commit();
+            return ticket;
+        }
+    }
+
+    /**
+     * normalise a number plate the way the gates may type it: case, spaces and dashes are ignored.
+     * The plates are only normalised here, the DAOs and caches below match them as given.
+     *
+     * @param vehicleRegNumber the number plate typed at the gate
+     * @return the number plate as stored in the tickets
+     * @throws IllegalArgumentException if the plate is missing
+     */
+    public static String normalizeVehicleRegNumber(String vehicleRegNumber) {
+        StringBuilder normalized = new StringBuilder(vehicleRegNumber == null ? 0 : vehicleRegNumber.length());
+        for (int i = 0; vehicleRegNumber != null && i < vehicleRegNumber.length(); i++) {
+            char c = vehicleRegNumber.charAt(i);
+            if (c != '-' && !Character.isWhitespace(c)) {
+                normalized.append(c);
+            }
+        }
+        if (normalized.length() == 0) {
+            throw new IllegalArgumentException("Vehicle registration number is required");
+        }
+        return normalized.toString().toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * count the free spots of a type of vehicle.
+     *
+     * @param parkingType the type of the vehicle
+     * @return the number of free spots, -1 if it can't be read
+     */
+    public int countAvailableSpots(ParkingType parkingType) {
+        try (OperationMetrics.Timer timer = availabilityMetrics.start()) {
+            if (ticketEventStore != null) {
+                return timer.succeeded(ticketEventStore.countAvailableSpots(parkingType));
+            }
+            return timer.succeeded(parkingSpotDAO.countAvailableSlots(parkingType));
+        }
+    }
+
+    /**
+     * return the occupancy of the park for the displays, read from counters kept in memory.
+     *
+     * @return the number of spots and of free spots by type of vehicle, empty if it can't be read
+     */
+    public Map<ParkingType, Occupancy> getOccupancy() {
+        try (OperationMetrics.Timer timer = occupancyMetrics.start()) {
+            if (ticketEventStore == null) {
+                return timer.succeeded(parkingSpotDAO.getOccupancy());
+            }
+            Map<ParkingType, Occupancy> occupancy = new EnumMap<>(ParkingType.class);
+            for (ParkingType parkingType : ParkingType.values()) {
+                occupancy.put(parkingType, ticketEventStore.getOccupancy(parkingType));
+            }
+            return timer.succeeded(occupancy);
+        }
+    }
 }
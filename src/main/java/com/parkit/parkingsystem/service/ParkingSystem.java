@@ -0,0 +1,365 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.cache.OpenTicketIndex;
+import com.parkit.parkingsystem.config.ConnectionPool;
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.ReplicaSet;
+import com.parkit.parkingsystem.config.SchemaMigrator;
+import com.parkit.parkingsystem.config.ShardRouter;
+import com.parkit.parkingsystem.config.TariffProvider;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketArchiveDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketProjection;
+import com.parkit.parkingsystem.dao.TicketWriteBehind;
+import com.parkit.parkingsystem.eventlog.TicketEventStore;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The services of the park wired together and their background jobs, shared by the console and the
+ * HTTP interfaces.
+ * <p>
+ * Each lot of the setting {@code lots} gets its own shard: its database, its DAOs with their caches,
+ * its event log and its jobs, so the load of a lot never touches the data of another. The getters
+ * without lot give the shard of the default lot, the first one.
+ * </p>
+ * @author tlili
+ */
+public class ParkingSystem implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("ParkingSystem");
+
+    private final ShardRouter<Lot> lots;
+    private final ScheduledExecutorService occupancyReconciler;
+    private final ScheduledExecutorService statisticsLogger;
+
+    private ParkingSystem() {
+        Map<String, Lot> shards = new LinkedHashMap<>();
+        for (String lotId : ShardRouter.getConfiguredLotIds()) {
+            shards.put(lotId, new Lot(new DataBaseConfig(lotId)));
+        }
+        lots = new ShardRouter<>(shards);
+        occupancyReconciler = startOccupancyReconciler(lots.getShards());
+        statisticsLogger = startStatisticsLogger();
+        MetricsRegistry metricsRegistry = MetricsRegistry.getDefault();
+        for (Lot lot : lots.getShards()) {
+            lot.registerGauges(metricsRegistry);
+        }
+        TariffProvider.getDefault().startWatching(
+                DataBaseConfig.getLongProperty("tariff.reloadIntervalSeconds", 30L));
+        logger.info("Parking system started for lot(s) " + lots.getLotIds());
+    }
+
+    /**
+     * prepare the database of each lot and start the services of the park.
+     *
+     * @return the started system, to close at shutdown
+     */
+    public static ParkingSystem start() {
+        return new ParkingSystem();
+    }
+
+    /**
+     * @return the service of the gates of each lot, without console
+     */
+    public ShardRouter<ParkingService> getParkingServices() {
+        return lots.map(lot -> lot.parkingService);
+    }
+
+    /**
+     * @return the service of the gates of the default lot, without console
+     */
+    public ParkingService getParkingService() {
+        return lots.route(null).parkingService;
+    }
+
+    public ParkingSpotDAO getParkingSpotDAO() {
+        return lots.route(null).parkingSpotDAO;
+    }
+
+    public TicketDAO getTicketDAO() {
+        return lots.route(null).ticketDAO;
+    }
+
+    /**
+     * @return the event log of the entries and exits of the default lot, null when they are written in the tables directly
+     */
+    public TicketEventStore getTicketEventStore() {
+        return lots.route(null).ticketEventStore;
+    }
+
+    /**
+     * stop the background jobs, the pending tickets are written first.
+     */
+    @Override
+    public void close() {
+        if (occupancyReconciler != null) {
+            occupancyReconciler.shutdownNow();
+        }
+        for (Lot lot : lots.getShards()) {
+            lot.close();
+        }
+        if (statisticsLogger != null) {
+            statisticsLogger.shutdownNow();
+        }
+        logger.info(DataBaseConfig.getStatistics());
+        TariffProvider.getDefault().close();
+    }
+
+    /**
+     * the DAOs, the event log and the jobs of one lot, on the database of the lot.
+     */
+    private static final class Lot {
+        private final String lotId;
+        private final ParkingSpotDAO parkingSpotDAO;
+        private final TicketDAO ticketDAO;
+        private final TicketEventStore ticketEventStore;
+        private final ParkingService parkingService;
+        private final TicketArchivalService ticketArchivalService;
+        private final ReplicaSet replicaSet;
+
+        private Lot(DataBaseConfig dataBaseConfig) {
+            lotId = dataBaseConfig.getLotId();
+            parkingSpotDAO = new ParkingSpotDAO();
+            parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+            migrateSchema(dataBaseConfig);
+            claimLot(parkingSpotDAO);
+            replicaSet = openReplicaSet(dataBaseConfig);
+            parkingSpotDAO.loadFreeSpotIndex();
+            ticketDAO = new TicketDAO();
+            ticketDAO.dataBaseConfig = dataBaseConfig;
+            ticketDAO.loadRecurringUserCache();
+            ticketEventStore = openTicketEventStore(dataBaseConfig);
+            if (ticketEventStore == null) {
+                ticketDAO.loadOpenTicketIndex();
+                ticketDAO.ticketWriteBehind = startTicketWriteBehind(dataBaseConfig, ticketDAO.openTicketIndex);
+            }
+            parkingService = new ParkingService(null, parkingSpotDAO, ticketDAO, ticketEventStore);
+            ticketArchivalService = startTicketArchival(dataBaseConfig);
+        }
+
+        /**
+         * expose the state of the pool and of the caches of the lot to the scraper of the metrics.
+         */
+        private void registerGauges(MetricsRegistry metricsRegistry) {
+            try {
+                ConnectionPool pool = ticketDAO.dataBaseConfig.getConnectionPool();
+                metricsRegistry.registerGauge("pool_active_connections", "Connections borrowed from the pool.",
+                        "lot", lotId, pool::getActiveConnections);
+                metricsRegistry.registerGauge("pool_idle_connections", "Connections idle in the pool.",
+                        "lot", lotId, pool::getIdleConnections);
+                metricsRegistry.registerGauge("pool_timeouts", "Borrows of a connection given up after the timeout.",
+                        "lot", lotId, pool::getTimeoutCount);
+                metricsRegistry.registerGauge("pool_statement_cache_hits", "Prepared statements reused from the cache.",
+                        "lot", lotId, pool::getStatementCacheHits);
+                metricsRegistry.registerGauge("pool_statement_cache_misses", "Prepared statements prepared again.",
+                        "lot", lotId, pool::getStatementCacheMisses);
+                metricsRegistry.registerGauge("pool_leaked_statements",
+                        "Statements closed by the pool instead of the DAO.", "lot", lotId, pool::getLeakedStatements);
+            } catch (ClassNotFoundException e) {
+                logger.error("Unable to expose the metrics of the connection pool of lot " + lotId, e);
+            }
+            if (replicaSet != null) {
+                metricsRegistry.registerGauge("replica_lag_millis", "Lag of the freshest replica at the last heartbeat.",
+                        "lot", lotId, replicaSet::getLagMillis);
+                metricsRegistry.registerGauge("replica_reads", "Reads answered by a replica.",
+                        "lot", lotId, replicaSet::getReplicaReads);
+                metricsRegistry.registerGauge("replica_primary_reads", "Reads sent to the primary, no replica being fresh.",
+                        "lot", lotId, replicaSet::getPrimaryReads);
+            }
+            metricsRegistry.registerGauge("spot_claim_conflicts", "Spots claimed by another gate first.",
+                    "lot", lotId, parkingSpotDAO::getClaimConflictCount);
+            if (ticketEventStore != null) {
+                metricsRegistry.registerGauge("event_log_last_seq", "Seq of the last event recorded.",
+                        "lot", lotId, ticketEventStore::getLastSeq);
+                metricsRegistry.registerGauge("event_projection_seq", "Seq of the last event applied to the tables.",
+                        "lot", lotId, ticketEventStore.getProjection()::getProjectedSeq);
+            } else {
+                metricsRegistry.registerGauge("open_tickets", "Open tickets in the index in memory.",
+                        "lot", lotId, ticketDAO.openTicketIndex::size);
+            }
+        }
+
+        private void close() {
+            if (ticketEventStore != null) {
+                ticketEventStore.close();
+            }
+            if (ticketDAO.ticketWriteBehind != null) {
+                ticketDAO.ticketWriteBehind.close();
+            }
+            if (ticketArchivalService != null) {
+                ticketArchivalService.close();
+            }
+        }
+    }
+
+    /**
+     * name a file or a directory of a lot: the default lot keeps the setting as is, another lot adds
+     * its identifier, like {@code data/events-north} or {@code data/ticket-journal-north.bin}.
+     */
+    private static File lotFile(String path, DataBaseConfig dataBaseConfig) {
+        if (dataBaseConfig.isDefaultLot()) {
+            return new File(path);
+        }
+        String lotId = dataBaseConfig.getLotId();
+        int extension = path.lastIndexOf('.');
+        if (extension > Math.max(path.lastIndexOf('/'), path.lastIndexOf(File.separatorChar))) {
+            return new File(path.substring(0, extension) + "-" + lotId + path.substring(extension));
+        }
+        return new File(path + "-" + lotId);
+    }
+
+    private static ReplicaSet openReplicaSet(DataBaseConfig dataBaseConfig) {
+        try {
+            return dataBaseConfig.getReplicaSet();
+        } catch (ClassNotFoundException e) {
+            logger.error("Unable to open the replicas of lot " + dataBaseConfig.getLotId()
+                    + ", the reads go to the database", e);
+            return null;
+        }
+    }
+
+    private static void migrateSchema(DataBaseConfig dataBaseConfig) {
+        if (!DataBaseConfig.getBooleanProperty("schema.migrate.enabled", true)) {
+            return;
+        }
+        try {
+            int applied = new SchemaMigrator(dataBaseConfig).migrate();
+            logger.info("Schema of lot " + dataBaseConfig.getLotId() + " up to date, " + applied
+                    + " migration(s) applied");
+        } catch (Exception e) {
+            logger.error("Unable to migrate the schema of the database of lot " + dataBaseConfig.getLotId(), e);
+        }
+    }
+
+    private static void claimLot(ParkingSpotDAO parkingSpotDAO) {
+        try {
+            parkingSpotDAO.claimLot();
+        } catch (IllegalStateException e) {
+            // the database of another lot: writing in it would mix the spots and tickets of two lots
+            throw e;
+        } catch (Exception e) {
+            logger.error("Unable to check the lot of the database of lot " + parkingSpotDAO.getLotId(), e);
+        }
+    }
+
+    private static TicketEventStore openTicketEventStore(DataBaseConfig dataBaseConfig) {
+        if (!DataBaseConfig.getBooleanProperty("eventLog.enabled", false)) {
+            return null;
+        }
+        TicketProjection projection = new TicketProjection(dataBaseConfig,
+                DataBaseConfig.getIntProperty("eventLog.projection.batchSize", 500),
+                DataBaseConfig.getLongProperty("eventLog.projection.pollIntervalMillis", 20L));
+        try {
+            return TicketEventStore.open(
+                    lotFile(DataBaseConfig.getProperty("eventLog.directory", "data/events"), dataBaseConfig),
+                    projection,
+                    DataBaseConfig.getIntProperty("eventLog.segmentBytes", 64 * 1024 * 1024),
+                    DataBaseConfig.getIntProperty("eventLog.snapshotEveryEvents", 10000),
+                    DataBaseConfig.getLongProperty("eventLog.forceIntervalMillis", 0L),
+                    new FareCalculatorService());
+        } catch (Exception e) {
+            // the tables may be behind the log: writing them directly would lose the events not yet applied
+            throw new IllegalStateException("Unable to open the event log of lot " + dataBaseConfig.getLotId(), e);
+        }
+    }
+
+    private static TicketWriteBehind startTicketWriteBehind(DataBaseConfig dataBaseConfig,
+                                                            OpenTicketIndex openTicketIndex) {
+        if (!DataBaseConfig.getBooleanProperty("ticket.writeBehind.enabled", false)) {
+            return null;
+        }
+        TicketWriteBehind ticketWriteBehind = new TicketWriteBehind(dataBaseConfig, openTicketIndex,
+                lotFile(DataBaseConfig.getProperty("ticket.writeBehind.journal", "data/ticket-journal.bin"),
+                        dataBaseConfig),
+                DataBaseConfig.getIntProperty("ticket.writeBehind.capacity", 1000),
+                DataBaseConfig.getIntProperty("ticket.writeBehind.batchSize", 50),
+                DataBaseConfig.getLongProperty("ticket.writeBehind.flushIntervalMillis", 200L),
+                DataBaseConfig.getLongProperty("ticket.writeBehind.offerTimeoutMillis", 1000L));
+        try {
+            ticketWriteBehind.start();
+            return ticketWriteBehind;
+        } catch (Exception e) {
+            logger.error("Unable to start ticket write-behind, tickets are saved directly", e);
+            return null;
+        }
+    }
+
+    /**
+     * reload the index of free spots and its occupancy counters of each lot without event log from
+     * the table parking at a fixed interval, so that a change made in the table by hand or a missed
+     * update is corrected.
+     */
+    private static ScheduledExecutorService startOccupancyReconciler(Collection<Lot> lots) {
+        List<ParkingSpotDAO> parkingSpotDAOs = new ArrayList<>();
+        for (Lot lot : lots) {
+            if (lot.ticketEventStore == null) {
+                parkingSpotDAOs.add(lot.parkingSpotDAO);
+            }
+        }
+        long intervalSeconds = DataBaseConfig.getLongProperty("occupancy.reconcileIntervalSeconds", 60L);
+        if (intervalSeconds <= 0 || parkingSpotDAOs.isEmpty()) {
+            return null;
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "occupancy-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> parkingSpotDAOs.forEach(ParkingSpotDAO::loadFreeSpotIndex),
+                intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        return scheduler;
+    }
+
+    /**
+     * log the counters of the database at a fixed interval, the connections and statements of each
+     * request are only logged at the trace level.
+     */
+    private static ScheduledExecutorService startStatisticsLogger() {
+        long intervalSeconds = DataBaseConfig.getLongProperty("logging.statisticsIntervalSeconds", 300L);
+        if (intervalSeconds <= 0) {
+            return null;
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "statistics-logger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> logger.info(DataBaseConfig.getStatistics()), intervalSeconds,
+                intervalSeconds, TimeUnit.SECONDS);
+        return scheduler;
+    }
+
+    private static TicketArchivalService startTicketArchival(DataBaseConfig dataBaseConfig) {
+        TicketArchiveDAO ticketArchiveDAO = new TicketArchiveDAO();
+        ticketArchiveDAO.dataBaseConfig = dataBaseConfig;
+        try {
+            // also when the job is off: the archive may hold the ids given before a restart
+            ticketArchiveDAO.seedTicketIds();
+        } catch (Exception e) {
+            logger.error("Unable to seed the ticket ids of lot " + dataBaseConfig.getLotId()
+                    + ", archived ids may be given again", e);
+        }
+        if (!DataBaseConfig.getBooleanProperty("ticket.archive.enabled", true)) {
+            return null;
+        }
+        TicketArchivalService ticketArchivalService = new TicketArchivalService(ticketArchiveDAO,
+                DataBaseConfig.getIntProperty("ticket.archive.retentionDays", 30),
+                DataBaseConfig.getIntProperty("ticket.archive.batchSize", 1000),
+                DataBaseConfig.getLongProperty("ticket.archive.pauseBetweenBatchesMillis", 100L));
+        ticketArchivalService.start(DataBaseConfig.getLongProperty("ticket.archive.intervalMinutes", 60L));
+        return ticketArchivalService;
+    }
+}
@@ -0,0 +1,147 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.dao.TicketRepricingDAO;
+import com.parkit.parkingsystem.model.ClosedTicketChunk;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Service pricing again the tickets closed in a period, after a change of the tariffs or to audit a
+ * billing dispute.
+ * <p>
+ * The tickets are streamed from the database by chunks; each chunk is priced in parallel on a
+ * fork-join pool with {@link FareCalculatorService#calculateFareCents}, and only the tickets whose
+ * price changed are written back, by batches.
+ * </p>
+ * @author tlili
+ */
+public class RepricingService {
+
+    private static final Logger logger = LogManager.getLogger("RepricingService");
+
+    private final TicketRepricingDAO ticketRepricingDAO;
+    private final FareCalculatorService fareCalculatorService;
+    private final int chunkSize;
+    private final int parallelism;
+
+    /**
+     * create the service.
+     *
+     * @param ticketRepricingDAO the DAO reading and updating the tickets
+     * @param fareCalculatorService the calculator of the new prices
+     * @param chunkSize the number of tickets priced and written together
+     * @param parallelism the number of threads pricing a chunk
+     */
+    public RepricingService(TicketRepricingDAO ticketRepricingDAO, FareCalculatorService fareCalculatorService,
+                            int chunkSize, int parallelism) {
+        this.ticketRepricingDAO = ticketRepricingDAO;
+        this.fareCalculatorService = fareCalculatorService;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * price again the tickets closed in a period and write the prices that changed.
+     *
+     * @param closedFrom the first out time of the period, included
+     * @param closedTo the last out time of the period, excluded
+     * @return the report of the repricing
+     * @throws ClassNotFoundException if the Database is not found
+     * @throws SQLException if the tickets can't be read or written, the chunks already written stay written
+     */
+    public Report reprice(Date closedFrom, Date closedTo) throws ClassNotFoundException, SQLException {
+        long start = System.nanoTime();
+        final long[] newPrices = new long[chunkSize];
+        final int[] changedIds = new int[chunkSize];
+        final boolean[] changedArchived = new boolean[chunkSize];
+        final long[] changedPrices = new long[chunkSize];
+        final long[] repriced = new long[1];
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            long read = ticketRepricingDAO.forEachClosedTicketChunk(closedFrom, closedTo,
+                    new ClosedTicketChunk(chunkSize), chunk -> {
+                        price(pool, chunk, newPrices);
+                        int changed = 0;
+                        for (int i = 0; i < chunk.size(); i++) {
+                            if (newPrices[i] != chunk.getPriceCents(i)) {
+                                changedIds[changed] = chunk.getId(i);
+                                changedArchived[changed] = chunk.isArchived(i);
+                                changedPrices[changed] = newPrices[i];
+                                changed++;
+                            }
+                        }
+                        updatePrices(changedIds, changedArchived, changedPrices, changed);
+                        repriced[0] += changed;
+                    });
+            Report report = new Report(read, repriced[0], (System.nanoTime() - start) / 1_000_000);
+            logger.info("Repricing of tickets closed from " + closedFrom + " to " + closedTo + ": " + report);
+            return report;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void price(ForkJoinPool pool, ClosedTicketChunk chunk, long[] newPrices) throws SQLException {
+        try {
+            pool.submit(() -> IntStream.range(0, chunk.size()).parallel().forEach(i ->
+                    newPrices[i] = fareCalculatorService.calculateFareCents(chunk.getParkingType(i),
+                            chunk.getInTime(i), chunk.getOutTime(i), chunk.isRecurringUser(i)))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Repricing interrupted", e);
+        } catch (ExecutionException e) {
+            throw new SQLException("Error pricing tickets", e.getCause());
+        }
+    }
+
+    private void updatePrices(int[] ids, boolean[] archived, long[] priceCents, int count) throws SQLException {
+        try {
+            ticketRepricingDAO.updatePrices(ids, archived, priceCents, count);
+        } catch (ClassNotFoundException e) {
+            throw new SQLException(e);
+        }
+    }
+
+    /**
+     * result of a repricing.
+     */
+    public static class Report {
+        private final long ticketsRead;
+        private final long ticketsRepriced;
+        private final long elapsedMillis;
+
+        public Report(long ticketsRead, long ticketsRepriced, long elapsedMillis) {
+            this.ticketsRead = ticketsRead;
+            this.ticketsRepriced = ticketsRepriced;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public long getTicketsRead() {
+            return ticketsRead;
+        }
+
+        public long getTicketsRepriced() {
+            return ticketsRepriced;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public double getTicketsPerSecond() {
+            return ticketsRead * 1000.0 / Math.max(1, elapsedMillis);
+        }
+
+        @Override
+        public String toString() {
+            return ticketsRead + " ticket(s) read, " + ticketsRepriced + " repriced in " + elapsedMillis + " ms ("
+                    + Math.round(getTicketsPerSecond()) + " tickets/s)";
+        }
+    }
+}
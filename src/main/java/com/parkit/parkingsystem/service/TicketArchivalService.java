@@ -0,0 +1,98 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.dao.TicketArchiveDAO;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background job archiving the tickets closed for more than a number of days.
+ * <p>
+ * The tickets are moved by small batches, each in its own transaction and followed by a pause, so
+ * that the job never holds the table ticket long enough to slow down the gates.
+ * </p>
+ * @author tlili
+ */
+public class TicketArchivalService implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("TicketArchivalService");
+
+    private final TicketArchiveDAO ticketArchiveDAO;
+    private final int retentionDays;
+    private final int batchSize;
+    private final long pauseBetweenBatchesMillis;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * create the job, {@link #start(long)} schedules it.
+     *
+     * @param ticketArchiveDAO the DAO moving the tickets
+     * @param retentionDays the number of days a closed ticket stays in the table ticket
+     * @param batchSize the number of tickets moved by transaction
+     * @param pauseBetweenBatchesMillis the pause between two batches
+     */
+    public TicketArchivalService(TicketArchiveDAO ticketArchiveDAO, int retentionDays, int batchSize,
+                                 long pauseBetweenBatchesMillis) {
+        this.ticketArchiveDAO = ticketArchiveDAO;
+        this.retentionDays = retentionDays;
+        this.batchSize = batchSize;
+        this.pauseBetweenBatchesMillis = pauseBetweenBatchesMillis;
+    }
+
+    /**
+     * run the job now and then every interval, in a background thread.
+     *
+     * @param intervalMinutes the delay between the end of a run and the start of the next one
+     */
+    public void start(long intervalMinutes) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ticket-archival");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> archiveClosedTickets(new Date()), 0, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * archive every ticket closed for more than the retention, batch after batch.
+     *
+     * @param now the current date
+     * @return the number of tickets archived
+     */
+    public int archiveClosedTickets(Date now) {
+        Date closedBefore = new Date(now.getTime() - TimeUnit.DAYS.toMillis(retentionDays));
+        int total = 0;
+        try {
+            int archived;
+            do {
+                archived = ticketArchiveDAO.archiveClosedTickets(closedBefore, batchSize);
+                total += archived;
+                if (archived == batchSize && pauseBetweenBatchesMillis > 0) {
+                    Thread.sleep(pauseBetweenBatchesMillis);
+                }
+            } while (archived == batchSize);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.error("Error archiving closed tickets", e);
+        }
+        if (total > 0) {
+            logger.info("Archived " + total + " ticket(s) closed before " + closedBefore);
+        }
+        return total;
+    }
+
+    /**
+     * stop the scheduled runs.
+     */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,5 @@
+/* Open ticket and recurring user lookups of an exit: plate, then OUT_TIME null or not, then IN_TIME order */
+create index IDX_TICKET_PLATE_OUT_IN on ticket(VEHICLE_REG_NUMBER, OUT_TIME, IN_TIME);
+
+/* Next available spot of a type */
+create index IDX_PARKING_TYPE_AVAILABLE on parking(TYPE, AVAILABLE, PARKING_NUMBER);
@@ -0,0 +1,22 @@
+/* Cold storage of the closed tickets moved out of the table ticket by the archival job */
+create table ticket_archive(
+ ID int PRIMARY KEY,
+ PARKING_NUMBER int NOT NULL,
+ VEHICLE_REG_NUMBER varchar(10) NOT NULL,
+ PRICE double,
+ IN_TIME DATETIME NOT NULL,
+ OUT_TIME DATETIME NOT NULL);
+
+create index IDX_TICKET_ARCHIVE_PLATE on ticket_archive(VEHICLE_REG_NUMBER);
+
+/* One row per vehicle that already left the park: answers the recurring user check */
+create table recurring_user(
+ VEHICLE_REG_NUMBER varchar(10) PRIMARY KEY,
+ EXIT_COUNT int NOT NULL,
+ LAST_OUT_TIME DATETIME NOT NULL);
+
+insert into recurring_user(VEHICLE_REG_NUMBER, EXIT_COUNT, LAST_OUT_TIME)
+ select VEHICLE_REG_NUMBER, count(*), max(OUT_TIME) from ticket where OUT_TIME IS NOT NULL group by VEHICLE_REG_NUMBER;
+
+/* The archival job looks the closed tickets up by OUT_TIME */
+create index IDX_TICKET_OUT_TIME on ticket(OUT_TIME);
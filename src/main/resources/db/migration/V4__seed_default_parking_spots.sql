@@ -0,0 +1,10 @@
+/* The spots of resources/Data.sql, only in a new database: a park already set up keeps its own spots */
+insert into parking(PARKING_NUMBER, AVAILABLE, TYPE)
+select s.PARKING_NUMBER, true, s.TYPE from (
+ select 1 as PARKING_NUMBER, 'CAR' as TYPE
+ union all select 2, 'CAR'
+ union all select 3, 'CAR'
+ union all select 4, 'BIKE'
+ union all select 5, 'BIKE'
+) s
+where not exists (select 1 from parking);
@@ -0,0 +1,6 @@
+/* Last event of the event log applied to the tables, written in the transaction of each batch */
+create table event_projection(
+ NAME varchar(20) PRIMARY KEY,
+ LAST_SEQ bigint NOT NULL);
+
+insert into event_projection(NAME, LAST_SEQ) values('ticket', 0);
@@ -0,0 +1,3 @@
+/* Lot whose data the database holds: each lot has its own database, checked at each start */
+create table lot(
+ ID varchar(32) PRIMARY KEY);
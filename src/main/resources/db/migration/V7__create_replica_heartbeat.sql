@@ -0,0 +1,6 @@
+/* Time of the primary written at intervals and read on the replicas to measure their lag */
+create table replica_heartbeat(
+ ID int PRIMARY KEY,
+ BEAT_MILLIS bigint NOT NULL);
+
+insert into replica_heartbeat(ID, BEAT_MILLIS) values(1, 0);
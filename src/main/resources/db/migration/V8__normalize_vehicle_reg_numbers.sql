@@ -0,0 +1,24 @@
+/* The gates normalise the plates since this version: upper case, without spaces nor dashes.
+   The plates stored as typed before are normalised the same way, so that their vehicles can leave */
+update ticket set VEHICLE_REG_NUMBER = upper(replace(replace(replace(VEHICLE_REG_NUMBER, '-', ''), ' ', ''), char(9), ''));
+
+update ticket_archive set VEHICLE_REG_NUMBER = upper(replace(replace(replace(VEHICLE_REG_NUMBER, '-', ''), ' ', ''), char(9), ''));
+
+/* Plates typed several ways become one recurring user, with all their exits */
+create table recurring_user_normalized(
+ VEHICLE_REG_NUMBER varchar(10) PRIMARY KEY,
+ EXIT_COUNT int NOT NULL,
+ LAST_OUT_TIME DATETIME NOT NULL);
+
+insert into recurring_user_normalized(VEHICLE_REG_NUMBER, EXIT_COUNT, LAST_OUT_TIME)
+ select PLATE, sum(EXIT_COUNT), max(LAST_OUT_TIME) from (
+  select upper(replace(replace(replace(VEHICLE_REG_NUMBER, '-', ''), ' ', ''), char(9), '')) PLATE, EXIT_COUNT, LAST_OUT_TIME
+  from recurring_user) r
+ group by PLATE;
+
+delete from recurring_user;
+
+insert into recurring_user(VEHICLE_REG_NUMBER, EXIT_COUNT, LAST_OUT_TIME)
+ select VEHICLE_REG_NUMBER, EXIT_COUNT, LAST_OUT_TIME from recurring_user_normalized;
+
+drop table recurring_user_normalized;
@@ -0,0 +1,157 @@
+package com.parkit.parkingsystem;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.parkit.parkingsystem.config.ConnectionPool;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * class of tests to check the use of {@link ConnectionPool}.
+ */
+public class ConnectionPoolTest {
+
+    private List<Connection> physicalConnections;
+
+    @BeforeEach
+    private void setUpPerTest() {
+        physicalConnections = new ArrayList<>();
+    }
+
+    private Connection newPhysicalConnection() throws SQLException {
+        Connection connection = mock(Connection.class);
+        when(connection.isValid(anyInt())).thenReturn(true);
+        when(connection.getAutoCommit()).thenReturn(true);
+        physicalConnections.add(connection);
+        return connection;
+    }
+
+    private ConnectionPool newPool(int minSize, int maxSize, long idleTimeoutMillis) {
+        return new ConnectionPool(this::newPhysicalConnection, minSize, maxSize, 100, idleTimeoutMillis, 1, 0);
+    }
+
+    @Test
+    @DisplayName("A released connection is reused by the next borrower")
+    public void givenReleasedConnection_whenBorrowAgain_thenPhysicalConnectionIsReused() throws SQLException {
+        ConnectionPool pool = newPool(0, 2, 60000);
+
+        Connection first = pool.getConnection();
+        first.close();
+        Connection second = pool.getConnection();
+
+        assertThat(physicalConnections).hasSize(1);
+        assertThat(first.isClosed()).isTrue();
+        assertThat(second.isClosed()).isFalse();
+        assertThat(pool.getActiveConnections()).isEqualTo(1);
+        assertThat(pool.getBorrowCount()).isEqualTo(2);
+        verify(physicalConnections.get(0), times(0)).close();
+    }
+
+    @Test
+    @DisplayName("Borrowing from an exhausted pool times out")
+    public void givenAllConnectionsBorrowed_whenBorrow_thenSQLExceptionAfterTimeout() throws SQLException {
+        ConnectionPool pool = newPool(0, 1, 60000);
+        pool.getConnection();
+
+        assertThatThrownBy(pool::getConnection).isInstanceOf(SQLException.class);
+        assertThat(pool.getTimeoutCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("A broken idle connection is discarded when borrowed")
+    public void givenInvalidIdleConnection_whenBorrow_thenNewConnectionIsOpened() throws SQLException {
+        ConnectionPool pool = newPool(0, 1, 60000);
+        pool.getConnection().close();
+        when(physicalConnections.get(0).isValid(anyInt())).thenReturn(false);
+
+        pool.getConnection();
+
+        assertThat(physicalConnections).hasSize(2);
+        verify(physicalConnections.get(0)).close();
+    }
+
+    @Test
+    @DisplayName("Idle connections above the minimum size are evicted")
+    public void givenIdleConnectionsOlderThanTimeout_whenEvict_thenPoolShrinksToMinSize() throws SQLException {
+        ConnectionPool pool = newPool(1, 3, 0);
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        first.close();
+        second.close();
+
+        pool.evictIdleConnections();
+
+        assertThat(pool.getIdleConnections()).isEqualTo(1);
+        assertThat(pool.getEvictedCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("A closed connection can't be used anymore")
+    public void givenReleasedConnection_whenUsed_thenSQLException() throws SQLException {
+        ConnectionPool pool = newPool(0, 1, 60000);
+        Connection connection = pool.getConnection();
+        connection.close();
+
+        assertThatThrownBy(() -> connection.prepareStatement("select 1")).isInstanceOf(SQLException.class);
+    }
+
+    @Test
+    @DisplayName("A closed statement is kept by its connection and reused by the next lease")
+    public void givenClosedStatement_whenPreparedAgain_thenPhysicalStatementIsReused() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(this::newPhysicalConnection, 0, 1, 100, 60000, 1, 0, 4);
+        Connection first = pool.getConnection();
+        when(physicalConnections.get(0).prepareStatement(anyString()))
+                .thenAnswer(invocation -> mock(PreparedStatement.class));
+        PreparedStatement firstStatement = first.prepareStatement("select 1");
+        firstStatement.close();
+        first.close();
+
+        Connection second = pool.getConnection();
+        PreparedStatement secondStatement = second.prepareStatement("select 1");
+        secondStatement.setFetchSize(10);
+        secondStatement.close();
+        second.prepareStatement("select 1").close();
+
+        verify(physicalConnections.get(0), times(2)).prepareStatement("select 1");
+        assertThat(firstStatement.isClosed()).isTrue();
+        assertThat(pool.getStatementCacheHits()).isEqualTo(1);
+        assertThat(pool.getStatementCacheMisses()).isEqualTo(2);
+        assertThatThrownBy(() -> firstStatement.setInt(1, 1)).isInstanceOf(SQLException.class);
+    }
+
+    @Test
+    @DisplayName("Statements and result sets left open are reported and closed when the connection is given back")
+    public void givenUnclosedStatement_whenConnectionReleased_thenLeakIsReported() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(this::newPhysicalConnection, 0, 1, 100, 60000, 1, 0, 4);
+        Connection connection = pool.getConnection();
+        PreparedStatement physicalStatement = mock(PreparedStatement.class);
+        ResultSet physicalResultSet = mock(ResultSet.class);
+        when(physicalConnections.get(0).prepareStatement("select 1")).thenReturn(physicalStatement);
+        when(physicalStatement.executeQuery()).thenReturn(physicalResultSet);
+        PreparedStatement statement = connection.prepareStatement("select 1");
+        statement.executeQuery();
+
+        connection.close();
+
+        assertThat(pool.getLeakedStatements()).isEqualTo(1);
+        assertThat(pool.getLeakedResultSets()).isEqualTo(1);
+        assertThat(statement.isClosed()).isTrue();
+        verify(physicalResultSet).close();
+        verify(physicalStatement).clearParameters();
+        verify(physicalStatement, times(0)).close();
+    }
+}
@@ -116,7 +116,8 @@ public class    FareCalculatorServiceTest {
             ticket.setOutTime(outTime);
             ticket.setParkingSpot(parkingSpot);
             fareCalculatorService.calculateFare(ticket);
-            assertEquals((0.75 * Fare.CAR_RATE_PER_HOUR), ticket.getPrice());
+            // 0.75 * 1.5 = 1.125, rounded half up to the cent
+            assertEquals(1.13, ticket.getPrice());
         }
 
         @Test
@@ -133,6 +134,20 @@ public class    FareCalculatorServiceTest {
             assertEquals((24 * Fare.CAR_RATE_PER_HOUR), ticket.getPrice());
         }
 
+        @Test
+        void calculateFareCentsIsExactAndRoundedHalfUp() {
+            long inTime = 1_600_000_000_000L;
+
+            assertThat(fareCalculatorService.calculateFareCents(ParkingType.CAR, inTime, inTime + 45 * 60 * 1000, false))
+                    .isEqualTo(113L);
+            assertThat(fareCalculatorService.calculateFareCents(ParkingType.CAR, inTime, inTime + 60 * 60 * 1000, true))
+                    .isEqualTo(143L);
+            assertThat(fareCalculatorService.calculateFareCents(ParkingType.BIKE, inTime, inTime + 31 * 60 * 1000, false))
+                    .isEqualTo(52L);
+            assertThat(fareCalculatorService.calculateFareCents(ParkingType.BIKE, inTime, inTime + 30 * 60 * 1000, true))
+                    .isEqualTo(0L);
+        }
+
         @Test
         void calculateFareCarWithOutTimeLessThanInTime() {
             // ARRANGE
@@ -262,9 +277,8 @@ public class    FareCalculatorServiceTest {
             ticket.setIsRecurringUser(true);
             fareCalculatorService.calculateFare(ticket);
 
-            //ASSERT
-            assertThat(ticket.getPrice())
-                    .isEqualTo(Fare.roundedFare(0.95 * Fare.CAR_RATE_PER_HOUR));
+            //ASSERT: 0.95 * 1.5 = 1.425, rounded half up to the cent
+            assertThat(ticket.getPrice()).isEqualTo(1.43);
         }
 
         @Test
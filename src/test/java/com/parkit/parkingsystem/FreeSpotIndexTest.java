@@ -0,0 +1,136 @@
+package com.parkit.parkingsystem;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.parkit.parkingsystem.cache.FreeSpotIndex;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Occupancy;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * class of tests to check the use of {@link FreeSpotIndex}.
+ */
+public class FreeSpotIndexTest {
+
+    private FreeSpotIndex freeSpotIndex;
+
+    @BeforeEach
+    private void setUpPerTest() {
+        freeSpotIndex = new FreeSpotIndex();
+        freeSpotIndex.load(parking(true));
+    }
+
+    private static List<ParkingSpot> parking(boolean firstCarAvailable) {
+        return Arrays.asList(
+                new ParkingSpot(1, ParkingType.CAR, firstCarAvailable),
+                new ParkingSpot(2, ParkingType.CAR, true),
+                new ParkingSpot(3, ParkingType.CAR, true),
+                new ParkingSpot(4, ParkingType.BIKE, true),
+                new ParkingSpot(130, ParkingType.BIKE, true));
+    }
+
+    @Test
+    @DisplayName("Lowest free spot is given for each type of vehicle")
+    public void givenLoadedIndex_whenGetLowestAvailable_thenLowestNumberOfTheType() {
+        assertThat(freeSpotIndex.getLowestAvailable(ParkingType.CAR)).isEqualTo(1);
+        assertThat(freeSpotIndex.getLowestAvailable(ParkingType.BIKE)).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("Taken spots are skipped and freed spots are given again")
+    public void givenTakenSpots_whenGetLowestAvailable_thenNextFreeSpot() {
+        freeSpotIndex.setAvailable(4, false);
+        assertThat(freeSpotIndex.getLowestAvailable(ParkingType.BIKE)).isEqualTo(130);
+
+        freeSpotIndex.setAvailable(130, false);
+        assertThat(freeSpotIndex.getLowestAvailable(ParkingType.BIKE)).isEqualTo(-1);
+        assertThat(freeSpotIndex.countAvailable(ParkingType.BIKE)).isZero();
+
+        freeSpotIndex.setAvailable(130, true);
+        assertThat(freeSpotIndex.getLowestAvailable(ParkingType.BIKE)).isEqualTo(130);
+    }
+
+    @Test
+    @DisplayName("Reloading the index reports the spots out of sync with the DB")
+    public void givenIndexOutOfSync_whenLoad_thenDifferencesAreCounted() {
+        freeSpotIndex.setAvailable(2, false);
+
+        int differences = freeSpotIndex.load(parking(false));
+
+        assertThat(differences).isEqualTo(2);
+        assertThat(freeSpotIndex.getLowestAvailable(ParkingType.CAR)).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("The occupancy counters follow only the real changes of the spots")
+    public void givenRepeatedUpdates_whenGetOccupancy_thenEachSpotIsCountedOnce() {
+        freeSpotIndex.setAvailable(4, false);
+        freeSpotIndex.setAvailable(4, false);
+        freeSpotIndex.claimLowestAvailable(ParkingType.CAR);
+        freeSpotIndex.setAvailable(2, true);
+
+        Occupancy cars = freeSpotIndex.getOccupancy(ParkingType.CAR);
+        Occupancy bikes = freeSpotIndex.getOccupancy(ParkingType.BIKE);
+
+        assertThat(cars.getTotal()).isEqualTo(3);
+        assertThat(cars.getAvailable()).isEqualTo(2);
+        assertThat(cars.getOccupied()).isEqualTo(1);
+        assertThat(bikes.getAvailable()).isEqualTo(1);
+        assertThat(bikes.getOccupied()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Counters updated by many gates at once end equal to the free spots")
+    public void givenConcurrentClaimsAndReleases_whenDone_thenCountersMatchFreeSpots() throws Exception {
+        List<ParkingSpot> spots = new ArrayList<>();
+        for (int number = 1; number <= 500; number++) {
+            spots.add(new ParkingSpot(number, ParkingType.CAR, true));
+        }
+        freeSpotIndex.load(spots);
+        ExecutorService gates = Executors.newFixedThreadPool(8);
+        List<Future<?>> done = new ArrayList<>();
+        for (int gate = 0; gate < 8; gate++) {
+            done.add(gates.submit(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    int number = freeSpotIndex.claimLowestAvailable(ParkingType.CAR);
+                    if (number > 0 && i % 3 != 0) {
+                        freeSpotIndex.setAvailable(number, true);
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : done) {
+            future.get();
+        }
+        gates.shutdown();
+
+        int counted = freeSpotIndex.countAvailable(ParkingType.CAR);
+        int freeBits = 0;
+        while (freeSpotIndex.claimLowestAvailable(ParkingType.CAR) > 0) {
+            freeBits++;
+        }
+        assertThat(counted).isEqualTo(freeBits);
+        assertThat(freeSpotIndex.countAvailable(ParkingType.CAR)).isZero();
+        assertThat(freeSpotIndex.getOccupancy(ParkingType.CAR).getOccupied()).isEqualTo(500);
+    }
+
+    @Test
+    @DisplayName("An index not loaded can't be used")
+    public void givenIndexNotLoaded_whenGetLowestAvailable_thenIllegalStateException() {
+        FreeSpotIndex notLoaded = new FreeSpotIndex();
+
+        assertThat(notLoaded.isLoaded()).isFalse();
+        assertThatThrownBy(() -> notLoaded.getLowestAvailable(ParkingType.CAR))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,276 @@
+package com.parkit.parkingsystem;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+import com.parkit.parkingsystem.config.ReplicaSet;
+import com.parkit.parkingsystem.config.ShardRouter;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.http.GateServer;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.Occupancy;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+/**
+ * class of tests to check the endpoints of {@link GateServer}.
+ */
+@ExtendWith(MockitoExtension.class)
+public class GateServerTest {
+
+    @Mock
+    private ParkingService parkingService;
+    @Mock
+    private ParkingService northParkingService;
+
+    private GateServer gateServer;
+
+    @BeforeEach
+    private void setUpPerTest() throws IOException {
+        gateServer = new GateServer(parkingService, new InetSocketAddress("localhost", 0), 8);
+        gateServer.start();
+    }
+
+    @AfterEach
+    private void tearDownPerTest() {
+        gateServer.close();
+    }
+
+    private static Ticket ticket(String vehicleRegNumber, int parkingNumber) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(parkingNumber, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(0));
+        return ticket;
+    }
+
+    private String[] call(String method, String path, String body) throws IOException {
+        return call(method, path, body, null);
+    }
+
+    private String[] call(String method, String path, String body, String gateId) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                "http://localhost:" + gateServer.getPort() + path).openConnection();
+        connection.setRequestMethod(method);
+        if (gateId != null) {
+            connection.setRequestProperty("X-Gate-Id", gateId);
+        }
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        byte[] buffer = new byte[256];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            response.write(buffer, 0, read);
+        }
+        in.close();
+        return new String[] {String.valueOf(status), new String(response.toByteArray(), StandardCharsets.UTF_8)};
+    }
+
+    /**
+     * the latency is recorded once the response is sent, a moment after the client can read it.
+     */
+    private long awaitLatencyCount(String path, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (gateServer.getLatencies(path).getCount() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        return gateServer.getLatencies(path).getCount();
+    }
+
+    @Test
+    @DisplayName("An entry returns the ticket with the spot given to the vehicle")
+    public void givenFreeSpot_whenPostEntry_thenTicketCreated() throws Exception {
+        // ARRANGE
+        when(parkingService.enter(ParkingType.CAR, "ABCDEF")).thenReturn(EntryResult.entered(ticket("ABCDEF", 3)));
+
+        // ACT
+        String[] response = call("POST", "/entries", "{\"vehicleType\":\"car\", \"vehicleRegNumber\":\"ABCDEF\"}");
+
+        // ASSERT
+        assertThat(response[0]).isEqualTo("201");
+        assertThat(response[1]).contains("\"id\":null", "\"parkingNumber\":3", "\"vehicleRegNumber\":\"ABCDEF\"",
+                "\"inTime\":\"1970-01-01T00:00:00Z\"");
+        assertThat(awaitLatencyCount("/entries", 1)).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Wrong requests are answered with an error status")
+    public void givenWrongRequests_whenCalled_thenErrorStatus() throws Exception {
+        // ARRANGE
+        when(parkingService.enter(ParkingType.BIKE, "FULL"))
+                .thenReturn(EntryResult.parkFull(ParkingType.BIKE, "FULL", new Date()));
+        when(parkingService.exit(eq("UNKNOWN"), any(Date.class)))
+                .thenThrow(new NoSuchElementException("No open ticket for vehicle number:UNKNOWN"));
+
+        // ACT & ASSERT
+        assertThat(call("POST", "/entries", "{\"vehicleType\":\"BIKE\",\"vehicleRegNumber\":\"FULL\"}")[0])
+                .isEqualTo("503");
+        assertThat(call("POST", "/entries", "{\"vehicleType\":\"TRUCK\",\"vehicleRegNumber\":\"A\"}")[0])
+                .isEqualTo("400");
+        assertThat(call("POST", "/entries", "not json")[0]).isEqualTo("400");
+        assertThat(call("POST", "/exits", "{\"vehicleRegNumber\":\"UNKNOWN\"}")[0]).isEqualTo("404");
+        assertThat(call("GET", "/exits", null)[0]).isEqualTo("405");
+    }
+
+    @Test
+    @DisplayName("Many gates are served at the same time and the availability is given by type")
+    public void givenConcurrentGates_whenPostExits_thenAllServed() throws Exception {
+        // ARRANGE
+        when(parkingService.exit(any(String.class), any(Date.class))).thenAnswer(invocation -> {
+            Ticket ticket = ticket(invocation.getArgument(0), 1);
+            ticket.setOutTime(invocation.getArgument(1));
+            ticket.setPrice(1.5);
+            return ticket;
+        });
+        when(parkingService.countAvailableSpots(any(ParkingType.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0) == ParkingType.CAR ? 2 : 1);
+        ExecutorService gates = Executors.newFixedThreadPool(8);
+
+        // ACT
+        List<Future<String[]>> responses = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            String body = "{\"vehicleRegNumber\":\"CAR" + i + "\"}";
+            responses.add(gates.submit(() -> call("POST", "/exits", body)));
+        }
+        String[] availability = call("GET", "/availability", null);
+
+        // ASSERT
+        for (Future<String[]> response : responses) {
+            assertThat(response.get()[0]).isEqualTo("200");
+            assertThat(response.get()[1]).contains("\"price\":1.5");
+        }
+        gates.shutdown();
+        assertThat(availability[1]).isEqualTo("{\"CAR\":2,\"BIKE\":1}");
+        assertThat(awaitLatencyCount("/exits", 40)).isEqualTo(40);
+        assertThat(call("GET", "/metrics", null)[1]).contains("\"/exits\":{\"count\":40");
+    }
+
+    @Test
+    @DisplayName("The metrics are served to a Prometheus scraper with the latencies of the endpoints")
+    public void givenRequests_whenGetPrometheus_thenTextFormatWithEndpointLatencies() throws Exception {
+        // ARRANGE
+        when(parkingService.countAvailableSpots(any())).thenReturn(1);
+        call("GET", "/availability", null);
+
+        // ACT
+        String[] response = call("GET", "/metrics/prometheus", null);
+
+        // ASSERT
+        assertThat(response[0]).isEqualTo("200");
+        assertThat(response[1]).contains("# TYPE parkit_operation_calls_total counter\n");
+        assertThat(response[1]).contains("# TYPE parkit_http_request_seconds summary\n");
+        assertThat(response[1]).contains("parkit_http_request_seconds_count{path=\"/availability\"}");
+    }
+
+    @Test
+    @DisplayName("The occupancy by type of vehicle is given to the displays")
+    public void givenOccupancy_whenGetOccupancy_thenTotalFreeAndOccupiedByType() throws Exception {
+        // ARRANGE
+        Map<ParkingType, Occupancy> occupancy = new EnumMap<>(ParkingType.class);
+        occupancy.put(ParkingType.CAR, new Occupancy(ParkingType.CAR, 3, 1));
+        occupancy.put(ParkingType.BIKE, new Occupancy(ParkingType.BIKE, 2, 2));
+        when(parkingService.getOccupancy()).thenReturn(occupancy);
+
+        // ACT
+        String[] response = call("GET", "/occupancy", null);
+
+        // ASSERT
+        assertThat(response[0]).isEqualTo("200");
+        assertThat(response[1]).isEqualTo("{\"CAR\":{\"total\":3,\"available\":1,\"occupied\":2},"
+                + "\"BIKE\":{\"total\":2,\"available\":2,\"occupied\":0}}");
+    }
+
+    @Test
+    @DisplayName("Each request goes to the service of its lot, the first lot when it gives none")
+    public void givenTwoLots_whenRequestsNameTheirLot_thenRoutedToTheirService() throws Exception {
+        // ARRANGE
+        gateServer.close();
+        Map<String, ParkingService> lots = new LinkedHashMap<>();
+        lots.put("main", parkingService);
+        lots.put("north", northParkingService);
+        gateServer = new GateServer(new ShardRouter<>(lots), new InetSocketAddress("localhost", 0), 4,
+                new MetricsRegistry());
+        gateServer.start();
+        Ticket northTicket = ticket("ABCDEF", 2);
+        northTicket.setLotId("north");
+        when(northParkingService.enter(ParkingType.CAR, "ABCDEF")).thenReturn(EntryResult.entered(northTicket));
+        when(northParkingService.countAvailableSpots(any())).thenReturn(7);
+        when(parkingService.countAvailableSpots(any())).thenReturn(1);
+
+        // ACT
+        String[] entry = call("POST", "/entries",
+                "{\"lotId\":\"north\",\"vehicleType\":\"CAR\",\"vehicleRegNumber\":\"ABCDEF\"}");
+        String[] northAvailability = call("GET", "/availability?lotId=north", null);
+        String[] defaultAvailability = call("GET", "/availability", null);
+        String[] unknownLot = call("GET", "/availability?lotId=south", null);
+
+        // ASSERT
+        assertThat(entry[0]).isEqualTo("201");
+        assertThat(entry[1]).contains("\"lotId\":\"north\"", "\"parkingNumber\":2");
+        assertThat(northAvailability[1]).isEqualTo("{\"CAR\":7,\"BIKE\":7}");
+        assertThat(defaultAvailability[1]).isEqualTo("{\"CAR\":1,\"BIKE\":1}");
+        assertThat(unknownLot[0]).isEqualTo("400");
+        assertThat(unknownLot[1]).contains("Unknown lot south");
+    }
+
+    @Test
+    @DisplayName("The last write of a gate follows its next requests, whatever the thread serving them")
+    public void givenGateId_whenGateWrote_thenNextRequestsReadItsWrites() throws Exception {
+        // ARRANGE
+        when(parkingService.enter(ParkingType.CAR, "ABCDEF")).thenAnswer(invocation -> {
+            ReplicaSet.recordWrite();
+            return EntryResult.entered(ticket("ABCDEF", 3));
+        });
+        when(parkingService.countAvailableSpots(any()))
+                .thenAnswer(invocation -> ReplicaSet.getLastWriteMillis() > 0 ? 1 : 0);
+
+        // ACT
+        call("POST", "/entries", "{\"vehicleType\":\"CAR\",\"vehicleRegNumber\":\"ABCDEF\"}", "gate-1");
+        List<String> sameGate = new ArrayList<>();
+        List<String> otherGate = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            sameGate.add(call("GET", "/availability", null, "gate-1")[1]);
+            otherGate.add(call("GET", "/availability", null, "gate-2")[1]);
+        }
+
+        // ASSERT
+        assertThat(sameGate).containsOnly("{\"CAR\":1,\"BIKE\":1}");
+        assertThat(otherGate).containsOnly("{\"CAR\":0,\"BIKE\":0}");
+    }
+}
@@ -0,0 +1,43 @@
+package com.parkit.parkingsystem;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.parkit.parkingsystem.metrics.LatencyHistogram;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * class of tests to check the percentiles of {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    @DisplayName("An empty histogram gives 0 for every percentile")
+    public void givenEmptyHistogram_whenPercentile_thenZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertThat(histogram.getPercentile(99)).isZero();
+        assertThat(histogram.getMean()).isZero();
+    }
+
+    @Test
+    @DisplayName("The percentiles are given within the precision of the buckets")
+    public void givenUniformLatencies_whenPercentile_thenWithinBucketPrecision() {
+        // ARRANGE
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // ACT
+        for (long micros = 1; micros <= 100000; micros++) {
+            histogram.record(micros);
+        }
+
+        // ASSERT
+        assertThat(histogram.getCount()).isEqualTo(100000);
+        assertThat(histogram.getMax()).isEqualTo(100000);
+        assertThat(histogram.getMean()).isEqualTo(50000.5);
+        assertThat(histogram.getPercentile(50)).isBetween(50000L, 53125L);
+        assertThat(histogram.getPercentile(99)).isBetween(99000L, 100000L);
+        assertThat(histogram.getPercentile(100)).isEqualTo(100000);
+        assertThat(histogram.getPercentile(0.001)).isEqualTo(1);
+    }
+}
@@ -0,0 +1,121 @@
+package com.parkit.parkingsystem;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.metrics.LatencyHistogram;
+import com.parkit.parkingsystem.metrics.MetricsRegistry;
+import com.parkit.parkingsystem.metrics.OperationMetrics;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * class of tests to check the recording and the export of {@link MetricsRegistry}.
+ */
+public class MetricsRegistryTest {
+
+    private MetricsRegistry metricsRegistry;
+
+    @BeforeEach
+    private void setUpPerTest() {
+        metricsRegistry = new MetricsRegistry();
+    }
+
+    @Test
+    @DisplayName("An operation gets the time of the requests and of the pricing done during its call")
+    public void givenNestedPhases_whenTimerClosed_thenDbAndFareTimeAreCounted() {
+        // ARRANGE
+        OperationMetrics exit = metricsRegistry.operation("ParkingService.exit");
+        OperationMetrics query = metricsRegistry.query(DBConstants.GET_TICKET_FOR_EXIT);
+        OperationMetrics fare = metricsRegistry.operation("fare", OperationMetrics.Phase.FARE);
+        query.record(TimeUnit.MILLISECONDS.toNanos(5), false);
+
+        // ACT
+        try (OperationMetrics.Timer timer = exit.start()) {
+            query.record(TimeUnit.MILLISECONDS.toNanos(2), false);
+            try (OperationMetrics.Timer fareTimer = fare.start()) {
+                fareTimer.succeeded();
+            }
+            timer.succeeded();
+        }
+
+        // ASSERT
+        assertThat(query.getName()).isEqualTo("db.GET_TICKET_FOR_EXIT");
+        assertThat(query.getCalls()).isEqualTo(2);
+        assertThat(query.getDbNanos()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(7));
+        assertThat(exit.getCalls()).isEqualTo(1);
+        assertThat(exit.getErrors()).isZero();
+        assertThat(exit.getDbNanos()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(2));
+        assertThat(exit.getFareNanos()).isEqualTo(fare.getFareNanos()).isPositive();
+        assertThat(metricsRegistry.query("select 1").getName()).isEqualTo("db.other");
+    }
+
+    @Test
+    @DisplayName("A call ended by an exception is counted as an error")
+    public void givenException_whenTimerClosed_thenErrorIsCounted() {
+        OperationMetrics enter = metricsRegistry.operation("ParkingService.enter");
+
+        assertThrows(IllegalStateException.class, () -> {
+            try (OperationMetrics.Timer timer = enter.start()) {
+                throw new IllegalStateException("database down");
+            }
+        });
+
+        assertThat(enter.getCalls()).isEqualTo(1);
+        assertThat(enter.getErrors()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("The metrics are written in the text format of Prometheus, grouped by family")
+    public void givenMetrics_whenToPrometheus_thenEachFamilyIsWrittenOnce() {
+        // ARRANGE
+        metricsRegistry.operation("ParkingService.exit").record(TimeUnit.MILLISECONDS.toNanos(3), true);
+        metricsRegistry.registerGauge("open_tickets", "Open tickets.", () -> 12);
+        metricsRegistry.registerGauge("free_spots", "Free spots.", "lot", "north", () -> 3);
+        metricsRegistry.registerGauge("free_spots", "Free spots.", "lot", "main", () -> 5);
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1500);
+        metricsRegistry.registerLatencies("http_request_seconds", "Latency of the requests.", "path",
+                Collections.singletonMap("/ex\"its", histogram));
+
+        // ACT
+        String text = metricsRegistry.toPrometheus();
+
+        // ASSERT
+        assertThat(text).containsOnlyOnce("# TYPE parkit_operation_calls_total counter\n");
+        assertThat(text).contains("parkit_operation_calls_total{operation=\"ParkingService.exit\"} 1\n");
+        assertThat(text).contains("parkit_operation_errors_total{operation=\"ParkingService.exit\"} 1\n");
+        assertThat(text).contains("# TYPE parkit_operation_latency_seconds summary\n");
+        assertThat(text).contains("parkit_operation_latency_seconds_count{operation=\"ParkingService.exit\"} 1\n");
+        assertThat(text).contains("parkit_http_request_seconds{path=\"/ex\\\"its\",quantile=\"0.99\"} 0.0015\n");
+        assertThat(text).contains("parkit_http_request_seconds_sum{path=\"/ex\\\"its\"} 0.0015\n");
+        assertThat(text).contains("# TYPE parkit_open_tickets gauge\nparkit_open_tickets 12\n");
+        assertThat(text).contains("# TYPE parkit_free_spots gauge\nparkit_free_spots{lot=\"main\"} 5\n"
+                + "parkit_free_spots{lot=\"north\"} 3\n");
+    }
+
+    @Test
+    @DisplayName("The operations are readable in JMX until the registry is closed")
+    public void givenMBeanServer_whenOperationRecorded_thenReadableInJmx() throws Exception {
+        // ARRANGE
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        MetricsRegistry jmxRegistry = new MetricsRegistry(mBeanServer);
+        ObjectName objectName = new ObjectName("com.parkit.parkingsystem:type=Operation,name=\"test.jmx\"");
+
+        // ACT
+        jmxRegistry.operation("test.jmx").record(TimeUnit.MICROSECONDS.toNanos(40), false);
+
+        // ASSERT
+        assertThat(mBeanServer.getAttribute(objectName, "Calls")).isEqualTo(1L);
+        assertThat(mBeanServer.getAttribute(objectName, "MaxMicros")).isEqualTo(40L);
+        jmxRegistry.close();
+        assertThat(mBeanServer.isRegistered(objectName)).isFalse();
+    }
+}
@@ -0,0 +1,95 @@
+package com.parkit.parkingsystem;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.parkit.parkingsystem.cache.OpenTicketIndex;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * class of tests to check the use of {@link OpenTicketIndex}.
+ */
+public class OpenTicketIndexTest {
+
+    private OpenTicketIndex openTicketIndex;
+
+    @BeforeEach
+    private void setUpPerTest() {
+        openTicketIndex = new OpenTicketIndex();
+    }
+
+    private static Ticket openTicket(int id, int parkingNumber, String vehicleRegNumber) {
+        Ticket ticket = new Ticket();
+        ticket.setId(id);
+        ticket.setParkingSpot(new ParkingSpot(parkingNumber, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(1000L * id));
+        return ticket;
+    }
+
+    @Test
+    @DisplayName("A saved ticket is found with its plate as the database would, as a new ticket each time")
+    public void givenSavedTicket_whenGet_thenTicketIsRebuilt() {
+        // ARRANGE
+        openTicketIndex.put(openTicket(7, 2, "AB123CD"));
+
+        // ACT
+        Ticket ticket = openTicketIndex.get("AB123CD");
+
+        // ASSERT
+        assertThat(ticket.getId()).isEqualTo(7);
+        assertThat(ticket.getParkingSpot().getId()).isEqualTo(2);
+        assertThat(ticket.getParkingSpot().getParkingType()).isEqualTo(ParkingType.CAR);
+        assertThat(ticket.getVehicleRegNumber()).isEqualTo("AB123CD");
+        assertThat(ticket.getInTime()).isEqualTo(new Date(7000L));
+        assertThat(ticket.getOutTime()).isNull();
+        assertThat(openTicketIndex.get("AB123CD")).isNotSameAs(ticket);
+        assertThat(openTicketIndex.get("ab-123 cd")).isNull();
+        assertThat(openTicketIndex.getHits()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Tickets without id or already closed are not kept, a miss is left to the database")
+    public void givenTicketsNotOpen_whenPut_thenTheyAreIgnored() {
+        // ARRANGE
+        Ticket queued = openTicket(0, 1, "QUEUED");
+        Ticket closed = openTicket(3, 1, "CLOSED");
+        closed.setOutTime(new Date());
+
+        // ACT
+        openTicketIndex.put(queued);
+        openTicketIndex.put(closed);
+
+        // ASSERT
+        assertThat(openTicketIndex.get("QUEUED")).isNull();
+        assertThat(openTicketIndex.get("CLOSED")).isNull();
+        assertThat(openTicketIndex.size()).isZero();
+        assertThat(openTicketIndex.getMisses()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Closing an old ticket keeps the newer ticket of the plate, loading replaces the content")
+    public void givenNewerTicket_whenRemoveOldOne_thenNewerIsKept() {
+        // ARRANGE
+        openTicketIndex.load(Arrays.asList(openTicket(1, 1, "ABCDEF"), openTicket(2, 2, "GHIJKL")));
+        openTicketIndex.put(openTicket(5, 3, "ABCDEF"));
+
+        // ACT
+        openTicketIndex.remove(openTicket(1, 1, "ABCDEF"));
+        openTicketIndex.remove(openTicket(2, 2, "GHIJKL"));
+
+        // ASSERT
+        assertThat(openTicketIndex.isLoaded()).isTrue();
+        assertThat(openTicketIndex.get("ABCDEF").getId()).isEqualTo(5);
+        assertThat(openTicketIndex.get("GHIJKL")).isNull();
+        openTicketIndex.load(Collections.emptyList());
+        assertThat(openTicketIndex.size()).isZero();
+    }
+}
@@ -1,9 +1,11 @@
 package com.parkit.parkingsystem;
 import static com.parkit.parkingsystem.constants.Fare.roundedFare;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -12,12 +14,23 @@ import static org.mockito.Mockito.when;
 import com.parkit.parkingsystem.constants.Fare;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ParkingTransaction;
 import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.EntryResult;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
 import com.parkit.parkingsystem.service.ParkingService;
 import com.parkit.parkingsystem.util.InputReaderUtil;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import nl.altindag.log.LogCaptor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -41,14 +54,14 @@ public class ParkingServiceTest {
     private static Ticket ticket;
     private LogCaptor logCaptor;
 
-    private static String expectedErrorMessageFullPark =
-            "Error fetching parking number from DB. Parking slots might be full";
     @Mock
     private static InputReaderUtil inputReaderUtil;
     @Mock
     private static ParkingSpotDAO parkingSpotDAO;
     @Mock
     private static TicketDAO ticketDAO;
+    @Mock
+    private static ParkingTransaction parkingTransaction;
 
     /**
      * class test to check the correct process incoming vehicle.
@@ -58,89 +71,112 @@ public class ParkingServiceTest {
     @DisplayName("test for process incoming vehicle")
     class ProcessIncomingVehiculeTest {
 
+        /**
+         * Setup initialize for all test in the class.
+         */
+        @BeforeEach
+        public void setUpTest() throws Exception {
+            when(inputReaderUtil.readSelection()).thenReturn(1);
+        }
+
         /**
          * test for incoming vehicle when park is full.
          */
         @Test
-        void processIncomingWhenParkFulledTest() {
+        void processIncomingWhenParkFulledTest() throws Exception {
             // ARRANGE
-            try {
-                when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
-            } catch (Exception e) {
-                e.printStackTrace();
-                throw new RuntimeException("Failed to set up test mock InputReaderUntil");
-            }
-            when(inputReaderUtil.readSelection()).thenReturn(1);
-            when(parkingSpotDAO.getNextAvailableSlot(null)).thenReturn(-1);
-
-            logCaptor = LogCaptor.forClass(ParkingService.class);
+            when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
+            when(ticketDAO.beginTransaction()).thenReturn(parkingTransaction);
+            when(parkingSpotDAO.claimNextAvailableSlot(any(ParkingTransaction.class), any(ParkingType.class)))
+                    .thenReturn(null);
 
             // ACT
             parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
             parkingService.processIncomingVehicle();
 
             // ASSERT
-            verify(parkingSpotDAO, never()).updateParking(any(ParkingSpot.class));
-            verify(ticketDAO, never()).saveTicket(any(Ticket.class));
-            assertThatThrownBy(() -> {
-                throw new Exception(expectedErrorMessageFullPark);
-            }).isInstanceOf(Exception.class);
+            verify(ticketDAO, never()).saveTicket(any(ParkingTransaction.class), any(Ticket.class));
+            verify(parkingTransaction, never()).commit();
+            verify(parkingTransaction).close();
         }
 
         /**
-         * test for incoming vehicle with no parking spot= null.
+         * test for incoming vehicle with an unknown type of vehicle.
          */
         @Test
-        void processIncomingWhenNullParkingSpotTest() {
+        void processIncomingWhenUnknownVehicleTypeTest() throws Exception {
             // ARRANGE
-
-            // when(inputReaderUtil.readSelection()).thenReturn(1);
-            // when(parkingSpotDAO.getNextAvailableSlot(any(ParkingType.class))).thenReturn(1);
-            // when(parkingService.getNextParkingNumberIfAvailable())
-            // .thenReturn(new ParkingSpot(-12, ParkingType.CAR, true));
-
-            parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
-            parkingService = Mockito.spy(parkingService);
-
-            Mockito.doReturn(null).when(parkingService).getNextParkingNumberIfAvailable();
+            when(inputReaderUtil.readSelection()).thenReturn(3);
 
             // ACT
+            parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
             parkingService.processIncomingVehicle();
 
             // ASSERT
-            verify(parkingSpotDAO, never()).updateParking(any(ParkingSpot.class));
-            verify(ticketDAO, never()).saveTicket(any(Ticket.class));
-
+            verify(ticketDAO, never()).beginTransaction();
+            verify(ticketDAO, never()).saveTicket(any(ParkingTransaction.class), any(Ticket.class));
         }
 
         /**
          * test for incoming car with a given parking spot negative.
          */
         @Test
-        void processIncomingWhenNegativeParkingSpotTest() {
+        void processIncomingWhenNegativeParkingSpotTest() throws Exception {
             // ARRANGE
+            when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
+            when(ticketDAO.beginTransaction()).thenReturn(parkingTransaction);
+            when(parkingSpotDAO.claimNextAvailableSlot(parkingTransaction, ParkingType.CAR))
+                    .thenReturn(new ParkingSpot(-10, ParkingType.CAR, false));
 
-            // when(inputReaderUtil.readSelection()).thenReturn(1);
-            // when(parkingSpotDAO.getNextAvailableSlot(any(ParkingType.class))).thenReturn(1);
-            // when(parkingService.getNextParkingNumberIfAvailable())
-            // .thenReturn(new ParkingSpot(-12, ParkingType.CAR, true));
-
+            // ACT
             parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
-            parkingService = Mockito.spy(parkingService);
-
-            Mockito.doReturn(new ParkingSpot(-10, ParkingType.CAR, true)).when(parkingService)
-                    .getNextParkingNumberIfAvailable();
+            parkingService.processIncomingVehicle();
 
+            // ASSERT
+            verify(ticketDAO, never()).saveTicket(any(ParkingTransaction.class), any(Ticket.class));
+            verify(parkingTransaction, never()).commit();
+        }
 
-            logCaptor = LogCaptor.forClass(ParkingService.class);
+        /**
+         * test for incoming car: the spot is claimed and the ticket saved in the same transaction.
+         */
+        @Test
+        void processIncomingCarTest() throws Exception {
+            // ARRANGE
+            when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
+            when(ticketDAO.beginTransaction()).thenReturn(parkingTransaction);
+            when(parkingSpotDAO.claimNextAvailableSlot(parkingTransaction, ParkingType.CAR))
+                    .thenReturn(new ParkingSpot(2, ParkingType.CAR, false));
+            when(ticketDAO.saveTicket(eq(parkingTransaction), any(Ticket.class))).thenReturn(true);
+            final ArgumentCaptor<Ticket> ticketCaptor = ArgumentCaptor.forClass(Ticket.class);
 
             // ACT
+            parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
             parkingService.processIncomingVehicle();
 
             // ASSERT
             verify(parkingSpotDAO, never()).updateParking(any(ParkingSpot.class));
-            verify(ticketDAO, never()).saveTicket(any(Ticket.class));
+            verify(ticketDAO, times(1)).saveTicket(eq(parkingTransaction), ticketCaptor.capture());
+            verify(parkingTransaction).commit();
+            assertThat(ticketCaptor.getValue().getParkingSpot().getId()).isEqualTo(2);
+            assertThat(ticketCaptor.getValue().getVehicleRegNumber()).isEqualTo("ABCDEF");
+        }
 
+        /**
+         * test for incoming car with an invalid registration number: no spot is claimed.
+         */
+        @Test
+        void processIncomingWhenInvalidRegNumberTest() throws Exception {
+            // ARRANGE
+            when(inputReaderUtil.readVehicleRegistrationNumber()).thenThrow(new IllegalArgumentException());
+
+            // ACT
+            parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+            parkingService.processIncomingVehicle();
+
+            // ASSERT
+            verify(ticketDAO, never()).beginTransaction();
+            verify(parkingSpotDAO, never()).claimNextAvailableSlot(any(ParkingTransaction.class), any(ParkingType.class));
         }
 
     }
@@ -156,7 +192,7 @@ public class ParkingServiceTest {
          * Setup initialize for all test in the class.
          */
         @BeforeEach
-        public void setUpTest() {
+        public void setUpTest() throws Exception {
             try {
                 when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
             } catch (Exception e) {
@@ -168,7 +204,8 @@ public class ParkingServiceTest {
             ticket.setInTime(new Date(System.currentTimeMillis() - (60 * 60 * 1000)));
             ticket.setVehicleRegNumber("ABCDEF");
 
-            when(ticketDAO.getTicket(anyString())).thenReturn(ticket);
+            when(ticketDAO.beginTransaction()).thenReturn(parkingTransaction);
+            when(ticketDAO.getTicketForExit(any(ParkingTransaction.class), anyString())).thenReturn(ticket);
 
         }
 
@@ -185,13 +222,13 @@ public class ParkingServiceTest {
          * </ul>
          */
         @Test
-        void processExitingCarTest() {
+        void processExitingCarTest() throws Exception {
             // ARRANGE
             parkingSpot = new ParkingSpot(1, ParkingType.CAR, false);
             ticket.setParkingSpot(parkingSpot);
 
-            when(ticketDAO.updateTicket(any(Ticket.class))).thenReturn(true);
-            when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(true);
+            when(ticketDAO.updateTicket(any(ParkingTransaction.class), any(Ticket.class))).thenReturn(true);
+            when(parkingSpotDAO.updateParking(any(ParkingTransaction.class), any(ParkingSpot.class))).thenReturn(true);
 
             final ArgumentCaptor<Ticket> ticketCaptor = ArgumentCaptor.forClass(Ticket.class);
             final ArgumentCaptor<ParkingSpot> parkingSpotCaptor =
@@ -202,8 +239,9 @@ public class ParkingServiceTest {
             parkingService.processExitingVehicle();
 
             // ASSERT
-            verify(parkingSpotDAO, times(1)).updateParking(parkingSpotCaptor.capture());
-            verify(ticketDAO, times(1)).updateTicket(ticketCaptor.capture());
+            verify(parkingSpotDAO, times(1)).updateParking(eq(parkingTransaction), parkingSpotCaptor.capture());
+            verify(ticketDAO, times(1)).updateTicket(eq(parkingTransaction), ticketCaptor.capture());
+            verify(parkingTransaction).commit();
 
             assertThat(parkingSpotCaptor.getValue().isAvailable()).isTrue();
             assertThat(ticketCaptor.getValue().getOutTime()).isNotNull();
@@ -223,12 +261,12 @@ public class ParkingServiceTest {
          * </ul>
          */
         @Test
-        void processExitingBikeTest() {
+        void processExitingBikeTest() throws Exception {
             // ARRANGE
             parkingSpot = new ParkingSpot(1, ParkingType.BIKE, false);
             ticket.setParkingSpot(parkingSpot);
-            when(ticketDAO.updateTicket(any(Ticket.class))).thenReturn(true);
-            when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(true);
+            when(ticketDAO.updateTicket(any(ParkingTransaction.class), any(Ticket.class))).thenReturn(true);
+            when(parkingSpotDAO.updateParking(any(ParkingTransaction.class), any(ParkingSpot.class))).thenReturn(true);
 
             final ArgumentCaptor<Ticket> ticketCaptor = ArgumentCaptor.forClass(Ticket.class);
             final ArgumentCaptor<ParkingSpot> parkingSpotCaptor =
@@ -240,8 +278,9 @@ public class ParkingServiceTest {
 
             // ASSERT
 
-            verify(parkingSpotDAO, times(1)).updateParking(parkingSpotCaptor.capture());
-            verify(ticketDAO, times(1)).updateTicket(ticketCaptor.capture());
+            verify(parkingSpotDAO, times(1)).updateParking(eq(parkingTransaction), parkingSpotCaptor.capture());
+            verify(ticketDAO, times(1)).updateTicket(eq(parkingTransaction), ticketCaptor.capture());
+            verify(parkingTransaction).commit();
 
             assertThat(parkingSpotCaptor.getValue().isAvailable()).isTrue();
             assertThat(ticketCaptor.getValue().getOutTime()).isNotNull();
@@ -249,6 +288,52 @@ public class ParkingServiceTest {
 
         }
 
+        /**
+         * test for a recurring car exiting: the flag read with the ticket gives the 5% discount.
+         */
+        @Test
+        void processExitingRecurringCarTest() throws Exception {
+            // ARRANGE
+            parkingSpot = new ParkingSpot(1, ParkingType.CAR, false);
+            ticket.setParkingSpot(parkingSpot);
+            ticket.setIsRecurringUser(true);
+            when(ticketDAO.updateTicket(any(ParkingTransaction.class), any(Ticket.class))).thenReturn(true);
+            when(parkingSpotDAO.updateParking(any(ParkingTransaction.class), any(ParkingSpot.class))).thenReturn(true);
+
+            final ArgumentCaptor<Ticket> ticketCaptor = ArgumentCaptor.forClass(Ticket.class);
+
+            // ACT
+            parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+            parkingService.processExitingVehicle();
+
+            // ASSERT
+            verify(ticketDAO, times(1)).updateTicket(eq(parkingTransaction), ticketCaptor.capture());
+            verify(ticketDAO, never()).recurringUser(any(ParkingTransaction.class), anyString());
+            verify(parkingTransaction).commit();
+            assertThat(ticketCaptor.getValue().getPrice())
+                    .isCloseTo(Fare.CAR_RATE_PER_HOUR * Fare.RECURRING_USER, within(0.01));
+        }
+
+        /**
+         * test for an exit whose ticket was closed by another gate: the spot is not freed and nothing is committed.
+         */
+        @Test
+        void processExitingWhenTicketNotUpdatedTest() throws Exception {
+            // ARRANGE
+            parkingSpot = new ParkingSpot(1, ParkingType.CAR, false);
+            ticket.setParkingSpot(parkingSpot);
+            when(ticketDAO.updateTicket(any(ParkingTransaction.class), any(Ticket.class))).thenReturn(false);
+
+            // ACT
+            parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+            parkingService.processExitingVehicle();
+
+            // ASSERT
+            verify(parkingSpotDAO, never()).updateParking(any(ParkingTransaction.class), any(ParkingSpot.class));
+            verify(parkingTransaction, never()).commit();
+            verify(parkingTransaction).close();
+        }
+
     }
     /**
      * class test to verify if the given next parking spot available to park a vehicle is correct.
@@ -275,8 +360,9 @@ public class ParkingServiceTest {
 
             // ASSERT
             assertThat(parkingSpot.getParkingType()).isEqualTo(ParkingType.CAR);
-            assertThat(parkingSpot.getId()).isPositive();
+            assertThat(parkingSpot.getId()).isEqualTo(3);
             assertThat(parkingSpot.isAvailable()).isTrue();
+            verify(parkingSpotDAO, never()).claimNextAvailableSlot(any(ParkingType.class));
         }
 
         /**
@@ -296,8 +382,9 @@ public class ParkingServiceTest {
 
             // ASSERT
             assertThat(parkingSpot.getParkingType()).isEqualTo(ParkingType.BIKE);
-            assertThat(parkingSpot.getId()).isPositive();
+            assertThat(parkingSpot.getId()).isEqualTo(3);
             assertThat(parkingSpot.isAvailable()).isTrue();
+            verify(parkingSpotDAO, never()).claimNextAvailableSlot(any(ParkingType.class));
         }
 
         /**
@@ -312,13 +399,10 @@ public class ParkingServiceTest {
             // ACT
             ParkingService parkingService =
                     new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
-            parkingService.getNextParkingNumberIfAvailable();
+            parkingSpot = parkingService.getNextParkingNumberIfAvailable();
 
             // ASSERT
-
-            assertThatThrownBy(() -> {
-                throw new Exception(expectedErrorMessageFullPark);
-            }).isInstanceOf(Exception.class);
+            assertThat(parkingSpot).isNull();
 
         }
 
@@ -334,14 +418,148 @@ public class ParkingServiceTest {
             // ACT
             ParkingService parkingService =
                     new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
-            parkingService.getNextParkingNumberIfAvailable();
+            parkingSpot = parkingService.getNextParkingNumberIfAvailable();
 
             // ASSERT
+            assertThat(parkingSpot).isNull();
+
+        }
+    }
+
+    /**
+     * class tests for the entries and exits without console.
+     * @author tlili
+     */
+    @Nested
+    @DisplayName("tests for enter and exit without console")
+    class HeadlessGateTest {
 
-            assertThatThrownBy(() -> {
-                throw new Exception(expectedErrorMessageFullPark);
-            }).isInstanceOf(Exception.class);
+        /**
+         * test for an entry when the park is full: the result has no spot and nothing is saved.
+         */
+        @Test
+        void enterWhenParkFullTest() throws Exception {
+            // ARRANGE
+            when(ticketDAO.beginTransaction()).thenReturn(parkingTransaction);
+            when(parkingSpotDAO.claimNextAvailableSlot(parkingTransaction, ParkingType.BIKE)).thenReturn(null);
 
+            // ACT
+            parkingService = new ParkingService(parkingSpotDAO, ticketDAO);
+            EntryResult result = parkingService.enter(ParkingType.BIKE, "ABCDEF");
+
+            // ASSERT
+            assertThat(result.isEntered()).isFalse();
+            assertThat(result.getParkingNumber()).isEqualTo(-1);
+            verify(ticketDAO, never()).saveTicket(any(ParkingTransaction.class), any(Ticket.class));
+            verify(parkingTransaction, never()).commit();
+        }
+
+        /**
+         * test for an entry whose ticket is refused: the claim of the spot is not committed.
+         */
+        @Test
+        void enterWhenTicketRefusedTest() throws Exception {
+            // ARRANGE
+            when(ticketDAO.beginTransaction()).thenReturn(parkingTransaction);
+            when(parkingSpotDAO.claimNextAvailableSlot(parkingTransaction, ParkingType.CAR))
+                    .thenReturn(new ParkingSpot(2, ParkingType.CAR, false));
+            when(ticketDAO.saveTicket(eq(parkingTransaction), any(Ticket.class))).thenReturn(false);
+
+            // ACT & ASSERT
+            parkingService = new ParkingService(parkingSpotDAO, ticketDAO);
+            assertThatThrownBy(() -> parkingService.enter(ParkingType.CAR, "ABCDEF"))
+                    .isInstanceOf(IllegalStateException.class);
+            verify(parkingTransaction, never()).commit();
+            verify(parkingTransaction).close();
+        }
+
+        /**
+         * test for a plate typed another way at the entry and at the exit: the DAO receives it normalised.
+         */
+        @Test
+        void enterAndExitWithPlateTypedOtherWayTest() throws Exception {
+            // ARRANGE
+            when(ticketDAO.beginTransaction()).thenReturn(parkingTransaction);
+            when(parkingSpotDAO.claimNextAvailableSlot(parkingTransaction, ParkingType.CAR))
+                    .thenReturn(new ParkingSpot(2, ParkingType.CAR, false));
+            when(ticketDAO.saveTicket(eq(parkingTransaction), any(Ticket.class))).thenReturn(true);
+            when(ticketDAO.getTicketForExit(parkingTransaction, "AB123CD")).thenReturn(null);
+
+            // ACT
+            parkingService = new ParkingService(parkingSpotDAO, ticketDAO);
+            EntryResult result = parkingService.enter(ParkingType.CAR, "ab-123 cd");
+
+            // ASSERT
+            assertThat(result.getVehicleRegNumber()).isEqualTo("AB123CD");
+            assertThatThrownBy(() -> parkingService.exit(" AB 123-cd", new Date()))
+                    .isInstanceOf(NoSuchElementException.class);
+            verify(ticketDAO).getTicketForExit(parkingTransaction, "AB123CD");
+        }
+
+        /**
+         * test for an entry and an exit with a missing plate: refused before any request.
+         */
+        @Test
+        void enterAndExitWithoutPlateTest() throws Exception {
+            parkingService = new ParkingService(parkingSpotDAO, ticketDAO);
+
+            assertThatThrownBy(() -> parkingService.enter(ParkingType.CAR, " "))
+                    .isInstanceOf(IllegalArgumentException.class);
+            assertThatThrownBy(() -> parkingService.exit(null, new Date()))
+                    .isInstanceOf(IllegalArgumentException.class);
+            verify(ticketDAO, never()).beginTransaction();
+        }
+
+        /**
+         * test for an exit without open ticket.
+         */
+        @Test
+        void exitWithoutOpenTicketTest() throws Exception {
+            // ARRANGE
+            when(ticketDAO.beginTransaction()).thenReturn(parkingTransaction);
+            when(ticketDAO.getTicketForExit(parkingTransaction, "ABCDEF")).thenReturn(null);
+
+            // ACT & ASSERT
+            parkingService = new ParkingService(parkingSpotDAO, ticketDAO);
+            assertThatThrownBy(() -> parkingService.exit("ABCDEF", new Date()))
+                    .isInstanceOf(NoSuchElementException.class);
+            verify(parkingTransaction, never()).commit();
+        }
+
+        /**
+         * test for many gates entering at the same time through one service: each vehicle gets its
+         * own spot and its own ticket.
+         */
+        @Test
+        void enterFromConcurrentGatesTest() throws Exception {
+            // ARRANGE
+            AtomicInteger nextSpot = new AtomicInteger();
+            when(ticketDAO.beginTransaction()).thenReturn(parkingTransaction);
+            when(parkingSpotDAO.claimNextAvailableSlot(eq(parkingTransaction), any(ParkingType.class)))
+                    .thenAnswer(invocation -> new ParkingSpot(nextSpot.incrementAndGet(), invocation.getArgument(1), false));
+            when(ticketDAO.saveTicket(eq(parkingTransaction), any(Ticket.class))).thenReturn(true);
+            parkingService = new ParkingService(parkingSpotDAO, ticketDAO);
+            ExecutorService gates = Executors.newFixedThreadPool(8);
+
+            // ACT
+            List<Future<EntryResult>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String vehicleRegNumber = "GATE" + i;
+                results.add(gates.submit(() -> parkingService.enter(ParkingType.CAR, vehicleRegNumber)));
+            }
+            Set<Integer> parkingNumbers = new HashSet<>();
+            Set<String> vehicleRegNumbers = new HashSet<>();
+            for (Future<EntryResult> result : results) {
+                parkingNumbers.add(result.get().getParkingNumber());
+                vehicleRegNumbers.add(result.get().getVehicleRegNumber());
+            }
+            gates.shutdown();
+
+            // ASSERT
+            assertThat(parkingNumbers).hasSize(200);
+            assertThat(vehicleRegNumbers).hasSize(200);
+            verify(ticketDAO, times(200)).saveTicket(eq(parkingTransaction), any(Ticket.class));
+            verify(parkingTransaction, times(200)).commit();
         }
     }
 }
@@ -0,0 +1,96 @@
+package com.parkit.parkingsystem;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.parkit.parkingsystem.cache.RecurringUserCache;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * class of tests to check the use of {@link RecurringUserCache}.
+ */
+public class RecurringUserCacheTest {
+
+    private AtomicLong now;
+    private RecurringUserCache recurringUserCache;
+
+    @BeforeEach
+    private void setUpPerTest() {
+        now = new AtomicLong(1000);
+        recurringUserCache = new RecurringUserCache(1000, 0.01, 2, 60000, now::get);
+    }
+
+    @Test
+    @DisplayName("Before loading, every plate not recorded is unknown")
+    public void givenCacheNotLoaded_whenLookup_thenDatabaseMustBeAsked() {
+        assertThat(recurringUserCache.lookup("ABCDEF")).isNull();
+        assertThat(recurringUserCache.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("A loaded cache answers no for a first time visitor and never for a recurring plate")
+    public void givenLoadedCache_whenLookup_thenNoFalseNegative() {
+        // ARRANGE
+        List<String> recurringPlates = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            recurringPlates.add("R" + i);
+        }
+        recurringUserCache.load(recurringPlates);
+
+        // ACT
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (recurringUserCache.lookup("N" + i) != Boolean.FALSE) {
+                falsePositives++;
+            }
+        }
+
+        // ASSERT
+        for (String plate : recurringPlates) {
+            assertThat(recurringUserCache.lookup(plate)).isNotEqualTo(Boolean.FALSE);
+        }
+        assertThat(falsePositives).isLessThan(300);
+        assertThat(recurringUserCache.getNegativeHits()).isEqualTo(10000 - falsePositives);
+    }
+
+    @Test
+    @DisplayName("A closed ticket makes the plate recurring until its time to live")
+    public void givenClosedTicket_whenLookup_thenPlateIsRecurringUntilExpiry() {
+        // ARRANGE
+        recurringUserCache.load(Collections.emptyList());
+        assertThat(recurringUserCache.lookup("ABCDEF")).isFalse();
+
+        // ACT
+        recurringUserCache.addRecurringUser("ABCDEF");
+
+        // ASSERT
+        assertThat(recurringUserCache.lookup("ABCDEF")).isTrue();
+        assertThat(recurringUserCache.getPositiveHits()).isEqualTo(1);
+        now.addAndGet(60000);
+        assertThat(recurringUserCache.lookup("ABCDEF")).isNull();
+    }
+
+    @Test
+    @DisplayName("The least recently used recurring plate is evicted first")
+    public void givenFullLru_whenAddRecurringUser_thenEldestIsEvicted() {
+        // ARRANGE
+        for (String plate : Arrays.asList("AAA", "BBB")) {
+            recurringUserCache.addRecurringUser(plate);
+        }
+        recurringUserCache.lookup("AAA");
+
+        // ACT
+        recurringUserCache.addRecurringUser("CCC");
+
+        // ASSERT
+        assertThat(recurringUserCache.lookup("AAA")).isTrue();
+        assertThat(recurringUserCache.lookup("BBB")).isNull();
+        assertThat(recurringUserCache.lookup("CCC")).isTrue();
+    }
+}
@@ -0,0 +1,77 @@
+package com.parkit.parkingsystem;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketRepricingDAO;
+import com.parkit.parkingsystem.model.ClosedTicketChunk;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.RepricingService;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+/**
+ * class of tests to check the use of {@link RepricingService}.
+ */
+@ExtendWith(MockitoExtension.class)
+public class RepricingServiceTest {
+
+    private static final long IN_TIME = 1_600_000_000_000L;
+    private static final long ONE_HOUR = TimeUnit.HOURS.toMillis(1);
+
+    @Mock
+    private TicketRepricingDAO ticketRepricingDAO;
+
+    @Test
+    @DisplayName("Only the tickets whose price changed are written back, chunk by chunk")
+    public void givenTicketsWithOutdatedPrices_whenReprice_thenOnlyChangedPricesAreUpdated() throws Exception {
+        // ARRANGE
+        when(ticketRepricingDAO.forEachClosedTicketChunk(any(Date.class), any(Date.class),
+                any(ClosedTicketChunk.class), any(TicketRepricingDAO.ChunkHandler.class))).thenAnswer(invocation -> {
+                    ClosedTicketChunk chunk = invocation.getArgument(2);
+                    TicketRepricingDAO.ChunkHandler handler = invocation.getArgument(3);
+                    // first chunk: car priced right, archived bike priced wrong
+                    chunk.add(1, ParkingType.CAR, IN_TIME, IN_TIME + ONE_HOUR, false, 150);
+                    chunk.add(2, ParkingType.BIKE, IN_TIME, IN_TIME + ONE_HOUR, false, 150, true);
+                    handler.handle(chunk);
+                    chunk.clear();
+                    // second chunk: recurring car priced without discount
+                    chunk.add(3, ParkingType.CAR, IN_TIME, IN_TIME + ONE_HOUR, true, 150);
+                    handler.handle(chunk);
+                    return 3L;
+                });
+        List<String> updates = new ArrayList<>();
+        doAnswer(invocation -> {
+            int[] ids = invocation.getArgument(0);
+            boolean[] archived = invocation.getArgument(1);
+            long[] prices = invocation.getArgument(2);
+            int count = invocation.getArgument(3);
+            for (int i = 0; i < count; i++) {
+                updates.add(ids[i] + (archived[i] ? " archived" : "") + "=" + prices[i]);
+            }
+            return null;
+        }).when(ticketRepricingDAO).updatePrices(any(int[].class), any(boolean[].class), any(long[].class), anyInt());
+        RepricingService repricingService =
+                new RepricingService(ticketRepricingDAO, new FareCalculatorService(), 2, 2);
+
+        // ACT
+        RepricingService.Report report = repricingService.reprice(new Date(0), new Date());
+
+        // ASSERT
+        assertThat(updates).containsExactly("2 archived=100", "3=143");
+        assertThat(report.getTicketsRead()).isEqualTo(3);
+        assertThat(report.getTicketsRepriced()).isEqualTo(2);
+        assertThat(report.getTicketsPerSecond()).isPositive();
+    }
+}
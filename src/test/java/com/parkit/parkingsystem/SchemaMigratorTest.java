@@ -0,0 +1,88 @@
+package com.parkit.parkingsystem;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.SchemaMigrator;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * class of tests to check the use of {@link SchemaMigrator}.
+ */
+public class SchemaMigratorTest {
+
+    private DataBaseConfig dataBaseConfig;
+    private Statement statement;
+    private PreparedStatement saveVersion;
+    private ResultSet currentVersion;
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception {
+        dataBaseConfig = mock(DataBaseConfig.class);
+        Connection connection = mock(Connection.class);
+        statement = mock(Statement.class);
+        saveVersion = mock(PreparedStatement.class);
+        currentVersion = mock(ResultSet.class);
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+        when(connection.prepareStatement(anyString())).thenReturn(saveVersion);
+        when(statement.executeQuery(anyString())).thenReturn(currentVersion);
+        when(currentVersion.next()).thenReturn(true);
+    }
+
+    @Test
+    @DisplayName("Only the migrations newer than the recorded version are applied")
+    public void givenSchemaAtVersion1_whenMigrate_thenBaselineIsNotRunAgain() throws Exception {
+        // ARRANGE
+        when(currentVersion.getInt(1)).thenReturn(1);
+
+        // ACT
+        int applied = new SchemaMigrator(dataBaseConfig).migrate();
+
+        // ASSERT
+        assertThat(applied).isEqualTo(7);
+        verify(statement, never()).execute(startsWith("create table if not exists parking"));
+        verify(statement).execute(startsWith("create index IDX_TICKET_PLATE_OUT_IN"));
+        verify(saveVersion, never()).setInt(1, 1);
+        verify(saveVersion).setInt(1, 2);
+        verify(saveVersion).setInt(1, 3);
+        verify(saveVersion).setInt(1, 4);
+        verify(saveVersion).setInt(1, 5);
+        verify(saveVersion).setInt(1, 6);
+        verify(saveVersion).setInt(1, 7);
+        verify(saveVersion).setInt(1, 8);
+        verify(saveVersion, times(7)).execute();
+    }
+
+    @Test
+    @DisplayName("An empty database gets every migration")
+    public void givenEmptySchema_whenMigrate_thenEveryMigrationIsApplied() throws Exception {
+        // ARRANGE
+        when(currentVersion.getInt(1)).thenReturn(0);
+
+        // ACT
+        int applied = new SchemaMigrator(dataBaseConfig).migrate();
+
+        // ASSERT
+        assertThat(applied).isEqualTo(8);
+        verify(statement).execute(startsWith("create table if not exists parking"));
+        verify(statement).execute(startsWith("create table if not exists ticket"));
+        verify(saveVersion).setInt(1, 1);
+        verify(saveVersion).setInt(1, 2);
+        verify(dataBaseConfig).closeConnection(any(Connection.class));
+    }
+}
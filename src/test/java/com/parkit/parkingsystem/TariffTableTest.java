@@ -0,0 +1,147 @@
+package com.parkit.parkingsystem;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.parkit.parkingsystem.config.TariffProvider;
+import com.parkit.parkingsystem.config.TariffTable;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+/**
+ * class of tests to check the prices of {@link TariffTable} and the reload of {@link TariffProvider}.
+ */
+public class TariffTableTest {
+
+    private static final long ONE_HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static long utc(int day, int hour, int minute) {
+        // 2024-01-01 is a Monday
+        return LocalDateTime.of(2024, 1, day, hour, minute).toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static long cents(TariffTable table, ParkingType parkingType, long inTime, long outTime) {
+        return (table.cost(parkingType, inTime, outTime) + ONE_HOUR_MILLIS / 2) / ONE_HOUR_MILLIS;
+    }
+
+    @Test
+    @DisplayName("Without tariffs file, the table charges the flat rates of the cars and bikes")
+    public void givenFlatRates_whenCost_thenRateTimesDuration() {
+        TariffTable table = TariffTable.flatRates();
+
+        assertThat(cents(table, ParkingType.CAR, utc(1, 10, 0), utc(1, 12, 0))).isEqualTo(300);
+        assertThat(cents(table, ParkingType.BIKE, utc(6, 23, 0), utc(8, 1, 30))).isEqualTo(2650);
+    }
+
+    @Test
+    @DisplayName("A stay across a peak band pays the band rate for its minutes in the band only")
+    public void givenPeakBand_whenStayAcrossIt_thenEachMinuteAtItsRate() {
+        // ARRANGE
+        Properties properties = new Properties();
+        properties.setProperty("CAR.weekday.bands", "07:00-10:00=300");
+        properties.setProperty("CAR.weekend.rate", "60");
+        TariffTable table = TariffTable.compile(properties);
+
+        // ACT & ASSERT
+        // Monday 06:00-08:00: one hour at 150 then one hour at 300
+        assertThat(cents(table, ParkingType.CAR, utc(1, 6, 0), utc(1, 8, 0))).isEqualTo(450);
+        // Saturday 07:00-09:00 is out of the weekday bands
+        assertThat(cents(table, ParkingType.CAR, utc(6, 7, 0), utc(6, 9, 0))).isEqualTo(120);
+        // the bikes keep their own rate
+        assertThat(cents(table, ParkingType.BIKE, utc(1, 6, 0), utc(1, 8, 0))).isEqualTo(200);
+    }
+
+    @Test
+    @DisplayName("The bands follow the local time of the park, also with a fixed offset")
+    public void givenZoneOffset_whenCost_thenBandsInLocalTime() {
+        Properties properties = new Properties();
+        properties.setProperty("zone", "+02:00");
+        properties.setProperty("CAR.weekday.bands", "08:00-09:00=300");
+        TariffTable table = TariffTable.compile(properties);
+
+        // 06:00-07:00 UTC is 08:00-09:00 local
+        assertThat(cents(table, ParkingType.CAR, utc(2, 6, 0), utc(2, 7, 0))).isEqualTo(300);
+    }
+
+    private static long paris(int month, int day, int hour) {
+        return LocalDateTime.of(2024, month, day, hour, 0).atZone(ZoneId.of("Europe/Paris")).toInstant().toEpochMilli();
+    }
+
+    @Test
+    @DisplayName("The bands and the days follow the daylight saving time of the zone of the park")
+    public void givenZoneWithDaylightSaving_whenCostAcrossTransitions_thenLocalTimeIsFollowed() {
+        // ARRANGE
+        Properties properties = new Properties();
+        properties.setProperty("zone", "Europe/Paris");
+        properties.setProperty("CAR.weekday.bands", "07:00-10:00=300");
+        properties.setProperty("CAR.weekend.rate", "60");
+        properties.setProperty("BIKE.dailyCap", "2000");
+        TariffTable table = TariffTable.compile(properties);
+
+        // ACT & ASSERT
+        // the peak band starts at 07:00 local before and after the last Sunday of March and of October
+        assertThat(cents(table, ParkingType.CAR, paris(3, 25, 7), paris(3, 25, 8))).isEqualTo(300);
+        assertThat(cents(table, ParkingType.CAR, paris(4, 1, 7), paris(4, 1, 8))).isEqualTo(300);
+        assertThat(cents(table, ParkingType.CAR, paris(4, 1, 6), paris(4, 1, 7))).isEqualTo(150);
+        assertThat(cents(table, ParkingType.CAR, paris(10, 28, 7), paris(10, 28, 8))).isEqualTo(300);
+        assertThat(cents(table, ParkingType.CAR, paris(10, 28, 10), paris(10, 28, 11))).isEqualTo(150);
+        // Sunday 31 March lasts 23 hours, Sunday 27 October 25 hours
+        assertThat(cents(table, ParkingType.CAR, paris(3, 31, 0), paris(4, 1, 0))).isEqualTo(23 * 60);
+        assertThat(cents(table, ParkingType.CAR, paris(10, 27, 0), paris(10, 28, 0))).isEqualTo(25 * 60);
+        // the two offsets of Sunday 31 March share one daily cap
+        assertThat(cents(table, ParkingType.BIKE, paris(3, 31, 0), paris(4, 1, 0))).isEqualTo(2000);
+    }
+
+    @Test
+    @DisplayName("A stay of several weeks pays at most the daily cap for each calendar day")
+    public void givenDailyCap_whenLongStay_thenEachDayCapped() {
+        // ARRANGE
+        Properties properties = new Properties();
+        properties.setProperty("CAR.dailyCap", "2000");
+        TariffTable table = TariffTable.compile(properties);
+
+        // ACT & ASSERT
+        // Monday 20:00 to Tuesday 02:00: 4h then 2h, under the cap
+        assertThat(cents(table, ParkingType.CAR, utc(1, 20, 0), utc(2, 2, 0))).isEqualTo(900);
+        // a whole day is capped
+        assertThat(cents(table, ParkingType.CAR, utc(1, 0, 0), utc(2, 0, 0))).isEqualTo(2000);
+        // Monday 20:00 to Monday 15 02:00: 600, then 13 capped days, then 300
+        assertThat(cents(table, ParkingType.CAR, utc(1, 20, 0), utc(15, 2, 0))).isEqualTo(600 + 13 * 2000 + 300);
+    }
+
+    @Test
+    @DisplayName("A changed tariffs file is used for the next fares, a wrong one is ignored")
+    public void givenTariffsFile_whenChanged_thenReloaded() throws IOException {
+        // ARRANGE
+        File file = Files.createTempDirectory("tariffs").resolve("tariffs.properties").toFile();
+        Files.write(file.toPath(), "CAR.rate=150\n".getBytes(StandardCharsets.ISO_8859_1));
+        TariffProvider tariffProvider = new TariffProvider(file);
+        FareCalculatorService fareCalculatorService = new FareCalculatorService(tariffProvider);
+        assertThat(fareCalculatorService.calculateFareCents(ParkingType.CAR, utc(1, 10, 0), utc(1, 12, 0), false))
+                .isEqualTo(300);
+
+        // ACT
+        Files.write(file.toPath(), "CAR.rate=200\n".getBytes(StandardCharsets.ISO_8859_1));
+        file.setLastModified(file.lastModified() + 2000);
+        boolean reloaded = tariffProvider.reloadIfModified();
+        Files.write(file.toPath(), "CAR.weekday.bands=25:00-26:00=1\n".getBytes(StandardCharsets.ISO_8859_1));
+        file.setLastModified(file.lastModified() + 4000);
+        boolean wrongFileReloaded = tariffProvider.reloadIfModified();
+
+        // ASSERT
+        assertThat(reloaded).isTrue();
+        assertThat(wrongFileReloaded).isFalse();
+        assertThat(fareCalculatorService.calculateFareCents(ParkingType.CAR, utc(1, 10, 0), utc(1, 12, 0), false))
+                .isEqualTo(400);
+    }
+}
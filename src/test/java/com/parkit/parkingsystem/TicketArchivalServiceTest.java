@@ -0,0 +1,62 @@
+package com.parkit.parkingsystem;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.parkit.parkingsystem.dao.TicketArchiveDAO;
+import com.parkit.parkingsystem.service.TicketArchivalService;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+/**
+ * class of tests to check the use of {@link TicketArchivalService}.
+ */
+@ExtendWith(MockitoExtension.class)
+public class TicketArchivalServiceTest {
+
+    @Mock
+    private TicketArchiveDAO ticketArchiveDAO;
+
+    @Test
+    @DisplayName("Batches are archived until a batch is not full")
+    public void givenThreeBatchesToArchive_whenArchive_thenEveryBatchIsMoved() throws Exception {
+        // ARRANGE
+        Date now = new Date();
+        Date closedBefore = new Date(now.getTime() - TimeUnit.DAYS.toMillis(30));
+        when(ticketArchiveDAO.archiveClosedTickets(closedBefore, 100)).thenReturn(100, 100, 42);
+        TicketArchivalService ticketArchivalService = new TicketArchivalService(ticketArchiveDAO, 30, 100, 0);
+
+        // ACT
+        int archived = ticketArchivalService.archiveClosedTickets(now);
+
+        // ASSERT
+        assertThat(archived).isEqualTo(242);
+        verify(ticketArchiveDAO, times(3)).archiveClosedTickets(eq(closedBefore), eq(100));
+    }
+
+    @Test
+    @DisplayName("A failing batch stops the run without losing the count of the previous ones")
+    public void givenFailingSecondBatch_whenArchive_thenRunStops() throws Exception {
+        // ARRANGE
+        when(ticketArchiveDAO.archiveClosedTickets(any(Date.class), eq(100)))
+                .thenReturn(100).thenThrow(new SQLException("Lock wait timeout"));
+        TicketArchivalService ticketArchivalService = new TicketArchivalService(ticketArchiveDAO, 30, 100, 0);
+
+        // ACT
+        int archived = ticketArchivalService.archiveClosedTickets(new Date());
+
+        // ASSERT
+        assertThat(archived).isEqualTo(100);
+        verify(ticketArchiveDAO, times(2)).archiveClosedTickets(any(Date.class), eq(100));
+    }
+}
@@ -0,0 +1,118 @@
+package com.parkit.parkingsystem;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.eventlog.TicketEventLog;
+import com.parkit.parkingsystem.model.TicketEvent;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * class of tests to check the use of {@link TicketEventLog}.
+ */
+public class TicketEventLogTest {
+
+    private static final int SEGMENT_BYTES = 4096;
+
+    private File directory;
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception {
+        directory = Files.createTempDirectory("ticket-events").toFile();
+    }
+
+    private static TicketEvent entered(long seq) {
+        return TicketEvent.vehicleEntered(seq, (int) seq, 1, ParkingType.CAR, "PLATE" + seq, 1000L * seq);
+    }
+
+    private static List<TicketEvent> readAll(TicketEventLog.Cursor cursor) {
+        List<TicketEvent> events = new ArrayList<>();
+        TicketEvent event;
+        while ((event = cursor.next()) != null) {
+            events.add(event);
+        }
+        return events;
+    }
+
+    @Test
+    @DisplayName("The events appended are read back in order after the log is opened again")
+    public void givenAppendedEvents_whenReopen_thenEventsAreReadInOrder() throws Exception {
+        // ARRANGE
+        TicketEventLog eventLog = TicketEventLog.open(directory, SEGMENT_BYTES);
+        eventLog.append(entered(1));
+        eventLog.append(TicketEvent.vehicleExited(2, 1, 1, ParkingType.CAR, "PLATE1", 1000L, 7200000L, 2.25, true));
+        eventLog.close();
+
+        // ACT
+        TicketEventLog reopened = TicketEventLog.open(directory, SEGMENT_BYTES);
+        List<TicketEvent> events = readAll(reopened.openCursor(0));
+
+        // ASSERT
+        assertThat(reopened.getLastSeq()).isEqualTo(2);
+        assertThat(events).hasSize(2);
+        assertThat(events.get(0).getType()).isEqualTo(TicketEvent.Type.VEHICLE_ENTERED);
+        assertThat(events.get(0).getVehicleRegNumber()).isEqualTo("PLATE1");
+        assertThat(events.get(1).getType()).isEqualTo(TicketEvent.Type.VEHICLE_EXITED);
+        assertThat(events.get(1).getOutTimeMillis()).isEqualTo(7200000L);
+        assertThat(events.get(1).getPrice()).isEqualTo(2.25);
+        assertThat(events.get(1).isRecurringUser()).isTrue();
+    }
+
+    @Test
+    @DisplayName("A record half written before a crash is cut off and the next append takes its place")
+    public void givenTornLastRecord_whenReopen_thenLogEndsAtLastCompleteEvent() throws Exception {
+        // ARRANGE
+        TicketEventLog eventLog = TicketEventLog.open(directory, SEGMENT_BYTES);
+        eventLog.append(entered(1));
+        eventLog.append(entered(2));
+        eventLog.close();
+        File segment = directory.listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            // corrupt the content of the second record, as if the machine stopped while writing it
+            long secondRecord = 8 + file.readInt();
+            file.seek(secondRecord + 20);
+            file.writeInt(0xDEADBEEF);
+        }
+
+        // ACT
+        TicketEventLog reopened = TicketEventLog.open(directory, SEGMENT_BYTES);
+        reopened.append(entered(2));
+
+        // ASSERT
+        assertThat(readAll(reopened.openCursor(0))).extracting(TicketEvent::getSeq).containsExactly(1L, 2L);
+        assertThrows(IllegalArgumentException.class, () -> reopened.append(entered(5)));
+    }
+
+    @Test
+    @DisplayName("A cursor follows the events across segments and the old segments can be removed")
+    public void givenManyEvents_whenReadAndDeleteSegments_thenCursorFollowsAndOldEventsAreGone() throws Exception {
+        // ARRANGE
+        TicketEventLog eventLog = TicketEventLog.open(directory, SEGMENT_BYTES);
+        TicketEventLog.Cursor cursor = eventLog.openCursor(0);
+        for (long seq = 1; seq <= 200; seq++) {
+            eventLog.append(entered(seq));
+        }
+
+        // ACT
+        List<TicketEvent> events = readAll(cursor);
+        eventLog.append(entered(201));
+        TicketEvent appendedLater = cursor.next();
+        int deleted = eventLog.deleteSegmentsBefore(150);
+
+        // ASSERT
+        assertThat(events).extracting(TicketEvent::getSeq).hasSize(200).startsWith(1L).endsWith(200L);
+        assertThat(appendedLater.getSeq()).isEqualTo(201);
+        assertThat(deleted).isPositive();
+        assertThat(eventLog.getFirstSeq()).isLessThanOrEqualTo(151).isGreaterThan(1);
+        assertThat(readAll(eventLog.openCursor(150))).extracting(TicketEvent::getSeq).startsWith(151L).endsWith(201L);
+        assertThrows(IllegalStateException.class, () -> eventLog.openCursor(0));
+    }
+}
@@ -0,0 +1,147 @@
+package com.parkit.parkingsystem;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.parkit.parkingsystem.config.TariffProvider;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketProjection;
+import com.parkit.parkingsystem.eventlog.ParkingState;
+import com.parkit.parkingsystem.eventlog.TicketEventLog;
+import com.parkit.parkingsystem.eventlog.TicketEventStore;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.model.TicketEvent;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * class of tests to check the use of {@link TicketEventStore}.
+ */
+public class TicketEventStoreTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private File directory;
+    private TicketProjection projection;
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception {
+        directory = Files.createTempDirectory("ticket-event-store").toFile();
+        projection = mock(TicketProjection.class);
+        when(projection.loadState()).thenAnswer(invocation -> new ParkingState(Arrays.asList(
+                new ParkingSpot(1, ParkingType.CAR, true), new ParkingSpot(2, ParkingType.CAR, true),
+                new ParkingSpot(3, ParkingType.BIKE, true)),
+                Collections.emptyList(), Collections.singletonList("REGULAR"), 1, 0));
+    }
+
+    private TicketEventStore open(int snapshotEveryEvents) throws Exception {
+        return TicketEventStore.open(directory, projection, 4096, snapshotEveryEvents, 0,
+                new FareCalculatorService(TariffProvider.getDefault()));
+    }
+
+    @Test
+    @DisplayName("An entry takes the lowest free spot and the exit prices the stay from memory")
+    public void givenEnteredVehicle_whenExit_thenTicketIsPricedAndSpotFreed() throws Exception {
+        // ARRANGE
+        TicketEventStore store = open(1000);
+        Date inTime = new Date(System.currentTimeMillis() - HOUR);
+
+        // ACT
+        EntryResult entry = store.enter(ParkingType.CAR, "ABCDEF", inTime);
+        int freeWhileParked = store.countAvailableSpots(ParkingType.CAR);
+        Ticket ticket = store.exit("ABCDEF", new Date(inTime.getTime() + HOUR));
+
+        // ASSERT
+        assertThat(entry.isEntered()).isTrue();
+        assertThat(entry.getParkingNumber()).isEqualTo(1);
+        assertThat(entry.getTicketId()).isEqualTo(1);
+        assertThat(freeWhileParked).isEqualTo(1);
+        assertThat(ticket.getPrice()).isPositive();
+        assertThat(ticket.getIsRecurringUser()).isFalse();
+        assertThat(store.countAvailableSpots(ParkingType.CAR)).isEqualTo(2);
+        assertThat(store.getLastSeq()).isEqualTo(2);
+        verify(projection).start(any(TicketEventLog.class));
+        store.close();
+    }
+
+    @Test
+    @DisplayName("A full park, a second entry of the same vehicle and an unknown exit are refused")
+    public void givenRefusedRequests_whenEnterOrExit_thenNothingIsRecorded() throws Exception {
+        // ARRANGE
+        TicketEventStore store = open(1000);
+        store.enter(ParkingType.BIKE, "BIKE1", new Date());
+
+        // ACT
+        EntryResult full = store.enter(ParkingType.BIKE, "BIKE2", new Date());
+
+        // ASSERT
+        assertThat(full.isEntered()).isFalse();
+        assertThrows(IllegalArgumentException.class, () -> store.enter(ParkingType.CAR, "BIKE1", new Date()));
+        assertThrows(NoSuchElementException.class, () -> store.exit("UNKNOWN", new Date()));
+        assertThat(store.getLastSeq()).isEqualTo(1);
+        store.close();
+    }
+
+    @Test
+    @DisplayName("After a restart the state is rebuilt from the snapshot and the events following it")
+    public void givenSnapshotAndLogTail_whenReopen_thenStateIsRebuiltWithoutTheTables() throws Exception {
+        // ARRANGE
+        TicketEventStore store = open(2);
+        long now = System.currentTimeMillis();
+        store.enter(ParkingType.CAR, "REGULAR", new Date(now - 2 * HOUR));
+        store.enter(ParkingType.CAR, "FIRST", new Date(now - 2 * HOUR));
+        store.exit("FIRST", new Date(now - HOUR));
+        // no close: the process stops after the snapshot of event 2, event 3 is only in the log
+        Thread.sleep(200);
+
+        // ACT
+        TicketEventStore restarted = open(1000);
+        Ticket regular = restarted.exit("REGULAR", new Date(now));
+        EntryResult again = restarted.enter(ParkingType.CAR, "FIRST", new Date(now));
+
+        // ASSERT
+        verify(projection, times(1)).loadState();
+        assertThat(regular.getIsRecurringUser()).isTrue();
+        assertThat(regular.getParkingSpot().getId()).isEqualTo(1);
+        assertThat(again.getTicketId()).isEqualTo(3);
+        assertThat(restarted.getLastSeq()).isEqualTo(5);
+        restarted.close();
+    }
+
+    @Test
+    @DisplayName("A log ending before the snapshot is refused instead of losing events")
+    public void givenLogBehindSnapshot_whenOpen_thenStoreIsNotOpened() throws Exception {
+        // ARRANGE
+        TicketEventStore store = open(1000);
+        store.enter(ParkingType.CAR, "ABCDEF", new Date());
+        store.enter(ParkingType.CAR, "GHIJKL", new Date());
+        store.close();
+        File logDirectory = new File(directory, "log");
+        for (File segment : logDirectory.listFiles()) {
+            assertThat(segment.delete()).isTrue();
+        }
+        TicketEventLog shorter = TicketEventLog.open(logDirectory, 4096);
+        shorter.append(TicketEvent.vehicleEntered(1, 1, 1, ParkingType.CAR,
+                "ABCDEF", System.currentTimeMillis()));
+        shorter.close();
+
+        // ACT & ASSERT
+        assertThrows(IllegalStateException.class, () -> open(1000));
+    }
+}
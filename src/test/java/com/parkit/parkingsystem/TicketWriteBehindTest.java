@@ -0,0 +1,206 @@
+package com.parkit.parkingsystem;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.parkit.parkingsystem.cache.OpenTicketIndex;
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingTransaction;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketWriteBehind;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Date;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * class of tests to check the use of {@link TicketWriteBehind}.
+ */
+public class TicketWriteBehindTest {
+
+    private DataBaseConfig dataBaseConfig;
+    private Connection connection;
+    private PreparedStatement preparedStatement;
+    private ResultSet generatedKeys;
+    private File journalFile;
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception {
+        dataBaseConfig = mock(DataBaseConfig.class);
+        connection = mock(Connection.class);
+        preparedStatement = mock(PreparedStatement.class);
+        generatedKeys = mock(ResultSet.class);
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString(), anyInt())).thenReturn(preparedStatement);
+        when(preparedStatement.getGeneratedKeys()).thenReturn(generatedKeys);
+        journalFile = new File(Files.createTempDirectory("ticket-journal").toFile(), "journal.bin");
+    }
+
+    private Ticket newTicket(String vehicleRegNumber) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setPrice(0);
+        ticket.setInTime(new Date());
+        return ticket;
+    }
+
+    @Test
+    @DisplayName("The queued tickets are inserted by one JDBC batch")
+    public void givenQueuedTickets_whenFlush_thenTicketsAreWrittenInOneBatch() throws Exception {
+        // ARRANGE
+        TicketWriteBehind ticketWriteBehind = new TicketWriteBehind(dataBaseConfig, journalFile, 10, 10, 60000, 100);
+        ticketWriteBehind.start();
+
+        // ACT
+        assertThat(ticketWriteBehind.enqueue(newTicket("ABC"))).isTrue();
+        assertThat(ticketWriteBehind.enqueue(newTicket("DEF"))).isTrue();
+        assertThat(ticketWriteBehind.enqueue(newTicket("GHI"))).isTrue();
+        ticketWriteBehind.flush();
+        ticketWriteBehind.close();
+
+        // ASSERT
+        verify(preparedStatement, times(3)).addBatch();
+        verify(preparedStatement, times(1)).executeBatch();
+        verify(connection, times(1)).commit();
+        assertThat(ticketWriteBehind.getPendingCount()).isZero();
+        assertThat(journalFile.length()).isZero();
+    }
+
+    @Test
+    @DisplayName("The written tickets get their generated id and are put in the index of the open tickets")
+    public void givenQueuedTickets_whenWritten_thenTicketsAreIndexedWithTheirId() throws Exception {
+        // ARRANGE
+        when(generatedKeys.next()).thenReturn(true, true, false);
+        when(generatedKeys.getInt(1)).thenReturn(41, 42);
+        OpenTicketIndex openTicketIndex = new OpenTicketIndex();
+        TicketWriteBehind ticketWriteBehind = new TicketWriteBehind(dataBaseConfig, openTicketIndex, journalFile,
+                10, 10, 60000, 100);
+        ticketWriteBehind.start();
+        ticketWriteBehind.enqueue(newTicket("ABC"));
+        ticketWriteBehind.enqueue(newTicket("DEF"));
+        boolean pendingBeforeFlush = ticketWriteBehind.isPending("ABC");
+
+        // ACT
+        ticketWriteBehind.flush();
+        ticketWriteBehind.close();
+
+        // ASSERT
+        assertThat(pendingBeforeFlush).isTrue();
+        assertThat(ticketWriteBehind.isPending("ABC")).isFalse();
+        assertThat(ticketWriteBehind.isPending("DEF")).isFalse();
+        assertThat(openTicketIndex.get("ABC").getId()).isEqualTo(41);
+        assertThat(openTicketIndex.get("DEF").getId()).isEqualTo(42);
+        assertThat(openTicketIndex.get("DEF").getParkingSpot().getParkingType()).isEqualTo(ParkingType.CAR);
+    }
+
+    @Test
+    @DisplayName("The tickets not written before a stop are recovered from the journal")
+    public void givenUnwrittenTicketsInJournal_whenStart_thenTicketsAreWritten() throws Exception {
+        // ARRANGE
+        when(dataBaseConfig.getConnection()).thenThrow(new SQLException("Database down"));
+        TicketWriteBehind crashed = new TicketWriteBehind(dataBaseConfig, journalFile, 10, 10, 60000, 100);
+        crashed.start();
+        crashed.enqueue(newTicket("ABC"));
+        crashed.enqueue(newTicket("DEF"));
+        DataBaseConfig restartedConfig = mock(DataBaseConfig.class);
+        when(restartedConfig.getConnection()).thenReturn(connection);
+
+        // ACT
+        TicketWriteBehind restarted = new TicketWriteBehind(restartedConfig, journalFile, 10, 10, 60000, 100);
+        restarted.start();
+        restarted.flush();
+        restarted.close();
+
+        // ASSERT
+        verify(preparedStatement).setString(2, "ABC");
+        verify(preparedStatement).setString(2, "DEF");
+        verify(preparedStatement, times(1)).executeBatch();
+    }
+
+    @Test
+    @DisplayName("A full queue refuses the ticket after the offer timeout")
+    public void givenFullQueue_whenEnqueue_thenTicketIsRefused() throws Exception {
+        // ARRANGE
+        when(dataBaseConfig.getConnection()).thenThrow(new SQLException("Database down"));
+        TicketWriteBehind ticketWriteBehind = new TicketWriteBehind(dataBaseConfig, journalFile, 1, 1, 60000, 50);
+        ticketWriteBehind.start();
+        ticketWriteBehind.enqueue(newTicket("ABC"));
+        ticketWriteBehind.enqueue(newTicket("DEF"));
+
+        // ACT
+        boolean accepted = ticketWriteBehind.enqueue(newTicket("GHI"));
+
+        // ASSERT
+        assertThat(accepted).isFalse();
+        verify(preparedStatement, never()).executeBatch();
+    }
+
+    @Test
+    @DisplayName("The ticket of an entry is journaled and queued only once the entry is committed")
+    public void givenTransaction_whenEnqueue_thenTicketIsQueuedOnCommit() throws Exception {
+        // ARRANGE
+        TicketWriteBehind ticketWriteBehind = new TicketWriteBehind(dataBaseConfig, journalFile, 10, 10, 60000, 100);
+        ticketWriteBehind.start();
+        TicketDAO ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        ticketDAO.ticketWriteBehind = ticketWriteBehind;
+        long journalLengthBeforeCommit;
+        int pendingBeforeCommit;
+
+        // ACT
+        try (ParkingTransaction transaction = ticketDAO.beginTransaction()) {
+            assertThat(ticketDAO.saveTicket(transaction, newTicket("ABC"))).isTrue();
+            journalLengthBeforeCommit = journalFile.length();
+            pendingBeforeCommit = ticketWriteBehind.getPendingCount();
+            transaction.commit();
+        }
+        ticketWriteBehind.flush();
+        ticketWriteBehind.close();
+
+        // ASSERT
+        assertThat(journalLengthBeforeCommit).isZero();
+        assertThat(pendingBeforeCommit).isZero();
+        verify(preparedStatement).setString(2, "ABC");
+        verify(preparedStatement, times(1)).executeBatch();
+    }
+
+    @Test
+    @DisplayName("The ticket of a rolled back entry is never written and gives its place back")
+    public void givenRolledBackTransaction_whenFlush_thenTicketIsNotWritten() throws Exception {
+        // ARRANGE
+        TicketWriteBehind ticketWriteBehind = new TicketWriteBehind(dataBaseConfig, journalFile, 1, 1, 60000, 50);
+        ticketWriteBehind.start();
+        TicketDAO ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        ticketDAO.ticketWriteBehind = ticketWriteBehind;
+
+        // ACT
+        try (ParkingTransaction transaction = ticketDAO.beginTransaction()) {
+            assertThat(ticketDAO.saveTicket(transaction, newTicket("ABC"))).isTrue();
+        }
+        boolean accepted = ticketWriteBehind.enqueue(newTicket("DEF"));
+        ticketWriteBehind.flush();
+        ticketWriteBehind.close();
+
+        // ASSERT
+        assertThat(accepted).isTrue();
+        verify(preparedStatement, never()).setString(2, "ABC");
+        verify(preparedStatement).setString(2, "DEF");
+    }
+}
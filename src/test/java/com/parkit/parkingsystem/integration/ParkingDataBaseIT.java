@@ -101,7 +101,8 @@ public class ParkingDataBaseIT {
         // THEN
         assertNotNull(ticket);
         assertEquals(outTime, ticket.getOutTime().getTime());
-        assertEquals(Fare.CAR_RATE_PER_HOUR * (recurring ? Fare.RECURRING_USER : 1.0), ticket.getPrice());
+        // 0.95 * 1.5 = 1.425, rounded half up to the cent for a recurring user
+        assertEquals(recurring ? 1.43 : Fare.CAR_RATE_PER_HOUR, ticket.getPrice());
     }
 
     @Test
@@ -0,0 +1,168 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.SchemaMigrator;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.Ticket;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * class of integration tests checking that the exit lookup of a ticket stays flat when the table
+ * ticket grows, thanks to the indexes of the schema migrations.
+ * <p>
+ * The plan of the lookup is asserted: it must use the index of the plates whatever the size of the
+ * table. The latency is only a measure, logged, as the timings of a shared machine are too noisy
+ * to fail a build on.
+ * </p>
+ * <p>
+ * The number of closed tickets seeded is set by {@code -Dlatency.tickets}: 100 000 by default to
+ * keep {@code mvn verify} short, {@code -Dlatency.tickets=1000000} for the full measure, which also
+ * asserts the slowdown of the median lookup. The plates with an open ticket are a hundredth of the
+ * tickets, at most 10 000.
+ * </p>
+ */
+public class TicketLookupLatencyIT {
+
+    private static final Logger logger = LogManager.getLogger("TicketLookupLatencyIT");
+
+    private static final int TICKETS = DataBaseConfig.getIntProperty("latency.tickets", 100000);
+    // the open tickets must all fit in the small table seeded first
+    private static final int PLATES = Math.max(1, Math.min(10000, TICKETS / 100));
+    private static final int LOOKUPS = 200;
+    private static final int BATCH_SIZE = 5000;
+    private static final String PLATE_INDEX = "IDX_TICKET_PLATE_OUT_IN";
+    /** the median lookup may not be more than this ratio slower on the full table, checked from this size. */
+    private static final double MAX_SLOWDOWN = 3.0;
+    private static final int MEASURED_TICKETS = 1000000;
+
+    private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+    private static TicketDAO ticketDAO;
+    private static int seeded;
+
+    @BeforeAll
+    private static void setUp() throws Exception {
+        new SchemaMigrator(dataBaseTestConfig).migrate();
+        new DataBasePrepareService().clearDataBaseEntries();
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseTestConfig;
+    }
+
+    @AfterAll
+    private static void tearDown() {
+        new DataBasePrepareService().clearDataBaseEntries();
+    }
+
+    @Test
+    @DisplayName("The exit lookup uses the index of the plates and its latency does not grow with the history of tickets")
+    public void givenMillionsOfClosedTickets_whenLookupOpenTicket_thenLatencyStaysFlat() throws Exception {
+        // ARRANGE
+        seedClosedTickets(PLATES);
+        long smallTableMedian = medianLookupNanos();
+        seedClosedTickets(TICKETS);
+
+        // ACT
+        String plan = explainLookup(plate(0));
+        long fullTableMedian = medianLookupNanos();
+
+        // ASSERT
+        logger.info("Median exit lookup: " + smallTableMedian / 1000 + " us with " + PLATES
+                + " tickets, " + fullTableMedian / 1000 + " us with " + TICKETS + " tickets");
+        assertThat(plan).containsIgnoringCase(PLATE_INDEX);
+        if (TICKETS >= MEASURED_TICKETS) {
+            assertThat((double) fullTableMedian).isLessThanOrEqualTo(smallTableMedian * MAX_SLOWDOWN);
+        }
+    }
+
+    /**
+     * return the plan of the exit lookup, every column of every row of the EXPLAIN: the whole plan
+     * for H2, the keys used in the column {@code key} for MySQL.
+     */
+    private String explainLookup(String vehicleRegNumber) throws Exception {
+        Connection con = dataBaseTestConfig.getConnection();
+        try {
+            PreparedStatement ps = con.prepareStatement("explain " + DBConstants.GET_TICKET_FOR_EXIT);
+            ps.setString(1, vehicleRegNumber);
+            ResultSet rs = ps.executeQuery();
+            StringBuilder plan = new StringBuilder();
+            while (rs.next()) {
+                for (int column = 1; column <= rs.getMetaData().getColumnCount(); column++) {
+                    plan.append(rs.getString(column)).append(' ');
+                }
+                plan.append('\n');
+            }
+            dataBaseTestConfig.closeResultSet(rs);
+            dataBaseTestConfig.closePreparedStatement(ps);
+            logger.info("Plan of the exit lookup: " + plan);
+            return plan.toString();
+        } finally {
+            dataBaseTestConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * add closed tickets until the table holds the given number, spread over {@link #PLATES} plates
+     * that each keep one open ticket.
+     */
+    private void seedClosedTickets(int total) throws Exception {
+        Connection con = dataBaseTestConfig.getConnection();
+        try {
+            con.setAutoCommit(false);
+            PreparedStatement ps = con.prepareStatement("insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER,"
+                    + " PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?)");
+            long now = System.currentTimeMillis();
+            for (; seeded < total; seeded++) {
+                boolean open = seeded < PLATES;
+                long inTime = now - (open ? 60000L : 86400000L + seeded * 1000L);
+                ps.setInt(1, 1);
+                ps.setString(2, plate(seeded % PLATES));
+                ps.setDouble(3, open ? 0 : 1.5);
+                ps.setTimestamp(4, new Timestamp(inTime));
+                ps.setTimestamp(5, open ? null : new Timestamp(inTime + 3600000L));
+                ps.addBatch();
+                if (seeded % BATCH_SIZE == BATCH_SIZE - 1) {
+                    ps.executeBatch();
+                    con.commit();
+                }
+            }
+            ps.executeBatch();
+            con.commit();
+            dataBaseTestConfig.closePreparedStatement(ps);
+            con.setAutoCommit(true);
+        } finally {
+            dataBaseTestConfig.closeConnection(con);
+        }
+    }
+
+    private long medianLookupNanos() {
+        long[] durations = new long[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            String plate = plate((i * 7919) % PLATES);
+            long start = System.nanoTime();
+            Ticket ticket = ticketDAO.getTicketForExit(plate);
+            durations[i] = System.nanoTime() - start;
+            assertThat(ticket).isNotNull();
+            assertThat(ticket.getOutTime()).isNull();
+        }
+        Arrays.sort(durations);
+        return durations[LOOKUPS / 2];
+    }
+
+    private static String plate(int number) {
+        return String.format("P%06d", number);
+    }
+}
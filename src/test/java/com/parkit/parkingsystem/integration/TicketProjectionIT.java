@@ -0,0 +1,101 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketProjection;
+import com.parkit.parkingsystem.eventlog.TicketEventStore;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * class of integration tests to check the projection of the event log into the Database.
+ */
+public class TicketProjectionIT {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private final DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+    private ParkingSpotDAO parkingSpotDAO;
+    private TicketDAO ticketDAO;
+    private File directory;
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception {
+        new DataBasePrepareService().clearDataBaseEntries();
+        parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseTestConfig;
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseTestConfig;
+        directory = Files.createTempDirectory("ticket-projection").toFile();
+    }
+
+    private TicketEventStore openStore() throws Exception {
+        return TicketEventStore.open(directory, new TicketProjection(dataBaseTestConfig, 100, 5),
+                1024 * 1024, 1000, 0, new FareCalculatorService());
+    }
+
+    @Test
+    public void testEntriesAndExitsAreProjectedIntoTheTables() throws Exception {
+        // GIVEN
+        TicketEventStore store = openStore();
+        Date inTime = new Date(System.currentTimeMillis() - 2 * HOUR);
+
+        // WHEN
+        EntryResult leaving = store.enter(ParkingType.CAR, "LEAVING", inTime);
+        EntryResult staying = store.enter(ParkingType.CAR, "STAYING", inTime);
+        Ticket exited = store.exit("LEAVING", new Date(inTime.getTime() + HOUR));
+        assertTrue(store.getProjection().awaitProjected(store.getLastSeq(), 5000));
+
+        // THEN
+        Ticket closedRow = ticketDAO.getTicket("LEAVING");
+        assertNotNull(closedRow);
+        assertEquals(leaving.getTicketId(), closedRow.getId());
+        assertEquals(exited.getPrice(), closedRow.getPrice());
+        assertNotNull(closedRow.getOutTime());
+        Ticket openRow = ticketDAO.getTicket("STAYING");
+        assertEquals(staying.getTicketId(), openRow.getId());
+        assertNull(openRow.getOutTime());
+        assertTrue(ticketDAO.recurringUser("LEAVING"));
+        assertEquals(store.countAvailableSpots(ParkingType.CAR), parkingSpotDAO.countAvailableSlots(ParkingType.CAR));
+        assertEquals(store.getLastSeq(), store.getProjection().readCheckpoint());
+        store.close();
+    }
+
+    @Test
+    public void testRestartContinuesTheProjectionWithoutApplyingEventsTwice() throws Exception {
+        // GIVEN
+        TicketEventStore store = openStore();
+        Date inTime = new Date(System.currentTimeMillis() - 2 * HOUR);
+        store.enter(ParkingType.CAR, "ABCDEF", inTime);
+        store.exit("ABCDEF", new Date(inTime.getTime() + HOUR));
+        store.close();
+
+        // WHEN
+        TicketEventStore restarted = openStore();
+        EntryResult again = restarted.enter(ParkingType.CAR, "ABCDEF", new Date());
+        assertTrue(restarted.getProjection().awaitProjected(restarted.getLastSeq(), 5000));
+
+        // THEN
+        assertEquals(3, restarted.getLastSeq());
+        Ticket row = ticketDAO.getTicket("ABCDEF");
+        assertEquals(again.getTicketId(), row.getId());
+        assertNull(row.getOutTime());
+        assertEquals(3, restarted.getProjection().readCheckpoint());
+        restarted.close();
+    }
+}
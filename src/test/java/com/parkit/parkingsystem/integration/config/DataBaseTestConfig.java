@@ -7,19 +7,46 @@ import org.apache.logging.log4j.Logger;
 import java.sql.*;
 
 /**
- * class of configuration to connect to the database.
+ * class of configuration to connect to the database of the tests.
+ * <p>
+ * The tests run on an in memory H2 database, without server. Give {@code -Dtest.db.url} (and
+ * {@code test.db.user}, {@code test.db.password}) to run them on MySQL, for instance
+ * {@code -Dtest.db.url=jdbc:mysql://localhost:3306/test}.
+ * </p>
  */
 
  public class DataBaseTestConfig extends DataBaseConfig {
 
     private static final Logger logger = LogManager.getLogger("DataBaseTestConfig");
 
+    public DataBaseTestConfig() {
+        super();
+    }
+
+    /**
+     * @param lotId the lot of the database, the lots other than the default one get their own in
+     * memory H2 database {@code test_<lot>}
+     */
+    public DataBaseTestConfig(String lotId) {
+        super(lotId);
+    }
+
+    @Override
+    protected String getUrl() {
+        if (!isDefaultLot()) {
+            return "jdbc:h2:mem:test_" + getLotId() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+        }
+        return getSetting("test.db.url", "jdbc:h2:mem:test;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+    }
+
+    @Override
+    protected String getUser() {
+        return getSetting("test.db.user", getStorageEngine().getDefaultUser());
+    }
+
     @Override
-    public Connection getConnection() throws ClassNotFoundException, SQLException {
-        logger.info("Create DB connection");
-        Class.forName("com.mysql.cj.jdbc.Driver");
-        return DriverManager.getConnection(
-                "jdbc:mysql://localhost:3306/test","root","rootroot");
+    protected String getPassword() {
+        return getSetting("test.db.password", getStorageEngine().getDefaultPassword());
     }
 
     @Override
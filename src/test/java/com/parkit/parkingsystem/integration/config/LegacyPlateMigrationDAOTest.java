@@ -0,0 +1,93 @@
+package com.parkit.parkingsystem.integration.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Date;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.parkit.parkingsystem.config.SchemaMigrator;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+
+/**
+ * class of tests to check that the tickets stored with the plate as typed, before the plates were
+ * normalised by the gates, can still leave once the schema is migrated.
+ */
+public class LegacyPlateMigrationDAOTest {
+
+    private DataBaseTestConfig legacyConfig;
+    private TicketDAO ticketDAO;
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception {
+        legacyConfig = new DataBaseTestConfig("legacy");
+        new SchemaMigrator(legacyConfig).migrate();
+        execute("delete from ticket");
+        execute("delete from recurring_user");
+        execute("update parking set AVAILABLE = true");
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = legacyConfig;
+    }
+
+    private void execute(String sql) throws Exception {
+        Connection con = legacyConfig.getConnection();
+        try {
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.executeUpdate();
+            legacyConfig.closePreparedStatement(ps);
+        } finally {
+            legacyConfig.closeConnection(con);
+        }
+    }
+
+    private int exitCount(String vehicleRegNumber) throws Exception {
+        Connection con = legacyConfig.getConnection();
+        try {
+            PreparedStatement ps = con.prepareStatement(
+                    "select sum(EXIT_COUNT) from recurring_user where VEHICLE_REG_NUMBER = ?");
+            ps.setString(1, vehicleRegNumber);
+            ResultSet rs = ps.executeQuery();
+            rs.next();
+            int exitCount = rs.getInt(1);
+            legacyConfig.closeResultSet(rs);
+            legacyConfig.closePreparedStatement(ps);
+            return exitCount;
+        } finally {
+            legacyConfig.closeConnection(con);
+        }
+    }
+
+    @Test
+    @DisplayName("A vehicle entered with a lowercase dashed plate leaves with its normalised plate as a recurring user")
+    public void givenLegacyPlates_whenMigrated_thenVehicleLeavesWithNormalisedPlate() throws Exception {
+        // GIVEN : rows written before the migration of the plates, which is then run again
+        execute("update parking set AVAILABLE = false where PARKING_NUMBER = 1");
+        execute("insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)"
+                + " values(1, 'ab-123', 0, current_timestamp, null)");
+        execute("insert into recurring_user(VEHICLE_REG_NUMBER, EXIT_COUNT, LAST_OUT_TIME)"
+                + " values('ab-123', 1, '2020-01-01 10:00:00'), ('AB 123', 2, '2020-02-01 10:00:00')");
+        execute("delete from schema_version where VERSION >= 8");
+        new SchemaMigrator(legacyConfig).migrate();
+        String vehicleRegNumber = ParkingService.normalizeVehicleRegNumber("AB-123");
+
+        // WHEN
+        Ticket ticket = ticketDAO.getTicketForExit(vehicleRegNumber);
+        ticket.setOutTime(new Date());
+        boolean closed = ticketDAO.updateTicket(ticket);
+
+        // THEN
+        assertThat(vehicleRegNumber).isEqualTo("AB123");
+        assertThat(ticket.getVehicleRegNumber()).isEqualTo("AB123");
+        assertThat(ticket.getIsRecurringUser()).isTrue();
+        assertThat(closed).isTrue();
+        assertThat(exitCount("AB123")).isEqualTo(4);
+        assertThat(exitCount("ab-123")).isZero();
+    }
+}
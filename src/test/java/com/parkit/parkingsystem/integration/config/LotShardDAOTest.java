@@ -0,0 +1,105 @@
+package com.parkit.parkingsystem.integration.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Date;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.parkit.parkingsystem.config.SchemaMigrator;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+/**
+ * class of tests to check that the DAOs of two lots keep their data in the database of their lot.
+ */
+public class LotShardDAOTest {
+
+    private DataBaseTestConfig mainConfig;
+    private DataBaseTestConfig northConfig;
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception {
+        new DataBasePrepareService().clearDataBaseEntries();
+        mainConfig = new DataBaseTestConfig();
+        northConfig = new DataBaseTestConfig("north");
+        new SchemaMigrator(northConfig).migrate();
+    }
+
+    private static TicketDAO dao(TicketDAO ticketDAO, DataBaseTestConfig dataBaseConfig) {
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        return ticketDAO;
+    }
+
+    private static ParkingSpotDAO dao(ParkingSpotDAO parkingSpotDAO, DataBaseTestConfig dataBaseConfig) {
+        parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        return parkingSpotDAO;
+    }
+
+    private static Ticket ticket(ParkingSpot parkingSpot, String vehicleRegNumber) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(parkingSpot);
+        ticket.setLotId(parkingSpot.getLotId());
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date());
+        return ticket;
+    }
+
+    @Test
+    @DisplayName("A ticket of a lot is only read from the database of its lot, stamped with the lot")
+    public void givenTwoLots_whenTicketSavedInOne_thenOnlyItsLotHoldsIt() {
+        // GIVEN
+        ParkingSpotDAO northSpots = dao(new ParkingSpotDAO(), northConfig);
+        TicketDAO northTickets = dao(new TicketDAO(), northConfig);
+        TicketDAO mainTickets = dao(new TicketDAO(), mainConfig);
+        String vehicleRegNumber = "NORTH" + System.nanoTime() % 100000;
+
+        // WHEN
+        ParkingSpot parkingSpot = northSpots.claimNextAvailableSlot(ParkingType.CAR);
+        northTickets.saveTicket(ticket(parkingSpot, vehicleRegNumber));
+
+        // THEN
+        assertThat(parkingSpot.getLotId()).isEqualTo("north");
+        assertThat(northTickets.getTicket(vehicleRegNumber).getLotId()).isEqualTo("north");
+        assertThat(northTickets.getTicket(vehicleRegNumber).getParkingSpot().getLotId()).isEqualTo("north");
+        assertThat(mainTickets.getTicket(vehicleRegNumber)).isNull();
+        northSpots.updateParking(new ParkingSpot("north", parkingSpot.getId(), ParkingType.CAR, true));
+    }
+
+    @Test
+    @DisplayName("A ticket or a spot of a lot can't be written in the database of another lot")
+    public void givenEntityOfAnotherLot_whenWritten_thenRejected() {
+        // GIVEN
+        TicketDAO mainTickets = dao(new TicketDAO(), mainConfig);
+        ParkingSpotDAO mainSpots = dao(new ParkingSpotDAO(), mainConfig);
+        ParkingSpot northSpot = new ParkingSpot("north", 1, ParkingType.CAR, false);
+
+        // WHEN / THEN
+        assertThrows(IllegalArgumentException.class, () -> mainTickets.saveTicket(ticket(northSpot, "ABCDEF")));
+        assertThrows(IllegalArgumentException.class, () -> mainSpots.updateParking(northSpot));
+    }
+
+    @Test
+    @DisplayName("A lot can't be started on the database recorded as the one of another lot")
+    public void givenDatabaseOfAnotherLot_whenClaimLot_thenRejected() throws Exception {
+        // GIVEN
+        dao(new ParkingSpotDAO(), northConfig).claimLot();
+        DataBaseTestConfig misrouted = new DataBaseTestConfig("south") {
+            @Override
+            protected String getUrl() {
+                return northConfig.getUrl();
+            }
+        };
+
+        // WHEN / THEN
+        dao(new ParkingSpotDAO(), northConfig).claimLot();
+        assertThrows(IllegalStateException.class, () -> dao(new ParkingSpotDAO(), misrouted).claimLot());
+    }
+}
@@ -1,14 +1,31 @@
 package com.parkit.parkingsystem.integration.config;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.StorageEngine;
+import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ParkingTransaction;
+import com.parkit.parkingsystem.dao.TicketDAO;
 import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
 import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
 import com.parkit.parkingsystem.model.ParkingSpot;
@@ -51,5 +68,72 @@ public class ParkingSpotDAOTest{
 
     }
 
+    /**
+     * two entries claiming a car spot at the same time, without the index of free spots: the second,
+     * in a REPEATABLE READ transaction, waits for the lock of the first spot and takes the next one.
+     */
+    @Test
+    public void claimNextAvailableSlotTestWhileAnotherEntryHoldsTheSpot() throws Exception {
+        dataBasePrepareService.clearDataBaseEntries();
+        TicketDAO ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfigTest;
+        DataBaseTestConfig repeatableReadConfig = new DataBaseTestConfig() {
+            @Override
+            public Connection getConnection() throws ClassNotFoundException, SQLException {
+                Connection con = super.getConnection();
+                con.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+                return con;
+            }
+        };
+        TicketDAO otherTicketDAO = new TicketDAO();
+        otherTicketDAO.dataBaseConfig = repeatableReadConfig;
+        ParkingSpotDAO otherParkingSpotDAO = new ParkingSpotDAO();
+        otherParkingSpotDAO.dataBaseConfig = repeatableReadConfig;
+        ExecutorService otherGate = Executors.newSingleThreadExecutor();
+        try {
+            ParkingSpot firstSpot;
+            Future<ParkingSpot> secondSpot;
+            try (ParkingTransaction transaction = ticketDAO.beginTransaction()) {
+                firstSpot = parkingSpotDAO.claimNextAvailableSlot(transaction, ParkingType.CAR);
+                secondSpot = otherGate.submit(() -> {
+                    try (ParkingTransaction otherTransaction = otherTicketDAO.beginTransaction()) {
+                        ParkingSpot parkingSpot = otherParkingSpotDAO.claimNextAvailableSlot(otherTransaction, ParkingType.CAR);
+                        otherTransaction.commit();
+                        return parkingSpot;
+                    }
+                });
+                Thread.sleep(200);
+                transaction.commit();
+            }
+
+            assertThat(firstSpot.getId()).isEqualTo(1);
+            assertThat(secondSpot.get(5, TimeUnit.SECONDS).getId()).isEqualTo(2);
+        } finally {
+            otherGate.shutdownNow();
+            dataBasePrepareService.clearDataBaseEntries();
+        }
+    }
 
+    /**
+     * on MySQL the locking read skips the spots locked by the entries of the other gates.
+     */
+    @Test
+    public void claimNextAvailableSlotTestOnMySqlSkipsLockedSpots() throws Exception {
+        DataBaseConfig mySqlConfig = mock(DataBaseConfig.class);
+        Connection con = mock(Connection.class);
+        PreparedStatement ps = mock(PreparedStatement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(mySqlConfig.getStorageEngine()).thenReturn(StorageEngine.MYSQL);
+        when(mySqlConfig.getConnection()).thenReturn(con);
+        when(con.prepareStatement(anyString())).thenReturn(ps);
+        when(ps.executeQuery()).thenReturn(rs);
+        ParkingSpotDAO mySqlParkingSpotDAO = new ParkingSpotDAO();
+        mySqlParkingSpotDAO.dataBaseConfig = mySqlConfig;
+
+        ParkingSpot parkingSpot = mySqlParkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR);
+
+        assertThat(parkingSpot).isNull();
+        assertThat(DBConstants.LOCK_NEXT_PARKING_SPOT_SKIP_LOCKED).endsWith("for update skip locked");
+        verify(con).prepareStatement(DBConstants.LOCK_NEXT_PARKING_SPOT_SKIP_LOCKED);
+    }
 }
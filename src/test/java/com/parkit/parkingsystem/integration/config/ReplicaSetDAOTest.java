@@ -0,0 +1,155 @@
+package com.parkit.parkingsystem.integration.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.parkit.parkingsystem.config.ReplicaSet;
+import com.parkit.parkingsystem.config.SchemaMigrator;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+/**
+ * class of tests to check the routing of the reads of the DAOs between a primary and its replica,
+ * two in memory H2 databases whose replication is done by the test.
+ */
+public class ReplicaSetDAOTest {
+
+    private static final String REPLICA_URL = "jdbc:h2:mem:test_replica;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    private static DataBaseTestConfig primaryConfig;
+    private static DataBaseTestConfig replicaConfig;
+    private static ReplicaSet replicaSet;
+    private ParkingSpotDAO parkingSpotDAO;
+
+    @BeforeAll
+    public static void setUp() throws Exception {
+        // the heartbeat is only done by the tests
+        System.setProperty("db.replica.heartbeatIntervalMillis", "0");
+        primaryConfig = new DataBaseTestConfig("replicated") {
+            @Override
+            protected List<String> getReplicaUrls() {
+                return Collections.singletonList(REPLICA_URL);
+            }
+        };
+        replicaConfig = new DataBaseTestConfig("replica");
+        new SchemaMigrator(primaryConfig).migrate();
+        new SchemaMigrator(replicaConfig).migrate();
+        replicaSet = primaryConfig.getReplicaSet();
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        System.clearProperty("db.replica.heartbeatIntervalMillis");
+    }
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception {
+        execute(primaryConfig, "update parking set AVAILABLE = true");
+        // the replica is told apart by its parking, full for the cars
+        execute(replicaConfig, "update parking set AVAILABLE = (TYPE <> 'CAR')");
+        execute(replicaConfig, "update replica_heartbeat set BEAT_MILLIS = 0");
+        ReplicaSet.setLastWriteMillis(0);
+        parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = primaryConfig;
+    }
+
+    private static void execute(DataBaseTestConfig dataBaseConfig, String sql) throws Exception {
+        Connection con = dataBaseConfig.getConnection();
+        try {
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.executeUpdate();
+            dataBaseConfig.closePreparedStatement(ps);
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * beat as the heartbeat thread would, without taking its write for one of the gate.
+     */
+    private static void beat() {
+        long lastWriteMillis = ReplicaSet.getLastWriteMillis();
+        replicaSet.beat();
+        ReplicaSet.setLastWriteMillis(lastWriteMillis);
+    }
+
+    /**
+     * give the replica the heartbeat of the primary, then beat so that its lag is read.
+     */
+    private static void replicate() throws Exception {
+        long beatMillis;
+        Connection con = primaryConfig.getConnection();
+        try {
+            PreparedStatement ps = con.prepareStatement(DBConstants.GET_REPLICA_HEARTBEAT);
+            ResultSet rs = ps.executeQuery();
+            rs.next();
+            beatMillis = rs.getLong(1);
+            primaryConfig.closeResultSet(rs);
+            primaryConfig.closePreparedStatement(ps);
+        } finally {
+            primaryConfig.closeConnection(con);
+        }
+        execute(replicaConfig, "update replica_heartbeat set BEAT_MILLIS = " + beatMillis);
+        beat();
+    }
+
+    @Test
+    @DisplayName("A read goes to the replica within the lag bound, to the primary when the replica is behind")
+    public void givenReplicaLag_whenCountAvailableSlots_thenFreshEndpointAnswers() throws Exception {
+        // GIVEN
+        beat();
+        long primaryReads = replicaSet.getPrimaryReads();
+        long replicaReads = replicaSet.getReplicaReads();
+
+        // WHEN
+        int behindReplica = parkingSpotDAO.countAvailableSlots(ParkingType.CAR);
+        replicate();
+        int freshReplica = parkingSpotDAO.countAvailableSlots(ParkingType.CAR);
+
+        // THEN
+        assertThat(behindReplica).isEqualTo(3);
+        assertThat(freshReplica).isZero();
+        assertThat(replicaSet.getPrimaryReads()).isEqualTo(primaryReads + 1);
+        assertThat(replicaSet.getReplicaReads()).isEqualTo(replicaReads + 1);
+        assertThat(replicaSet.getLagMillis()).isBetween(0L, 1000L);
+    }
+
+    @Test
+    @DisplayName("A gate reads its own write from the primary until the replica has received it")
+    public void givenWriteOfTheGate_whenCountAvailableSlots_thenReadYourWrites() throws Exception {
+        // GIVEN
+        beat();
+        replicate();
+        Thread.sleep(2);
+
+        // WHEN
+        parkingSpotDAO.updateParking(new ParkingSpot("replicated", 1, ParkingType.CAR, false));
+        long lastWriteMillis = ReplicaSet.getLastWriteMillis();
+        int afterWrite = parkingSpotDAO.countAvailableSlots(ParkingType.CAR);
+        ReplicaSet.setLastWriteMillis(0);
+        int otherGate = parkingSpotDAO.countAvailableSlots(ParkingType.CAR);
+        ReplicaSet.setLastWriteMillis(lastWriteMillis);
+        beat();
+        replicate();
+        int afterReplication = parkingSpotDAO.countAvailableSlots(ParkingType.CAR);
+
+        // THEN
+        assertThat(lastWriteMillis).isPositive();
+        assertThat(afterWrite).isEqualTo(2);
+        assertThat(otherGate).isZero();
+        assertThat(afterReplication).isZero();
+    }
+}
@@ -12,6 +12,7 @@ import org.junit.jupiter.api.Test;
 
 import com.parkit.parkingsystem.constants.Fare;
 import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingTransaction;
 import com.parkit.parkingsystem.dao.TicketDAO;
 import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
 import com.parkit.parkingsystem.model.ParkingSpot;
@@ -72,11 +73,12 @@ public class TicketDAOTest {
         /**
          * WHEN : save ticket
          */
-        ticketDAO.saveTicket(ticketInDB);
+        boolean isSaved = ticketDAO.saveTicket(ticketInDB);
 
         /**
          * THEN : verify parking spot is set and ticket info are set in DB
          */
+        assertThat(isSaved).isTrue();
         Ticket getTicketInDB = ticketDAO.getTicket("ABCDEF");
 
         double priceInDB = 0;
@@ -94,17 +96,17 @@ public class TicketDAOTest {
 
 
     @Test
-    @DisplayName("Error fetching next slot")
+    @DisplayName("A ticket refused by the database is reported as not saved")
     public void saveTicket_KO_TEST() {
 
         /**
-         * GIVEN : call ticketDAO.dataBaseConfig and set info of saving ticket with wrong Spot for
-         * Parking type a car
+         * GIVEN : call ticketDAO.dataBaseConfig and set info of saving ticket with a spot that
+         * doesn't exist in the table parking
          */
         ticketDAO.dataBaseConfig = new DataBaseTestConfig();
 
         Ticket ticketInDB = new Ticket();
-        ParkingSpot parkingSpot = new ParkingSpot(4, ParkingType.CAR, false);
+        ParkingSpot parkingSpot = new ParkingSpot(99, ParkingType.CAR, false);
         ticketInDB.setParkingSpot(parkingSpot);
         ticketInDB.setVehicleRegNumber("ABCDEF");
         ticketInDB.setPrice(0);
@@ -120,10 +122,10 @@ public class TicketDAOTest {
         boolean isSaved = ticketDAO.saveTicket(ticketInDB);
 
         /**
-         * THEN : verify parking spot is not set and ticket info are not set in DB
+         * THEN : verify the foreign key refused the ticket and ticket info are not set in DB
          */
         assertThat(isSaved).isFalse();
-        assertThat(ticketInDB.getId()).isEqualTo(0);
+        assertThat(ticketDAO.getTicket("ABCDEF")).isNull();
     }
 
 
@@ -132,8 +134,8 @@ public class TicketDAOTest {
     public void updateTicket_TEST() throws InterruptedException {
 
         /**
-         * GIVEN : call ticketDAO.dataBaseConfig and set info of saving ticket. Wait one second and set
-         * new out time and price
+         * GIVEN : call ticketDAO.dataBaseConfig and set info of saving an open ticket. Wait one second
+         * and set new out time and price
          */
         ticketDAO.dataBaseConfig = new DataBaseTestConfig();
 
@@ -145,8 +147,7 @@ public class TicketDAOTest {
         Date inTime = new Date();
         inTime.setTime(System.currentTimeMillis() - (60 * 60 * 1000));
         ticketInDB.setInTime(inTime);
-        Date outTime = new Date();
-        ticketInDB.setOutTime(outTime);
+        ticketInDB.setOutTime(null);
         ticketInDB.setPrice(Fare.CAR_RATE_PER_HOUR);
         ticketDAO.saveTicket(ticketInDB);
         Thread.sleep(1000);
@@ -167,6 +168,41 @@ public class TicketDAOTest {
 
     }
 
+    @Test
+    @DisplayName("A ticket already closed by another exit is not closed a second time")
+    public void givenClosedTicket_whenUpdateTicket_thenConflictIsReported() throws Exception {
+
+        /**
+         * GIVEN : an open ticket, closed by a first exit
+         */
+        ticketDAO.dataBaseConfig = new DataBaseTestConfig();
+        Ticket ticketInDB = new Ticket();
+        ticketInDB.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticketInDB.setVehicleRegNumber("ABCDEF");
+        ticketInDB.setInTime(new Date(System.currentTimeMillis() - (60 * 60 * 1000)));
+        ticketInDB.setPrice(0);
+        assertTrue(ticketDAO.saveTicket(ticketInDB));
+        Ticket firstExit = ticketDAO.getTicket("ABCDEF");
+        firstExit.setOutTime(new Date());
+        firstExit.setPrice(Fare.CAR_RATE_PER_HOUR);
+        assertTrue(ticketDAO.updateTicket(firstExit));
+
+        /**
+         * WHEN : a second exit, which read the ticket while it was open, closes it again
+         */
+        Ticket secondExit = new Ticket();
+        secondExit.setId(firstExit.getId());
+        secondExit.setOutTime(new Date(System.currentTimeMillis() + (60 * 60 * 1000)));
+        secondExit.setPrice(2 * Fare.CAR_RATE_PER_HOUR);
+        boolean ticketUpdated = ticketDAO.updateTicket(secondExit);
+
+        /**
+         * THEN : the conflict is reported and the first exit is kept
+         */
+        assertThat(ticketUpdated).isFalse();
+        assertThat(ticketDAO.getTicket("ABCDEF").getPrice()).isEqualTo(Fare.CAR_RATE_PER_HOUR);
+    }
+
 
     @Test
     @DisplayName("Test when a user own two ticket in DB should return recurrent customer")
@@ -202,4 +238,46 @@ public class TicketDAOTest {
         ticketDAO.saveTicket(ticketInDB_secondPark);
 
     }
+
+
+    @Test
+    @DisplayName("Test an open ticket is answered from memory at the exit and the index is rebuilt at startup")
+    public void openTicketIndex_TEST() throws Exception {
+
+        /**
+         * GIVEN : save an open ticket within a transaction
+         */
+        ticketDAO.dataBaseConfig = new DataBaseTestConfig();
+
+        Ticket ticketInDB = new Ticket();
+        ticketInDB.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticketInDB.setVehicleRegNumber("ABCDEF");
+        ticketInDB.setInTime(new Date(System.currentTimeMillis() - (60 * 60 * 1000)));
+        try (ParkingTransaction transaction = ticketDAO.beginTransaction()) {
+            ticketDAO.saveTicket(transaction, ticketInDB);
+            transaction.commit();
+        }
+
+        /**
+         * WHEN : a new DAO loads the open tickets, as after a restart
+         */
+        TicketDAO restartedDAO = new TicketDAO();
+        restartedDAO.dataBaseConfig = new DataBaseTestConfig();
+        restartedDAO.loadOpenTicketIndex();
+
+        /**
+         * THEN : the generated id is known, the ticket is read from memory and removed once closed
+         */
+        assertThat(ticketInDB.getId()).isPositive();
+        assertThat(ticketDAO.openTicketIndex.get("ABCDEF").getId()).isEqualTo(ticketInDB.getId());
+        Ticket ticketForExit = restartedDAO.getTicketForExit("ABCDEF");
+        assertThat(ticketForExit.getId()).isEqualTo(ticketInDB.getId());
+        assertThat(ticketForExit.getIsRecurringUser()).isFalse();
+        assertThat(restartedDAO.openTicketIndex.getHits()).isEqualTo(1);
+
+        ticketForExit.setOutTime(new Date());
+        assertTrue(restartedDAO.updateTicket(ticketForExit));
+        assertThat(restartedDAO.openTicketIndex.get("ABCDEF")).isNull();
+        assertThat(restartedDAO.getTicket("ABCDEF").getOutTime()).isNotNull();
+    }
 }
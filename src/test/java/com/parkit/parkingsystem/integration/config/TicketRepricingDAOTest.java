@@ -0,0 +1,109 @@
+package com.parkit.parkingsystem.integration.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.parkit.parkingsystem.dao.TicketRepricingDAO;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.ClosedTicketChunk;
+
+/**
+ * class of tests to check the reads and writes of the repricing on the tables ticket and
+ * ticket_archive.
+ */
+public class TicketRepricingDAOTest {
+
+    private static final long ONE_HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long CLOSED_FROM = 1_600_000_000_000L;
+    private static final long CLOSED_TO = CLOSED_FROM + TimeUnit.DAYS.toMillis(1);
+
+    private DataBaseTestConfig dataBaseConfig;
+    private TicketRepricingDAO ticketRepricingDAO;
+
+    @BeforeEach
+    private void setUpPerTest() {
+        new DataBasePrepareService().clearDataBaseEntries();
+        dataBaseConfig = new DataBaseTestConfig();
+        ticketRepricingDAO = new TicketRepricingDAO();
+        ticketRepricingDAO.dataBaseConfig = dataBaseConfig;
+    }
+
+    @AfterEach
+    private void tearDownPerTest() {
+        new DataBasePrepareService().clearDataBaseEntries();
+    }
+
+    private void insert(String table, int id, String vehicleRegNumber, long outTime, double price) throws Exception {
+        Connection con = dataBaseConfig.getConnection();
+        try {
+            PreparedStatement ps = con.prepareStatement("insert into " + table
+                    + "(ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?,?)");
+            ps.setInt(1, id);
+            ps.setInt(2, 4);
+            ps.setString(3, vehicleRegNumber);
+            ps.setDouble(4, price);
+            ps.setTimestamp(5, new Timestamp(outTime - ONE_HOUR));
+            ps.setTimestamp(6, new Timestamp(outTime));
+            ps.executeUpdate();
+            dataBaseConfig.closePreparedStatement(ps);
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private double price(String table, int id) throws Exception {
+        Connection con = dataBaseConfig.getConnection();
+        try {
+            PreparedStatement ps = con.prepareStatement("select PRICE from " + table + " where ID = ?");
+            ps.setInt(1, id);
+            ResultSet rs = ps.executeQuery();
+            rs.next();
+            double price = rs.getDouble(1);
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            return price;
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    @Test
+    @DisplayName("The tickets of the period are read from ticket and ticket_archive, each price is written back to its table")
+    public void givenArchivedAndRecentTickets_whenReprice_thenBothTablesAreReadAndUpdated() throws Exception {
+        // GIVEN
+        insert("ticket_archive", 1, "OLD", CLOSED_FROM + ONE_HOUR, 1.5);
+        insert("ticket_archive", 2, "LATER", CLOSED_TO + ONE_HOUR, 1.5);
+        insert("ticket", 3, "OLD", CLOSED_FROM + 3 * ONE_HOUR, 1.5);
+        List<String> read = new ArrayList<>();
+
+        // WHEN
+        long count = ticketRepricingDAO.forEachClosedTicketChunk(new Date(CLOSED_FROM), new Date(CLOSED_TO),
+                new ClosedTicketChunk(10), chunk -> {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        read.add(chunk.getId(i) + (chunk.isArchived(i) ? " archived" : "")
+                                + (chunk.isRecurringUser(i) ? " recurring" : "") + "=" + chunk.getPriceCents(i));
+                    }
+                });
+        ticketRepricingDAO.updatePrices(new int[] {1, 3}, new boolean[] {true, false}, new long[] {100, 95}, 2);
+
+        // THEN
+        assertThat(count).isEqualTo(2);
+        assertThat(read).containsExactlyInAnyOrder("1 archived=150", "3 recurring=150");
+        assertThat(price("ticket_archive", 1)).isEqualTo(1.0);
+        assertThat(price("ticket_archive", 2)).isEqualTo(1.5);
+        assertThat(price("ticket", 3)).isEqualTo(0.95);
+    }
+}
@@ -1,8 +1,11 @@
 package com.parkit.parkingsystem.integration.service;
 
+import com.parkit.parkingsystem.config.SchemaMigrator;
 import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 
 /**
  * class for the preparation of the database.
@@ -19,13 +22,17 @@ public class DataBasePrepareService {
  public void clearDataBaseEntries(){
         Connection connection = null;
         try{
+            new SchemaMigrator(dataBaseTestConfig).migrate();
             connection = dataBaseTestConfig.getConnection();
 
             //set parking entries to available
-            connection.prepareStatement("update parking set available = true").execute();
+            execute(connection, "update parking set available = true");
 
             //clear ticket entries;
-            connection.prepareStatement("truncate table ticket").execute();
+            execute(connection, "truncate table ticket");
+            execute(connection, "truncate table ticket_archive");
+            execute(connection, "truncate table recurring_user");
+            execute(connection, "update event_projection set LAST_SEQ = 0");
 
         }catch(Exception e){
             e.printStackTrace();
@@ -34,5 +41,12 @@ public class DataBasePrepareService {
         }
     }
 
-
+    private void execute(Connection connection, String sql) throws SQLException {
+        PreparedStatement ps = connection.prepareStatement(sql);
+        try {
+            ps.execute();
+        } finally {
+            dataBaseTestConfig.closePreparedStatement(ps);
+        }
+    }
 }